@@ -0,0 +1,80 @@
+package banking.bench;
+
+import banking.data.AccountManager;
+import banking.model.Account;
+import banking.model.Money;
+import banking.model.User;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Benchmarks of the AccountManager write paths: opening an account and
+ * transferring money between two accounts.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AccountBenchmark {
+
+    private BenchmarkDatabase database;
+    private AccountManager accountManager;
+    private int openingUserID;
+    private Account first;
+    private Account second;
+    private boolean forward;
+
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, SQLException {
+        database = BenchmarkDatabase.create();
+        accountManager = new AccountManager();
+
+        openingUserID = database.createUser("opening@bench.local", "password123").getUserID();
+
+        User transferUser = database.createUser("transfer@bench.local", "password123");
+        first = database.createAccount(transferUser.getUserID(), Money.ofMajor(1000000));
+        second = database.createAccount(transferUser.getUserID(), Money.ofMajor(1000000));
+    }
+
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        database.close();
+    }
+
+
+    @Benchmark
+    public boolean saveAccount() throws SQLException {
+        return accountManager.saveAccount(new Account(openingUserID, database.nextAccountNumber(), 0, false));
+    }
+
+
+    /// Transfers in alternating directions, so neither balance runs out.
+    @Benchmark
+    public void transferMoney() throws SQLException {
+        forward = !forward;
+        if (forward)
+            accountManager.transferMoney(first.getAccountNumber(), second.getAccountNumber(), Money.ofMajor(1));
+        else
+            accountManager.transferMoney(second.getAccountNumber(), first.getAccountNumber(), Money.ofMajor(1));
+    }
+
+}
@@ -0,0 +1,177 @@
+package banking.bench;
+
+import banking.data.AccountManager;
+import banking.data.DatabaseConfig;
+import banking.data.DatabaseManager;
+import banking.data.UserManager;
+import banking.model.Account;
+import banking.model.TransferRequest;
+import banking.model.User;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+
+/**
+ * BenchmarkDatabase points the DatabaseManager at a new database file in a temporary
+ * directory, either empty or generated by the {@link DataGenerator}, and fills it with
+ * deterministic data, so every benchmark trial starts from
+ * the same state and never touches the application database. Closing it shuts the
+ * DatabaseManager down and deletes the directory.
+ */
+public final class BenchmarkDatabase implements AutoCloseable {
+
+    /// Seed of the random data, fixed so runs are comparable.
+    public static final long SEED = 42;
+
+    /// First account number handed out by nextAccountNumber().
+    public static final int FIRST_ACCOUNT_NUMBER = 10000000;
+
+    private static final String DATABASE_FILE_NAME = "Banking.db";
+
+    private final Path directory;
+    private final UserManager userManager = new UserManager();
+    private final AccountManager accountManager = new AccountManager();
+    private final Random random = new Random(SEED);
+    private int nextAccountNumber;
+
+
+    private BenchmarkDatabase(Path directory, int nextAccountNumber) {
+        this.directory = directory;
+        this.nextAccountNumber = nextAccountNumber;
+    }
+
+
+    /**
+     * Creates an empty database in a new temporary directory and makes it the one
+     * used by the DatabaseManager. The schema is created on first use.
+     *
+     * @return the new benchmark database
+     * @throws IOException when the temporary directory cannot be created
+     */
+    public static BenchmarkDatabase create() throws IOException {
+        Path directory = Files.createTempDirectory("banking-bench");
+        DatabaseManager.configure(DatabaseConfig.defaults()
+                .withUrl("jdbc:sqlite:" + directory.resolve(DATABASE_FILE_NAME)));
+        return new BenchmarkDatabase(directory, FIRST_ACCOUNT_NUMBER);
+    }
+
+
+    /**
+     * Generates a database with the DataGenerator in a new temporary directory and makes it
+     * the one used by the DatabaseManager. Accounts created afterwards get numbers above
+     * the generated ones.
+     *
+     * @param config the sizes and seed of the generated data
+     * @return the new benchmark database
+     * @throws IOException  when the temporary directory cannot be created
+     * @throws SQLException when the data cannot be generated
+     */
+    public static BenchmarkDatabase generate(DataGenerator.Config config) throws IOException, SQLException {
+        Path directory = Files.createTempDirectory("banking-bench");
+        Path databaseFile = directory.resolve(DATABASE_FILE_NAME);
+        try {
+            new DataGenerator(config).generate(databaseFile);
+        } catch (SQLException e) {
+            deleteRecursively(directory);
+            throw e;
+        }
+
+        DatabaseManager.configure(DatabaseConfig.defaults().withUrl("jdbc:sqlite:" + databaseFile));
+        return new BenchmarkDatabase(directory, DataGenerator.accountNumber(config.users() * config.accountsPerUser()));
+    }
+
+
+    /// Gets the temporary directory holding the database.
+    public Path getDirectory() {
+        return directory;
+    }
+
+
+    /// Gets the seeded random generator shared by the data of this database.
+    public Random getRandom() {
+        return random;
+    }
+
+
+    /// Gets an account number that is not used yet.
+    public int nextAccountNumber() {
+        return nextAccountNumber++;
+    }
+
+
+    /**
+     * Registers a user with one empty account.
+     *
+     * @param email    the user's email address
+     * @param password the user's password
+     * @return the user as loaded back from the database
+     * @throws SQLException when a database error occurs
+     */
+    public User createUser(String email, String password) throws SQLException {
+        userManager.registerUser(new User(email, password, LocalDateTime.now()), nextAccountNumber());
+        return userManager.loadUser(email);
+    }
+
+
+    /**
+     * Opens an account for a user.
+     *
+     * @param userID  the owner's user ID
+     * @param balance the opening balance in minor units
+     * @return the account as loaded back from the database
+     * @throws SQLException when a database error occurs
+     */
+    public Account createAccount(int userID, long balance) throws SQLException {
+        int accountNumber = nextAccountNumber();
+        accountManager.saveAccount(new Account(userID, accountNumber, balance, false));
+        return accountManager.loadAccount(accountNumber);
+    }
+
+
+    /**
+     * Records transfers between two accounts, alternating their direction so the
+     * balances stay close to where they started.
+     *
+     * @param first  one of the accounts
+     * @param second the other account
+     * @param count  the number of transfers to record
+     * @throws SQLException when a database error occurs
+     */
+    public void addHistory(Account first, Account second, int count) throws SQLException {
+        List<TransferRequest> requests = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            long amount = 1 + random.nextInt(10000);
+            requests.add(i % 2 == 0
+                    ? new TransferRequest(first.getAccountNumber(), second.getAccountNumber(), amount, "History " + i)
+                    : new TransferRequest(second.getAccountNumber(), first.getAccountNumber(), amount, "History " + i));
+        }
+        accountManager.transferBatch(requests);
+    }
+
+
+    /// Shuts down the DatabaseManager and deletes the temporary directory.
+    @Override
+    public void close() throws IOException {
+        DatabaseManager.shutdown();
+        deleteRecursively(directory);
+    }
+
+
+    /// Deletes a directory and everything in it.
+    static void deleteRecursively(Path directory) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList())
+                Files.delete(path);
+        }
+    }
+
+}
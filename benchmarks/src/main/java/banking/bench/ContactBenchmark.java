@@ -0,0 +1,109 @@
+package banking.bench;
+
+import banking.data.ContactManager;
+import banking.model.Contact;
+import banking.service.ContactService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Benchmarks of ContactService.filterContacts over the generated contacts of one user,
+ * of growing number, searching by name and by account number, and typing a query one
+ * character at a time as the contact panel does. The contacts are saved in the Contacts
+ * table of a BenchmarkDatabase; the first filter loads them into the service's index.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ContactBenchmark {
+
+    private static final String[] SYLLABLES = {"an", "bo", "ce", "da", "el", "fi", "ga", "ho", "ka", "la", "mi", "na"};
+
+    /// Number of contacts of the user.
+    @Param({"100", "1000", "10000", "100000"})
+    public int contactCount;
+
+    private BenchmarkDatabase database;
+    private ContactService contactService;
+
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, SQLException {
+        database = BenchmarkDatabase.create();
+        int userID = database.createUser("contacts@bench.local", "password123").getUserID();
+
+        Random random = database.getRandom();
+        List<Contact> contacts = new ArrayList<>(contactCount);
+        for (int i = 0; i < contactCount; i++)
+            contacts.add(new Contact(randomName(random), 10000000 + random.nextInt(90000000)));
+        new ContactManager().saveContacts(userID, contacts);
+
+        contactService = new ContactService(userID);
+        contactService.loadContacts();
+    }
+
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        database.close();
+    }
+
+
+    @Benchmark
+    public ContactService.ContactListResult filterByName() {
+        return contactService.filterContacts("ann");
+    }
+
+
+    @Benchmark
+    public ContactService.ContactListResult filterByAccountNumber() {
+        return contactService.filterContacts("4242");
+    }
+
+
+    @Benchmark
+    public ContactService.ContactListResult filterWhileTyping() {
+        contactService.filterContacts("a");
+        contactService.filterContacts("an");
+        return contactService.filterContacts("ann");
+    }
+
+
+    /// Builds a name of two capitalized words of two or three syllables.
+    private static String randomName(Random random) {
+        StringBuilder name = new StringBuilder();
+        for (int word = 0; word < 2; word++) {
+            if (word > 0)
+                name.append(' ');
+            int start = name.length();
+            int syllables = 2 + random.nextInt(2);
+            for (int i = 0; i < syllables; i++)
+                name.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+            name.setCharAt(start, Character.toUpperCase(name.charAt(start)));
+        }
+        return name.toString();
+    }
+
+}
@@ -0,0 +1,436 @@
+package banking.bench;
+
+import banking.data.LedgerManager;
+import banking.data.SchemaMigrator;
+import banking.data.TransactionManager;
+import banking.data.UserManager;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.Random;
+
+
+/**
+ * DataGenerator builds a Banking.db of production scale with the real schema: N users,
+ * M accounts per user and a skewed number of transactions per account. Transaction senders
+ * are drawn from a Zipf (power-law) distribution over the accounts, so a few accounts have
+ * very long histories and most have short ones, like real customers.
+ * <p>
+ * Everything is derived from a seeded Random, so the same configuration always produces the
+ * same rows; only the password salt differs between runs. Every user has the password
+ * {@link #PASSWORD}, hashed once, because hashing millions of passwords would dominate the run.
+ * Balances are tracked while the transactions are generated, so every account's balance matches
+ * its opening balance plus its history and never goes negative. The opening balances are also
+ * stored as the first balance snapshot, from which the whole history can be replayed.
+ * <p>
+ * Run it with the target file as its only argument and the sizes as system properties, e.g.
+ * {@code java -Dbanking.gen.users=100000 -Dbanking.gen.transactions=5000000 -cp benchmarks.jar
+ * banking.bench.DataGenerator /tmp/Banking.db}; see {@link Config#defaults()}.
+ */
+public class DataGenerator {
+
+    /// Password of every generated user.
+    public static final String PASSWORD = "password123";
+
+    /// Comment of generated transfers.
+    public static final String TRANSFER_COMMENT = "Transfer";
+
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private static final long MIN_OPENING_BALANCE = 10_000_00;
+    private static final long MAX_OPENING_BALANCE = 10_000_000_00L;
+    private static final long MIN_AMOUNT = 100_00;
+    private static final long MAX_AMOUNT = 500_000_00;
+
+    private final Config config;
+    private final Random random;
+
+
+    /**
+     * Creates a generator.
+     *
+     * @param config the sizes and seed of the data to generate
+     */
+    public DataGenerator(Config config) {
+        this.config = config;
+        this.random = new Random(config.seed());
+    }
+
+
+    public static void main(String[] args) throws SQLException {
+        if (args.length != 1) {
+            System.err.println("Usage: DataGenerator <database file>");
+            System.exit(1);
+        }
+
+        Config config = Config.defaults();
+        System.out.println("Generating " + config);
+        Result result = new DataGenerator(config).generate(Path.of(args[0]));
+        System.out.printf("Generated %d users, %d accounts and %d transactions in %d s%n",
+                result.users(), result.accounts(), result.transactions(), result.elapsed().toSeconds());
+        System.out.printf("Transactions per account: median %d, max %d (account %d)%n",
+                result.medianHistorySize(), result.maxHistorySize(), result.busiestAccountNumber());
+    }
+
+
+    /**
+     * Creates a new database file and fills it. The schema is created by the SchemaMigrator,
+     * rows are inserted with batched statements and committed every {@link Config#batchSize()}
+     * rows, and the statistics are analyzed at the end.
+     *
+     * @param databaseFile the file to create
+     * @return a summary of the generated data
+     * @throws SQLException             when a database error occurs
+     * @throws IllegalArgumentException if the file already exists
+     */
+    public Result generate(Path databaseFile) throws SQLException {
+        if (Files.exists(databaseFile))
+            throw new IllegalArgumentException("Refusing to overwrite " + databaseFile);
+
+        long start = System.nanoTime();
+        int accountCount = config.users() * config.accountsPerUser();
+
+        try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + databaseFile)) {
+            new SchemaMigrator().migrate(connection);
+
+            // The file is thrown away if the run fails, so durability is not needed while loading
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("PRAGMA journal_mode = MEMORY");
+                statement.execute("PRAGMA synchronous = OFF");
+                statement.execute("PRAGMA cache_size = -262144");
+            }
+
+            connection.setAutoCommit(false);
+            try {
+                insertUsers(connection);
+                long[] balances = insertAccounts(connection, accountCount);
+                insertOpeningSnapshot(connection, balances);
+                int[] historySizes = insertTransactions(connection, balances);
+                updateBalances(connection, balances);
+                connection.commit();
+
+                int busiest = 0;
+                for (int i = 1; i < accountCount; i++) {
+                    if (historySizes[i] > historySizes[busiest])
+                        busiest = i;
+                }
+                int[] sorted = historySizes.clone();
+                Arrays.sort(sorted);
+
+                connection.setAutoCommit(true);
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("ANALYZE");
+                    statement.execute("PRAGMA journal_mode = DELETE");
+                }
+
+                return new Result(config.users(), accountCount, config.transactions(),
+                        sorted[accountCount / 2], historySizes[busiest], accountNumber(busiest),
+                        Duration.ofNanos(System.nanoTime() - start));
+
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            }
+        }
+    }
+
+
+    /// Gets the account number of the account with the given index.
+    public static int accountNumber(int accountIndex) {
+        return BenchmarkDatabase.FIRST_ACCOUNT_NUMBER + accountIndex;
+    }
+
+
+    /// Gets the email address of the user with the given index.
+    public static String email(int userIndex) {
+        return "user" + userIndex + "@bench.local";
+    }
+
+
+    /// Inserts the users with IDs 1..N, registered over the year before the first transaction.
+    private void insertUsers(Connection connection) throws SQLException {
+        String password = new UserManager().createPasswordHash(PASSWORD);
+        String query = "INSERT INTO Users (user_id, email, password, datetime) VALUES (?, ?, ?, ?)";
+
+        try (PreparedStatement statement = connection.prepareStatement(query)) {
+            for (int i = 0; i < config.users(); i++) {
+                LocalDateTime registered = config.start().minusSeconds(random.nextInt(365 * 24 * 3600));
+                statement.setInt(1, i + 1);
+                statement.setString(2, email(i));
+                statement.setString(3, password);
+                statement.setString(4, registered.format(DATE_FORMAT));
+                addToBatch(connection, statement, i + 1);
+            }
+            flush(connection, statement);
+        }
+    }
+
+
+    /**
+     * Inserts M accounts per user with log-uniform opening balances.
+     *
+     * @return the opening balances, indexed by account index
+     */
+    private long[] insertAccounts(Connection connection, int accountCount) throws SQLException {
+        long[] balances = new long[accountCount];
+        String query = "INSERT INTO Accounts (user_id, account_number, balance, is_frozen) VALUES (?, ?, ?, 0)";
+
+        try (PreparedStatement statement = connection.prepareStatement(query)) {
+            for (int i = 0; i < accountCount; i++) {
+                balances[i] = logUniform(MIN_OPENING_BALANCE, MAX_OPENING_BALANCE);
+                statement.setInt(1, i / config.accountsPerUser() + 1);
+                statement.setInt(2, accountNumber(i));
+                statement.setLong(3, balances[i]);
+                addToBatch(connection, statement, i + 1);
+            }
+            flush(connection, statement);
+        }
+        return balances;
+    }
+
+
+    /**
+     * Stores the opening balances as a balance snapshot before the first transaction,
+     * so the EventSourcedLedger replays the whole generated history from them.
+     *
+     * @param balances the opening balances, indexed by account index
+     */
+    private void insertOpeningSnapshot(Connection connection, long[] balances) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("INSERT INTO BalanceSnapshots (snapshot_id, last_transaction_id, created_at) VALUES (1, 0, '"
+                    + config.start().format(DATE_FORMAT) + "')");
+        }
+
+        try (PreparedStatement statement = connection.prepareStatement(
+                "INSERT INTO BalanceSnapshotEntries (snapshot_id, account_number, balance) VALUES (1, ?, ?)")) {
+            for (int i = 0; i < balances.length; i++) {
+                statement.setInt(1, accountNumber(i));
+                statement.setLong(2, balances[i]);
+                addToBatch(connection, statement, i + 1);
+            }
+            flush(connection, statement);
+        }
+    }
+
+
+    /**
+     * Inserts the transactions in date order, spread evenly over the configured period.
+     * One in ten is a deposit, one in ten a withdrawal and the rest are transfers to a
+     * uniformly chosen account; a sender that cannot cover the amount makes a deposit instead.
+     *
+     * @param balances the opening balances, updated with every transaction
+     * @return the number of transactions of every account, indexed by account index
+     */
+    private int[] insertTransactions(Connection connection, long[] balances) throws SQLException {
+        int accountCount = balances.length;
+        int[] historySizes = new int[accountCount];
+        ZipfSampler senders = new ZipfSampler(accountCount, config.skew(), random);
+        long spanSeconds = config.span().toSeconds();
+
+        String query = """
+                INSERT INTO Transactions (sender_account_number, receiver_account_number, amount, comment, date, type)
+                VALUES (?, ?, ?, ?, ?, ?)""";
+
+        try (PreparedStatement statement = connection.prepareStatement(query)) {
+            for (long i = 0; i < config.transactions(); i++) {
+                int sender = senders.next();
+                int receiver = sender;
+                long amount = logUniform(MIN_AMOUNT, MAX_AMOUNT);
+                int kind = random.nextInt(10);
+                String comment;
+                TransactionManager.Type type;
+
+                if (kind == 0 || balances[sender] < amount || (kind > 1 && accountCount == 1)) {
+                    balances[sender] += amount;
+                    comment = LedgerManager.DEPOSIT_COMMENT;
+                    type = TransactionManager.Type.DEPOSIT;
+                } else if (kind == 1) {
+                    balances[sender] -= amount;
+                    comment = LedgerManager.WITHDRAWAL_COMMENT;
+                    type = TransactionManager.Type.WITHDRAWAL;
+                } else {
+                    receiver = random.nextInt(accountCount - 1);
+                    if (receiver >= sender)
+                        receiver++;
+                    balances[sender] -= amount;
+                    balances[receiver] += amount;
+                    historySizes[receiver]++;
+                    comment = TRANSFER_COMMENT;
+                    type = TransactionManager.Type.TRANSFER;
+                }
+                historySizes[sender]++;
+
+                LocalDateTime date = config.start().plusSeconds(i * spanSeconds / config.transactions());
+                statement.setInt(1, accountNumber(sender));
+                statement.setInt(2, accountNumber(receiver));
+                statement.setLong(3, amount);
+                statement.setString(4, comment);
+                statement.setString(5, date.format(DATE_FORMAT));
+                statement.setString(6, type.name());
+                addToBatch(connection, statement, i + 1);
+
+                if ((i + 1) % 1_000_000 == 0)
+                    System.out.println("Inserted " + (i + 1) + " transactions");
+            }
+            flush(connection, statement);
+        }
+        return historySizes;
+    }
+
+
+    /// Stores the balances reached after the generated transactions.
+    private void updateBalances(Connection connection, long[] balances) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(
+                "UPDATE Accounts SET balance = ? WHERE account_number = ?")) {
+            for (int i = 0; i < balances.length; i++) {
+                statement.setLong(1, balances[i]);
+                statement.setInt(2, accountNumber(i));
+                addToBatch(connection, statement, i + 1);
+            }
+            flush(connection, statement);
+        }
+    }
+
+
+    /// Adds the current row to the batch and flushes the batch every batchSize rows.
+    private void addToBatch(Connection connection, PreparedStatement statement, long rowCount) throws SQLException {
+        statement.addBatch();
+        if (rowCount % config.batchSize() == 0)
+            flush(connection, statement);
+    }
+
+
+    /// Executes the pending batch and commits it.
+    private static void flush(Connection connection, PreparedStatement statement) throws SQLException {
+        statement.executeBatch();
+        connection.commit();
+    }
+
+
+    /// Draws a value between min and max whose logarithm is uniformly distributed.
+    private long logUniform(long min, long max) {
+        double logMin = Math.log(min);
+        return Math.round(Math.exp(logMin + random.nextDouble() * (Math.log(max) - logMin)));
+    }
+
+
+    /**
+     * Draws account indexes with probability proportional to 1 / rank^skew. Ranks are assigned
+     * to the accounts by a seeded shuffle, so the busiest accounts are spread over all users.
+     */
+    private static final class ZipfSampler {
+
+        private final double[] cumulativeWeights;
+        private final int[] accountOfRank;
+        private final Random random;
+
+
+        ZipfSampler(int accountCount, double skew, Random random) {
+            this.random = random;
+            cumulativeWeights = new double[accountCount];
+            double total = 0;
+            for (int rank = 0; rank < accountCount; rank++) {
+                total += 1 / Math.pow(rank + 1, skew);
+                cumulativeWeights[rank] = total;
+            }
+
+            accountOfRank = new int[accountCount];
+            for (int i = 0; i < accountCount; i++)
+                accountOfRank[i] = i;
+            for (int i = accountCount - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                int swap = accountOfRank[i];
+                accountOfRank[i] = accountOfRank[j];
+                accountOfRank[j] = swap;
+            }
+        }
+
+
+        int next() {
+            double target = random.nextDouble() * cumulativeWeights[cumulativeWeights.length - 1];
+            int rank = Arrays.binarySearch(cumulativeWeights, target);
+            if (rank < 0)
+                rank = -rank - 1;
+            return accountOfRank[Math.min(rank, accountOfRank.length - 1)];
+        }
+
+    }
+
+
+    /**
+     * Sizes and seed of the generated data.
+     *
+     * @param users           the number of users
+     * @param accountsPerUser the number of accounts of every user
+     * @param transactions    the total number of transactions
+     * @param skew            the Zipf exponent of the transactions per account; 0 is uniform
+     * @param seed            the seed of the random data
+     * @param batchSize       the number of rows per batch and commit
+     * @param start           the date of the first transaction
+     * @param span            the period the transactions are spread over
+     */
+    public record Config(int users, int accountsPerUser, long transactions, double skew, long seed,
+                         int batchSize, LocalDateTime start, Duration span) {
+
+        public Config {
+            if (users < 1 || accountsPerUser < 1 || transactions < 0 || skew < 0 || batchSize < 1 || span.isNegative())
+                throw new IllegalArgumentException("Invalid generator configuration");
+            if ((long) users * accountsPerUser > 99999999L - BenchmarkDatabase.FIRST_ACCOUNT_NUMBER)
+                throw new IllegalArgumentException("Too many accounts for 8-digit account numbers");
+        }
+
+
+        /**
+         * Gets the default configuration: 1000 users with 2 accounts each and 100000 transactions
+         * over a year from 2024-01-01 with a skew of 1.1. Each can be overridden with the system
+         * properties {@code banking.gen.users}, {@code banking.gen.accountsPerUser},
+         * {@code banking.gen.transactions}, {@code banking.gen.skew}, {@code banking.gen.seed},
+         * {@code banking.gen.batchSize} and {@code banking.gen.days}.
+         *
+         * @return the default configuration
+         */
+        public static Config defaults() {
+            return new Config(
+                    Integer.getInteger("banking.gen.users", 1000),
+                    Integer.getInteger("banking.gen.accountsPerUser", 2),
+                    Long.getLong("banking.gen.transactions", 100000),
+                    Double.parseDouble(System.getProperty("banking.gen.skew", "1.1")),
+                    Long.getLong("banking.gen.seed", BenchmarkDatabase.SEED),
+                    Integer.getInteger("banking.gen.batchSize", 10000),
+                    LocalDateTime.of(2024, 1, 1, 0, 0),
+                    Duration.ofDays(Long.getLong("banking.gen.days", 365)));
+        }
+
+
+        /// Returns a copy of this configuration with the given sizes.
+        public Config withSize(int newUsers, int newAccountsPerUser, long newTransactions) {
+            return new Config(newUsers, newAccountsPerUser, newTransactions, skew, seed, batchSize, start, span);
+        }
+
+    }
+
+
+    /**
+     * Summary of a generated database.
+     *
+     * @param users                the number of users
+     * @param accounts             the number of accounts
+     * @param transactions         the number of transactions
+     * @param medianHistorySize    the median number of transactions per account
+     * @param maxHistorySize       the number of transactions of the busiest account
+     * @param busiestAccountNumber the account number of the busiest account
+     * @param elapsed              the time the generation took
+     */
+    public record Result(int users, int accounts, long transactions, int medianHistorySize,
+                         int maxHistorySize, int busiestAccountNumber, Duration elapsed) { }
+
+}
@@ -0,0 +1,67 @@
+package banking.bench;
+
+import banking.model.Money;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Benchmarks of summing balances as long minor units with Money.sum,
+ * against the plain double summing they replaced.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MoneyBenchmark {
+
+    /// Number of balances to sum.
+    @Param({"10", "1000", "100000"})
+    public int size;
+
+    private long[] minorUnits;
+    private double[] majorUnits;
+
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(BenchmarkDatabase.SEED);
+        minorUnits = new long[size];
+        majorUnits = new double[size];
+        for (int i = 0; i < size; i++) {
+            minorUnits[i] = random.nextInt(100000000);
+            majorUnits[i] = minorUnits[i] / 100.0;
+        }
+    }
+
+
+    @Benchmark
+    public long sumMinorUnits() {
+        return Money.sum(minorUnits);
+    }
+
+
+    @Benchmark
+    public double sumDoubles() {
+        double sum = 0;
+        for (double balance : majorUnits)
+            sum += balance;
+        return sum;
+    }
+
+}
@@ -0,0 +1,77 @@
+package banking.bench;
+
+import banking.data.EventSourcedLedger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Benchmark of starting the EventSourcedLedger on a generated database: loading the latest
+ * balance snapshot and replaying the events after it. Without a later snapshot the whole
+ * history is replayed from the generator's opening snapshot; with one taken at the end of
+ * the history only the snapshot is loaded. Every invocation starts a new ledger, so each
+ * measurement is one complete startup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ReplayBenchmark {
+
+    /// Number of events (Transactions rows) in the generated history.
+    @Param({"1000000", "10000000"})
+    public long eventCount;
+
+    /// Whether a snapshot is taken at the end of the history before measuring.
+    @Param({"false", "true"})
+    public boolean snapshotted;
+
+    /// Number of generated users, with two accounts each.
+    @Param({"50000"})
+    public int users;
+
+    private BenchmarkDatabase database;
+
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, SQLException {
+        database = BenchmarkDatabase.generate(DataGenerator.Config.defaults().withSize(users, 2, eventCount));
+
+        if (snapshotted) {
+            EventSourcedLedger ledger = new EventSourcedLedger(EventSourcedLedger.Config.defaults());
+            ledger.snapshot();
+        }
+    }
+
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        database.close();
+    }
+
+
+    @Benchmark
+    public EventSourcedLedger.Stats load() throws SQLException {
+        EventSourcedLedger ledger = new EventSourcedLedger(EventSourcedLedger.Config.defaults());
+        ledger.load();
+        return ledger.getStats();
+    }
+
+}
@@ -0,0 +1,616 @@
+package banking.bench;
+
+import banking.data.AccountManager;
+import banking.data.DatabaseManager;
+import banking.data.EventSourcedLedger;
+import banking.data.GroupCommitLedger;
+import banking.data.InMemoryLedger;
+import banking.data.LedgerManager;
+import banking.model.Account;
+import banking.service.MainService;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ExecutionException;
+
+
+/**
+ * StressHarness drives random transfers, deposits and withdrawals from many concurrent
+ * sessions, each on its own virtual thread, against a generated database. Every session
+ * is a different user working on their own accounts and transferring to any account.
+ * <p>
+ * Sessions go either through MainService, exactly like the UI (and through the ledger
+ * engine it selects, see {@code banking.ledger.groupCommit} and {@code banking.ledger.inMemory}),
+ * or straight to AccountManager.
+ * The report shows the throughput, latency percentiles per operation and the number of
+ * operations that failed with SQLITE_BUSY, and checks these invariants:
+ * <ul>
+ *     <li>the sum of all balances changed by exactly the deposits minus the withdrawals;</li>
+ *     <li>through MainService, every successful transfer has exactly one Transactions row
+ *     and no other transfer has one, and every account's balance changed by exactly the
+ *     sum of its new Transactions rows.</li>
+ * </ul>
+ * AccountManager alone does not record transactions, so only the first invariant applies to it.
+ * <p>
+ * Run it with {@code java -cp benchmarks.jar banking.bench.StressHarness} and the settings
+ * as system properties; see {@link Config#defaults()}. The exit status is 1 if an invariant fails.
+ */
+public class StressHarness {
+
+    private static final String COMMENT_PREFIX = "stress ";
+
+    private final Config config;
+
+
+    /**
+     * Creates a harness.
+     *
+     * @param config the load to generate
+     */
+    public StressHarness(Config config) {
+        this.config = config;
+    }
+
+
+    public static void main(String[] args) throws Exception {
+        Config config = Config.defaults();
+        System.out.println("Running " + config);
+
+        Report report = new StressHarness(config).run();
+        report.print();
+        if (!report.violations().isEmpty())
+            System.exit(1);
+    }
+
+
+    /**
+     * Generates a database with one user per session, runs all sessions at once and checks
+     * the invariants. The database is deleted afterwards.
+     *
+     * @return the measurements and invariant violations
+     * @throws IOException          when the temporary database cannot be created
+     * @throws SQLException         when the database cannot be generated or checked
+     * @throws InterruptedException if interrupted while waiting for the sessions
+     */
+    public Report run() throws IOException, SQLException, InterruptedException {
+        DataGenerator.Config data = DataGenerator.Config.defaults()
+                .withSize(config.sessions(), config.accountsPerUser(), config.historyTransactions());
+        int accountCount = config.sessions() * config.accountsPerUser();
+
+        try (BenchmarkDatabase database = BenchmarkDatabase.generate(data)) {
+            Map<Integer, Long> initialBalances = loadBalances();
+            long lastTransactionID = loadLastTransactionID();
+
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<SessionResult>> futures = new ArrayList<>(config.sessions());
+            List<SessionResult> results = new ArrayList<>(config.sessions());
+            long elapsedNanos;
+
+            try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+                for (int i = 0; i < config.sessions(); i++) {
+                    int sessionIndex = i;
+                    futures.add(executor.submit(() -> runSession(sessionIndex, accountCount, start)));
+                }
+
+                long startNanos = System.nanoTime();
+                start.countDown();
+                for (Future<SessionResult> future : futures)
+                    results.add(future.get());
+                elapsedNanos = System.nanoTime() - startNanos;
+
+            } catch (ExecutionException e) {
+                throw new SQLException("A session failed to start", e.getCause());
+            } finally {
+                // Postings still queued for a group commit or the in-memory journal must land before the checks
+                GroupCommitLedger.shutdown();
+                InMemoryLedger.shutdown();
+                EventSourcedLedger.shutdown();
+            }
+
+            List<String> violations = checkInvariants(results, initialBalances, lastTransactionID);
+            return Report.of(config, results, Duration.ofNanos(elapsedNanos), violations);
+        }
+    }
+
+
+    /**
+     * Runs the operations of one session once all sessions are ready.
+     *
+     * @param sessionIndex the index of the session, which is also the index of its user
+     * @param accountCount the number of accounts in the database
+     * @param start        released when all sessions may start
+     * @return what the session did and how long each operation took
+     */
+    private SessionResult runSession(int sessionIndex, int accountCount, CountDownLatch start) throws Exception {
+        Random random = new Random(config.seed() + sessionIndex);
+        Session session = config.driver() == Driver.SERVICE
+                ? new ServiceSession(DataGenerator.email(sessionIndex))
+                : new AccountManagerSession(sessionIndex);
+        SessionResult result = new SessionResult(config.operationsPerSession());
+
+        start.await();
+
+        for (int i = 0; i < config.operationsPerSession(); i++) {
+            Account account = session.accounts().get(random.nextInt(session.accounts().size()));
+            long amount = 1 + random.nextInt(100000);
+            int roll = random.nextInt(100);
+
+            Operation operation;
+            String comment = null;
+            int receiverAccountNumber = 0;
+            if (roll < config.transferPercent()) {
+                operation = Operation.TRANSFER;
+                comment = COMMENT_PREFIX + sessionIndex + "-" + i;
+                do {
+                    receiverAccountNumber = DataGenerator.accountNumber(random.nextInt(accountCount));
+                } while (receiverAccountNumber == account.getAccountNumber() && accountCount > 1);
+            } else if (roll < config.transferPercent() + (100 - config.transferPercent()) / 2) {
+                operation = Operation.DEPOSIT;
+            } else {
+                operation = Operation.WITHDRAWAL;
+            }
+
+            long startNanos = System.nanoTime();
+            Outcome outcome = switch (operation) {
+                case TRANSFER -> session.transfer(account, receiverAccountNumber, amount, comment);
+                case DEPOSIT -> session.deposit(account, amount);
+                case WITHDRAWAL -> session.withdraw(account, amount);
+            };
+            result.record(operation, outcome, System.nanoTime() - startNanos, amount, comment);
+        }
+        return result;
+    }
+
+
+    /**
+     * Checks the invariants against the database.
+     *
+     * @return a description of every violation, empty if all invariants hold
+     */
+    private List<String> checkInvariants(List<SessionResult> results, Map<Integer, Long> initialBalances,
+                                         long lastTransactionID) throws SQLException {
+        List<String> violations = new ArrayList<>();
+        Map<Integer, Long> finalBalances = loadBalances();
+
+        long deposited = 0;
+        long withdrawn = 0;
+        Set<String> transferComments = new HashSet<>();
+        for (SessionResult result : results) {
+            deposited += result.deposited;
+            withdrawn += result.withdrawn;
+            transferComments.addAll(result.transferComments);
+        }
+
+        long initialTotal = initialBalances.values().stream().mapToLong(Long::longValue).sum();
+        long finalTotal = finalBalances.values().stream().mapToLong(Long::longValue).sum();
+        if (finalTotal != initialTotal + deposited - withdrawn) {
+            violations.add("Balances not conserved: " + initialTotal + " + " + deposited + " - " + withdrawn
+                    + " != " + finalTotal);
+        }
+
+        if (config.driver() != Driver.SERVICE)
+            return violations;
+
+        // Replay the new rows on the initial balances and count the rows of every stress transfer
+        Map<Integer, Long> replayed = new HashMap<>(initialBalances);
+        Map<String, Integer> rowsPerComment = new HashMap<>();
+        String query = """
+                SELECT sender_account_number, receiver_account_number, amount, comment
+                FROM Transactions WHERE transaction_id > ?""";
+
+        try (Connection connection = DatabaseManager.getInstance().getConnection();
+             PreparedStatement statement = connection.prepareStatement(query)) {
+            statement.setLong(1, lastTransactionID);
+
+            try (ResultSet result = statement.executeQuery()) {
+                while (result.next()) {
+                    int sender = result.getInt("sender_account_number");
+                    int receiver = result.getInt("receiver_account_number");
+                    long amount = result.getLong("amount");
+                    String comment = result.getString("comment");
+
+                    if (sender == receiver && LedgerManager.DEPOSIT_COMMENT.equals(comment)) {
+                        replayed.merge(receiver, amount, Long::sum);
+                    } else if (sender == receiver && LedgerManager.WITHDRAWAL_COMMENT.equals(comment)) {
+                        replayed.merge(sender, -amount, Long::sum);
+                    } else {
+                        replayed.merge(sender, -amount, Long::sum);
+                        replayed.merge(receiver, amount, Long::sum);
+                        rowsPerComment.merge(comment, 1, Integer::sum);
+                    }
+                }
+            }
+        }
+
+        for (Map.Entry<Integer, Long> entry : finalBalances.entrySet()) {
+            long expected = replayed.getOrDefault(entry.getKey(), 0L);
+            if (entry.getValue() != expected)
+                violations.add("Account " + entry.getKey() + " has " + entry.getValue() + " instead of " + expected);
+        }
+
+        for (String comment : transferComments) {
+            int rows = rowsPerComment.getOrDefault(comment, 0);
+            if (rows != 1)
+                violations.add("Transfer '" + comment + "' has " + rows + " Transactions rows");
+        }
+        for (String comment : rowsPerComment.keySet()) {
+            if (!transferComments.contains(comment))
+                violations.add("Transfer '" + comment + "' has a Transactions row but did not succeed");
+        }
+
+        return violations;
+    }
+
+
+    /// Loads the balance of every account.
+    private static Map<Integer, Long> loadBalances() throws SQLException {
+        Map<Integer, Long> balances = new HashMap<>();
+        try (Connection connection = DatabaseManager.getInstance().getConnection();
+             PreparedStatement statement = connection.prepareStatement("SELECT account_number, balance FROM Accounts");
+             ResultSet result = statement.executeQuery()) {
+            while (result.next())
+                balances.put(result.getInt("account_number"), result.getLong("balance"));
+        }
+        return balances;
+    }
+
+
+    /// Loads the highest transaction ID, so the rows written by the run can be told apart.
+    private static long loadLastTransactionID() throws SQLException {
+        try (Connection connection = DatabaseManager.getInstance().getConnection();
+             PreparedStatement statement = connection.prepareStatement(
+                     "SELECT COALESCE(MAX(transaction_id), 0) FROM Transactions");
+             ResultSet result = statement.executeQuery()) {
+            return result.next() ? result.getLong(1) : 0;
+        }
+    }
+
+
+    /// Checks if a failure was caused by SQLITE_BUSY, including its extended result codes.
+    static boolean isBusy(Throwable failure) {
+        for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SQLException e && (e.getErrorCode() & 0xff) == 5)
+                return true;
+            if (cause.getMessage() != null && cause.getMessage().contains("SQLITE_BUSY"))
+                return true;
+        }
+        return false;
+    }
+
+
+    /// The path the sessions take into the application.
+    public enum Driver { SERVICE, ACCOUNT_MANAGER }
+
+
+    /// The operations a session performs.
+    public enum Operation { TRANSFER, DEPOSIT, WITHDRAWAL }
+
+
+    /// How an operation ended: applied, refused by a business rule, or failed with a database error.
+    enum Outcome { SUCCEEDED, REJECTED, FAILED, BUSY }
+
+
+    /// A user's connection to the application.
+    private interface Session {
+
+        List<Account> accounts();
+
+        Outcome transfer(Account sender, int receiverAccountNumber, long amount, String comment);
+
+        Outcome deposit(Account account, long amount);
+
+        Outcome withdraw(Account account, long amount);
+
+    }
+
+
+    /// A session that goes through MainService, like the UI.
+    private static final class ServiceSession implements Session {
+
+        private final MainService service;
+        private final List<Account> accounts;
+
+
+        ServiceSession(String email) throws SQLException {
+            service = new MainService(email);
+            MainService.AccountListResult result = service.getUserAccounts();
+            if (!result.success())
+                throw new SQLException(result.errorMessage());
+            accounts = result.accounts();
+        }
+
+
+        @Override
+        public List<Account> accounts() {
+            return accounts;
+        }
+
+
+        @Override
+        public Outcome transfer(Account sender, int receiverAccountNumber, long amount, String comment) {
+            service.setSelectedAccount(sender);
+            return outcome(service.transfer(String.valueOf(receiverAccountNumber), text(amount), comment));
+        }
+
+
+        @Override
+        public Outcome deposit(Account account, long amount) {
+            service.setSelectedAccount(account);
+            return outcome(service.deposit(text(amount)));
+        }
+
+
+        @Override
+        public Outcome withdraw(Account account, long amount) {
+            service.setSelectedAccount(account);
+            return outcome(service.withdraw(text(amount)));
+        }
+
+
+        /// Formats an amount the way a user types it.
+        private static String text(long amount) {
+            return BigDecimal.valueOf(amount, 2).toPlainString();
+        }
+
+
+        /// Classifies a MainService result; database errors are reported as "... failed: <cause>".
+        private static Outcome outcome(MainService.TransactionResult result) {
+            if (result.success())
+                return Outcome.SUCCEEDED;
+            if (result.message().contains("SQLITE_BUSY"))
+                return Outcome.BUSY;
+            return result.message().contains(" failed: ") ? Outcome.FAILED : Outcome.REJECTED;
+        }
+
+    }
+
+
+    /// A session that calls AccountManager directly.
+    private final class AccountManagerSession implements Session {
+
+        private final AccountManager accountManager = new AccountManager();
+        private final List<Account> accounts;
+
+
+        AccountManagerSession(int userIndex) throws SQLException {
+            accounts = accountManager.loadAccounts(userIndex + 1);
+            if (accounts.isEmpty())
+                throw new SQLException("User " + (userIndex + 1) + " has no accounts");
+        }
+
+
+        @Override
+        public List<Account> accounts() {
+            return accounts;
+        }
+
+
+        @Override
+        public Outcome transfer(Account sender, int receiverAccountNumber, long amount, String comment) {
+            return outcome(() -> accountManager.transferMoney(sender.getAccountNumber(), receiverAccountNumber, amount));
+        }
+
+
+        @Override
+        public Outcome deposit(Account account, long amount) {
+            return outcome(() -> accountManager.depositMoney(account, amount));
+        }
+
+
+        @Override
+        public Outcome withdraw(Account account, long amount) {
+            return outcome(() -> accountManager.withdrawMoney(account, amount));
+        }
+
+
+        private Outcome outcome(DatabaseCall call) {
+            try {
+                call.run();
+                return Outcome.SUCCEEDED;
+            } catch (IllegalArgumentException e) {
+                return Outcome.REJECTED;
+            } catch (SQLException e) {
+                return isBusy(e) ? Outcome.BUSY : Outcome.FAILED;
+            }
+        }
+
+    }
+
+
+    @FunctionalInterface
+    private interface DatabaseCall {
+        void run() throws SQLException;
+    }
+
+
+    /// What one session did.
+    private static final class SessionResult {
+
+        private final Operation[] operations;
+        private final long[] latencies;
+        private final int[] outcomeCounts = new int[Outcome.values().length];
+        private final Set<String> transferComments = new HashSet<>();
+        private int count;
+        private long deposited;
+        private long withdrawn;
+
+
+        SessionResult(int capacity) {
+            operations = new Operation[capacity];
+            latencies = new long[capacity];
+        }
+
+
+        void record(Operation operation, Outcome outcome, long latencyNanos, long amount, String comment) {
+            operations[count] = operation;
+            latencies[count] = latencyNanos;
+            count++;
+            outcomeCounts[outcome.ordinal()]++;
+
+            if (outcome != Outcome.SUCCEEDED)
+                return;
+            switch (operation) {
+                case TRANSFER -> transferComments.add(comment);
+                case DEPOSIT -> deposited += amount;
+                case WITHDRAWAL -> withdrawn += amount;
+            }
+        }
+
+    }
+
+
+    /**
+     * The load to generate.
+     *
+     * @param sessions            the number of concurrent sessions, one user each
+     * @param operationsPerSession the number of operations of every session
+     * @param accountsPerUser     the number of accounts of every user
+     * @param historyTransactions the number of transactions generated before the run
+     * @param transferPercent     the share of transfers; the rest is split between deposits and withdrawals
+     * @param driver              the path the sessions take into the application
+     * @param seed                the seed of the data and of every session's operations
+     */
+    public record Config(int sessions, int operationsPerSession, int accountsPerUser, long historyTransactions,
+                         int transferPercent, Driver driver, long seed) {
+
+        public Config {
+            if (sessions < 1 || operationsPerSession < 1 || accountsPerUser < 1 || historyTransactions < 0
+                    || transferPercent < 0 || transferPercent > 100)
+                throw new IllegalArgumentException("Invalid stress configuration");
+        }
+
+
+        /**
+         * Gets the default configuration: 200 sessions of 200 operations, 80% transfers,
+         * through MainService, on users with 2 accounts and 10000 earlier transactions.
+         * Each can be overridden with the system properties {@code banking.stress.sessions},
+         * {@code banking.stress.operations}, {@code banking.stress.accountsPerUser},
+         * {@code banking.stress.history}, {@code banking.stress.transferPercent},
+         * {@code banking.stress.driver} and {@code banking.stress.seed}.
+         *
+         * @return the default configuration
+         */
+        public static Config defaults() {
+            return new Config(
+                    Integer.getInteger("banking.stress.sessions", 200),
+                    Integer.getInteger("banking.stress.operations", 200),
+                    Integer.getInteger("banking.stress.accountsPerUser", 2),
+                    Long.getLong("banking.stress.history", 10000),
+                    Integer.getInteger("banking.stress.transferPercent", 80),
+                    Driver.valueOf(System.getProperty("banking.stress.driver", Driver.SERVICE.name())),
+                    Long.getLong("banking.stress.seed", BenchmarkDatabase.SEED));
+        }
+
+    }
+
+
+    /**
+     * Latency percentiles of one kind of operation, in microseconds.
+     *
+     * @param operation the operation
+     * @param count     the number of operations measured
+     */
+    public record Latency(Operation operation, int count, long p50, long p95, long p99, long p999, long max) {
+
+        static Latency of(Operation operation, long[] nanos) {
+            Arrays.sort(nanos);
+            return new Latency(operation, nanos.length, percentile(nanos, 0.50), percentile(nanos, 0.95),
+                    percentile(nanos, 0.99), percentile(nanos, 0.999),
+                    nanos.length == 0 ? 0 : nanos[nanos.length - 1] / 1000);
+        }
+
+
+        /// Gets a percentile of sorted nanoseconds in microseconds, by the nearest-rank method.
+        private static long percentile(long[] sortedNanos, double fraction) {
+            if (sortedNanos.length == 0)
+                return 0;
+            int rank = (int) Math.ceil(fraction * sortedNanos.length);
+            return sortedNanos[Math.max(rank, 1) - 1] / 1000;
+        }
+
+    }
+
+
+    /**
+     * The result of a run.
+     *
+     * @param config     the load that was generated
+     * @param elapsed    the time from the start of the sessions until the last one finished
+     * @param succeeded  the number of operations that were applied
+     * @param rejected   the number of operations refused by a business rule, e.g. insufficient funds
+     * @param failed     the number of operations that failed with another database error
+     * @param busy       the number of operations that failed with SQLITE_BUSY
+     * @param latencies  the latency percentiles per operation
+     * @param violations a description of every invariant violation
+     */
+    public record Report(Config config, Duration elapsed, long succeeded, long rejected, long failed, long busy,
+                         List<Latency> latencies, List<String> violations) {
+
+        static Report of(Config config, List<SessionResult> results, Duration elapsed, List<String> violations) {
+            long[] outcomes = new long[Outcome.values().length];
+            Map<Operation, List<Long>> nanos = new HashMap<>();
+            for (SessionResult result : results) {
+                for (Outcome outcome : Outcome.values())
+                    outcomes[outcome.ordinal()] += result.outcomeCounts[outcome.ordinal()];
+                for (int i = 0; i < result.count; i++)
+                    nanos.computeIfAbsent(result.operations[i], _ -> new ArrayList<>()).add(result.latencies[i]);
+            }
+
+            List<Latency> latencies = new ArrayList<>();
+            for (Operation operation : Operation.values()) {
+                long[] values = nanos.getOrDefault(operation, List.of()).stream().mapToLong(Long::longValue).toArray();
+                latencies.add(Latency.of(operation, values));
+            }
+
+            return new Report(config, elapsed, outcomes[Outcome.SUCCEEDED.ordinal()],
+                    outcomes[Outcome.REJECTED.ordinal()], outcomes[Outcome.FAILED.ordinal()],
+                    outcomes[Outcome.BUSY.ordinal()], latencies, List.copyOf(violations));
+        }
+
+
+        /// Gets the number of operations per second, whatever their outcome.
+        public double throughput() {
+            long total = succeeded + rejected + failed + busy;
+            return elapsed.isZero() ? 0 : total * 1e9 / elapsed.toNanos();
+        }
+
+
+        /// Prints the report to standard output, and the violations to standard error.
+        public void print() {
+            System.out.printf("%d operations in %.2f s: %.0f ops/s%n", succeeded + rejected + failed + busy,
+                    elapsed.toNanos() / 1e9, throughput());
+            System.out.printf("succeeded %d, rejected %d, failed %d, SQLITE_BUSY %d%n", succeeded, rejected, failed, busy);
+            System.out.printf("%-10s %8s %10s %10s %10s %10s %10s%n", "us", "count", "p50", "p95", "p99", "p99.9", "max");
+            for (Latency latency : latencies) {
+                System.out.printf("%-10s %8d %10d %10d %10d %10d %10d%n", latency.operation(), latency.count(),
+                        latency.p50(), latency.p95(), latency.p99(), latency.p999(), latency.max());
+            }
+
+            if (violations.isEmpty()) {
+                System.out.println("All invariants hold");
+            } else {
+                System.err.println(violations.size() + " invariant violations:");
+                violations.stream().limit(20).forEach(violation -> System.err.println("  " + violation));
+            }
+        }
+
+    }
+
+}
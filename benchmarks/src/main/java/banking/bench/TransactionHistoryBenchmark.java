@@ -0,0 +1,83 @@
+package banking.bench;
+
+import banking.data.TransactionManager;
+import banking.data.TransactionPage;
+import banking.model.Account;
+import banking.model.Money;
+import banking.model.Transaction;
+import banking.model.User;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Benchmarks of loading an account's transaction history, in full and as its first
+ * page, for accounts with a growing number of transactions.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TransactionHistoryBenchmark {
+
+    /// Number of transactions in the history of the loaded account.
+    @Param({"100", "1000", "10000"})
+    public int historySize;
+
+    /// Number of transactions on the first page, as shown by the main window ({@code MainService.TRANSACTION_PAGE_SIZE}).
+    @Param({"100"})
+    public int pageSize;
+
+    private BenchmarkDatabase database;
+    private TransactionManager transactionManager;
+    private Account account;
+
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, SQLException {
+        database = BenchmarkDatabase.create();
+        transactionManager = new TransactionManager();
+
+        User user = database.createUser("history@bench.local", "password123");
+        account = database.createAccount(user.getUserID(), Money.ofMajor(1000000));
+        Account counterparty = database.createAccount(user.getUserID(), Money.ofMajor(1000000));
+        database.addHistory(account, counterparty, historySize);
+    }
+
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        database.close();
+    }
+
+
+    @Benchmark
+    public List<Transaction> loadTransactions() throws SQLException {
+        return transactionManager.loadTransactions(account);
+    }
+
+
+    @Benchmark
+    public TransactionPage loadFirstPage() throws SQLException {
+        return transactionManager.loadTransactions(account, null, pageSize);
+    }
+
+}
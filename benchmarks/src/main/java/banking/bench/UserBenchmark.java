@@ -0,0 +1,65 @@
+package banking.bench;
+
+import banking.data.UserManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Benchmarks of UserManager.authenticateUser with the right and a wrong password.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UserBenchmark {
+
+    private static final String EMAIL = "login@bench.local";
+    private static final String PASSWORD = "password123";
+
+    private BenchmarkDatabase database;
+    private UserManager userManager;
+
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, SQLException {
+        database = BenchmarkDatabase.create();
+        userManager = new UserManager();
+        database.createUser(EMAIL, PASSWORD);
+    }
+
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        database.close();
+    }
+
+
+    @Benchmark
+    public boolean authenticateUser() throws SQLException {
+        return userManager.authenticateUser(EMAIL, PASSWORD);
+    }
+
+
+    @Benchmark
+    public boolean authenticateUserWrongPassword() throws SQLException {
+        return userManager.authenticateUser(EMAIL, "wrong-password");
+    }
+
+}
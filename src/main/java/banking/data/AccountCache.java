@@ -0,0 +1,275 @@
+package banking.data;
+
+import banking.model.Account;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * AccountCache is a bounded, in-process read-through cache of accounts, keyed by account
+ * number and by user ID, used by AccountManager. Both maps evict their least recently used
+ * entries once they hold {@code maxEntries}. The cache stores immutable snapshots and hands
+ * out new Account objects, so callers may modify what they get.
+ * <p>
+ * Every code path that changes accounts invalidates the affected entries <em>after</em> its
+ * commit. Each invalidation also advances a generation counter: a reader takes the generation
+ * before querying the database and its result is only stored if no invalidation happened in
+ * between, so a read that started before a commit can never put the old row back.
+ * <p>
+ * The per-user entry only lists account numbers; the accounts themselves come from the
+ * per-number map, so a balance change only has to invalidate the account it touched.
+ */
+public class AccountCache {
+
+    /// Default number of entries per map.
+    public static final int DEFAULT_MAX_ENTRIES = 10000;
+
+    private static AccountCache instance;
+
+    private final int maxEntries;
+    private final Map<Integer, CachedAccount> byNumber;
+    private final Map<Integer, List<Integer>> byUser;
+    private boolean enabled;
+    private long generation;
+
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+
+
+    /**
+     * Creates an empty cache.
+     *
+     * @param maxEntries the maximum number of entries of each map
+     * @param enabled    whether the cache starts enabled
+     */
+    public AccountCache(int maxEntries, boolean enabled) {
+        if (maxEntries < 1)
+            throw new IllegalArgumentException("The cache must hold at least one entry");
+
+        this.maxEntries = maxEntries;
+        this.enabled = enabled;
+        byNumber = lruMap();
+        byUser = lruMap();
+    }
+
+
+    /**
+     * Gets the shared instance used by AccountManager. Its size can be set with the
+     * {@code banking.cache.accounts.maxEntries} system property and it can be switched
+     * off with {@code banking.cache.accounts.enabled=false}.
+     *
+     * @return the shared AccountCache
+     */
+    public static synchronized AccountCache getInstance() {
+        if (instance == null) {
+            instance = new AccountCache(
+                    Integer.getInteger("banking.cache.accounts.maxEntries", DEFAULT_MAX_ENTRIES),
+                    Boolean.parseBoolean(System.getProperty("banking.cache.accounts.enabled", "true")));
+        }
+        return instance;
+    }
+
+
+    /**
+     * Gets a copy of a cached account.
+     *
+     * @param accountNumber the account number
+     * @return a new Account with the cached data, or null on a miss or if the cache is disabled
+     */
+    public synchronized Account get(int accountNumber) {
+        if (!enabled)
+            return null;
+
+        CachedAccount cached = byNumber.get(accountNumber);
+        if (cached == null) {
+            missCount++;
+            return null;
+        }
+
+        hitCount++;
+        return cached.toAccount();
+    }
+
+
+    /**
+     * Gets copies of all cached accounts of a user.
+     *
+     * @param userID the user ID
+     * @return new Account objects in the order they were loaded, or null on a miss
+     *         (including when any of the accounts was invalidated) or if the cache is disabled
+     */
+    public synchronized List<Account> getByUser(int userID) {
+        if (!enabled)
+            return null;
+
+        List<Integer> accountNumbers = byUser.get(userID);
+        if (accountNumbers == null) {
+            missCount++;
+            return null;
+        }
+
+        List<Account> accounts = new ArrayList<>(accountNumbers.size());
+        for (int accountNumber : accountNumbers) {
+            CachedAccount cached = byNumber.get(accountNumber);
+            if (cached == null) {
+                byUser.remove(userID);
+                missCount++;
+                return null;
+            }
+            accounts.add(cached.toAccount());
+        }
+
+        hitCount++;
+        return accounts;
+    }
+
+
+    /// Gets the current generation; pass it to put() after reading from the database.
+    public synchronized long generation() {
+        return generation;
+    }
+
+
+    /**
+     * Stores an account read from the database, unless something was invalidated
+     * since the given generation was taken.
+     *
+     * @param account    the account as read from the database
+     * @param generation the generation taken before the database read
+     */
+    public synchronized void put(Account account, long generation) {
+        if (enabled && generation == this.generation)
+            byNumber.put(account.getAccountNumber(), CachedAccount.of(account));
+    }
+
+
+    /**
+     * Stores all accounts of a user read from the database, unless something was
+     * invalidated since the given generation was taken.
+     *
+     * @param userID     the user ID
+     * @param accounts   the user's accounts as read from the database
+     * @param generation the generation taken before the database read
+     */
+    public synchronized void putUserAccounts(int userID, List<Account> accounts, long generation) {
+        if (!enabled || generation != this.generation)
+            return;
+
+        List<Integer> accountNumbers = new ArrayList<>(accounts.size());
+        for (Account account : accounts) {
+            byNumber.put(account.getAccountNumber(), CachedAccount.of(account));
+            accountNumbers.add(account.getAccountNumber());
+        }
+        byUser.put(userID, List.copyOf(accountNumbers));
+    }
+
+
+    /**
+     * Removes accounts whose balance or status has changed.
+     *
+     * @param accountNumbers the account numbers to remove
+     */
+    public synchronized void invalidate(int... accountNumbers) {
+        generation++;
+        for (int accountNumber : accountNumbers)
+            byNumber.remove(accountNumber);
+    }
+
+
+    /**
+     * Removes the account list of a user and all of the user's cached accounts,
+     * for changes that add or remove accounts.
+     *
+     * @param userID the user ID
+     */
+    public synchronized void invalidateUser(int userID) {
+        generation++;
+        byUser.remove(userID);
+        byNumber.values().removeIf(cached -> cached.userID() == userID);
+    }
+
+
+    /// Removes every entry, e.g. after the database was changed outside AccountManager.
+    public synchronized void invalidateAll() {
+        generation++;
+        byNumber.clear();
+        byUser.clear();
+    }
+
+
+    /// Enables or disables the cache; disabling it also clears it.
+    public synchronized void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        if (!enabled)
+            invalidateAll();
+    }
+
+
+    /// Checks if the cache is enabled.
+    public synchronized boolean isEnabled() {
+        return enabled;
+    }
+
+
+    /// Gets a snapshot of the cache statistics.
+    public synchronized Stats getStats() {
+        return new Stats(enabled, byNumber.size(), byUser.size(), hitCount, missCount, evictionCount);
+    }
+
+
+    /// Creates an access-ordered map that evicts its least recently used entry beyond maxEntries.
+    private <V> Map<Integer, V> lruMap() {
+        return new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, V> eldest) {
+                if (size() > maxEntries) {
+                    evictionCount++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+
+    /**
+     * A snapshot of the cache statistics.
+     *
+     * @param enabled         whether the cache is enabled
+     * @param accountEntries  the number of cached accounts
+     * @param userEntries     the number of cached per-user account lists
+     * @param hitCount        the number of lookups served from the cache
+     * @param missCount       the number of lookups that went to the database
+     * @param evictionCount   the number of entries evicted to stay within the size bound
+     */
+    public record Stats(boolean enabled, int accountEntries, int userEntries,
+                        long hitCount, long missCount, long evictionCount) {
+
+        /// Gets the fraction of lookups served from the cache.
+        public double hitRatio() {
+            long lookups = hitCount + missCount;
+            return lookups == 0 ? 0 : (double) hitCount / lookups;
+        }
+
+    }
+
+
+    /// An immutable copy of an account's data.
+    private record CachedAccount(int accountID, int userID, int accountNumber, long balance, boolean frozen) {
+
+        static CachedAccount of(Account account) {
+            return new CachedAccount(account.getAccountID(), account.getUserID(), account.getAccountNumber(),
+                    account.getBalance(), account.isFrozen());
+        }
+
+        Account toAccount() {
+            return new Account(accountID, userID, accountNumber, balance, frozen);
+        }
+
+    }
+
+}
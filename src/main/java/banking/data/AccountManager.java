@@ -1,24 +1,40 @@
 package banking.data;
 
 import banking.model.Account;
+import banking.model.TransferRequest;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
 
 
 /**
  * AccountManager is responsible for managing accounts in the banking application.
  * It provides methods to save, load, deposit, withdraw, transfer, freeze, unfreeze,
- * and delete accounts in the database.
+ * and delete accounts in the database, and to execute batches of transfers.
+ * Reads by account number and by user ID are served through the shared AccountCache,
+ * and every method that changes accounts invalidates it after committing.
  */
 public class AccountManager {
 
+    /// Number of transfers committed together by transferBatch.
+    public static final int TRANSFER_BATCH_CHUNK_SIZE = 1000;
 
-    public AccountManager() { }
+
+    private final AccountCache cache;
+
+
+    public AccountManager() {
+        cache = AccountCache.getInstance();
+    }
 
 
     /**
@@ -32,18 +48,55 @@ public class AccountManager {
         if (accountExists(a.getAccountNumber()))
             return false;
 
-        String query = "INSERT INTO Accounts (user_id, account_number, balance, is_frozen) VALUES (?, ?, ?, ?)";
+        try (Connection connection = DatabaseManager.getInstance().getWriteConnection()) {
+            insertAccount(connection, a);
+        }
+
+        cache.invalidateUser(a.getUserID());
+        return true;
+    }
+
+
+    /**
+     * Opens a new, empty account for a user with a number from the AccountNumberAllocator.
+     * A number that turns out to be taken already is replaced by the next one.
+     *
+     * @param userID the owner's user ID
+     * @return the new account
+     * @throws SQLException when connection is unsuccessful or no free number was found
+     */
+    public Account openAccount(int userID) throws SQLException {
+        Account account = AccountNumberAllocator.getInstance().allocate(accountNumber -> {
+            Account newAccount = new Account(userID, accountNumber, 0, false);
+            try (Connection connection = DatabaseManager.getInstance().getWriteConnection()) {
+                insertAccount(connection, newAccount);
+            }
+            return newAccount;
+        });
 
-        try (Connection connection = DatabaseManager.getInstance().getConnection()) {
-            PreparedStatement statement = connection.prepareStatement(query);
+        cache.invalidateUser(userID);
+        return account;
+    }
+
+
+    /**
+     * Inserts an account using an existing database connection, so it can take part
+     * in a larger transaction (e.g. registering a user together with their first account).
+     *
+     * @param connection the existing database connection to use
+     * @param a          the account to be inserted into the table
+     * @throws SQLException when a database error occurs, including a duplicate account number
+     */
+    void insertAccount(Connection connection, Account a) throws SQLException {
+        String query = "INSERT INTO Accounts (user_id, account_number, balance, is_frozen) VALUES (?, ?, ?, ?)";
 
+        try (PreparedStatement statement = connection.prepareStatement(query)) {
             statement.setInt(1, a.getUserID());
             statement.setInt(2, a.getAccountNumber());
-            statement.setDouble(3, a.getBalance());
+            statement.setLong(3, a.getBalance());
             statement.setBoolean(4, a.isFrozen());
 
             statement.executeUpdate();
-            return true;
         }
     }
 
@@ -56,13 +109,17 @@ public class AccountManager {
      * @throws SQLException when connection is unsuccessful
      */
     public boolean accountExists(int accountNumber) throws SQLException {
-        String query = "SELECT * FROM Accounts WHERE account_number = ?";
+        if (cache.get(accountNumber) != null)
+            return true;
 
-        try (Connection connection = DatabaseManager.getInstance().getConnection()) {
-            PreparedStatement statement = connection.prepareStatement(query);
+        String query = "SELECT 1 FROM Accounts WHERE account_number = ?";
+
+        try (Connection connection = DatabaseManager.getInstance().getReadConnection();
+             PreparedStatement statement = connection.prepareStatement(query)) {
             statement.setInt(1, accountNumber);
-            ResultSet result = statement.executeQuery();
-            return result.next();
+            try (ResultSet result = statement.executeQuery()) {
+                return result.next();
+            }
         }
     }
 
@@ -76,8 +133,16 @@ public class AccountManager {
      * @throws SQLException when connection is unsuccessful
      */
     public Account loadAccount(int accountNumber) throws SQLException {
-        try (Connection connection = DatabaseManager.getInstance().getConnection()) {
-            return loadAccountInternal(connection, accountNumber);
+        Account cached = cache.get(accountNumber);
+        if (cached != null)
+            return cached;
+
+        long generation = cache.generation();
+        try (Connection connection = DatabaseManager.getInstance().getReadConnection()) {
+            Account account = loadAccountInternal(connection, accountNumber);
+            if (account != null)
+                cache.put(account, generation);
+            return account;
         }
     }
 
@@ -92,23 +157,23 @@ public class AccountManager {
      * @return the Account object if found, or null if not found
      * @throws SQLException when a database error occurs
      */
-    private Account loadAccountInternal(Connection connection, int accountNumber) throws SQLException {
+    Account loadAccountInternal(Connection connection, int accountNumber) throws SQLException {
         String query = "SELECT * FROM Accounts WHERE account_number = ?";
 
         try (PreparedStatement statement = connection.prepareStatement(query)) {
             statement.setInt(1, accountNumber);
-            ResultSet result = statement.executeQuery();
-
-            if (result.next()) {
-                int accID = result.getInt("account_id");
-                int userID = result.getInt("user_id");
-                int accNum = result.getInt("account_number");
-                double balance = result.getDouble("balance");
-                boolean isFrozen = result.getBoolean("is_frozen");
+            try (ResultSet result = statement.executeQuery()) {
+                if (result.next()) {
+                    int accID = result.getInt("account_id");
+                    int userID = result.getInt("user_id");
+                    int accNum = result.getInt("account_number");
+                    long balance = result.getLong("balance");
+                    boolean isFrozen = result.getBoolean("is_frozen");
 
-                return new Account(accID, userID, accNum, balance, isFrozen);
+                    return new Account(accID, userID, accNum, balance, isFrozen);
+                }
+                return null;
             }
-            return null;
         }
     }
 
@@ -122,19 +187,40 @@ public class AccountManager {
      * @throws SQLException when connection is unsuccessful
      */
     public List<Account> loadAccounts(int user_id) throws SQLException {
+        List<Account> cached = cache.getByUser(user_id);
+        if (cached != null)
+            return cached;
+
+        long generation = cache.generation();
+        try (Connection connection = DatabaseManager.getInstance().getReadConnection()) {
+            List<Account> accounts = loadAccounts(connection, user_id);
+            cache.putUserAccounts(user_id, accounts, generation);
+            return accounts;
+        }
+    }
+
+
+    /**
+     * Loads the accounts of a user using an existing database connection, bypassing the cache,
+     * so they can be read in the same transaction as other data.
+     *
+     * @param connection the existing database connection to use
+     * @param user_id    the user ID number that is searched for
+     * @return a List of Accounts that belong to the user with the given ID
+     * @throws SQLException when a database error occurs
+     */
+    List<Account> loadAccounts(Connection connection, int user_id) throws SQLException {
         String query = "SELECT * FROM Accounts WHERE user_id = ?";
         List<Account> accounts = new ArrayList<>();
 
-        try (Connection connection = DatabaseManager.getInstance().getConnection()) {
-            PreparedStatement statement = connection.prepareStatement(query);
+        try (PreparedStatement statement = connection.prepareStatement(query)) {
             statement.setInt(1, user_id);
 
             try (ResultSet result = statement.executeQuery()) {
-
                 while (result.next()) {
                     int accID = result.getInt("account_id");
                     int accNum = result.getInt("account_number");
-                    double balance = result.getDouble("balance");
+                    long balance = result.getLong("balance");
                     boolean isFrozen = result.getBoolean("is_frozen");
                     accounts.add(new Account(accID, user_id, accNum, balance, isFrozen));
                 }
@@ -144,157 +230,436 @@ public class AccountManager {
     }
 
 
+    /**
+     * Sums the balances of all accounts of the given user. The sum is computed by SQLite
+     * over the integer balance column, reading only the covering index on user_id.
+     *
+     * @param user_id the user ID number whose balances are summed
+     * @return the total balance in minor units, or 0 if the user has no accounts
+     * @throws SQLException when connection is unsuccessful
+     */
+    public long getTotalBalance(int user_id) throws SQLException {
+        String query = "SELECT COALESCE(SUM(balance), 0) FROM Accounts WHERE user_id = ?";
+
+        try (Connection connection = DatabaseManager.getInstance().getReadConnection();
+             PreparedStatement statement = connection.prepareStatement(query)) {
+            statement.setInt(1, user_id);
+
+            try (ResultSet result = statement.executeQuery()) {
+                return result.next() ? result.getLong(1) : 0;
+            }
+        }
+    }
+
+
     /**
      * Deposits the specified amount into the given account.
      * Uses atomic database operations to prevent race conditions.
      *
      * @param acc    the account to deposit to
-     * @param amount the amount to deposit
+     * @param amount the amount to deposit in minor units
      * @throws SQLException             when a database error occurs
      * @throws IllegalArgumentException if the amount is not positive or the account is frozen
      */
-    public void depositMoney(Account acc, double amount) throws SQLException {
-        if (amount <= 0)
-            throw new IllegalArgumentException("Deposit amount must be positive");
+    public void depositMoney(Account acc, long amount) throws SQLException {
+        try (Connection connection = DatabaseManager.getInstance().getWriteConnection()) {
+            applyDeposit(connection, acc.getAccountNumber(), amount);
+        } finally {
+            cache.invalidate(acc.getAccountNumber());
+        }
+
+        // Update in-memory object only after successful database update
+        acc.deposit(amount);
+    }
 
-        // Use atomic database operation with frozen check
-        String query = "UPDATE Accounts SET balance = balance + ? WHERE account_number = ? AND is_frozen = 0";
 
-        try (Connection connection = DatabaseManager.getInstance().getConnection()) {
-            PreparedStatement statement = connection.prepareStatement(query);
-            statement.setDouble(1, amount);
-            statement.setInt(2, acc.getAccountNumber());
-            int rowsAffected = statement.executeUpdate();
+    /**
+     * Withdraws the specified amount from the given account.
+     * Uses atomic database operations to prevent race conditions.
+     *
+     * @param acc    the account to withdraw from
+     * @param amount the amount to withdraw in minor units
+     * @throws SQLException             when a database error occurs
+     * @throws IllegalArgumentException if the amount is not positive, exceeds the balance, or the account is frozen
+     */
+    public void withdrawMoney(Account acc, long amount) throws SQLException {
+        try (Connection connection = DatabaseManager.getInstance().getWriteConnection()) {
+            applyWithdrawal(connection, acc.getAccountNumber(), amount);
+        } finally {
+            cache.invalidate(acc.getAccountNumber());
+        }
 
-            if (rowsAffected > 0) {
-                // Update in-memory object only after successful database update
-                acc.deposit(amount);
-            } else {
-                // Check if account exists and is frozen to provide specific error message
-                Account currentAccount = loadAccountInternal(connection, acc.getAccountNumber());
+        // Update in-memory object only after successful database update
+        acc.withdraw(amount);
+    }
 
-                if (currentAccount == null)
-                    throw new IllegalArgumentException("Account does not exist");
 
-                if (currentAccount.isFrozen())
-                    throw new IllegalArgumentException("Cannot deposit to a frozen account");
+    /**
+     * Transfers the specified amount from the source account to the destination account.
+     * Uses a single transaction to ensure atomicity and prevent race conditions.
+     *
+     * @param sourceAccount      the account number to transfer from
+     * @param destinationAccount the account number to transfer to
+     * @param amount             the amount to transfer in minor units
+     * @throws SQLException when a database error occurs
+     */
+    public void transferMoney(int sourceAccount, int destinationAccount, long amount) throws SQLException {
+        try (Connection connection = DatabaseManager.getInstance().getWriteConnection()) {
+            connection.setAutoCommit(false); // Start Transaction
 
+            try {
+                applyTransfer(connection, sourceAccount, destinationAccount, amount);
+                connection.commit();
+
+            } catch (SQLException | IllegalArgumentException e) {
+                // Rollback on any error
+                connection.rollback();
+                throw e; // Re-throw to caller
+            } finally {
+                connection.setAutoCommit(true);
+                cache.invalidate(sourceAccount, destinationAccount);
             }
         }
     }
 
 
     /**
-     * Withdraws the specified amount from the given account.
-     * Uses atomic database operations to prevent race conditions.
+     * Adds money to an account using an existing database connection, so the change
+     * can be committed together with other statements (e.g. its Transactions row).
      *
-     * @param acc    the account to withdraw from
-     * @param amount the amount to withdraw
+     * @param connection    the existing database connection to use
+     * @param accountNumber the account number to deposit to
+     * @param amount        the amount to deposit in minor units
      * @throws SQLException             when a database error occurs
-     * @throws IllegalArgumentException if the amount is not positive, exceeds the balance, or the account is frozen
+     * @throws IllegalArgumentException if the amount is not positive or the account does not exist or is frozen
      */
-    public void withdrawMoney(Account acc, double amount) throws SQLException {
+    void applyDeposit(Connection connection, int accountNumber, long amount) throws SQLException {
         if (amount <= 0)
-            throw new IllegalArgumentException("Withdrawal amount must be positive");
-
-        // Use atomic database operation with balance and frozen checks
-        String query = "UPDATE Accounts SET balance = balance - ? WHERE account_number = ? AND balance >= ? AND is_frozen = 0";
-
-        try (Connection connection = DatabaseManager.getInstance().getConnection()) {
-            PreparedStatement statement = connection.prepareStatement(query);
-            statement.setDouble(1, amount);
-            statement.setInt(2, acc.getAccountNumber());
-            statement.setDouble(3, amount);
-            int rowsAffected = statement.executeUpdate();
+            throw new IllegalArgumentException("Deposit amount must be positive");
 
-            if (rowsAffected > 0) {
-                // Update in-memory object only after successful database update
-                acc.withdraw(amount);
-            } else {
-                // Check specific failure reason to provide appropriate error message
-                Account currentAccount = loadAccountInternal(connection, acc.getAccountNumber());
+        if (!credit(connection, accountNumber, amount)) {
+            // Check if account exists and is frozen to provide specific error message
+            Account currentAccount = loadAccountInternal(connection, accountNumber);
 
-                if (currentAccount == null)
-                    throw new IllegalArgumentException("Account does not exist");
+            if (currentAccount == null)
+                throw new IllegalArgumentException("Account does not exist");
+            if (currentAccount.isFrozen())
+                throw new IllegalArgumentException("Cannot deposit to a frozen account");
+            throw new IllegalArgumentException("Deposit failed: account validation failed");
+        }
+    }
 
-                if (currentAccount.isFrozen())
-                    throw new IllegalArgumentException("Cannot withdraw from a frozen account");
 
-                if (currentAccount.getBalance() < amount)
-                    throw new IllegalArgumentException("Insufficient funds");
+    /**
+     * Takes money from an account using an existing database connection, so the change
+     * can be committed together with other statements (e.g. its Transactions row).
+     *
+     * @param connection    the existing database connection to use
+     * @param accountNumber the account number to withdraw from
+     * @param amount        the amount to withdraw in minor units
+     * @throws SQLException             when a database error occurs
+     * @throws IllegalArgumentException if the amount is not positive, exceeds the balance,
+     *                                  or the account does not exist or is frozen
+     */
+    void applyWithdrawal(Connection connection, int accountNumber, long amount) throws SQLException {
+        if (amount <= 0)
+            throw new IllegalArgumentException("Withdrawal amount must be positive");
 
-            }
+        if (!debit(connection, accountNumber, amount)) {
+            // Check specific failure reason to provide appropriate error message
+            Account currentAccount = loadAccountInternal(connection, accountNumber);
+
+            if (currentAccount == null)
+                throw new IllegalArgumentException("Account does not exist");
+            if (currentAccount.isFrozen())
+                throw new IllegalArgumentException("Cannot withdraw from a frozen account");
+            if (currentAccount.getBalance() < amount)
+                throw new IllegalArgumentException("Insufficient funds");
+            throw new IllegalArgumentException("Withdrawal failed: account validation failed");
         }
     }
 
 
     /**
-     * Transfers the specified amount from the source account to the destination account.
-     * Uses a single transaction to ensure atomicity and prevent race conditions.
+     * Moves money between two accounts using an existing database connection. The caller
+     * owns the transaction and must roll it back if this method throws, because the
+     * source account may already have been debited.
      *
+     * @param connection         the existing database connection to use, with auto-commit off
      * @param sourceAccount      the account number to transfer from
      * @param destinationAccount the account number to transfer to
-     * @param amount             the amount to transfer
-     * @throws SQLException when a database error occurs
+     * @param amount             the amount to transfer in minor units
+     * @throws SQLException             when a database error occurs
+     * @throws IllegalArgumentException if the transfer is not allowed
      */
-    public void transferMoney(int sourceAccount, int destinationAccount, double amount) throws SQLException {
+    void applyTransfer(Connection connection, int sourceAccount, int destinationAccount, long amount) throws SQLException {
         if (amount <= 0)
             throw new IllegalArgumentException("Transfer amount must be positive");
         if (sourceAccount == destinationAccount)
             throw new IllegalArgumentException("Source and destination accounts cannot be the same");
 
-        String deductQuery = "UPDATE Accounts SET balance = balance - ? WHERE account_number = ? AND balance >= ? AND is_frozen = 0";
-        String addQuery = "UPDATE Accounts SET balance = balance + ? WHERE account_number = ? AND is_frozen = 0";
+        // Perform Deduction
+        if (!debit(connection, sourceAccount, amount)) {
+            Account src = loadAccountInternal(connection, sourceAccount);
+            if (src == null)
+                throw new AccountNotFoundException("Source account does not exist", sourceAccount);
+            if (src.isFrozen())
+                throw new IllegalArgumentException("Cannot transfer from a frozen account");
+            if (src.getBalance() < amount)
+                throw new IllegalArgumentException("Insufficient funds in source account");
+            throw new IllegalArgumentException("Transfer failed: source account validation failed");
+        }
+
+        // Perform Addition
+        if (!credit(connection, destinationAccount, amount)) {
+            Account dest = loadAccountInternal(connection, destinationAccount);
+            if (dest == null)
+                throw new AccountNotFoundException("Destination account does not exist", destinationAccount);
+            if (dest.isFrozen())
+                throw new IllegalArgumentException("Cannot transfer to a frozen account");
+            throw new IllegalArgumentException("Transfer failed: destination account validation failed");
+        }
+    }
+
+
+    /// Subtracts the amount from a balance in one guarded UPDATE; false if the account is missing, frozen or short of funds.
+    private static boolean debit(Connection connection, int accountNumber, long amount) throws SQLException {
+        String query = "UPDATE Accounts SET balance = balance - ? WHERE account_number = ? AND balance >= ? AND is_frozen = 0";
+
+        try (PreparedStatement statement = connection.prepareStatement(query)) {
+            statement.setLong(1, amount);
+            statement.setInt(2, accountNumber);
+            statement.setLong(3, amount);
+            return statement.executeUpdate() > 0;
+        }
+    }
+
+
+    /// Adds the amount to a balance in one guarded UPDATE; false if the account is missing or frozen.
+    private static boolean credit(Connection connection, int accountNumber, long amount) throws SQLException {
+        String query = "UPDATE Accounts SET balance = balance + ? WHERE account_number = ? AND is_frozen = 0";
+
+        try (PreparedStatement statement = connection.prepareStatement(query)) {
+            statement.setLong(1, amount);
+            statement.setInt(2, accountNumber);
+            return statement.executeUpdate() > 0;
+        }
+    }
 
-        try (Connection connection = DatabaseManager.getInstance().getConnection()) {
-            connection.setAutoCommit(false); // Start Transaction
+
+    /**
+     * Executes many transfers and records a Transactions row for each successful one.
+     * The requests are processed in order, in chunks of {@value #TRANSFER_BATCH_CHUNK_SIZE},
+     * each chunk in its own database transaction:
+     * <ol>
+     *     <li>the balances and frozen flags of the accounts involved are read once,</li>
+     *     <li>every transfer is validated against the running in-memory balances, so a transfer
+     *     may spend money received earlier in the same batch,</li>
+     *     <li>the net change of every account is written with one batched UPDATE and the
+     *     transaction records with one batched INSERT, then the chunk is committed.</li>
+     * </ol>
+     * A rejected transfer does not affect the others. If a chunk fails with a database error,
+     * only that chunk is rolled back and all of its transfers are reported as failed.
+     * Any other exception rolls back the current chunk and is rethrown; earlier chunks stay committed.
+     *
+     * @param requests the transfers to execute, in order
+     * @return one outcome per request, in the same order
+     * @throws SQLException when no connection can be obtained
+     */
+    public List<TransferOutcome> transferBatch(List<TransferRequest> requests) throws SQLException {
+        String selectQuery = "SELECT balance, is_frozen FROM Accounts WHERE account_number = ?";
+        String updateQuery = "UPDATE Accounts SET balance = balance + ? WHERE account_number = ?";
+        String insertQuery = "INSERT INTO Transactions " +
+                "(sender_account_number, receiver_account_number, amount, comment, date) VALUES (?, ?, ?, ?, ?)";
+
+        List<TransferOutcome> outcomes = new ArrayList<>(requests.size());
+
+        try (Connection connection = DatabaseManager.getInstance().getWriteConnection();
+             PreparedStatement selectStmt = connection.prepareStatement(selectQuery);
+             PreparedStatement updateStmt = connection.prepareStatement(updateQuery);
+             PreparedStatement insertStmt = connection.prepareStatement(insertQuery)) {
+            connection.setAutoCommit(false);
 
             try {
-                // Perform Deduction
-                try (PreparedStatement deductStmt = connection.prepareStatement(deductQuery)) {
-                    deductStmt.setDouble(1, amount);
-                    deductStmt.setInt(2, sourceAccount);
-                    deductStmt.setDouble(3, amount);
-
-                    int rows = deductStmt.executeUpdate();
-                    if (rows == 0) {
-                        Account src = loadAccountInternal(connection, sourceAccount);
-                        if (src == null)
-                            throw new IllegalArgumentException("Source account does not exist");
-                        if (src.isFrozen())
-                            throw new IllegalArgumentException("Cannot transfer from a frozen account");
-                        if (src.getBalance() < amount)
-                            throw new IllegalArgumentException("Insufficient funds in source account");
-                        throw new IllegalArgumentException("Transfer failed: source account validation failed");
+                for (int start = 0; start < requests.size(); start += TRANSFER_BATCH_CHUNK_SIZE) {
+                    List<TransferRequest> chunk = requests.subList(start,
+                            Math.min(start + TRANSFER_BATCH_CHUNK_SIZE, requests.size()));
+
+                    try {
+                        List<TransferOutcome> chunkOutcomes = applyTransferChunk(chunk, selectStmt, updateStmt, insertStmt);
+                        connection.commit();
+                        outcomes.addAll(chunkOutcomes);
+                        invalidateTransferred(chunkOutcomes);
+                    } catch (SQLException e) {
+                        connection.rollback();
+                        updateStmt.clearBatch();
+                        insertStmt.clearBatch();
+                        for (TransferRequest request : chunk)
+                            outcomes.add(new TransferOutcome(request, false, "Transfer failed: " + e.getMessage()));
+                    } catch (RuntimeException | Error e) {
+                        // Restoring autocommit below would otherwise commit the half-applied chunk
+                        connection.rollback();
+                        updateStmt.clearBatch();
+                        insertStmt.clearBatch();
+                        throw e;
                     }
                 }
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        }
+        return outcomes;
+    }
 
-                // Perform Addition
-                try (PreparedStatement addStmt = connection.prepareStatement(addQuery)) {
-                    addStmt.setDouble(1, amount);
-                    addStmt.setInt(2, destinationAccount);
-
-                    int rows = addStmt.executeUpdate();
-                    if (rows == 0) {
-                        Account dest = loadAccountInternal(connection, destinationAccount);
-                        if (dest == null)
-                            throw new IllegalArgumentException("Destination account does not exist");
-                        if (dest.isFrozen())
-                            throw new IllegalArgumentException("Cannot transfer to a frozen account");
-                        throw new IllegalArgumentException("Transfer failed: destination account validation failed");
-                    }
-                }
 
-                // Commit if both succeeded
-                connection.commit();
+    /// Invalidates the cached accounts touched by the successful transfers of a committed chunk.
+    private void invalidateTransferred(List<TransferOutcome> outcomes) {
+        int[] accountNumbers = outcomes.stream()
+                .filter(TransferOutcome::success)
+                .flatMapToInt(o -> IntStream.of(o.request().sourceAccountNumber(), o.request().destinationAccountNumber()))
+                .distinct()
+                .toArray();
+        cache.invalidate(accountNumbers);
+    }
 
-            } catch (SQLException | IllegalArgumentException e) {
-                // Rollback on any error
-                connection.rollback();
-                throw e; // Re-throw to caller
-            } finally {
-                connection.setAutoCommit(true);
+
+    /**
+     * Validates and applies one chunk of a batch within the current transaction.
+     *
+     * @param chunk      the transfers of this chunk, in order
+     * @param selectStmt the statement reading an account's balance and frozen flag
+     * @param updateStmt the statement adding a delta to an account's balance
+     * @param insertStmt the statement inserting a Transactions row
+     * @return the outcome of every transfer in the chunk
+     * @throws SQLException when a database error occurs
+     */
+    private List<TransferOutcome> applyTransferChunk(List<TransferRequest> chunk, PreparedStatement selectStmt,
+                                                     PreparedStatement updateStmt, PreparedStatement insertStmt)
+            throws SQLException {
+        Map<Integer, BatchAccount> accounts = new LinkedHashMap<>();
+        List<TransferOutcome> outcomes = new ArrayList<>(chunk.size());
+        String date = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
+
+        for (TransferRequest request : chunk) {
+            String error = null;
+            BatchAccount src = null;
+            BatchAccount dest = null;
+
+            if (request.amount() <= 0)
+                error = "Transfer amount must be positive";
+            else if (request.sourceAccountNumber() == request.destinationAccountNumber())
+                error = "Source and destination accounts cannot be the same";
+            else {
+                src = lookupBatchAccount(selectStmt, accounts, request.sourceAccountNumber());
+                dest = lookupBatchAccount(selectStmt, accounts, request.destinationAccountNumber());
+
+                if (src == null)
+                    error = "Source account does not exist";
+                else if (src.frozen)
+                    error = "Cannot transfer from a frozen account";
+                else if (src.balance < request.amount())
+                    error = "Insufficient funds in source account";
+                else if (dest == null)
+                    error = "Destination account does not exist";
+                else if (dest.frozen)
+                    error = "Cannot transfer to a frozen account";
+            }
+
+            if (error != null) {
+                outcomes.add(new TransferOutcome(request, false, error));
+                continue;
             }
+
+            src.balance -= request.amount();
+            src.delta -= request.amount();
+            dest.balance += request.amount();
+            dest.delta += request.amount();
+
+            insertStmt.setInt(1, request.sourceAccountNumber());
+            insertStmt.setInt(2, request.destinationAccountNumber());
+            insertStmt.setLong(3, request.amount());
+            insertStmt.setString(4, request.comment());
+            insertStmt.setString(5, date);
+            insertStmt.addBatch();
+
+            outcomes.add(new TransferOutcome(request, true, "Transfer successful"));
+        }
+
+        for (Map.Entry<Integer, BatchAccount> entry : accounts.entrySet()) {
+            BatchAccount account = entry.getValue();
+            if (account != null && account.delta != 0) {
+                updateStmt.setLong(1, account.delta);
+                updateStmt.setInt(2, entry.getKey());
+                updateStmt.addBatch();
+            }
+        }
+
+        updateStmt.executeBatch();
+        insertStmt.executeBatch();
+        return outcomes;
+    }
+
+
+    /**
+     * Gets the state of an account for the current chunk, reading it on first use.
+     * Missing accounts are remembered as null so they are only looked up once.
+     */
+    private static BatchAccount lookupBatchAccount(PreparedStatement selectStmt, Map<Integer, BatchAccount> accounts,
+                                                   int accountNumber) throws SQLException {
+        if (accounts.containsKey(accountNumber))
+            return accounts.get(accountNumber);
+
+        BatchAccount account = null;
+        selectStmt.setInt(1, accountNumber);
+        try (ResultSet result = selectStmt.executeQuery()) {
+            if (result.next())
+                account = new BatchAccount(result.getLong("balance"), result.getBoolean("is_frozen"));
+        }
+
+        accounts.put(accountNumber, account);
+        return account;
+    }
+
+
+    /**
+     * Sets the stored balance of an account using an existing database connection.
+     * Used to write balances that were derived elsewhere, such as by replaying the ledger.
+     *
+     * @param connection    the existing database connection to use
+     * @param accountNumber the account number to change
+     * @param balance       the new balance in minor units
+     * @throws SQLException             when a database error occurs
+     * @throws IllegalArgumentException if the account does not exist
+     */
+    void applyBalance(Connection connection, int accountNumber, long balance) throws SQLException {
+        String query = "UPDATE Accounts SET balance = ? WHERE account_number = ?";
+
+        try (PreparedStatement statement = connection.prepareStatement(query)) {
+            statement.setLong(1, balance);
+            statement.setInt(2, accountNumber);
+            if (statement.executeUpdate() == 0)
+                throw new IllegalArgumentException("Account does not exist");
+        }
+    }
+
+
+    /**
+     * Sets the frozen flag of an account using an existing database connection.
+     *
+     * @param connection    the existing database connection to use
+     * @param accountNumber the account number to change
+     * @param frozen        the new frozen flag
+     * @throws SQLException             when a database error occurs
+     * @throws IllegalArgumentException if the account does not exist
+     */
+    void applyFrozen(Connection connection, int accountNumber, boolean frozen) throws SQLException {
+        String query = "UPDATE Accounts SET is_frozen = ? WHERE account_number = ?";
+
+        try (PreparedStatement statement = connection.prepareStatement(query)) {
+            statement.setBoolean(1, frozen);
+            statement.setInt(2, accountNumber);
+            if (statement.executeUpdate() == 0)
+                throw new IllegalArgumentException("Account does not exist");
         }
     }
 
@@ -308,10 +673,12 @@ public class AccountManager {
     public void freezeAccount(Account acc) throws SQLException {
         String query = "UPDATE Accounts SET is_frozen = 1 WHERE account_number = ?";
 
-        try (Connection connection = DatabaseManager.getInstance().getConnection()) {
-            PreparedStatement statement = connection.prepareStatement(query);
+        try (Connection connection = DatabaseManager.getInstance().getWriteConnection();
+             PreparedStatement statement = connection.prepareStatement(query)) {
             statement.setInt(1, acc.getAccountNumber());
             statement.executeUpdate();
+        } finally {
+            cache.invalidate(acc.getAccountNumber());
         }
     }
 
@@ -325,10 +692,12 @@ public class AccountManager {
     public void unfreezeAccount(Account acc) throws SQLException {
         String query = "UPDATE Accounts SET is_frozen = 0 WHERE account_number = ?";
 
-        try (Connection connection = DatabaseManager.getInstance().getConnection()) {
-            PreparedStatement statement = connection.prepareStatement(query);
+        try (Connection connection = DatabaseManager.getInstance().getWriteConnection();
+             PreparedStatement statement = connection.prepareStatement(query)) {
             statement.setInt(1, acc.getAccountNumber());
             statement.executeUpdate();
+        } finally {
+            cache.invalidate(acc.getAccountNumber());
         }
     }
 
@@ -342,10 +711,53 @@ public class AccountManager {
     public void deleteAccount(Account acc) throws SQLException {
         String query = "DELETE FROM Accounts WHERE account_number = ?";
 
-        try (Connection connection = DatabaseManager.getInstance().getConnection()) {
-            PreparedStatement statement = connection.prepareStatement(query);
+        try (Connection connection = DatabaseManager.getInstance().getWriteConnection();
+             PreparedStatement statement = connection.prepareStatement(query)) {
             statement.setInt(1, acc.getAccountNumber());
             statement.executeUpdate();
+        } finally {
+            cache.invalidate(acc.getAccountNumber());
+            cache.invalidateUser(acc.getUserID());
+        }
+    }
+
+
+    /**
+     * Deletes an account using an existing database connection. Its Transactions rows are
+     * deleted with it by the cascading foreign keys. The AccountCache is left to the caller.
+     *
+     * @param connection    the existing database connection to use
+     * @param accountNumber the account number to delete
+     * @return true if the account existed
+     * @throws SQLException when a database error occurs
+     */
+    boolean deleteAccount(Connection connection, int accountNumber) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("DELETE FROM Accounts WHERE account_number = ?")) {
+            statement.setInt(1, accountNumber);
+            return statement.executeUpdate() > 0;
+        }
+    }
+
+
+    /**
+     * The outcome of one transfer of a batch.
+     *
+     * @param request the transfer request
+     * @param success whether the transfer was executed and recorded
+     * @param message a description of the result, or the reason the transfer was rejected
+     */
+    public record TransferOutcome(TransferRequest request, boolean success, String message) { }
+
+
+    /// The balance and frozen flag of an account while a batch chunk is validated, plus its net change.
+    private static final class BatchAccount {
+        private long balance;
+        private long delta;
+        private final boolean frozen;
+
+        private BatchAccount(long balance, boolean frozen) {
+            this.balance = balance;
+            this.frozen = frozen;
         }
     }
 
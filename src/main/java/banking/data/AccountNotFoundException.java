@@ -0,0 +1,31 @@
+package banking.data;
+
+
+/**
+ * Thrown when a posting names an account that does not exist. It is an
+ * IllegalArgumentException like the other rejections of a posting, so callers
+ * that only report the message need not tell them apart.
+ */
+public class AccountNotFoundException extends IllegalArgumentException {
+
+    private final int accountNumber;
+
+
+    /**
+     * Creates the exception for the given account.
+     *
+     * @param message       the detail message
+     * @param accountNumber the account number that was not found
+     */
+    public AccountNotFoundException(String message, int accountNumber) {
+        super(message);
+        this.accountNumber = accountNumber;
+    }
+
+
+    /// Gets the account number that was not found.
+    public int getAccountNumber() {
+        return accountNumber;
+    }
+
+}
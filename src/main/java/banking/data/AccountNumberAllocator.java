@@ -0,0 +1,256 @@
+package banking.data;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+
+/**
+ * AccountNumberAllocator hands out new account numbers without probing the database.
+ * Numbers are reserved in blocks from the {@code account_number} row of the Sequences table,
+ * one UPDATE per block, and handed out from memory without locking; only the thread that
+ * finds the block used up reserves the next one. Numbers of a block that are not used before
+ * the application stops are skipped, never reused.
+ * <p>
+ * The n-th number of the sequence is scrambled by a keyed Feistel permutation of the range
+ * 10000000..99999999, so consecutive accounts get unrelated-looking numbers while every number
+ * is still issued at most once. Numbers created before the allocator (chosen at random) can
+ * still collide with an allocated one; {@link #allocate(Allocation)} then retries with the next.
+ */
+public class AccountNumberAllocator {
+
+    /// Smallest account number.
+    public static final int FIRST_ACCOUNT_NUMBER = 10000000;
+
+    /// Largest account number.
+    public static final int LAST_ACCOUNT_NUMBER = 99999999;
+
+    /// Number of attempts of allocate() before a conflict is reported.
+    public static final int MAX_ATTEMPTS = 10;
+
+    private static final String SEQUENCE_NAME = "account_number";
+    private static final long RANGE_SIZE = LAST_ACCOUNT_NUMBER - FIRST_ACCOUNT_NUMBER + 1L;
+    private static final int HALF_BITS = 14; // 2^28 >= RANGE_SIZE
+    private static final int HALF_MASK = (1 << HALF_BITS) - 1;
+    private static final int ROUNDS = 4;
+
+    private static AccountNumberAllocator instance;
+
+    private final Config config;
+    private final long[] roundKeys = new long[ROUNDS];
+    private final AtomicReference<Block> current = new AtomicReference<>(Block.EMPTY);
+    private final Object reserveLock = new Object();
+
+
+    /**
+     * Creates an allocator. Nothing is reserved until the first number is requested.
+     *
+     * @param config the block size and scrambling
+     */
+    public AccountNumberAllocator(Config config) {
+        if (config.blockSize() < 1)
+            throw new IllegalArgumentException("The block size must be positive");
+
+        this.config = config;
+        long seed = config.scrambleKey();
+        for (int i = 0; i < ROUNDS; i++) {
+            seed += 0x9E3779B97F4A7C15L;
+            roundKeys[i] = mix(seed);
+        }
+    }
+
+
+    /**
+     * Gets the shared instance, created with {@link Config#defaults()} on first use.
+     *
+     * @return the shared AccountNumberAllocator
+     */
+    public static synchronized AccountNumberAllocator getInstance() {
+        if (instance == null)
+            instance = new AccountNumberAllocator(Config.defaults());
+        return instance;
+    }
+
+
+    /**
+     * Gets the next account number. Usually served from memory; when the current block
+     * is used up, the next block is reserved on the write connection, so this must not be
+     * called while the caller holds the write connection.
+     *
+     * @return an account number that has not been handed out before
+     * @throws SQLException when a block cannot be reserved or all numbers are used
+     */
+    public int next() throws SQLException {
+        while (true) {
+            Block block = current.get();
+            long index = block.next.getAndIncrement();
+            if (index < block.end)
+                return toAccountNumber(index);
+
+            synchronized (reserveLock) {
+                // Another thread may have replaced the block while this one waited
+                if (current.get() == block)
+                    current.set(reserveBlock());
+            }
+        }
+    }
+
+
+    /**
+     * Runs an insert with new account numbers until one is not taken yet.
+     *
+     * @param allocation the insert, given the account number to use
+     * @param <T>        the result of the insert
+     * @return the result of the first insert that did not hit a duplicate account number
+     * @throws SQLException when the insert fails otherwise, or still conflicts after {@link #MAX_ATTEMPTS} numbers
+     */
+    public <T> T allocate(Allocation<T> allocation) throws SQLException {
+        for (int attempt = 1; ; attempt++) {
+            int accountNumber = next();
+            try {
+                return allocation.apply(accountNumber);
+            } catch (SQLException e) {
+                if (!isDuplicateAccountNumber(e) || attempt == MAX_ATTEMPTS)
+                    throw e;
+                System.err.println("Account number " + accountNumber + " is already taken, allocating another one");
+            }
+        }
+    }
+
+
+    /// Drops the current block, e.g. because the database was replaced; its unused numbers are skipped.
+    public void reset() {
+        current.set(Block.EMPTY);
+    }
+
+
+    /// Gets the block size and scrambling configuration.
+    public Config getConfig() {
+        return config;
+    }
+
+
+    /**
+     * Checks if an insert failed because the account number is already in use.
+     *
+     * @param e the failure of the insert
+     * @return true for a unique constraint violation on Accounts.account_number
+     */
+    public static boolean isDuplicateAccountNumber(SQLException e) {
+        // SQLITE_CONSTRAINT, possibly with an extended code such as SQLITE_CONSTRAINT_UNIQUE
+        return (e.getErrorCode() & 0xff) == 19
+                && e.getMessage() != null && e.getMessage().contains("Accounts.account_number");
+    }
+
+
+    /**
+     * Reserves the next block of sequence indexes with a single UPDATE.
+     *
+     * @return the reserved block
+     * @throws SQLException when a database error occurs or the sequence is exhausted
+     */
+    private Block reserveBlock() throws SQLException {
+        String query = "UPDATE Sequences SET next_value = next_value + ? WHERE name = ? RETURNING next_value";
+
+        try (Connection connection = DatabaseManager.getInstance().getWriteConnection();
+             PreparedStatement statement = connection.prepareStatement(query)) {
+            statement.setInt(1, config.blockSize());
+            statement.setString(2, SEQUENCE_NAME);
+
+            try (ResultSet result = statement.executeQuery()) {
+                if (!result.next())
+                    throw new SQLException("The " + SEQUENCE_NAME + " sequence is missing");
+
+                long end = result.getLong(1);
+                long start = end - config.blockSize();
+                if (start >= RANGE_SIZE)
+                    throw new SQLException("All account numbers have been allocated");
+                return new Block(start, Math.min(end, RANGE_SIZE));
+            }
+        }
+    }
+
+
+    /// Maps a sequence index to its account number.
+    private int toAccountNumber(long index) {
+        return FIRST_ACCOUNT_NUMBER + (int) (config.scramble() ? permute(index) : index);
+    }
+
+
+    /**
+     * Permutes an index within [0, RANGE_SIZE) with a Feistel network over 28 bits.
+     * Results outside the range are encrypted again (cycle walking), which keeps the
+     * mapping a bijection of the range.
+     */
+    private long permute(long index) {
+        long value = index;
+        do {
+            long left = value >>> HALF_BITS;
+            long right = value & HALF_MASK;
+            for (int round = 0; round < ROUNDS; round++) {
+                long mixed = left ^ (mix(right ^ roundKeys[round]) & HALF_MASK);
+                left = right;
+                right = mixed;
+            }
+            value = (left << HALF_BITS) | right;
+        } while (value >= RANGE_SIZE);
+        return value;
+    }
+
+
+    /// Mixes the bits of a value (the SplitMix64 finalizer).
+    private static long mix(long value) {
+        value = (value ^ (value >>> 30)) * 0xBF58476D1CE4E5B9L;
+        value = (value ^ (value >>> 27)) * 0x94D049BB133111EBL;
+        return value ^ (value >>> 31);
+    }
+
+
+    /// A reserved range of sequence indexes [next, end); next is advanced by every allocation.
+    private record Block(AtomicLong next, long end) {
+
+        static final Block EMPTY = new Block(0, 0);
+
+        Block(long start, long end) {
+            this(new AtomicLong(start), end);
+        }
+
+    }
+
+
+    /// An insert that uses a newly allocated account number.
+    @FunctionalInterface
+    public interface Allocation<T> {
+        T apply(int accountNumber) throws SQLException;
+    }
+
+
+    /**
+     * Configuration of the allocator.
+     *
+     * @param blockSize   the number of sequence values reserved at once
+     * @param scramble    whether numbers are scrambled or handed out in order
+     * @param scrambleKey the key of the permutation; changing it makes collisions with issued numbers possible
+     */
+    public record Config(int blockSize, boolean scramble, long scrambleKey) {
+
+        /**
+         * Gets the default configuration: scrambled numbers reserved in blocks of 100.
+         * The block size can be overridden with the {@code banking.accounts.blockSize} system
+         * property, scrambling switched off with {@code banking.accounts.scramble=false} and the
+         * key set with {@code banking.accounts.scrambleKey}.
+         *
+         * @return the default configuration
+         */
+        public static Config defaults() {
+            return new Config(Integer.getInteger("banking.accounts.blockSize", 100),
+                    Boolean.parseBoolean(System.getProperty("banking.accounts.scramble", "true")),
+                    Long.getLong("banking.accounts.scrambleKey", 0x5DEECE66DL));
+        }
+
+    }
+
+}
@@ -0,0 +1,711 @@
+package banking.data;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * ConnectionPool is a bounded pool of database connections.
+ * Physical connections are opened once, already configured by the underlying DataSource,
+ * and handed out as proxies whose close() returns them to the pool instead of closing them.
+ * A background housekeeper evicts idle connections above the minimum size and reports
+ * connections that have been borrowed for longer than the leak detection threshold.
+ * <p>
+ * Each physical connection keeps its most recently used prepared statements compiled, up to
+ * the configured statement cache size. Preparing the same SQL again on that connection, in
+ * any later borrow, hands out the cached statement; closing it, or returning the connection
+ * with it still open, resets it and puts it back instead of closing it. Statements evicted
+ * from the cache, or left over when the connection is discarded, are closed.
+ */
+public class ConnectionPool implements AutoCloseable {
+
+    private final String name;
+    private final DataSource dataSource;
+    private final Config config;
+    private final ConnectionInitializer initializer;
+
+    private final Semaphore permits;
+    private final LinkedBlockingDeque<PhysicalConnection> idleConnections;
+    private final Set<PooledConnection> activeConnections;
+    private final ScheduledExecutorService housekeeper;
+
+    private final AtomicInteger totalConnections = new AtomicInteger();
+    private final AtomicLong borrowCount = new AtomicLong();
+    private final AtomicLong createdCount = new AtomicLong();
+    private final AtomicLong evictedCount = new AtomicLong();
+    private final AtomicLong timeoutCount = new AtomicLong();
+    private final AtomicLong leakCount = new AtomicLong();
+    private final AtomicLong statementHitCount = new AtomicLong();
+    private final AtomicLong statementMissCount = new AtomicLong();
+    private final AtomicLong statementCompileCount = new AtomicLong();
+    private final AtomicLong statementEvictionCount = new AtomicLong();
+
+    private volatile boolean closed;
+
+
+    /**
+     * Creates a new pool and opens the configured minimum number of connections.
+     *
+     * @param name       the name of the pool, used in log messages and thread names
+     * @param dataSource the DataSource that opens physical connections
+     * @param config     the pool configuration
+     * @throws IllegalArgumentException if the configuration is invalid
+     */
+    public ConnectionPool(String name, DataSource dataSource, Config config) {
+        this(name, dataSource, config, _ -> { });
+    }
+
+
+    /**
+     * Creates a new pool whose physical connections are passed to the given initializer
+     * once, right after they are opened, and opens the configured minimum number of connections.
+     *
+     * @param name        the name of the pool, used in log messages and thread names
+     * @param dataSource  the DataSource that opens physical connections
+     * @param config      the pool configuration
+     * @param initializer per-connection setup that the DataSource cannot express
+     * @throws IllegalArgumentException if the configuration is invalid
+     */
+    public ConnectionPool(String name, DataSource dataSource, Config config, ConnectionInitializer initializer) {
+        if (config.minSize() < 0 || config.maxSize() < 1 || config.minSize() > config.maxSize())
+            throw new IllegalArgumentException("Invalid pool size: min=" + config.minSize() + ", max=" + config.maxSize());
+        if (config.statementCacheSize() < 0)
+            throw new IllegalArgumentException("Invalid statement cache size: " + config.statementCacheSize());
+
+        this.name = name;
+        this.dataSource = dataSource;
+        this.config = config;
+        this.initializer = initializer;
+        this.permits = new Semaphore(config.maxSize(), true);
+        this.idleConnections = new LinkedBlockingDeque<>();
+        this.activeConnections = ConcurrentHashMap.newKeySet();
+
+        this.housekeeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "connection-pool-" + name + "-housekeeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(1, Math.min(config.idleTimeout().toMillis(), 30_000) / 2);
+        housekeeper.scheduleWithFixedDelay(this::housekeep, period, period, TimeUnit.MILLISECONDS);
+
+        fillToMinimum();
+    }
+
+
+    /**
+     * Borrows a connection from the pool, opening a new one if no idle connection is available
+     * and the pool has not reached its maximum size. The caller must close the returned
+     * connection to give it back to the pool.
+     *
+     * @return a pooled connection
+     * @throws SQLException if the pool is closed, no connection became available within
+     *                      the borrow timeout, or a new connection could not be opened
+     */
+    public Connection borrow() throws SQLException {
+        if (closed)
+            throw new SQLException("Connection pool '" + name + "' is closed");
+
+        try {
+            if (!permits.tryAcquire(config.borrowTimeout().toMillis(), TimeUnit.MILLISECONDS)) {
+                timeoutCount.incrementAndGet();
+                throw new SQLException("Timed out after " + config.borrowTimeout().toMillis() +
+                        " ms waiting for a connection from pool '" + name + "'");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a connection", e);
+        }
+
+        try {
+            PhysicalConnection physical = idleConnections.pollFirst();
+            if (physical == null)
+                physical = open();
+
+            PooledConnection pooled = new PooledConnection(physical,
+                    config.leakDetectionThreshold().isZero() ? null : new Throwable("Connection borrowed here"));
+            activeConnections.add(pooled);
+            borrowCount.incrementAndGet();
+            return pooled.proxy;
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+
+    /// Gets a snapshot of the pool's current statistics.
+    public Stats getStats() {
+        return new Stats(
+                totalConnections.get(),
+                idleConnections.size(),
+                activeConnections.size(),
+                permits.getQueueLength(),
+                borrowCount.get(),
+                createdCount.get(),
+                evictedCount.get(),
+                timeoutCount.get(),
+                leakCount.get(),
+                statementHitCount.get(),
+                statementMissCount.get(),
+                statementCompileCount.get(),
+                statementEvictionCount.get()
+        );
+    }
+
+
+    /// Gets the configuration of this pool.
+    public Config getConfig() {
+        return config;
+    }
+
+
+    /**
+     * Closes the pool and all idle connections. Connections that are still borrowed
+     * are closed when they are returned.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        housekeeper.shutdownNow();
+
+        PhysicalConnection physical;
+        while ((physical = idleConnections.pollFirst()) != null)
+            discard(physical);
+    }
+
+
+    /**
+     * Opens a new physical connection through the DataSource.
+     *
+     * @return the new physical connection
+     * @throws SQLException if the connection cannot be opened
+     */
+    private PhysicalConnection open() throws SQLException {
+        Connection connection = dataSource.getConnection();
+        try {
+            initializer.initialize(connection);
+        } catch (SQLException e) {
+            connection.close();
+            throw e;
+        }
+
+        totalConnections.incrementAndGet();
+        createdCount.incrementAndGet();
+        return new PhysicalConnection(connection,
+                config.statementCacheSize() > 0 ? new StatementCache(connection) : null);
+    }
+
+
+    /**
+     * Returns a borrowed connection to the pool. The connection's state is reset:
+     * open statements are closed (cached ones are reset and kept) and any unfinished
+     * transaction is rolled back.
+     * If the reset fails the physical connection is discarded.
+     *
+     * @param pooled the connection being returned
+     */
+    private void release(PooledConnection pooled) {
+        if (!activeConnections.remove(pooled))
+            return;
+
+        PhysicalConnection physical = pooled.physical;
+        try {
+            pooled.closeStatements();
+
+            Connection connection = physical.connection;
+            if (!connection.getAutoCommit()) {
+                connection.rollback();
+                connection.setAutoCommit(true);
+            }
+            connection.clearWarnings();
+
+            if (closed) {
+                discard(physical);
+            } else {
+                physical.lastUsed = System.nanoTime();
+                idleConnections.offerFirst(physical);
+            }
+        } catch (SQLException e) {
+            System.err.println("Discarding connection from pool '" + name + "' after failed reset: " + e.getMessage());
+            discard(physical);
+        } finally {
+            permits.release();
+        }
+    }
+
+
+    /**
+     * Physically closes a connection and removes it from the pool's count.
+     *
+     * @param physical the connection to close
+     */
+    private void discard(PhysicalConnection physical) {
+        totalConnections.decrementAndGet();
+        if (physical.statementCache != null)
+            physical.statementCache.closeAll();
+        try {
+            physical.connection.close();
+        } catch (SQLException e) {
+            System.err.println("Failed to close connection in pool '" + name + "': " + e.getMessage());
+        }
+    }
+
+
+    /**
+     * Opens connections until the pool holds at least the configured minimum.
+     * Failures are logged and retried on the next housekeeping run.
+     */
+    private void fillToMinimum() {
+        while (!closed && totalConnections.get() < config.minSize()) {
+            try {
+                idleConnections.offerLast(open());
+            } catch (SQLException e) {
+                System.err.println("Failed to pre-open connection for pool '" + name + "': " + e.getMessage());
+                return;
+            }
+        }
+    }
+
+
+    /**
+     * Periodic maintenance: evicts connections that have been idle longer than the idle
+     * timeout while the pool is above its minimum size, reports leaked connections, and
+     * re-opens connections up to the minimum size.
+     */
+    private void housekeep() {
+        long now = System.nanoTime();
+        long idleTimeoutNanos = config.idleTimeout().toNanos();
+
+        Iterator<PhysicalConnection> iterator = idleConnections.descendingIterator();
+        while (iterator.hasNext() && totalConnections.get() > config.minSize()) {
+            PhysicalConnection physical = iterator.next();
+            if (now - physical.lastUsed > idleTimeoutNanos && idleConnections.removeLastOccurrence(physical)) {
+                evictedCount.incrementAndGet();
+                discard(physical);
+            }
+        }
+
+        if (!config.leakDetectionThreshold().isZero()) {
+            long thresholdNanos = config.leakDetectionThreshold().toNanos();
+            for (PooledConnection pooled : activeConnections) {
+                if (!pooled.leakReported && now - pooled.borrowedAt > thresholdNanos) {
+                    pooled.leakReported = true;
+                    leakCount.incrementAndGet();
+                    System.err.println("Possible connection leak in pool '" + name + "': connection held for more than " +
+                            config.leakDetectionThreshold().toMillis() + " ms");
+                    pooled.borrowTrace.printStackTrace();
+                }
+            }
+        }
+
+        fillToMinimum();
+    }
+
+
+    /// Closes a statement, logging a failure.
+    private void closeStatement(Statement statement) {
+        try {
+            statement.close();
+        } catch (SQLException e) {
+            System.err.println("Failed to close statement in pool '" + name + "': " + e.getMessage());
+        }
+    }
+
+
+    /// Setup applied once to every physical connection opened by a pool.
+    @FunctionalInterface
+    public interface ConnectionInitializer {
+
+        /**
+         * Initializes a newly opened physical connection.
+         *
+         * @param connection the connection to initialize
+         * @throws SQLException if the initialization fails; the connection is then closed
+         */
+        void initialize(Connection connection) throws SQLException;
+
+    }
+
+
+    /**
+     * Configuration for a ConnectionPool.
+     *
+     * @param minSize                the number of connections kept open even when idle
+     * @param maxSize                the maximum number of connections that can be borrowed at once
+     * @param idleTimeout            how long a connection above the minimum may stay idle before it is closed
+     * @param borrowTimeout          how long borrow() waits for a free connection before failing
+     * @param leakDetectionThreshold how long a connection may be borrowed before it is reported
+     *                               as a possible leak, or zero to disable leak detection
+     * @param statementCacheSize     the number of prepared statements kept compiled per connection,
+     *                               or zero to disable the statement cache
+     */
+    public record Config(int minSize, int maxSize, Duration idleTimeout,
+                         Duration borrowTimeout, Duration leakDetectionThreshold, int statementCacheSize) {
+
+        /// Gets the default pool configuration. Leak detection is off, as it records a stack trace on every borrow.
+        public static Config defaults() {
+            return new Config(1, 8, Duration.ofMinutes(5), Duration.ofSeconds(30), Duration.ZERO, 64);
+        }
+
+        /// Returns a copy of this configuration with the given minimum and maximum sizes.
+        public Config withSize(int min, int max) {
+            return new Config(min, max, idleTimeout, borrowTimeout, leakDetectionThreshold, statementCacheSize);
+        }
+
+        /// Returns a copy of this configuration with the given leak detection threshold, zero to disable it.
+        public Config withLeakDetectionThreshold(Duration threshold) {
+            return new Config(minSize, maxSize, idleTimeout, borrowTimeout, threshold, statementCacheSize);
+        }
+
+        /// Returns a copy of this configuration with the given statement cache size.
+        public Config withStatementCacheSize(int size) {
+            return new Config(minSize, maxSize, idleTimeout, borrowTimeout, leakDetectionThreshold, size);
+        }
+
+    }
+
+
+    /**
+     * Snapshot of a pool's statistics.
+     *
+     * @param totalConnections  the number of physical connections currently open
+     * @param idleConnections   the number of open connections waiting to be borrowed
+     * @param activeConnections the number of connections currently borrowed
+     * @param waitingThreads    the number of threads waiting to borrow a connection
+     * @param borrowCount       the total number of successful borrows
+     * @param createdCount      the total number of physical connections opened
+     * @param evictedCount      the total number of idle connections closed by eviction
+     * @param timeoutCount      the total number of borrows that timed out
+     * @param leakCount         the total number of connections reported as possible leaks
+     * @param statementHits      the total number of prepared statements served from a statement cache
+     * @param statementMisses    the total number of prepared statements that were not cached or in use
+     * @param statementCompiles  the total number of prepared statements compiled by the driver
+     * @param statementEvictions the total number of cached statements closed to make room for others
+     */
+    public record Stats(int totalConnections, int idleConnections, int activeConnections, int waitingThreads,
+                        long borrowCount, long createdCount, long evictedCount, long timeoutCount, long leakCount,
+                        long statementHits, long statementMisses, long statementCompiles, long statementEvictions) { }
+
+
+    /// A physical connection together with the time it was last returned to the pool and its statement cache.
+    private static final class PhysicalConnection {
+
+        private final Connection connection;
+        private final StatementCache statementCache;
+        private volatile long lastUsed;
+
+        private PhysicalConnection(Connection connection, StatementCache statementCache) {
+            this.connection = connection;
+            this.statementCache = statementCache;
+            this.lastUsed = System.nanoTime();
+        }
+
+    }
+
+
+    /// The arguments of a prepareStatement call that a cached statement can serve.
+    private record StatementKey(String sql, int autoGeneratedKeys) {
+
+        /// Gets the key of a prepareStatement call, or null if the call takes other options.
+        private static StatementKey of(Object[] args) {
+            if (args.length == 1 && args[0] instanceof String sql)
+                return new StatementKey(sql, Statement.NO_GENERATED_KEYS);
+            if (args.length == 2 && args[0] instanceof String sql && args[1] instanceof Integer autoGeneratedKeys)
+                return new StatementKey(sql, autoGeneratedKeys);
+            return null;
+        }
+
+    }
+
+
+    /// A compiled statement of a statement cache and whether it is handed out or was evicted.
+    private static final class CachedStatement {
+
+        private final StatementKey key;
+        private final PreparedStatement statement;
+        private boolean inUse;
+        private boolean evicted;
+
+        private CachedStatement(StatementKey key, PreparedStatement statement) {
+            this.key = key;
+            this.statement = statement;
+        }
+
+    }
+
+
+    /**
+     * The least recently used prepared statements of one physical connection. It is only
+     * accessed by the thread that borrowed the connection, or while the connection is idle.
+     */
+    private final class StatementCache {
+
+        private final Connection connection;
+        private final LinkedHashMap<StatementKey, CachedStatement> statements = new LinkedHashMap<>(16, 0.75f, true);
+
+        private StatementCache(Connection connection) {
+            this.connection = connection;
+        }
+
+        /**
+         * Prepares a statement, serving it from the cache when possible. A statement whose
+         * cached copy is already handed out in the current borrow is compiled without caching.
+         *
+         * @param key the SQL and options of the statement
+         * @return the statement, wrapped so that closing it returns it to the cache if it is cached
+         * @throws SQLException if the statement cannot be compiled
+         */
+        private PreparedStatement prepare(StatementKey key) throws SQLException {
+            CachedStatement cached = statements.get(key);
+            if (cached != null && cached.statement.isClosed()) {
+                statements.remove(key);
+                cached = null;
+            }
+
+            if (cached != null && cached.inUse) {
+                statementMissCount.incrementAndGet();
+                return compile(key);
+            }
+
+            if (cached != null) {
+                statementHitCount.incrementAndGet();
+            } else {
+                statementMissCount.incrementAndGet();
+                cached = new CachedStatement(key, compile(key));
+                statements.put(key, cached);
+                evictOverflow();
+            }
+
+            cached.inUse = true;
+            return new StatementHandle(this, cached).proxy;
+        }
+
+        /// Compiles a statement through the driver.
+        private PreparedStatement compile(StatementKey key) throws SQLException {
+            statementCompileCount.incrementAndGet();
+            return key.autoGeneratedKeys() == Statement.NO_GENERATED_KEYS
+                    ? connection.prepareStatement(key.sql())
+                    : connection.prepareStatement(key.sql(), key.autoGeneratedKeys());
+        }
+
+        /**
+         * Takes back a statement that was handed out. It is closed instead if it was evicted
+         * meanwhile or could not be reset.
+         *
+         * @param cached   the statement
+         * @param reusable whether the statement was reset successfully
+         */
+        private void checkIn(CachedStatement cached, boolean reusable) {
+            cached.inUse = false;
+            if (!reusable && !cached.evicted)
+                statements.remove(cached.key, cached);
+            if (!reusable || cached.evicted)
+                closeStatement(cached.statement);
+        }
+
+        /// Evicts the least recently used statements above the cache size; handed out ones are closed on check in.
+        private void evictOverflow() {
+            Iterator<CachedStatement> iterator = statements.values().iterator();
+            while (statements.size() > config.statementCacheSize() && iterator.hasNext()) {
+                CachedStatement eldest = iterator.next();
+                iterator.remove();
+                eldest.evicted = true;
+                statementEvictionCount.incrementAndGet();
+                if (!eldest.inUse)
+                    closeStatement(eldest.statement);
+            }
+        }
+
+        /// Closes every cached statement, before the connection itself is closed.
+        private void closeAll() {
+            for (CachedStatement cached : statements.values())
+                closeStatement(cached.statement);
+            statements.clear();
+        }
+
+    }
+
+
+    /**
+     * One use of a cached statement, handed out as a proxy. Closing it closes the result sets
+     * it produced, clears its parameters and batch and checks the statement back into the cache;
+     * every call after close() fails as it would on a real closed statement.
+     */
+    private final class StatementHandle implements InvocationHandler {
+
+        private final StatementCache cache;
+        private final CachedStatement cached;
+        private final PreparedStatement proxy;
+        private final List<ResultSet> resultSets = new ArrayList<>();
+        private boolean closed;
+
+        private StatementHandle(StatementCache cache, CachedStatement cached) {
+            this.cache = cache;
+            this.cached = cached;
+            this.proxy = (PreparedStatement) Proxy.newProxyInstance(
+                    ConnectionPool.class.getClassLoader(), new Class<?>[]{PreparedStatement.class}, this);
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close" -> {
+                    if (!closed) {
+                        closed = true;
+                        checkIn();
+                    }
+                    return null;
+                }
+                case "isClosed" -> {
+                    return closed || cached.statement.isClosed();
+                }
+                case "equals" -> {
+                    return proxy == args[0];
+                }
+                case "hashCode" -> {
+                    return System.identityHashCode(proxy);
+                }
+                case "toString" -> {
+                    return "CachedStatement[" + cached.key.sql() + "]";
+                }
+                default -> { }
+            }
+
+            if (closed)
+                throw new SQLException("Statement is closed");
+
+            Object result;
+            try {
+                result = method.invoke(cached.statement, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+
+            if (result instanceof ResultSet resultSet)
+                resultSets.add(resultSet);
+
+            return result;
+        }
+
+        /// Resets the statement for its next use and returns it to the cache.
+        private void checkIn() {
+            boolean reusable = true;
+            try {
+                for (ResultSet resultSet : resultSets)
+                    resultSet.close();
+                cached.statement.clearParameters();
+                cached.statement.clearBatch();
+            } catch (SQLException e) {
+                reusable = false;
+            }
+            resultSets.clear();
+            cache.checkIn(cached, reusable);
+        }
+
+    }
+
+
+    /**
+     * A single borrow of a physical connection. Statements created through the proxy are
+     * tracked so they can be closed when the connection is returned, and every call after
+     * close() fails as it would on a real closed connection.
+     */
+    private final class PooledConnection implements InvocationHandler {
+
+        private final PhysicalConnection physical;
+        private final Connection proxy;
+        private final List<Statement> statements = new ArrayList<>();
+        private final Throwable borrowTrace;
+        private final long borrowedAt = System.nanoTime();
+        private volatile boolean leakReported;
+        private boolean logicallyClosed;
+
+        private PooledConnection(PhysicalConnection physical, Throwable borrowTrace) {
+            this.physical = physical;
+            this.borrowTrace = borrowTrace;
+            this.proxy = (Connection) Proxy.newProxyInstance(
+                    ConnectionPool.class.getClassLoader(), new Class<?>[]{Connection.class}, this);
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close" -> {
+                    if (!logicallyClosed) {
+                        logicallyClosed = true;
+                        release(this);
+                    }
+                    return null;
+                }
+                case "isClosed" -> {
+                    return logicallyClosed || physical.connection.isClosed();
+                }
+                case "equals" -> {
+                    return proxy == args[0];
+                }
+                case "hashCode" -> {
+                    return System.identityHashCode(proxy);
+                }
+                case "toString" -> {
+                    return "PooledConnection[" + name + "]";
+                }
+                default -> { }
+            }
+
+            if (logicallyClosed)
+                throw new SQLException("Connection is closed");
+
+            if (physical.statementCache != null && method.getName().equals("prepareStatement")) {
+                StatementKey key = StatementKey.of(args);
+                if (key != null) {
+                    PreparedStatement statement = physical.statementCache.prepare(key);
+                    statements.add(statement);
+                    return statement;
+                }
+            }
+
+            Object result;
+            try {
+                result = method.invoke(physical.connection, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+
+            if (result instanceof Statement statement)
+                statements.add(statement);
+
+            return result;
+        }
+
+        /// Closes every statement created during this borrow that the caller left open; cached ones go back to the cache.
+        private void closeStatements() {
+            for (Statement statement : statements)
+                closeStatement(statement);
+            statements.clear();
+        }
+
+    }
+
+}
@@ -0,0 +1,142 @@
+package banking.data;
+
+import banking.model.Contact;
+import banking.model.User;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * ContactImporter moves the contacts of the former shared contacts file into the Contacts table,
+ * once. The file, including any records appended to its log by ContactLogStore, has no owner, so
+ * its contacts are given to one user only: the user named by the {@code banking.contacts.importOwner}
+ * system property (an email address), or otherwise the only user of the database. If the owner
+ * cannot be determined that way, the file is left in place and not imported, rather than showing
+ * one user's contacts to every other user.
+ * <p>
+ * After a successful import the file and its log are renamed with an {@code .imported} suffix,
+ * so the import does not run again. A crash before the rename repeats it harmlessly, as
+ * contacts that are already in the table are skipped.
+ */
+public class ContactImporter {
+
+    /// Suffix of the legacy files after they were imported.
+    public static final String IMPORTED_SUFFIX = ".imported";
+
+    private final ContactManager contactManager;
+    private final UserManager userManager;
+
+
+    public ContactImporter() {
+        contactManager = new ContactManager();
+        userManager = new UserManager();
+    }
+
+
+    /**
+     * Imports the contacts file named by {@link ContactManager#getFileName()}, if there is one.
+     *
+     * @return the number of contacts saved
+     * @throws IOException  if the file cannot be read or renamed
+     * @throws SQLException when a database error occurs; the file is then kept for the next attempt
+     */
+    public int importLegacyFile() throws IOException, SQLException {
+        return importFile(Path.of(ContactManager.getFileName()));
+    }
+
+
+    /**
+     * Imports a contacts file and its log for the user that owns them, then renames both.
+     * If no owner can be determined, nothing is imported and the files are kept.
+     *
+     * @param file the contacts file in ContactManager's former JSON array format
+     * @return the number of contacts saved
+     * @throws IOException  if the file cannot be read or renamed
+     * @throws SQLException when a database error occurs; the file is then kept for the next attempt
+     */
+    public int importFile(Path file) throws IOException, SQLException {
+        if (!Files.exists(file) && !Files.exists(ContactLogStore.logFileOf(file)))
+            return 0;
+
+        Integer ownerID = findOwner();
+        if (ownerID == null) {
+            System.err.println("Not importing " + file + ": its owner is unknown. Set banking.contacts.importOwner "
+                    + "to the email of the user the contacts belong to.");
+            return 0;
+        }
+        return importFile(file, ownerID);
+    }
+
+
+    /**
+     * Imports a contacts file and its log for the given user, then renames both.
+     *
+     * @param file   the contacts file in ContactManager's former JSON array format
+     * @param userID the ID of the user the contacts belong to
+     * @return the number of contacts saved
+     * @throws IOException  if the file cannot be read or renamed
+     * @throws SQLException when a database error occurs; the file is then kept for the next attempt
+     */
+    public int importFile(Path file, int userID) throws IOException, SQLException {
+        Path logFile = ContactLogStore.logFileOf(file);
+        if (!Files.exists(file) && !Files.exists(logFile))
+            return 0;
+
+        List<Contact> contacts;
+        ContactLogStore.Config config = new ContactLogStore.Config(file, ContactLogStore.SyncPolicy.NEVER,
+                Duration.ZERO, Integer.MAX_VALUE);
+        try (ContactLogStore store = new ContactLogStore(config)) {
+            contacts = store.getContacts();
+        }
+
+        int saved = contactManager.saveContacts(userID, contacts);
+
+        markImported(file);
+        markImported(logFile);
+        System.err.println("Imported " + contacts.size() + " contacts of " + file + " for user " + userID
+                + " (" + saved + " saved)");
+        return saved;
+    }
+
+
+    /**
+     * Determines the user the legacy file belongs to.
+     *
+     * @return the ID of the user named by {@code banking.contacts.importOwner}, or of the only user,
+     *         or null if there is no such user
+     */
+    private Integer findOwner() throws SQLException {
+        String ownerEmail = System.getProperty("banking.contacts.importOwner");
+        if (ownerEmail != null) {
+            User owner = userManager.loadUser(ownerEmail);
+            return owner == null ? null : owner.getUserID();
+        }
+
+        List<Integer> userIDs = new ArrayList<>();
+        try (Connection connection = DatabaseManager.getInstance().getReadConnection();
+             PreparedStatement statement = connection.prepareStatement("SELECT user_id FROM Users LIMIT 2");
+             ResultSet result = statement.executeQuery()) {
+            while (result.next())
+                userIDs.add(result.getInt(1));
+        }
+        return userIDs.size() == 1 ? userIDs.getFirst() : null;
+    }
+
+
+    /// Renames an imported file, if it exists, so it is not imported again.
+    private static void markImported(Path file) throws IOException {
+        if (Files.exists(file))
+            Files.move(file, file.resolveSibling(file.getFileName() + IMPORTED_SUFFIX), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+}
@@ -0,0 +1,373 @@
+package banking.data;
+
+import banking.model.Contact;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+
+/**
+ * ContactLogStore keeps the contacts in memory and persists each new contact by appending one
+ * JSON line to a log file, instead of rewriting the whole contacts file per insert. Duplicate
+ * checks use in-memory indexes by lower-case name and by account number, and searches a
+ * ContactSearchIndex that is updated with every added contact.
+ * <p>
+ * The contacts file itself is the snapshot and keeps the JSON array format of the former shared
+ * contacts.json; the log lives next to it with a {@code .log} suffix. Once
+ * the log holds {@link Config#compactThreshold()} records it is compacted: all contacts are
+ * written to a temporary file, which is synced and atomically moved over the snapshot, and the
+ * log is then truncated.
+ * <p>
+ * Recovery on open loads the snapshot and replays the log. An incomplete or unreadable line at
+ * the end of the log, left by a crash during an append, is cut off. Log records that are already
+ * in the snapshot, because a crash came between the move and the truncation, are skipped, as
+ * they would be rejected as duplicates anyway; a leftover temporary snapshot is deleted.
+ * <p>
+ * Contacts are kept per user in the Contacts table now; ContactImporter reads the former
+ * shared file through this class, so records of its log are imported as well.
+ */
+public class ContactLogStore implements AutoCloseable {
+
+    /// Suffix of the log file, appended to the snapshot file name.
+    public static final String LOG_SUFFIX = ".log";
+
+    /// Suffix of the temporary snapshot written during compaction.
+    public static final String TEMP_SUFFIX = ".tmp";
+
+    private static final Gson GSON = new Gson();
+
+    private final Config config;
+    private final Path logFile;
+    private final List<Contact> contacts = new ArrayList<>();
+    private final Map<String, Contact> byName = new HashMap<>();
+    private final Map<Integer, Contact> byAccountNumber = new HashMap<>();
+    private final ContactSearchIndex searchIndex = new ContactSearchIndex();
+    private FileChannel log;
+    private int logRecords;
+    private long lastSync;
+
+
+    /**
+     * Opens the store, recovering the contacts from the snapshot and the log.
+     *
+     * @param config the files and durability settings
+     * @throws IOException if the snapshot or the log cannot be read or the log cannot be opened
+     */
+    public ContactLogStore(Config config) throws IOException {
+        if (config.compactThreshold() < 1)
+            throw new IllegalArgumentException("The compaction threshold must be positive");
+
+        this.config = config;
+        this.logFile = logFileOf(config.snapshotFile());
+
+        Files.deleteIfExists(tempFileOf(config.snapshotFile()));
+        for (Contact contact : readSnapshot(config.snapshotFile()))
+            index(contact);
+
+        recoverLog();
+        log = FileChannel.open(logFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        lastSync = System.nanoTime();
+    }
+
+
+    /**
+     * Adds a contact unless one with the same name (ignoring case) or account number exists.
+     * The contact is written to the log before it becomes visible.
+     *
+     * @param contact the contact to add
+     * @return true if the contact was added, false if it is a duplicate
+     * @throws IOException if the log cannot be written; the contact is then not added.
+     *                     A failed compaction afterwards is only logged, as the contact is in the log
+     */
+    public synchronized boolean add(Contact contact) throws IOException {
+        if (contains(contact.name(), contact.accountNumber()))
+            return false;
+
+        byte[] line = (GSON.toJson(contact) + "\n").getBytes(StandardCharsets.UTF_8);
+        long position = log.size();
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(line);
+            while (buffer.hasRemaining())
+                log.write(buffer);
+            syncIfDue();
+        } catch (IOException e) {
+            // A partly written line would hide every later record from recovery
+            log.truncate(position);
+            throw e;
+        }
+
+        index(contact);
+        if (++logRecords >= config.compactThreshold()) {
+            try {
+                compact();
+            } catch (IOException e) {
+                System.err.println("Contact log compaction failed, retrying with the next contact: " + e.getMessage());
+            }
+        }
+        return true;
+    }
+
+
+    /**
+     * Checks if a contact with the given name (ignoring case) or account number exists.
+     *
+     * @param name          the name to look for
+     * @param accountNumber the account number to look for
+     * @return true if either is taken
+     */
+    public synchronized boolean contains(String name, int accountNumber) {
+        return byName.containsKey(nameKey(name)) || byAccountNumber.containsKey(accountNumber);
+    }
+
+
+    /// Gets a copy of all contacts in the order they were added.
+    public synchronized List<Contact> getContacts() {
+        return new ArrayList<>(contacts);
+    }
+
+
+    /**
+     * Finds the contacts whose name or account number contains the query, using the search index.
+     *
+     * @param query the text to search for; case and surrounding whitespace are ignored
+     * @return the matching contacts in the order they were added, or all contacts for an empty query
+     */
+    public List<Contact> search(String query) {
+        return searchIndex.search(query);
+    }
+
+
+    /// Gets the number of contacts.
+    public synchronized int size() {
+        return contacts.size();
+    }
+
+
+    /// Gets the number of records in the log that are not compacted yet.
+    public synchronized int getLogRecordCount() {
+        return logRecords;
+    }
+
+
+    /**
+     * Writes all contacts to a new snapshot, replaces the old one atomically and empties the log.
+     *
+     * @throws IOException if the snapshot cannot be written; the log is then kept
+     */
+    public synchronized void compact() throws IOException {
+        Path snapshotFile = config.snapshotFile();
+        Path tempFile = tempFileOf(snapshotFile);
+
+        try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            Writer writer = Channels.newWriter(channel, StandardCharsets.UTF_8);
+            GSON.toJson(contacts, writer);
+            writer.flush();
+            channel.force(true);
+        }
+        Files.move(tempFile, snapshotFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        syncDirectory(snapshotFile);
+
+        // Records still in the log after a crash here are skipped on replay as duplicates
+        log.truncate(0);
+        log.force(true);
+        logRecords = 0;
+        lastSync = System.nanoTime();
+    }
+
+
+    /// Gets the files and durability settings.
+    public Config getConfig() {
+        return config;
+    }
+
+
+    /// Syncs and closes the log; the contacts stay in the log until the next compaction.
+    @Override
+    public synchronized void close() throws IOException {
+        if (!log.isOpen())
+            return;
+        if (config.syncPolicy() != SyncPolicy.NEVER)
+            log.force(false);
+        log.close();
+    }
+
+
+    /// Gets the log file that belongs to a snapshot file.
+    public static Path logFileOf(Path snapshotFile) {
+        return snapshotFile.resolveSibling(snapshotFile.getFileName() + LOG_SUFFIX);
+    }
+
+
+    /// Adds a contact to the list, the duplicate indexes and the search index.
+    private void index(Contact contact) {
+        contacts.add(contact);
+        byName.put(nameKey(contact.name()), contact);
+        byAccountNumber.put(contact.accountNumber(), contact);
+        searchIndex.add(contact);
+    }
+
+
+    /**
+     * Replays the log into the indexes. Only lines ending in a newline count as written;
+     * the log is truncated after the last line that could be read.
+     */
+    private void recoverLog() throws IOException {
+        if (!Files.exists(logFile))
+            return;
+
+        byte[] data = Files.readAllBytes(logFile);
+        int validLength = 0;
+        int start = 0;
+        int skipped = 0;
+
+        for (int end = 0; end < data.length; end++) {
+            if (data[end] != '\n')
+                continue;
+
+            Contact contact;
+            try {
+                contact = GSON.fromJson(new String(data, start, end - start, StandardCharsets.UTF_8), Contact.class);
+            } catch (JsonParseException e) {
+                break;
+            }
+            if (contact == null || contact.name() == null)
+                break;
+
+            if (contains(contact.name(), contact.accountNumber()))
+                skipped++;
+            else
+                index(contact);
+            logRecords++;
+            start = end + 1;
+            validLength = start;
+        }
+
+        if (validLength < data.length) {
+            System.err.println("Cutting off " + (data.length - validLength) + " unreadable bytes at the end of " + logFile);
+            try (FileChannel channel = FileChannel.open(logFile, StandardOpenOption.WRITE)) {
+                channel.truncate(validLength);
+                channel.force(true);
+            }
+        }
+        if (skipped > 0)
+            System.err.println("Skipped " + skipped + " contacts of " + logFile + " that are already in the snapshot");
+    }
+
+
+    /// Forces the log to disk if the sync policy asks for it now.
+    private void syncIfDue() throws IOException {
+        switch (config.syncPolicy()) {
+            case ALWAYS -> log.force(false);
+            case INTERVAL -> {
+                long now = System.nanoTime();
+                if (now - lastSync >= config.syncInterval().toNanos()) {
+                    log.force(false);
+                    lastSync = now;
+                }
+            }
+            case NEVER -> { }
+        }
+    }
+
+
+    /**
+     * Reads a snapshot in the JSON array format of the former contacts.json.
+     *
+     * @return the contacts of the snapshot, or an empty list if there is none
+     * @throws IOException if the snapshot cannot be read or parsed
+     */
+    private static List<Contact> readSnapshot(Path snapshotFile) throws IOException {
+        if (!Files.exists(snapshotFile))
+            return List.of();
+
+        try (Reader reader = Files.newBufferedReader(snapshotFile, StandardCharsets.UTF_8)) {
+            List<Contact> snapshot = GSON.fromJson(reader, new TypeToken<List<Contact>>(){}.getType());
+            return snapshot != null ? snapshot : List.of();
+        } catch (JsonParseException e) {
+            throw new IOException("Unreadable contacts snapshot " + snapshotFile, e);
+        }
+    }
+
+
+    /// Syncs the directory entry of a moved file; not every platform can open directories.
+    private static void syncDirectory(Path file) {
+        Path directory = file.toAbsolutePath().getParent();
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // The move itself is atomic; only its durability depends on the platform
+        }
+    }
+
+
+    /// Gets the temporary snapshot file used during compaction.
+    private static Path tempFileOf(Path snapshotFile) {
+        return snapshotFile.resolveSibling(snapshotFile.getFileName() + TEMP_SUFFIX);
+    }
+
+
+    /// Gets the index key of a name.
+    private static String nameKey(String name) {
+        return name.toLowerCase(Locale.ROOT);
+    }
+
+
+    /// When appended records are forced to disk.
+    public enum SyncPolicy {
+        /// After every append; a saved contact survives a power loss.
+        ALWAYS,
+        /// After an append once the sync interval has passed since the last sync, and on close.
+        INTERVAL,
+        /// Only on compaction and close; the operating system writes the rest back.
+        NEVER
+    }
+
+
+    /**
+     * Configuration of the store.
+     *
+     * @param snapshotFile     the contacts file; the log is next to it
+     * @param syncPolicy       when appends are forced to disk
+     * @param syncInterval     the minimum time between syncs with {@link SyncPolicy#INTERVAL}
+     * @param compactThreshold the number of log records that triggers a compaction
+     */
+    public record Config(Path snapshotFile, SyncPolicy syncPolicy, Duration syncInterval, int compactThreshold) {
+
+        /**
+         * Gets the default configuration: the file named by ContactManager.getFileName(),
+         * synced after every append and compacted every 1000 records. The policy can be set
+         * with the {@code banking.contacts.sync} system property ({@code always},
+         * {@code interval} or {@code never}), the interval with {@code banking.contacts.syncMillis}
+         * (default 1000) and the threshold with {@code banking.contacts.compactThreshold}.
+         *
+         * @return the default configuration
+         */
+        public static Config defaults() {
+            return new Config(Path.of(ContactManager.getFileName()),
+                    SyncPolicy.valueOf(System.getProperty("banking.contacts.sync", "always").toUpperCase(Locale.ROOT)),
+                    Duration.ofMillis(Long.getLong("banking.contacts.syncMillis", 1000)),
+                    Integer.getInteger("banking.contacts.compactThreshold", 1000));
+        }
+
+    }
+
+}
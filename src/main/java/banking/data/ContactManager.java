@@ -1,55 +1,149 @@
 package banking.data;
 
 import banking.model.Contact;
-import com.google.gson.Gson;
-import com.google.gson.reflect.TypeToken;
 
-import java.io.FileReader;
-import java.io.FileWriter;
-import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
 
 
 /**
- * ContactManager is responsible for managing contacts by saving and loading them
- * to and from a JSON file. It provides methods to save a list of contacts and
- * load them back, handling any I/O exceptions that may occur.
+ * ContactManager is responsible for saving and loading the contacts of each user in the
+ * Contacts table. A user's contact names (ignoring case) and account numbers are unique,
+ * enforced by the unique indexes on (user_id, name) and (user_id, account_number), which
+ * also serve every lookup by user.
+ * <p>
+ * Contacts used to be kept in one contacts.json file shared by all users; it is still named
+ * by {@link #getFileName()} so ContactImporter can move it into the table once.
  */
 public class ContactManager {
 
-    private static final String FILE_NAME = "contacts.json";
+    public static final String DEFAULT_FILE_NAME = "contacts.json";
+
+
+    public ContactManager() { }
 
 
     /**
-     * Saves a list of contacts to a JSON file.
+     * Saves a contact of a user, unless the user already has a contact with the same name
+     * (ignoring case) or account number.
      *
-     * @param contacts the list of contacts to be saved
-     * @throws IOException if an I/O error occurs while writing to the file
+     * @param userID  the ID of the user the contact belongs to
+     * @param contact the contact to save
+     * @return true if the contact was saved, false if it is a duplicate
+     * @throws SQLException when connection is unsuccessful or the user does not exist
      */
-    public static void saveContacts(List<Contact> contacts) throws IOException {
-        try (FileWriter writer = new FileWriter(FILE_NAME)) {
-            new Gson().toJson(contacts, writer);
+    public boolean saveContact(int userID, Contact contact) throws SQLException {
+        try (Connection connection = DatabaseManager.getInstance().getWriteConnection()) {
+            return insertContact(connection, userID, contact);
         }
     }
 
 
     /**
-     * Loads the list of contacts from a JSON file.
-     * If the file cannot be read or is not found, an empty list is returned.
+     * Saves contacts of a user in a single transaction, skipping duplicates.
      *
-     * @return a List of Contact objects loaded from the file, or an empty list if an IOException occurs
-     * @throws IOException if an error occurs during file reading
+     * @param userID   the ID of the user the contacts belong to
+     * @param contacts the contacts to save
+     * @return the number of contacts saved
+     * @throws SQLException when connection is unsuccessful or the user does not exist; nothing is saved then
      */
-    public static List<Contact> loadContacts() throws IOException {
-        try (FileReader reader = new FileReader(FILE_NAME)) {
-            return new Gson().fromJson(
-                    reader,
-                    new TypeToken<List<Contact>>(){}.getType()
-            );
-        } catch (IOException e) {
-            return new ArrayList<>();
+    public int saveContacts(int userID, List<Contact> contacts) throws SQLException {
+        try (Connection connection = DatabaseManager.getInstance().getWriteConnection()) {
+            connection.setAutoCommit(false); // Start Transaction
+
+            try {
+                int saved = 0;
+                for (Contact contact : contacts) {
+                    if (insertContact(connection, userID, contact))
+                        saved++;
+                }
+                connection.commit();
+                return saved;
+
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
         }
     }
 
+
+    /**
+     * Inserts a contact using an existing database connection.
+     *
+     * @return true if the row was inserted, false if it conflicts with a unique index
+     * @throws SQLException when a database error occurs
+     */
+    private static boolean insertContact(Connection connection, int userID, Contact contact) throws SQLException {
+        String query = "INSERT INTO Contacts (user_id, name, account_number) VALUES (?, ?, ?) ON CONFLICT DO NOTHING";
+
+        try (PreparedStatement statement = connection.prepareStatement(query)) {
+            statement.setInt(1, userID);
+            statement.setString(2, contact.name());
+            statement.setInt(3, contact.accountNumber());
+            return statement.executeUpdate() == 1;
+        }
+    }
+
+
+    /**
+     * Loads the contacts of a user.
+     *
+     * @param userID the ID of the user
+     * @return the user's contacts in the order they were saved
+     * @throws SQLException when connection is unsuccessful
+     */
+    public List<Contact> loadContacts(int userID) throws SQLException {
+        String query = "SELECT name, account_number FROM Contacts WHERE user_id = ? ORDER BY contact_id";
+        List<Contact> contacts = new ArrayList<>();
+
+        try (Connection connection = DatabaseManager.getInstance().getReadConnection();
+             PreparedStatement statement = connection.prepareStatement(query)) {
+            statement.setInt(1, userID);
+
+            try (ResultSet result = statement.executeQuery()) {
+                while (result.next())
+                    contacts.add(new Contact(result.getString("name"), result.getInt("account_number")));
+            }
+        }
+        return contacts;
+    }
+
+
+    /**
+     * Checks if a user has a contact with the given name (ignoring case) or account number.
+     *
+     * @param userID        the ID of the user
+     * @param name          the name to look for
+     * @param accountNumber the account number to look for
+     * @return true if either is taken
+     * @throws SQLException when connection is unsuccessful
+     */
+    public boolean contactExists(int userID, String name, int accountNumber) throws SQLException {
+        String query = "SELECT 1 FROM Contacts WHERE user_id = ? AND (name = ? OR account_number = ?)";
+
+        try (Connection connection = DatabaseManager.getInstance().getReadConnection();
+             PreparedStatement statement = connection.prepareStatement(query)) {
+            statement.setInt(1, userID);
+            statement.setString(2, name);
+            statement.setInt(3, accountNumber);
+
+            try (ResultSet result = statement.executeQuery()) {
+                return result.next();
+            }
+        }
+    }
+
+
+    /// Gets the name of the legacy contacts file, set by the {@code banking.contacts.file} system property.
+    public static String getFileName() {
+        return System.getProperty("banking.contacts.file", DEFAULT_FILE_NAME);
+    }
+
 }
@@ -0,0 +1,221 @@
+package banking.data;
+
+import banking.model.Contact;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+
+/**
+ * ContactSearchIndex finds the contacts whose name (ignoring case) or account number contains
+ * a query, the same matches as a linear {@code contains} scan, without scanning every contact.
+ * <p>
+ * Every substring of one to three characters of the lower-case names and of the account number
+ * digits has a posting list of the contacts it occurs in, sorted by insertion order. A query of
+ * up to three characters is answered by its own list. A longer query intersects the lists of
+ * its trigrams, starting with the shortest, and only the remaining candidates are checked with
+ * {@code contains}.
+ * <p>
+ * The result of the last longer query is remembered: when the next query contains it, as when
+ * one more character is typed, only the previous matches and the contacts added since are checked.
+ */
+public class ContactSearchIndex {
+
+    private static final int GRAM_LENGTH = 3;
+    private static final PostingList EMPTY = new PostingList();
+    private static final int[] NO_IDS = new int[0];
+
+    private final List<Contact> contacts = new ArrayList<>();
+    private final List<String> names = new ArrayList<>();
+    private final List<String> numbers = new ArrayList<>();
+    private final Map<String, PostingList> postings = new HashMap<>();
+
+    private String lastQuery;
+    private int[] lastResult;
+    private int lastSize;
+
+
+    /// Creates an empty index.
+    public ContactSearchIndex() { }
+
+
+    /**
+     * Creates an index of the given contacts.
+     *
+     * @param contacts the contacts, in the order results should list them
+     */
+    public ContactSearchIndex(Collection<Contact> contacts) {
+        for (Contact contact : contacts)
+            add(contact);
+    }
+
+
+    /**
+     * Adds a contact; it is listed after all contacts added before.
+     *
+     * @param contact the contact to add
+     */
+    public synchronized void add(Contact contact) {
+        int id = contacts.size();
+        String name = normalize(contact.name());
+        String number = String.valueOf(contact.accountNumber());
+
+        contacts.add(contact);
+        names.add(name);
+        numbers.add(number);
+        addGrams(name, id);
+        addGrams(number, id);
+    }
+
+
+    /**
+     * Finds the contacts whose name or account number contains the query.
+     *
+     * @param query the text to search for; case and surrounding whitespace are ignored
+     * @return the matching contacts in insertion order, or all contacts for an empty query
+     */
+    public synchronized List<Contact> search(String query) {
+        String normalized = query == null ? "" : normalize(query.trim());
+        if (normalized.isEmpty())
+            return new ArrayList<>(contacts);
+
+        if (normalized.length() <= GRAM_LENGTH) {
+            // Every such query is a gram itself, so its posting list is the exact result
+            PostingList list = postings.getOrDefault(normalized, EMPTY);
+            lastQuery = null;
+            return toContacts(list.ids, list.size);
+        }
+
+        int[] candidates = lastQuery != null && normalized.contains(lastQuery)
+                ? refinementCandidates()
+                : gramCandidates(normalized);
+
+        int[] matches = new int[candidates.length];
+        int count = 0;
+        for (int id : candidates) {
+            if (matches(id, normalized))
+                matches[count++] = id;
+        }
+
+        lastQuery = normalized;
+        lastResult = Arrays.copyOf(matches, count);
+        lastSize = contacts.size();
+        return toContacts(matches, count);
+    }
+
+
+    /// Gets the number of indexed contacts.
+    public synchronized int size() {
+        return contacts.size();
+    }
+
+
+    /// Gets the contacts of the first count ids.
+    private List<Contact> toContacts(int[] ids, int count) {
+        List<Contact> result = new ArrayList<>(count);
+        for (int i = 0; i < count; i++)
+            result.add(contacts.get(ids[i]));
+        return result;
+    }
+
+
+    /// Checks if a contact's name or account number contains the normalized query.
+    private boolean matches(int id, String query) {
+        return names.get(id).contains(query) || numbers.get(id).contains(query);
+    }
+
+
+    /// Gets the previous matches followed by the contacts added since the previous query.
+    private int[] refinementCandidates() {
+        int[] candidates = Arrays.copyOf(lastResult, lastResult.length + contacts.size() - lastSize);
+        for (int id = lastSize, i = lastResult.length; id < contacts.size(); id++, i++)
+            candidates[i] = id;
+        return candidates;
+    }
+
+
+    /**
+     * Intersects the posting lists of the query's trigrams, shortest first.
+     *
+     * @return the contacts that contain every trigram of the query, in insertion order
+     */
+    private int[] gramCandidates(String query) {
+        Set<String> grams = new LinkedHashSet<>();
+        for (int i = 0; i + GRAM_LENGTH <= query.length(); i++)
+            grams.add(query.substring(i, i + GRAM_LENGTH));
+
+        List<PostingList> lists = new ArrayList<>(grams.size());
+        for (String gram : grams) {
+            PostingList list = postings.get(gram);
+            if (list == null)
+                return NO_IDS;
+            lists.add(list);
+        }
+        lists.sort(Comparator.comparingInt(list -> list.size));
+
+        int[] result = Arrays.copyOf(lists.getFirst().ids, lists.getFirst().size);
+        for (int i = 1; i < lists.size() && result.length > 0; i++)
+            result = intersect(result, lists.get(i));
+        return result;
+    }
+
+
+    /// Intersects sorted ids with a posting list, searching the longer list for each id.
+    private static int[] intersect(int[] ids, PostingList list) {
+        int[] result = new int[ids.length];
+        int count = 0;
+        int from = 0;
+        for (int id : ids) {
+            int position = Arrays.binarySearch(list.ids, from, list.size, id);
+            if (position >= 0) {
+                result[count++] = id;
+                from = position + 1;
+            } else {
+                from = -position - 1;
+            }
+            if (from == list.size)
+                break;
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+
+    /// Adds a contact to the posting lists of every substring of the text of up to three characters.
+    private void addGrams(String text, int id) {
+        for (int i = 0; i < text.length(); i++) {
+            for (int end = i + 1; end <= Math.min(i + GRAM_LENGTH, text.length()); end++)
+                postings.computeIfAbsent(text.substring(i, end), _ -> new PostingList()).add(id);
+        }
+    }
+
+
+    /// Gets the lower-case form used by the index and the queries.
+    private static String normalize(String text) {
+        return text.toLowerCase(Locale.ROOT);
+    }
+
+
+    /// A growable, sorted array of contact ids without duplicates.
+    private static final class PostingList {
+        private int[] ids = new int[4];
+        private int size;
+
+        private void add(int id) {
+            // Ids arrive in ascending order, so a repeated gram of one contact is the last entry
+            if (size > 0 && ids[size - 1] == id)
+                return;
+            if (size == ids.length)
+                ids = Arrays.copyOf(ids, size * 2);
+            ids[size++] = id;
+        }
+    }
+
+}
@@ -0,0 +1,102 @@
+package banking.data;
+
+import java.time.Duration;
+
+
+/**
+ * DatabaseConfig holds the settings used by the DatabaseManager to open and pool
+ * connections. The defaults point at the application database and can be overridden
+ * with system properties, so tools and tests can run against another database file.
+ *
+ * @param url         the JDBC URL of the SQLite database
+ * @param pool        the connection pool configuration (the reader pool in WAL mode)
+ * @param storageMode the journal mode and connection topology
+ * @param checkpoint  the WAL checkpoint policy, only used in WAL mode
+ */
+public record DatabaseConfig(String url, ConnectionPool.Config pool,
+                             StorageMode storageMode, CheckpointPolicy checkpoint) {
+
+    public static final String DEFAULT_URL = "jdbc:sqlite:config/Banking.db";
+
+
+    /**
+     * Gets the default configuration. The database URL can be overridden with the
+     * {@code banking.db.url} system property, the pool bounds with {@code banking.db.pool.min}
+     * and {@code banking.db.pool.max}, the prepared statements cached per connection with
+     * {@code banking.db.statementCacheSize}, the leak detection threshold with
+     * {@code banking.db.leakDetectionMillis}, and the storage mode with {@code banking.db.storageMode}.
+     *
+     * @return the default database configuration
+     */
+    public static DatabaseConfig defaults() {
+        ConnectionPool.Config pool = ConnectionPool.Config.defaults();
+        pool = pool.withSize(
+                Integer.getInteger("banking.db.pool.min", pool.minSize()),
+                Integer.getInteger("banking.db.pool.max", pool.maxSize())
+        ).withStatementCacheSize(Integer.getInteger("banking.db.statementCacheSize", pool.statementCacheSize()))
+                .withLeakDetectionThreshold(Duration.ofMillis(
+                        Long.getLong("banking.db.leakDetectionMillis", pool.leakDetectionThreshold().toMillis())));
+
+        StorageMode storageMode = StorageMode.valueOf(
+                System.getProperty("banking.db.storageMode", StorageMode.ROLLBACK_JOURNAL.name()));
+
+        return new DatabaseConfig(System.getProperty("banking.db.url", DEFAULT_URL), pool,
+                storageMode, CheckpointPolicy.defaults());
+    }
+
+
+    /// Returns a copy of this configuration with the given database URL.
+    public DatabaseConfig withUrl(String newUrl) {
+        return new DatabaseConfig(newUrl, pool, storageMode, checkpoint);
+    }
+
+    /// Returns a copy of this configuration with the given pool configuration.
+    public DatabaseConfig withPool(ConnectionPool.Config newPool) {
+        return new DatabaseConfig(url, newPool, storageMode, checkpoint);
+    }
+
+    /// Returns a copy of this configuration with the given storage mode.
+    public DatabaseConfig withStorageMode(StorageMode newStorageMode) {
+        return new DatabaseConfig(url, pool, newStorageMode, checkpoint);
+    }
+
+    /// Returns a copy of this configuration with the given checkpoint policy.
+    public DatabaseConfig withCheckpoint(CheckpointPolicy newCheckpoint) {
+        return new DatabaseConfig(url, pool, storageMode, newCheckpoint);
+    }
+
+
+    /// The journal mode and connection topology used for the database.
+    public enum StorageMode {
+
+        /// Rollback journal; reads and writes share one connection pool.
+        ROLLBACK_JOURNAL,
+
+        /// Write-ahead log; one dedicated writer connection and a pool of read-only connections.
+        WAL
+
+    }
+
+
+    /// The checkpoint mode passed to {@code PRAGMA wal_checkpoint}.
+    public enum CheckpointMode { PASSIVE, FULL, RESTART, TRUNCATE }
+
+
+    /**
+     * Controls how the write-ahead log is copied back into the database file.
+     *
+     * @param autoCheckpointPages the WAL size in pages that triggers SQLite's automatic checkpoint,
+     *                            or zero to disable automatic checkpoints
+     * @param interval            how often a background checkpoint runs, or zero to disable it
+     * @param mode                the checkpoint mode used by background checkpoints
+     */
+    public record CheckpointPolicy(int autoCheckpointPages, Duration interval, CheckpointMode mode) {
+
+        /// Gets the default checkpoint policy: SQLite's automatic checkpoint plus a passive one every 30 seconds.
+        public static CheckpointPolicy defaults() {
+            return new CheckpointPolicy(1000, Duration.ofSeconds(30), CheckpointMode.PASSIVE);
+        }
+
+    }
+
+}
@@ -1,64 +1,288 @@
 package banking.data;
 
+import org.sqlite.SQLiteConfig;
 import org.sqlite.SQLiteDataSource;
 
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 
 /**
  * DatabaseManager is a singleton class responsible for managing database
- * connections to the SQLite database. It uses SQLiteDataSource to provide
- * connections and ensures that foreign key constraints are enforced.
+ * connections to the SQLite database. Connections are served from bounded
+ * ConnectionPools and are configured once, when they are opened, so that
+ * foreign key constraints are enforced and a busy timeout is set.
+ * <p>
+ * In {@link DatabaseConfig.StorageMode#ROLLBACK_JOURNAL} mode reads and writes share one pool.
+ * In {@link DatabaseConfig.StorageMode#WAL} mode the database uses a write-ahead log, every
+ * mutating call goes through a single dedicated writer connection, and reads are served by a
+ * pool of read-only connections that never block behind the writer.
+ * <p>
+ * The schema is created or upgraded by the SchemaMigrator when the instance is first created.
  */
 public class DatabaseManager {
 
-    private static final String DATABASE_URL = "jdbc:sqlite:config/Banking.db";
+    private static final int BUSY_TIMEOUT_MILLIS = 30000;
 
+    private static DatabaseConfig config = DatabaseConfig.defaults();
     private static DatabaseManager instance;
-    private final SQLiteDataSource dataSource;
+
+    private final DatabaseConfig.StorageMode storageMode;
+    private final ConnectionPool writePool;
+    private final ConnectionPool readPool;
+    private final ScheduledExecutorService checkpointer;
 
 
     /**
-     * Initializes the SQLiteDataSource with the database URL.
+     * Initializes the SQLiteDataSources and the connection pools from the given configuration.
+     *
+     * @param config the database configuration
      */
-    private DatabaseManager() {
-        // Initialize the DataSource (Factory)
-        dataSource = new SQLiteDataSource();
-        dataSource.setUrl(DATABASE_URL);
+    private DatabaseManager(DatabaseConfig config) {
+        storageMode = config.storageMode();
+
+        if (storageMode == DatabaseConfig.StorageMode.WAL) {
+            DatabaseConfig.CheckpointPolicy checkpoint = config.checkpoint();
+
+            SQLiteConfig writerConfig = baseConfig();
+            writerConfig.setJournalMode(SQLiteConfig.JournalMode.WAL);
+            writerConfig.setTransactionMode(SQLiteConfig.TransactionMode.IMMEDIATE);
+
+            // The writer is opened first so the database is in WAL mode before any reader connects
+            writePool = new ConnectionPool("writer", dataSource(writerConfig, config.url()),
+                    config.pool().withSize(1, 1),
+                    connection -> execute(connection, "PRAGMA wal_autocheckpoint = " + checkpoint.autoCheckpointPages()));
+
+            SQLiteConfig readerConfig = baseConfig();
+            readerConfig.setReadOnly(true);
+            readPool = new ConnectionPool("reader", dataSource(readerConfig, config.url()), config.pool());
+
+            checkpointer = startCheckpointer(checkpoint);
+        } else {
+            SQLiteConfig sqliteConfig = baseConfig();
+            sqliteConfig.setJournalMode(SQLiteConfig.JournalMode.DELETE);
+            // Explicit transactions take the write lock up front, so a transaction that reads
+            // before it writes cannot fail to upgrade its lock when another connection writes
+            sqliteConfig.setTransactionMode(SQLiteConfig.TransactionMode.IMMEDIATE);
+
+            writePool = new ConnectionPool("main", dataSource(sqliteConfig, config.url()), config.pool());
+            readPool = writePool;
+            checkpointer = null;
+        }
     }
 
     /**
-     * Gets the singleton instance of the DatabaseManager.
+     * Gets the singleton instance of the DatabaseManager. The first call creates the
+     * connection pools and brings the database schema up to date.
      *
      * @return the DatabaseManager instance
+     * @throws SQLException if the database cannot be opened or a schema migration fails
      */
-    public static synchronized DatabaseManager getInstance() {
-        if (instance == null)
-            instance = new DatabaseManager();
+    public static synchronized DatabaseManager getInstance() throws SQLException {
+        if (instance == null) {
+            DatabaseManager manager = new DatabaseManager(config);
+
+            try (Connection connection = manager.writePool.borrow()) {
+                new SchemaMigrator().migrate(connection);
+            } catch (SQLException e) {
+                manager.close();
+                throw e;
+            }
+
+            instance = manager;
+        }
 
         return instance;
     }
 
 
     /**
-     * Retrieves a new database connection from the DataSource.
-     * Ensures that foreign key constraints are enforced for SQLite.
+     * Replaces the database configuration. The current instance, if any, is shut down
+     * and the next call to getInstance() creates a new one with the given configuration.
      *
-     * @return a new Connection object
-     * @throws SQLException if a database access error occurs
+     * @param newConfig the configuration to use from now on
+     */
+    public static synchronized void configure(DatabaseConfig newConfig) {
+        shutdown();
+        config = newConfig;
+        // Cached accounts and reserved account numbers belong to the previous database
+        AccountCache.getInstance().invalidateAll();
+        AccountNumberAllocator.getInstance().reset();
+    }
+
+
+    /// Gets the configuration of the current instance, or of the next one if there is none.
+    public static synchronized DatabaseConfig getConfig() {
+        return config;
+    }
+
+
+    /**
+     * Shuts down the current instance and closes its pooled connections.
+     * In WAL mode the log is checkpointed and truncated first.
+     */
+    public static synchronized void shutdown() {
+        if (instance != null) {
+            instance.close();
+            instance = null;
+        }
+    }
+
+
+    /**
+     * Borrows a general purpose connection that may be used for reads and writes.
+     * In WAL mode this is the dedicated writer connection. The connection already
+     * enforces foreign key constraints and has a busy timeout set. Closing it returns
+     * it to the pool.
+     *
+     * @return a pooled Connection object
+     * @throws SQLException if no connection is available within the borrow timeout
+     *                      or a database access error occurs
      */
     public Connection getConnection() throws SQLException {
-        Connection conn = dataSource.getConnection();
+        return writePool.borrow();
+    }
+
+
+    /**
+     * Borrows the connection used for mutating statements. In WAL mode there is exactly
+     * one such connection, so writers are serialized in-process instead of contending
+     * for SQLite's write lock, and explicit transactions start with BEGIN IMMEDIATE.
+     *
+     * @return a pooled Connection object that may be written to
+     * @throws SQLException if no connection is available within the borrow timeout
+     *                      or a database access error occurs
+     */
+    public Connection getWriteConnection() throws SQLException {
+        return writePool.borrow();
+    }
+
+
+    /**
+     * Borrows a connection for queries. In WAL mode this is a read-only connection
+     * that sees the last committed state and is not blocked by the writer.
+     *
+     * @return a pooled Connection object for reading
+     * @throws SQLException if no connection is available within the borrow timeout
+     *                      or a database access error occurs
+     */
+    public Connection getReadConnection() throws SQLException {
+        return readPool.borrow();
+    }
+
+
+    /// Gets the storage mode of this instance.
+    public DatabaseConfig.StorageMode getStorageMode() {
+        return storageMode;
+    }
+
+
+    /// Gets a snapshot of the statistics of the pool that serves write (and general purpose) connections.
+    public ConnectionPool.Stats getPoolStats() {
+        return writePool.getStats();
+    }
+
+
+    /// Gets a snapshot of the statistics of the pool that serves read connections.
+    public ConnectionPool.Stats getReadPoolStats() {
+        return readPool.getStats();
+    }
+
+
+    /**
+     * Runs a WAL checkpoint on the writer connection.
+     *
+     * @param mode the checkpoint mode
+     * @throws SQLException if the checkpoint fails
+     * @throws IllegalStateException if the database is not in WAL mode
+     */
+    public void checkpoint(DatabaseConfig.CheckpointMode mode) throws SQLException {
+        if (storageMode != DatabaseConfig.StorageMode.WAL)
+            throw new IllegalStateException("Checkpoints are only available in WAL mode");
+
+        try (Connection connection = writePool.borrow()) {
+            execute(connection, "PRAGMA wal_checkpoint(" + mode.name() + ")");
+        }
+    }
+
+
+    /// Creates the SQLite settings shared by every connection.
+    private static SQLiteConfig baseConfig() {
+        // Applied by the driver to every new physical connection
+        // (SQLite defaults foreign keys to OFF for backward compatibility)
+        SQLiteConfig sqliteConfig = new SQLiteConfig();
+        sqliteConfig.enforceForeignKeys(true);
+        sqliteConfig.setBusyTimeout(BUSY_TIMEOUT_MILLIS);
+        return sqliteConfig;
+    }
+
+
+    /// Creates a DataSource (Factory) for the given settings and URL.
+    private static SQLiteDataSource dataSource(SQLiteConfig sqliteConfig, String url) {
+        SQLiteDataSource dataSource = new SQLiteDataSource(sqliteConfig);
+        dataSource.setUrl(url);
+        return dataSource;
+    }
+
+
+    /// Executes a single statement on the given connection.
+    private static void execute(Connection connection, String sql) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(sql);
+        }
+    }
+
+
+    /**
+     * Starts the background checkpoint task if the policy has an interval.
+     *
+     * @param checkpoint the checkpoint policy
+     * @return the scheduler running the task, or null if background checkpoints are disabled
+     */
+    private ScheduledExecutorService startCheckpointer(DatabaseConfig.CheckpointPolicy checkpoint) {
+        if (checkpoint.interval().isZero())
+            return null;
+
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "wal-checkpointer");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        long period = checkpoint.interval().toMillis();
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                checkpoint(checkpoint.mode());
+            } catch (SQLException e) {
+                System.err.println("WAL checkpoint failed: " + e.getMessage());
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+
+        return scheduler;
+    }
+
+
+    /// Stops the checkpointer, truncates the WAL and closes the pools.
+    private void close() {
+        if (checkpointer != null)
+            checkpointer.shutdownNow();
 
-        // Enforce foreign keys on every new connection
-        // (SQLite defaults to OFF for backward compatibility)
-        try (var stmt = conn.createStatement()) {
-            stmt.execute("PRAGMA foreign_keys = ON;");
-            stmt.execute("PRAGMA busy_timeout = 30000;");
+        // Also without background checkpoints, so no -wal file is left behind
+        if (storageMode == DatabaseConfig.StorageMode.WAL) {
+            try {
+                checkpoint(DatabaseConfig.CheckpointMode.TRUNCATE);
+            } catch (SQLException e) {
+                System.err.println("Final WAL checkpoint failed: " + e.getMessage());
+            }
         }
 
-        return conn;
+        if (readPool != writePool)
+            readPool.close();
+        writePool.close();
     }
 
-}
\ No newline at end of file
+}
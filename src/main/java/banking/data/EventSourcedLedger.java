@@ -0,0 +1,723 @@
+package banking.data;
+
+import banking.model.Account;
+import banking.model.Transaction;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * EventSourcedLedger is a LedgerEngine whose source of truth is the append-only Transactions
+ * table. Every row is an event of its type (deposit, withdrawal or transfer), and the balance
+ * of an account is whatever replaying the events gives. The balances are derived in memory and
+ * written to {@code Accounts.balance} only as a projection for the rest of the application,
+ * in the same database transaction as the event, so the two cannot diverge.
+ * <p>
+ * Every {@link Config#snapshotInterval()} events, and on {@link #close()}, the derived balances
+ * are stored in the BalanceSnapshots tables together with the ID of the last event they include.
+ * On first use the ledger loads the latest snapshot and replays only the events after it. A
+ * database without a snapshot adopts the stored balances as its first one. Before every posting
+ * the events appended by other writers since the last one are replayed too, so the ledger can
+ * share the table with the other engines.
+ * <p>
+ * Accounts opened after a snapshot start at zero; a balance that did not come from an event is
+ * not part of the ledger. Deleting an account deletes its events by the cascading foreign keys,
+ * so accounts are deleted through {@link #deleteAccount(Account)}, which takes a snapshot in the
+ * same transaction; replaying from an older snapshot would lose the counterparties' side of the
+ * deleted transfers.
+ */
+public class EventSourcedLedger implements LedgerEngine, AutoCloseable {
+
+    private static EventSourcedLedger instance;
+
+    private final Config config;
+    private final AccountManager accountManager = new AccountManager();
+    private final TransactionManager transactionManager = new TransactionManager();
+
+    // All state is guarded by this ledger's monitor
+    private BalanceTable balances;
+    private long lastTransactionID;
+    private long eventsSinceSnapshot;
+    private long snapshotTransactionID;
+    private long replayedEvents;
+    private Duration replayTime = Duration.ZERO;
+    private long postingCount;
+    private long caughtUpEvents;
+    private long snapshotCount;
+
+
+    /**
+     * Creates a ledger. The snapshot is loaded and the events are replayed on first use, or by {@link #load()}.
+     *
+     * @param config the snapshot configuration
+     * @throws IllegalArgumentException if the configuration is invalid
+     */
+    public EventSourcedLedger(Config config) {
+        if (config.snapshotInterval() < 1)
+            throw new IllegalArgumentException("The snapshot interval must be positive: " + config.snapshotInterval());
+        this.config = config;
+    }
+
+
+    /**
+     * Gets the shared instance, created with {@link Config#defaults()} on first use.
+     *
+     * @return the shared EventSourcedLedger
+     */
+    public static synchronized EventSourcedLedger getInstance() {
+        if (instance == null)
+            instance = new EventSourcedLedger(Config.defaults());
+        return instance;
+    }
+
+
+    /// Closes the shared instance, if any, after taking a snapshot of its balances.
+    public static synchronized void shutdown() {
+        if (instance != null) {
+            instance.close();
+            instance = null;
+        }
+    }
+
+
+    /**
+     * Deposits money into an account by appending a deposit event.
+     * The in-memory account is updated after the commit.
+     *
+     * @param account the account to deposit to
+     * @param amount  the amount to deposit in minor units
+     * @return the recorded transaction, with its ID
+     * @throws SQLException             when a database error occurs; nothing is changed
+     * @throws IllegalArgumentException if the amount is not positive or the account does not exist or is frozen
+     */
+    @Override
+    public Transaction postDeposit(Account account, long amount) throws SQLException {
+        if (amount <= 0)
+            throw new IllegalArgumentException("Deposit amount must be positive");
+
+        Transaction transaction = post(connection -> {
+            Account stored = accountManager.loadAccountInternal(connection, account.getAccountNumber());
+            if (stored == null)
+                throw new IllegalArgumentException("Account does not exist");
+            if (stored.isFrozen())
+                throw new IllegalArgumentException("Cannot deposit to a frozen account");
+            return new Transaction(account, account, amount, LedgerManager.DEPOSIT_COMMENT, LocalDateTime.now());
+        });
+        account.deposit(amount);
+        return transaction;
+    }
+
+
+    /**
+     * Withdraws money from an account by appending a withdrawal event.
+     * The in-memory account is updated after the commit.
+     *
+     * @param account the account to withdraw from
+     * @param amount  the amount to withdraw in minor units
+     * @return the recorded transaction, with its ID
+     * @throws SQLException             when a database error occurs; nothing is changed
+     * @throws IllegalArgumentException if the amount is not positive, exceeds the derived balance,
+     *                                  or the account does not exist or is frozen
+     */
+    @Override
+    public Transaction postWithdrawal(Account account, long amount) throws SQLException {
+        if (amount <= 0)
+            throw new IllegalArgumentException("Withdrawal amount must be positive");
+
+        Transaction transaction = post(connection -> {
+            Account stored = accountManager.loadAccountInternal(connection, account.getAccountNumber());
+            if (stored == null)
+                throw new IllegalArgumentException("Account does not exist");
+            if (stored.isFrozen())
+                throw new IllegalArgumentException("Cannot withdraw from a frozen account");
+            if (balances.get(account.getAccountNumber()) < amount)
+                throw new IllegalArgumentException("Insufficient funds");
+            return new Transaction(account, account, amount, LedgerManager.WITHDRAWAL_COMMENT, LocalDateTime.now());
+        });
+        account.withdraw(amount);
+        return transaction;
+    }
+
+
+    /**
+     * Transfers money to another account by appending a transfer event.
+     * The in-memory sender account is updated after the commit.
+     *
+     * @param sender                the account to transfer from
+     * @param receiverAccountNumber the account number to transfer to
+     * @param amount                the amount to transfer in minor units
+     * @param comment               the comment recorded with the transaction
+     * @return the recorded transaction, with its ID
+     * @throws SQLException             when a database error occurs; nothing is changed
+     * @throws IllegalArgumentException if the transfer is not allowed; nothing is changed
+     */
+    @Override
+    public Transaction postTransfer(Account sender, int receiverAccountNumber, long amount, String comment) throws SQLException {
+        if (amount <= 0)
+            throw new IllegalArgumentException("Transfer amount must be positive");
+        if (sender.getAccountNumber() == receiverAccountNumber)
+            throw new IllegalArgumentException("Source and destination accounts cannot be the same");
+
+        Transaction transaction = post(connection -> {
+            Account storedSender = accountManager.loadAccountInternal(connection, sender.getAccountNumber());
+            if (storedSender == null)
+                throw new AccountNotFoundException("Source account does not exist", sender.getAccountNumber());
+            if (storedSender.isFrozen())
+                throw new IllegalArgumentException("Cannot transfer from a frozen account");
+            if (balances.get(sender.getAccountNumber()) < amount)
+                throw new IllegalArgumentException("Insufficient funds in source account");
+
+            Account receiver = accountManager.loadAccountInternal(connection, receiverAccountNumber);
+            if (receiver == null)
+                throw new AccountNotFoundException("Destination account does not exist", receiverAccountNumber);
+            if (receiver.isFrozen())
+                throw new IllegalArgumentException("Cannot transfer to a frozen account");
+            return new Transaction(sender, receiver, amount, comment, LocalDateTime.now());
+        });
+        sender.withdraw(amount);
+        return transaction;
+    }
+
+
+    /**
+     * Deletes an account together with its events, and takes a snapshot in the same transaction,
+     * so the balances of its counterparties no longer depend on the deleted events.
+     *
+     * @param account the account to delete
+     * @throws SQLException when a database error occurs; nothing is changed
+     */
+    @Override
+    public synchronized void deleteAccount(Account account) throws SQLException {
+        load();
+        int accountNumber = account.getAccountNumber();
+
+        try (Connection connection = DatabaseManager.getInstance().getWriteConnection()) {
+            connection.setAutoCommit(false); // Start Transaction
+
+            BalanceTable previousBalances = null;
+            long previousTransactionID = 0;
+            long previousEvents = 0;
+            long previousSnapshotID = 0;
+            try {
+                catchUp(connection);
+                previousBalances = balances;
+                previousTransactionID = lastTransactionID;
+                previousEvents = eventsSinceSnapshot;
+                previousSnapshotID = snapshotTransactionID;
+
+                accountManager.deleteAccount(connection, accountNumber);
+                balances = balances.without(accountNumber);
+                // The next event may reuse the IDs of deleted events, so the snapshot ends at the highest ID left
+                lastTransactionID = loadLastTransactionID(connection);
+                writeSnapshot(connection);
+
+                connection.commit();
+
+            } catch (Throwable e) {
+                // Restoring autocommit below would otherwise commit the half-done deletion
+                connection.rollback();
+                if (previousBalances != null) {
+                    balances = previousBalances;
+                    lastTransactionID = previousTransactionID;
+                    eventsSinceSnapshot = previousEvents;
+                    snapshotTransactionID = previousSnapshotID;
+                }
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+                AccountCache.getInstance().invalidate(accountNumber);
+                AccountCache.getInstance().invalidateUser(account.getUserID());
+            }
+        }
+    }
+
+
+    /**
+     * Loads the latest snapshot and replays the events after it, if that has not happened yet.
+     * Every operation calls it; calling it at startup moves the cost of the replay there.
+     *
+     * @throws SQLException when a database error occurs
+     */
+    public synchronized void load() throws SQLException {
+        if (balances != null)
+            return;
+
+        long start = System.nanoTime();
+        BalanceTable loaded = new BalanceTable(1024);
+        long snapshotID = -1;
+
+        String query = """
+                SELECT s.last_transaction_id, e.account_number, e.balance
+                FROM BalanceSnapshots s
+                LEFT JOIN BalanceSnapshotEntries e ON e.snapshot_id = s.snapshot_id
+                WHERE s.snapshot_id = (SELECT MAX(snapshot_id) FROM BalanceSnapshots)""";
+
+        try (Connection connection = DatabaseManager.getInstance().getReadConnection()) {
+            try (PreparedStatement statement = connection.prepareStatement(query);
+                 ResultSet result = statement.executeQuery()) {
+                while (result.next()) {
+                    snapshotID = result.getLong(1);
+                    int accountNumber = result.getInt(2);
+                    if (!result.wasNull())
+                        loaded = loaded.add(accountNumber, result.getLong(3));
+                }
+            }
+
+            if (snapshotID >= 0) {
+                balances = loaded;
+                lastTransactionID = snapshotID;
+                snapshotTransactionID = snapshotID;
+                replayedEvents = replay(connection);
+                eventsSinceSnapshot = replayedEvents;
+            }
+        }
+
+        if (snapshotID < 0)
+            adoptStoredBalances();
+
+        replayTime = Duration.ofNanos(System.nanoTime() - start);
+    }
+
+
+    /**
+     * Stores a snapshot of the derived balances now, after catching up with the log.
+     *
+     * @throws SQLException when a database error occurs
+     */
+    public synchronized void snapshot() throws SQLException {
+        load();
+
+        try (Connection connection = DatabaseManager.getInstance().getWriteConnection()) {
+            connection.setAutoCommit(false); // Start Transaction
+
+            long previousEvents = eventsSinceSnapshot;
+            long previousSnapshotID = snapshotTransactionID;
+            try {
+                catchUp(connection);
+                previousEvents = eventsSinceSnapshot;
+                writeSnapshot(connection);
+                connection.commit();
+
+            } catch (Throwable e) {
+                connection.rollback();
+                eventsSinceSnapshot = previousEvents;
+                snapshotTransactionID = previousSnapshotID;
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        }
+    }
+
+
+    /**
+     * Gets the balance of an account as derived from the log.
+     *
+     * @param accountNumber the account number
+     * @return the balance in minor units; 0 for an account without events
+     * @throws SQLException when the ledger cannot be loaded
+     */
+    public synchronized long getBalance(int accountNumber) throws SQLException {
+        load();
+        return balances.get(accountNumber);
+    }
+
+
+    /**
+     * Compares the stored balances with the ones derived from the log, after catching up with it.
+     *
+     * @return the numbers of the accounts whose stored balance differs, in ascending order
+     * @throws SQLException when a database error occurs
+     */
+    public synchronized List<Integer> findDivergentAccounts() throws SQLException {
+        load();
+        List<Integer> divergent = new ArrayList<>();
+
+        try (Connection connection = DatabaseManager.getInstance().getWriteConnection()) {
+            catchUp(connection);
+
+            try (PreparedStatement statement = connection.prepareStatement(
+                    "SELECT account_number, balance FROM Accounts ORDER BY account_number");
+                 ResultSet result = statement.executeQuery()) {
+                while (result.next()) {
+                    if (result.getLong(2) != balances.get(result.getInt(1)))
+                        divergent.add(result.getInt(1));
+                }
+            }
+        }
+        return divergent;
+    }
+
+
+    /// Gets the snapshot configuration.
+    public Config getConfig() {
+        return config;
+    }
+
+
+    /// Gets a snapshot of the ledger's statistics.
+    public synchronized Stats getStats() {
+        return new Stats(snapshotTransactionID, replayedEvents, replayTime, postingCount, caughtUpEvents,
+                snapshotCount, eventsSinceSnapshot, balances == null ? 0 : balances.size);
+    }
+
+
+    /// Takes a snapshot if there were events since the last one, so the next start replays nothing.
+    @Override
+    public synchronized void close() {
+        if (balances == null || eventsSinceSnapshot == 0)
+            return;
+
+        try {
+            snapshot();
+        } catch (SQLException e) {
+            System.err.println("Failed to snapshot the event-sourced ledger on close: " + e.getMessage());
+        }
+    }
+
+
+    /**
+     * Appends one event in a new database transaction on the write connection: catches up with
+     * the log, validates the posting, inserts its Transactions row, updates the projected balances
+     * and takes a snapshot when one is due, then commits. Any failure rolls back every change,
+     * in the database and in memory, where the event is applied again with the opposite amount.
+     *
+     * @param validation checks the posting against the stored accounts and the derived balances
+     * @return the inserted transaction, with its ID
+     * @throws SQLException when a database error occurs
+     */
+    private synchronized Transaction post(Validation validation) throws SQLException {
+        load();
+
+        try (Connection connection = DatabaseManager.getInstance().getWriteConnection()) {
+            connection.setAutoCommit(false); // Start Transaction
+
+            Transaction applied = null;
+            long previousTransactionID = 0;
+            long previousEvents = 0;
+            long previousSnapshotID = 0;
+            try {
+                catchUp(connection);
+                previousTransactionID = lastTransactionID;
+                previousEvents = eventsSinceSnapshot;
+                previousSnapshotID = snapshotTransactionID;
+
+                Transaction transaction = validation.validate(connection);
+                int transactionID = transactionManager.insertTransaction(connection, transaction);
+                int sender = transaction.sender().getAccountNumber();
+                int receiver = transaction.receiver().getAccountNumber();
+
+                apply(TransactionManager.Type.of(transaction), sender, receiver, transaction.amount());
+                applied = transaction;
+                lastTransactionID = transactionID;
+                eventsSinceSnapshot++;
+                accountManager.applyBalance(connection, sender, balances.get(sender));
+                if (receiver != sender)
+                    accountManager.applyBalance(connection, receiver, balances.get(receiver));
+                if (eventsSinceSnapshot >= config.snapshotInterval())
+                    writeSnapshot(connection);
+
+                connection.commit();
+                postingCount++;
+
+                Transaction recorded = new Transaction(transactionID, transaction.sender(), transaction.receiver(),
+                        transaction.amount(), transaction.comment(), transaction.date());
+                LedgerManager.invalidateCached(recorded);
+                return recorded;
+
+            } catch (Throwable e) {
+                // Restoring autocommit below would otherwise commit the half-done posting
+                connection.rollback();
+                // Events caught up with are committed by other writers and stay applied
+                if (applied != null) {
+                    apply(TransactionManager.Type.of(applied), applied.sender().getAccountNumber(),
+                            applied.receiver().getAccountNumber(), -applied.amount());
+                    lastTransactionID = previousTransactionID;
+                    eventsSinceSnapshot = previousEvents;
+                    snapshotTransactionID = previousSnapshotID;
+                }
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        }
+    }
+
+
+    /**
+     * Replays the events after the last applied one. Called within a write transaction,
+     * so no other writer can append meanwhile.
+     */
+    private void catchUp(Connection connection) throws SQLException {
+        long events = replay(connection);
+        eventsSinceSnapshot += events;
+        caughtUpEvents += events;
+    }
+
+
+    /**
+     * Applies every event after {@code lastTransactionID} to the balances, in ID order.
+     *
+     * @param connection the connection to read the events on
+     * @return the number of events applied
+     * @throws SQLException when a database error occurs
+     */
+    private long replay(Connection connection) throws SQLException {
+        // The type is mapped to a number in SQL, so no String is created per event
+        String query = """
+                SELECT transaction_id, sender_account_number, receiver_account_number, amount,
+                       CASE type WHEN 'TRANSFER' THEN 0 WHEN 'DEPOSIT' THEN 1 ELSE 2 END
+                FROM Transactions
+                WHERE transaction_id > ?
+                ORDER BY transaction_id""";
+
+        long events = 0;
+        TransactionManager.Type[] types = {TransactionManager.Type.TRANSFER, TransactionManager.Type.DEPOSIT,
+                TransactionManager.Type.WITHDRAWAL};
+
+        try (PreparedStatement statement = connection.prepareStatement(query)) {
+            statement.setLong(1, lastTransactionID);
+            try (ResultSet result = statement.executeQuery()) {
+                while (result.next()) {
+                    apply(types[result.getInt(5)], result.getInt(2), result.getInt(3), result.getLong(4));
+                    lastTransactionID = result.getLong(1);
+                    events++;
+                }
+            }
+        }
+        return events;
+    }
+
+
+    /// Applies one event to the derived balances.
+    private void apply(TransactionManager.Type type, int sender, int receiver, long amount) {
+        switch (type) {
+            case DEPOSIT -> balances = balances.add(sender, amount);
+            case WITHDRAWAL -> balances = balances.add(sender, -amount);
+            case TRANSFER -> {
+                balances = balances.add(sender, -amount);
+                balances = balances.add(receiver, amount);
+            }
+        }
+    }
+
+
+    /**
+     * Takes the first snapshot of a database that has none: the stored balances become the
+     * opening balances of the ledger, as of the last event in the table.
+     */
+    private void adoptStoredBalances() throws SQLException {
+        try (Connection connection = DatabaseManager.getInstance().getWriteConnection()) {
+            connection.setAutoCommit(false); // Start Transaction
+
+            try {
+                BalanceTable adopted = new BalanceTable(1024);
+                try (PreparedStatement statement = connection.prepareStatement("SELECT account_number, balance FROM Accounts");
+                     ResultSet result = statement.executeQuery()) {
+                    while (result.next())
+                        adopted = adopted.add(result.getInt(1), result.getLong(2));
+                }
+
+                balances = adopted;
+                lastTransactionID = loadLastTransactionID(connection);
+                writeSnapshot(connection);
+                connection.commit();
+
+            } catch (Throwable e) {
+                connection.rollback();
+                balances = null;
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        }
+    }
+
+
+    /// Gets the highest transaction ID in the table, or 0 if it is empty.
+    private static long loadLastTransactionID(Connection connection) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("SELECT COALESCE(MAX(transaction_id), 0) FROM Transactions");
+             ResultSet result = statement.executeQuery()) {
+            return result.next() ? result.getLong(1) : 0;
+        }
+    }
+
+
+    /**
+     * Stores the derived balances as a snapshot ending at {@code lastTransactionID} and deletes
+     * the older snapshots, within the caller's transaction.
+     */
+    private void writeSnapshot(Connection connection) throws SQLException {
+        long snapshotID;
+        try (PreparedStatement statement = connection.prepareStatement(
+                "INSERT INTO BalanceSnapshots (last_transaction_id, created_at) VALUES (?, ?)", Statement.RETURN_GENERATED_KEYS)) {
+            statement.setLong(1, lastTransactionID);
+            statement.setString(2, LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")));
+            statement.executeUpdate();
+
+            try (ResultSet keys = statement.getGeneratedKeys()) {
+                if (!keys.next())
+                    throw new SQLException("Inserting the snapshot did not return its ID");
+                snapshotID = keys.getLong(1);
+            }
+        }
+
+        try (PreparedStatement statement = connection.prepareStatement(
+                "INSERT INTO BalanceSnapshotEntries (snapshot_id, account_number, balance) VALUES (?, ?, ?)")) {
+            BalanceTable table = balances;
+            for (int i = 0; i < table.accountNumbers.length; i++) {
+                if (!table.used[i])
+                    continue;
+                statement.setLong(1, snapshotID);
+                statement.setInt(2, table.accountNumbers[i]);
+                statement.setLong(3, table.balances[i]);
+                statement.addBatch();
+            }
+            statement.executeBatch();
+        }
+
+        // The entries of older snapshots are deleted by the cascading foreign key
+        try (PreparedStatement statement = connection.prepareStatement("DELETE FROM BalanceSnapshots WHERE snapshot_id < ?")) {
+            statement.setLong(1, snapshotID);
+            statement.executeUpdate();
+        }
+
+        snapshotTransactionID = lastTransactionID;
+        eventsSinceSnapshot = 0;
+        snapshotCount++;
+    }
+
+
+    /**
+     * Configuration of the snapshots.
+     *
+     * @param snapshotInterval the number of events after which a snapshot is taken
+     */
+    public record Config(int snapshotInterval) {
+
+        /**
+         * Gets the default configuration: a snapshot every 10000 events. It can be overridden
+         * with the {@code banking.ledger.eventSourced.snapshotInterval} system property.
+         *
+         * @return the default configuration
+         */
+        public static Config defaults() {
+            return new Config(Integer.getInteger("banking.ledger.eventSourced.snapshotInterval", 10000));
+        }
+
+    }
+
+
+    /**
+     * A snapshot of the ledger's statistics.
+     *
+     * @param snapshotTransactionID the ID of the last event included in the latest snapshot
+     * @param replayedEvents        the number of events replayed on load
+     * @param replayTime            the time loading the snapshot and replaying took
+     * @param postingCount          the number of postings appended by this ledger
+     * @param caughtUpEvents        the number of events of other writers replayed after loading
+     * @param snapshotCount         the number of snapshots taken by this ledger
+     * @param eventsSinceSnapshot   the number of events after the latest snapshot
+     * @param accounts              the number of accounts with a derived balance
+     */
+    public record Stats(long snapshotTransactionID, long replayedEvents, Duration replayTime, long postingCount,
+                        long caughtUpEvents, long snapshotCount, long eventsSinceSnapshot, int accounts) { }
+
+
+    /// Checks a posting within the open transaction and returns the transaction to record.
+    @FunctionalInterface
+    private interface Validation {
+        Transaction validate(Connection connection) throws SQLException;
+    }
+
+
+    /**
+     * An open-addressing hash table from account numbers to balances in parallel primitive
+     * arrays, with linear probing, so replaying millions of events boxes nothing. Accounts
+     * are only removed by deleteAccount, which rebuilds the table without them.
+     */
+    private static final class BalanceTable {
+
+        private final int mask;
+        private final boolean[] used;
+        private final int[] accountNumbers;
+        private final long[] balances;
+        private int size;
+
+        private BalanceTable(int capacity) {
+            mask = capacity - 1;
+            used = new boolean[capacity];
+            accountNumbers = new int[capacity];
+            balances = new long[capacity];
+        }
+
+        /// Spreads the bits of an account number, as consecutive numbers are common.
+        private static int mix(int accountNumber) {
+            int hash = accountNumber * 0x9E3779B9;
+            return hash ^ (hash >>> 16);
+        }
+
+        /// Gets the balance of an account, or 0 if it has none.
+        private long get(int accountNumber) {
+            for (int i = mix(accountNumber) & mask; used[i]; i = (i + 1) & mask) {
+                if (accountNumbers[i] == accountNumber)
+                    return balances[i];
+            }
+            return 0;
+        }
+
+        /**
+         * Adds an amount to the balance of an account, adding the account if needed.
+         *
+         * @return this table, or a larger copy if this one was too full
+         */
+        private BalanceTable add(int accountNumber, long amount) {
+            int i = mix(accountNumber) & mask;
+            for (; used[i]; i = (i + 1) & mask) {
+                if (accountNumbers[i] == accountNumber) {
+                    balances[i] += amount;
+                    return this;
+                }
+            }
+
+            if ((size + 1) * 4 > used.length * 3)
+                return resize(used.length * 2).add(accountNumber, amount);
+
+            used[i] = true;
+            accountNumbers[i] = accountNumber;
+            balances[i] = amount;
+            size++;
+            return this;
+        }
+
+        /// Gets a copy of this table without the given account.
+        private BalanceTable without(int accountNumber) {
+            BalanceTable copy = new BalanceTable(used.length);
+            for (int i = 0; i < used.length; i++) {
+                if (used[i] && accountNumbers[i] != accountNumber)
+                    copy.add(accountNumbers[i], balances[i]);
+            }
+            return copy;
+        }
+
+        private BalanceTable resize(int capacity) {
+            BalanceTable target = new BalanceTable(capacity);
+            for (int i = 0; i < used.length; i++) {
+                if (used[i])
+                    target.add(accountNumbers[i], balances[i]);
+            }
+            return target;
+        }
+
+    }
+
+}
@@ -0,0 +1,388 @@
+package banking.data;
+
+import banking.model.Account;
+import banking.model.Transaction;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * GroupCommitLedger is a LedgerEngine that trades a few milliseconds of latency for throughput.
+ * Postings from any number of threads are queued, and a single committer thread applies them
+ * in batches: a batch is closed after {@link Config#maxDelay()} has passed since its first posting
+ * or when it holds {@link Config#maxBatchSize()} postings, and is committed as one SQLite
+ * transaction, so the cost of a commit (and its fsync) is shared by the whole batch.
+ * <p>
+ * Every posting runs inside its own savepoint, so a rejected posting (e.g. insufficient funds)
+ * is rolled back alone and the rest of the batch still commits. A caller's future completes
+ * only after the commit of its batch, or exceptionally if its posting was rejected or the batch
+ * could not be committed. Any other failure rolls the whole batch back and fails all of its futures;
+ * the committer keeps running. In-memory accounts are updated before the futures complete.
+ */
+public class GroupCommitLedger implements LedgerEngine, AutoCloseable {
+
+    private static GroupCommitLedger instance;
+
+    private final Config config;
+    private final LedgerManager ledgerManager = new LedgerManager();
+    private final BlockingQueue<PendingPosting> queue = new LinkedBlockingQueue<>();
+    private final Object submitLock = new Object();
+    private final Thread committer;
+    private boolean closed;
+
+    private final AtomicLong postingCount = new AtomicLong();
+    private final AtomicLong batchCount = new AtomicLong();
+    private final AtomicLong failedBatchCount = new AtomicLong();
+
+
+    /**
+     * Creates a ledger and starts its committer thread.
+     *
+     * @param config the batching configuration
+     */
+    public GroupCommitLedger(Config config) {
+        if (config.maxBatchSize() < 1 || config.maxDelay().isNegative() || !config.commitTimeout().isPositive())
+            throw new IllegalArgumentException("Invalid group commit configuration: " + config);
+
+        this.config = config;
+        committer = new Thread(this::runCommitter, "ledger-group-committer");
+        committer.setDaemon(true);
+        committer.start();
+    }
+
+
+    /**
+     * Gets the shared instance, created with {@link Config#defaults()} on first use.
+     *
+     * @return the shared GroupCommitLedger
+     */
+    public static synchronized GroupCommitLedger getInstance() {
+        if (instance == null)
+            instance = new GroupCommitLedger(Config.defaults());
+        return instance;
+    }
+
+
+    /// Closes the shared instance, if any, after committing the postings already queued.
+    public static synchronized void shutdown() {
+        if (instance != null) {
+            instance.close();
+            instance = null;
+        }
+    }
+
+
+    /**
+     * Queues a deposit.
+     *
+     * @param account the account to deposit to
+     * @param amount  the amount to deposit in minor units
+     * @return a future completed with the recorded transaction once its batch is committed
+     * @throws IllegalStateException if the ledger is closed
+     */
+    public CompletableFuture<Transaction> submitDeposit(Account account, long amount) {
+        return submit(connection -> ledgerManager.recordDeposit(connection, account, amount),
+                () -> account.deposit(amount));
+    }
+
+
+    /**
+     * Queues a withdrawal.
+     *
+     * @param account the account to withdraw from
+     * @param amount  the amount to withdraw in minor units
+     * @return a future completed with the recorded transaction once its batch is committed
+     * @throws IllegalStateException if the ledger is closed
+     */
+    public CompletableFuture<Transaction> submitWithdrawal(Account account, long amount) {
+        return submit(connection -> ledgerManager.recordWithdrawal(connection, account, amount),
+                () -> account.withdraw(amount));
+    }
+
+
+    /**
+     * Queues a transfer.
+     *
+     * @param sender                the account to transfer from
+     * @param receiverAccountNumber the account number to transfer to
+     * @param amount                the amount to transfer in minor units
+     * @param comment               the comment recorded with the transaction
+     * @return a future completed with the recorded transaction once its batch is committed
+     * @throws IllegalStateException if the ledger is closed
+     */
+    public CompletableFuture<Transaction> submitTransfer(Account sender, int receiverAccountNumber, long amount, String comment) {
+        return submit(connection -> ledgerManager.recordTransfer(connection, sender, receiverAccountNumber, amount, comment),
+                () -> sender.withdraw(amount));
+    }
+
+
+    /// Queues a deposit and waits until its batch is committed.
+    @Override
+    public Transaction postDeposit(Account account, long amount) throws SQLException {
+        return await(submitDeposit(account, amount));
+    }
+
+
+    /// Queues a withdrawal and waits until its batch is committed.
+    @Override
+    public Transaction postWithdrawal(Account account, long amount) throws SQLException {
+        return await(submitWithdrawal(account, amount));
+    }
+
+
+    /// Queues a transfer and waits until its batch is committed.
+    @Override
+    public Transaction postTransfer(Account sender, int receiverAccountNumber, long amount, String comment) throws SQLException {
+        return await(submitTransfer(sender, receiverAccountNumber, amount, comment));
+    }
+
+
+    /// Gets the batching configuration.
+    public Config getConfig() {
+        return config;
+    }
+
+
+    /// Gets a snapshot of the committer's statistics.
+    public Stats getStats() {
+        return new Stats(postingCount.get(), batchCount.get(), failedBatchCount.get(), queue.size());
+    }
+
+
+    /**
+     * Stops accepting postings, waits until the queued postings are committed
+     * and stops the committer thread.
+     */
+    @Override
+    public void close() {
+        synchronized (submitLock) {
+            closed = true;
+        }
+
+        try {
+            committer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+
+    /// Queues a posting, unless the ledger is closed.
+    private CompletableFuture<Transaction> submit(LedgerManager.Posting posting, Runnable afterCommit) {
+        PendingPosting pending = new PendingPosting(posting, afterCommit, new CompletableFuture<>());
+
+        synchronized (submitLock) {
+            if (closed)
+                throw new IllegalStateException("The group commit ledger is closed");
+            queue.add(pending);
+        }
+        return pending.future();
+    }
+
+
+    /**
+     * Waits for a posting, at most {@link Config#commitTimeout()}, and rethrows its failure
+     * the way LedgerManager would throw it. A posting that is still queued when the wait
+     * times out is withdrawn, so it is never applied.
+     *
+     * @param future the future of the posting
+     * @return the recorded transaction
+     * @throws SQLException when the batch failed, the wait timed out or was interrupted
+     */
+    private Transaction await(CompletableFuture<Transaction> future) throws SQLException {
+        try {
+            return future.get(config.commitTimeout().toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for the group commit", e);
+        } catch (TimeoutException e) {
+            if (queue.removeIf(pending -> pending.future() == future))
+                throw new SQLException("Timed out waiting for the group commit; the posting was not applied", e);
+            // Its batch is being committed, so it may still succeed
+            throw new SQLException("Timed out waiting for the group commit; the outcome of the posting is unknown", e);
+        } catch (ExecutionException e) {
+            switch (e.getCause()) {
+                case SQLException cause -> throw cause;
+                case RuntimeException cause -> throw cause;
+                default -> throw new SQLException("Group commit failed", e.getCause());
+            }
+        }
+    }
+
+
+    /// Collects batches and commits them until the ledger is closed and the queue is drained.
+    private void runCommitter() {
+        List<PendingPosting> batch = new ArrayList<>(config.maxBatchSize());
+
+        while (true) {
+            try {
+                PendingPosting first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    synchronized (submitLock) {
+                        if (closed && queue.isEmpty())
+                            return;
+                    }
+                    continue;
+                }
+
+                batch.add(first);
+                long deadline = System.nanoTime() + config.maxDelay().toNanos();
+
+                while (batch.size() < config.maxBatchSize()) {
+                    // Take whatever is already queued without waiting, then wait until the deadline
+                    PendingPosting next = queue.poll();
+                    if (next == null) {
+                        long remaining = deadline - System.nanoTime();
+                        if (remaining <= 0)
+                            break;
+                        next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                        if (next == null)
+                            break;
+                    }
+                    batch.add(next);
+                }
+
+                commitBatch(batch);
+            } catch (InterruptedException e) {
+                // Only close() stops the committer; postings already taken from the queue must still be committed
+                if (!batch.isEmpty())
+                    commitBatch(batch);
+            } catch (RuntimeException | Error e) {
+                // A dead committer would leave every caller waiting; fail this batch and keep going
+                System.err.println("Group commit failed: " + e);
+                for (PendingPosting pending : batch)
+                    pending.future().completeExceptionally(e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+
+    /**
+     * Applies a batch in one transaction, each posting in its own savepoint, commits it
+     * and then completes the futures. A posting that throws is rolled back to its savepoint;
+     * if anything else fails, the whole batch is rolled back and all of its futures fail.
+     *
+     * @param batch the postings to commit together
+     */
+    private void commitBatch(List<PendingPosting> batch) {
+        Transaction[] results = new Transaction[batch.size()];
+        Exception[] failures = new Exception[batch.size()];
+
+        try (Connection connection = DatabaseManager.getInstance().getWriteConnection()) {
+            connection.setAutoCommit(false);
+
+            try {
+                for (int i = 0; i < batch.size(); i++) {
+                    Savepoint savepoint = connection.setSavepoint();
+                    try {
+                        results[i] = batch.get(i).posting().apply(connection);
+                        connection.releaseSavepoint(savepoint);
+                    } catch (SQLException | RuntimeException e) {
+                        connection.rollback(savepoint);
+                        connection.releaseSavepoint(savepoint);
+                        failures[i] = e;
+                    }
+                }
+
+                connection.commit();
+
+            } catch (Throwable e) {
+                // Restoring autocommit below would otherwise commit the half-applied batch
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        } catch (SQLException | RuntimeException | Error e) {
+            failedBatchCount.incrementAndGet();
+            for (PendingPosting pending : batch)
+                pending.future().completeExceptionally(e);
+            return;
+        }
+
+        batchCount.incrementAndGet();
+        postingCount.addAndGet(batch.size());
+
+        for (int i = 0; i < batch.size(); i++) {
+            PendingPosting pending = batch.get(i);
+
+            if (failures[i] != null) {
+                pending.future().completeExceptionally(failures[i]);
+                continue;
+            }
+
+            LedgerManager.invalidateCached(results[i]);
+            try {
+                pending.afterCommit().run();
+            } catch (RuntimeException e) {
+                // The posting is durable; only the caller's in-memory copy is out of date
+                System.err.println("Failed to update account after group commit: " + e.getMessage());
+            }
+            pending.future().complete(results[i]);
+        }
+    }
+
+
+    /**
+     * Configuration of the batching.
+     *
+     * @param maxDelay      the longest time a batch stays open after its first posting
+     * @param maxBatchSize  the number of postings that closes a batch immediately
+     * @param commitTimeout the longest time a blocking post waits for its batch to commit
+     */
+    public record Config(Duration maxDelay, int maxBatchSize, Duration commitTimeout) {
+
+        /**
+         * Gets the default configuration: batches of up to 256 postings, open for at most 5 ms,
+         * and posts that wait at most 60 seconds. They can be overridden with the
+         * {@code banking.ledger.groupCommit.delayMillis}, {@code banking.ledger.groupCommit.maxBatch}
+         * and {@code banking.ledger.groupCommit.timeoutMillis} system properties.
+         *
+         * @return the default configuration
+         */
+        public static Config defaults() {
+            return new Config(Duration.ofMillis(Long.getLong("banking.ledger.groupCommit.delayMillis", 5)),
+                    Integer.getInteger("banking.ledger.groupCommit.maxBatch", 256),
+                    Duration.ofMillis(Long.getLong("banking.ledger.groupCommit.timeoutMillis", 60000)));
+        }
+
+    }
+
+
+    /**
+     * A snapshot of the committer's statistics.
+     *
+     * @param postingCount     the number of postings in committed batches, including rejected ones
+     * @param batchCount       the number of committed batches
+     * @param failedBatchCount the number of batches that could not be committed
+     * @param queuedPostings   the number of postings waiting for the next batch
+     */
+    public record Stats(long postingCount, long batchCount, long failedBatchCount, int queuedPostings) {
+
+        /// Gets the average number of postings per committed batch.
+        public double averageBatchSize() {
+            return batchCount == 0 ? 0 : (double) postingCount / batchCount;
+        }
+
+    }
+
+
+    /// A queued posting, the in-memory update to run after its commit and the caller's future.
+    private record PendingPosting(LedgerManager.Posting posting, Runnable afterCommit,
+                                  CompletableFuture<Transaction> future) { }
+
+}
@@ -0,0 +1,464 @@
+package banking.data;
+
+import banking.model.Transaction;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * IdempotencyStore makes postings safe to submit more than once. The caller names every
+ * logical request with an idempotency key; the first submission of a key runs the posting,
+ * and every later one returns its result without running it again, so a double-click or a
+ * retried request never moves money twice.
+ * <p>
+ * Keys are persisted in the IdempotencyKeys table. A key is reserved with an INSERT before its
+ * posting runs, so of two submissions racing in different processes only one gets to post;
+ * the reservation is completed with the transaction ID, or released if the posting is rejected,
+ * so a rejected request can be retried with the same key. While the posting runs, its key is
+ * bound to the thread, and a {@link LedgerManager} posting completes it in its own transaction,
+ * so the money and the completed key are committed together. Engines that commit elsewhere are
+ * completed afterwards. A reservation left behind by a crash is never run again: the posting
+ * may or may not have happened, and submissions of the key are refused until it expires.
+ * <p>
+ * In front of the table sits a bounded, time-limited cache of completed keys, and submissions
+ * of a key already running in this process wait for it, up to the wait timeout, instead of
+ * going to the database.
+ */
+public class IdempotencyStore {
+
+    /// Longest accepted idempotency key.
+    public static final int MAX_KEY_LENGTH = 128;
+
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    // The key of the posting running on this thread, completed within the posting's transaction
+    private static final ThreadLocal<PendingKey> PENDING = new ThreadLocal<>();
+
+    private static IdempotencyStore instance;
+
+    private final Config config;
+    private final Map<String, CachedResult> cache;
+    private final Map<String, CompletableFuture<Result>> running = new ConcurrentHashMap<>();
+    private long lastPurge;
+
+    private final AtomicLong executedCount = new AtomicLong();
+    private final AtomicLong cacheHitCount = new AtomicLong();
+    private final AtomicLong storedHitCount = new AtomicLong();
+    private final AtomicLong purgedCount = new AtomicLong();
+
+
+    /**
+     * Creates a store with an empty cache.
+     *
+     * @param config the cache bounds and key retention
+     * @throws IllegalArgumentException if the configuration is invalid
+     */
+    public IdempotencyStore(Config config) {
+        if (config.maxCachedKeys() < 1 || config.cacheTtl().isNegative() || config.retention().isNegative()
+                || config.waitTimeout().isNegative())
+            throw new IllegalArgumentException("Invalid idempotency configuration: " + config);
+
+        this.config = config;
+        cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedResult> eldest) {
+                return size() > config.maxCachedKeys();
+            }
+        };
+    }
+
+
+    /**
+     * Gets the shared instance, created with {@link Config#defaults()} on first use.
+     *
+     * @return the shared IdempotencyStore
+     */
+    public static synchronized IdempotencyStore getInstance() {
+        if (instance == null)
+            instance = new IdempotencyStore(Config.defaults());
+        return instance;
+    }
+
+
+    /**
+     * Runs a posting once per idempotency key. A repeated submission of a completed key returns
+     * the first result with {@link Result#replayed()} set and changes nothing.
+     *
+     * @param key     the idempotency key naming the request
+     * @param request the posting's type, accounts and amount, which every submission of the key must repeat
+     * @param posting the posting to run on the first submission
+     * @return the result of the posting
+     * @throws SQLException             when a database error occurs, or the posting fails with one
+     * @throws IllegalArgumentException if the key is invalid, was used for a different request,
+     *                                  belongs to a posting with an unknown outcome or one still running
+     *                                  after the wait timeout, or the posting is rejected
+     */
+    public Result execute(String key, Request request, Posting posting) throws SQLException {
+        if (key == null || key.isBlank() || key.length() > MAX_KEY_LENGTH)
+            throw new IllegalArgumentException("Idempotency key must have 1 to " + MAX_KEY_LENGTH + " characters");
+
+        while (true) {
+            Result cached = getCached(key, request);
+            if (cached != null) {
+                cacheHitCount.incrementAndGet();
+                return cached;
+            }
+
+            CompletableFuture<Result> own = new CompletableFuture<>();
+            CompletableFuture<Result> other = running.putIfAbsent(key, own);
+            if (other == null) {
+                try {
+                    Result result = executeReserved(key, request, posting);
+                    own.complete(result);
+                    return result;
+                } catch (SQLException | RuntimeException e) {
+                    own.completeExceptionally(e);
+                    throw e;
+                } finally {
+                    running.remove(key, own);
+                }
+            }
+
+            // The same key is running in this process; a completed key is served by the cache next, a rejected one runs again
+            try {
+                other.get(config.waitTimeout().toNanos(), TimeUnit.NANOSECONDS);
+            } catch (ExecutionException e) {
+                // The other submission was rejected and released the key
+            } catch (TimeoutException e) {
+                throw new IllegalArgumentException("A request with this idempotency key is still in progress, please try again");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Interrupted while waiting for idempotency key " + key, e);
+            }
+        }
+    }
+
+
+    /**
+     * Deletes the keys older than the retention from the table. Their requests
+     * run again when submitted after that.
+     *
+     * @return the number of deleted keys
+     * @throws SQLException when a database error occurs
+     */
+    public int purgeExpired() throws SQLException {
+        String cutoff = LocalDateTime.now().minus(config.retention()).format(DATE_FORMAT);
+
+        int deleted;
+        try (Connection connection = DatabaseManager.getInstance().getWriteConnection();
+             PreparedStatement statement = connection.prepareStatement("DELETE FROM IdempotencyKeys WHERE created_at < ?")) {
+            statement.setString(1, cutoff);
+            deleted = statement.executeUpdate();
+        }
+
+        purgedCount.addAndGet(deleted);
+        return deleted;
+    }
+
+
+    /// Removes every cached key, e.g. after the table was changed outside this store.
+    public synchronized void clearCache() {
+        cache.clear();
+    }
+
+
+    /// Gets the cache bounds and key retention.
+    public Config getConfig() {
+        return config;
+    }
+
+
+    /// Gets a snapshot of the store's statistics.
+    public Stats getStats() {
+        int cachedKeys;
+        synchronized (this) {
+            cachedKeys = cache.size();
+        }
+        return new Stats(cachedKeys, executedCount.get(), cacheHitCount.get(), storedHitCount.get(), purgedCount.get());
+    }
+
+
+    /**
+     * Completes the idempotency key bound to this thread, if any, within the transaction of the
+     * posting that runs for it. Called by {@link LedgerManager} before it commits; if the commit
+     * fails, the posting throws and the key is released.
+     *
+     * @param connection    the connection of the posting's open transaction
+     * @param transactionID the ID of the posting's transaction
+     * @throws SQLException when a database error occurs
+     */
+    static void completeWithin(Connection connection, int transactionID) throws SQLException {
+        PendingKey pending = PENDING.get();
+        if (pending == null || pending.completed)
+            return;
+
+        complete(connection, pending.key, transactionID);
+        pending.completed = true;
+    }
+
+
+    /**
+     * Runs a posting while this thread owns the key in this process: reserves the key,
+     * or returns the stored result if it is already completed, then runs and completes it.
+     */
+    private Result executeReserved(String key, Request request, Posting posting) throws SQLException {
+        purgeIfDue();
+
+        if (!reserve(key, request)) {
+            Result stored = loadStored(key, request);
+            storedHitCount.incrementAndGet();
+            cache(key, request, stored);
+            return stored;
+        }
+
+        PendingKey pending = new PendingKey(key);
+        Transaction transaction;
+        PENDING.set(pending);
+        try {
+            transaction = posting.run();
+        } catch (SQLException | RuntimeException e) {
+            release(key);
+            throw e;
+        } finally {
+            PENDING.remove();
+        }
+
+        Result result = new Result(transaction.transactionID(), false);
+        if (!pending.completed) {
+            try (Connection connection = DatabaseManager.getInstance().getWriteConnection()) {
+                complete(connection, key, transaction.transactionID());
+            } catch (SQLException e) {
+                // The money has moved; the reservation stays and refuses further submissions of the key
+                System.err.println("Failed to complete idempotency key " + key + ": " + e.getMessage());
+            }
+        }
+
+        executedCount.incrementAndGet();
+        cache(key, request, new Result(result.transactionID(), true));
+        return result;
+    }
+
+
+    /**
+     * Inserts the reservation of a key.
+     *
+     * @return true if the key was reserved, false if it already exists
+     */
+    private boolean reserve(String key, Request request) throws SQLException {
+        String query = "INSERT INTO IdempotencyKeys (idempotency_key, type, account_number, " +
+                "counterparty_account_number, amount, created_at) VALUES (?, ?, ?, ?, ?, ?) ON CONFLICT DO NOTHING";
+
+        try (Connection connection = DatabaseManager.getInstance().getWriteConnection();
+             PreparedStatement statement = connection.prepareStatement(query)) {
+            statement.setString(1, key);
+            statement.setString(2, request.type().name());
+            statement.setInt(3, request.accountNumber());
+            statement.setInt(4, request.counterpartyAccountNumber());
+            statement.setLong(5, request.amount());
+            statement.setString(6, LocalDateTime.now().format(DATE_FORMAT));
+            return statement.executeUpdate() > 0;
+        }
+    }
+
+
+    /**
+     * Loads the result of a key that already exists.
+     *
+     * @throws IllegalArgumentException if the key was used for a different request or is not completed
+     */
+    private Result loadStored(String key, Request request) throws SQLException {
+        String query = "SELECT type, account_number, counterparty_account_number, amount, transaction_id, completed " +
+                "FROM IdempotencyKeys WHERE idempotency_key = ?";
+
+        try (Connection connection = DatabaseManager.getInstance().getReadConnection();
+             PreparedStatement statement = connection.prepareStatement(query)) {
+            statement.setString(1, key);
+            try (ResultSet result = statement.executeQuery()) {
+                // Released by a rejected submission of another process since the reservation failed
+                if (!result.next())
+                    throw new IllegalArgumentException("A request with this idempotency key was just rejected, please try again");
+
+                Request stored = new Request(TransactionManager.Type.valueOf(result.getString("type")),
+                        result.getInt("account_number"), result.getInt("counterparty_account_number"), result.getLong("amount"));
+                if (!stored.equals(request))
+                    throw new IllegalArgumentException("Idempotency key was already used for a different request");
+                if (!result.getBoolean("completed"))
+                    throw new IllegalArgumentException("A request with this idempotency key is in progress or its outcome is unknown");
+
+                return new Result(result.getInt("transaction_id"), true);
+            }
+        }
+    }
+
+
+    /// Stores the transaction ID of a key whose posting has run.
+    private static void complete(Connection connection, String key, int transactionID) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(
+                "UPDATE IdempotencyKeys SET transaction_id = ?, completed = 1 WHERE idempotency_key = ?")) {
+            statement.setInt(1, transactionID);
+            statement.setString(2, key);
+            statement.executeUpdate();
+        }
+    }
+
+
+    /// Deletes the reservation of a key whose posting was rejected, so it can be submitted again.
+    private void release(String key) {
+        try (Connection connection = DatabaseManager.getInstance().getWriteConnection();
+             PreparedStatement statement = connection.prepareStatement(
+                     "DELETE FROM IdempotencyKeys WHERE idempotency_key = ? AND completed = 0")) {
+            statement.setString(1, key);
+            statement.executeUpdate();
+        } catch (SQLException e) {
+            System.err.println("Failed to release idempotency key " + key + ": " + e.getMessage());
+        }
+    }
+
+
+    /**
+     * Gets the cached result of a key, if it has not expired.
+     *
+     * @throws IllegalArgumentException if the key was used for a different request
+     */
+    private synchronized Result getCached(String key, Request request) {
+        CachedResult cached = cache.get(key);
+        if (cached == null)
+            return null;
+        if (System.nanoTime() - cached.cachedAt() > config.cacheTtl().toNanos()) {
+            cache.remove(key);
+            return null;
+        }
+        if (!cached.request().equals(request))
+            throw new IllegalArgumentException("Idempotency key was already used for a different request");
+        return cached.result();
+    }
+
+
+    private synchronized void cache(String key, Request request, Result result) {
+        cache.put(key, new CachedResult(request, result, System.nanoTime()));
+    }
+
+
+    /// Purges the expired keys at most once per minute.
+    private void purgeIfDue() {
+        synchronized (this) {
+            long now = System.nanoTime();
+            if (lastPurge != 0 && now - lastPurge < Duration.ofMinutes(1).toNanos())
+                return;
+            lastPurge = now;
+        }
+
+        try {
+            purgeExpired();
+        } catch (SQLException e) {
+            System.err.println("Failed to purge expired idempotency keys: " + e.getMessage());
+        }
+    }
+
+
+    /// The posting run for the first submission of a key.
+    @FunctionalInterface
+    public interface Posting {
+        Transaction run() throws SQLException;
+    }
+
+
+    /**
+     * What a posting does, stored with its key to recognize a key reused for another request.
+     *
+     * @param type                      the kind of posting
+     * @param accountNumber             the account posted to, or the sender of a transfer
+     * @param counterpartyAccountNumber the receiver of a transfer, otherwise the same account
+     * @param amount                    the amount in minor units
+     */
+    public record Request(TransactionManager.Type type, int accountNumber, int counterpartyAccountNumber, long amount) { }
+
+
+    /**
+     * The result of a submission.
+     *
+     * @param transactionID the ID of the recorded transaction, or 0 if the engine had not assigned one yet
+     * @param replayed      whether the posting ran for an earlier submission and this one changed nothing
+     */
+    public record Result(int transactionID, boolean replayed) { }
+
+
+    private record CachedResult(Request request, Result result, long cachedAt) { }
+
+
+    /// A key bound to the thread running its posting, and whether the posting's transaction completed it.
+    private static final class PendingKey {
+
+        private final String key;
+        private boolean completed;
+
+        private PendingKey(String key) {
+            this.key = key;
+        }
+
+    }
+
+
+    /**
+     * Configuration of the store.
+     *
+     * @param maxCachedKeys the number of completed keys cached before the least recently used is evicted
+     * @param cacheTtl      how long a completed key stays cached
+     * @param retention     how long a key is kept in the table
+     * @param waitTimeout   how long a submission waits for the same key running in this process
+     */
+    public record Config(int maxCachedKeys, Duration cacheTtl, Duration retention, Duration waitTimeout) {
+
+        private static final Duration DEFAULT_WAIT_TIMEOUT = Duration.ofSeconds(30);
+
+        /// Creates a configuration with the default wait timeout.
+        public Config(int maxCachedKeys, Duration cacheTtl, Duration retention) {
+            this(maxCachedKeys, cacheTtl, retention, DEFAULT_WAIT_TIMEOUT);
+        }
+
+
+        /**
+         * Gets the default configuration: 10000 cached keys for 10 minutes, keys kept for 24 hours,
+         * and waits for a running key of up to 30 seconds. They can be overridden with the
+         * {@code banking.idempotency.maxCachedKeys}, {@code banking.idempotency.cacheTtlSeconds},
+         * {@code banking.idempotency.retentionHours} and {@code banking.idempotency.waitSeconds}
+         * system properties.
+         *
+         * @return the default configuration
+         */
+        public static Config defaults() {
+            return new Config(Integer.getInteger("banking.idempotency.maxCachedKeys", 10000),
+                    Duration.ofSeconds(Long.getLong("banking.idempotency.cacheTtlSeconds", 600)),
+                    Duration.ofHours(Long.getLong("banking.idempotency.retentionHours", 24)),
+                    Duration.ofSeconds(Long.getLong("banking.idempotency.waitSeconds", DEFAULT_WAIT_TIMEOUT.toSeconds())));
+        }
+
+    }
+
+
+    /**
+     * A snapshot of the store's statistics.
+     *
+     * @param cachedKeys     the number of cached keys
+     * @param executedCount  the number of postings run
+     * @param cacheHitCount  the number of repeated submissions answered from the cache
+     * @param storedHitCount the number of repeated submissions answered from the table
+     * @param purgedCount    the number of expired keys deleted
+     */
+    public record Stats(int cachedKeys, long executedCount, long cacheHitCount, long storedHitCount, long purgedCount) { }
+
+}
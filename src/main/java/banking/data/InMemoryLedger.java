@@ -0,0 +1,1126 @@
+package banking.data;
+
+import banking.model.Account;
+import banking.model.Transaction;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+
+/**
+ * InMemoryLedger is a LedgerEngine that keeps the balance and frozen flag of every account it
+ * has seen in memory and applies postings there, so a posting costs a few lock acquisitions
+ * instead of a SQLite commit. Committed postings are journaled to SQLite by a background thread
+ * in batches, in the order they were applied.
+ * <p>
+ * Accounts are loaded from the database on first use and kept in an open-addressing table of
+ * primitive arrays indexed by account number. An account is read again once its refresh interval
+ * has passed and none of its changes are still on their way to the database, so changes written
+ * outside this engine show up. Every account maps to one of a fixed number of
+ * lock stripes; a posting holds the stripes of the accounts it changes, and a transfer takes its
+ * two stripes in ascending order, so concurrent transfers in opposite directions cannot deadlock.
+ * Journal entries are queued while the stripes are held, so the database sees the changes of an
+ * account in the same order as memory did.
+ * <p>
+ * With a {@link LedgerJournal} configured, every change is appended to the journal file before
+ * it is applied in memory, and each database batch records the last sequence it wrote. A crash
+ * then loses nothing: on startup the entries after that checkpoint are read back from the file
+ * and written to the database before the ledger is used. Without one, a posting returns before
+ * it is durable and a crash loses the postings still queued.
+ * <p>
+ * A batch the database keeps failing is retried a few times with backoff. After that the journal
+ * thread stops and the ledger refuses further postings, since memory is ahead of the database;
+ * the entries left are recovered from the journal file on the next start. An entry the database
+ * rejects, e.g. a withdrawal from an account changed outside this engine, is a posting the caller
+ * was told succeeded, so it stops the ledger too: no more postings are accepted and
+ * {@link #flush()} fails, while the entries already queued are still written.
+ * <p>
+ * The returned transaction has no ID yet. Reads from the database trail memory until
+ * {@link #flush()} returns. While this engine is used, accounts must be frozen, unfrozen and
+ * deleted through it.
+ */
+public class InMemoryLedger implements LedgerEngine, AutoCloseable {
+
+    // Attempts of a journal batch before the journal thread gives up; the backoff between them adds up to about 5 s
+    private static final int MAX_BATCH_ATTEMPTS = 10;
+
+    private static InMemoryLedger instance;
+
+    private final Config config;
+    private final AccountManager accountManager = new AccountManager();
+    private final TransactionManager transactionManager = new TransactionManager();
+
+    // Postings hold the read lock while they use slots of the table; loading an account or growing the table takes the write lock
+    private final ReentrantReadWriteLock tableLock = new ReentrantReadWriteLock();
+    private final ReentrantLock[] stripes;
+    private AccountTable table = new AccountTable(1024);
+
+    private final BlockingQueue<LedgerJournal.Entry> journal = new LinkedBlockingQueue<>();
+    private final LedgerJournal journalFile;
+    private final Object submitLock = new Object();
+    private final Object flushLock = new Object();
+    private final Thread journaler;
+    private long lastSequence;
+    private long journaledSequence;
+    private boolean closed;
+    private Throwable failure;
+    private boolean journalerStopped;
+
+    private final AtomicLong postingCount = new AtomicLong();
+    private final AtomicLong journaledCount = new AtomicLong();
+    private final AtomicLong batchCount = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+    private final AtomicLong retryCount = new AtomicLong();
+    private final AtomicLong refreshCount = new AtomicLong();
+    private final long recoveredSequence;
+    private final int recoveredCount;
+
+
+    /**
+     * Creates a ledger and starts its journal thread. With a journal file configured, the
+     * entries the database is missing are recovered from it and written before this returns.
+     *
+     * @param config the lock striping and journal configuration
+     * @throws IllegalArgumentException if the configuration is invalid
+     * @throws IllegalStateException    if the journal checkpoint cannot be read or recovery fails
+     * @throws UncheckedIOException     if the journal file cannot be opened
+     */
+    public InMemoryLedger(Config config) {
+        if (config.stripes() < 1 || Integer.bitCount(config.stripes()) != 1)
+            throw new IllegalArgumentException("The number of lock stripes must be a power of two: " + config.stripes());
+        if (config.maxBatchSize() < 1 || config.maxDelay().isNegative() || config.refreshInterval().isNegative())
+            throw new IllegalArgumentException("Invalid journal configuration: " + config);
+
+        this.config = config;
+        stripes = new ReentrantLock[config.stripes()];
+        for (int i = 0; i < stripes.length; i++)
+            stripes[i] = new ReentrantLock();
+
+        int recovered = 0;
+        if (config.journal() == null) {
+            journalFile = null;
+        } else {
+            try (Connection connection = DatabaseManager.getInstance().getReadConnection()) {
+                long checkpoint = LedgerJournal.loadCheckpoint(connection);
+                journalFile = new LedgerJournal(config.journal(), checkpoint);
+                lastSequence = journaledSequence = checkpoint;
+            } catch (SQLException e) {
+                throw new IllegalStateException("Failed to read the ledger journal checkpoint", e);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to open the ledger journal", e);
+            }
+
+            journal.addAll(journalFile.getPending());
+            recovered = journal.size();
+            lastSequence = journalFile.getLastSequence();
+        }
+        recoveredSequence = lastSequence;
+        recoveredCount = recovered;
+
+        journaler = new Thread(this::runJournaler, "ledger-journaler");
+        journaler.setDaemon(true);
+        journaler.start();
+
+        // The journal thread may already have taken the entries from the queue
+        if (recovered > 0) {
+            try {
+                flush();
+            } catch (SQLException e) {
+                throw new IllegalStateException("Failed to recover the ledger journal", e);
+            }
+        }
+    }
+
+
+    /**
+     * Gets the shared instance, created with {@link Config#defaults()} on first use.
+     *
+     * @return the shared InMemoryLedger
+     */
+    public static synchronized InMemoryLedger getInstance() {
+        if (instance == null)
+            instance = new InMemoryLedger(Config.defaults());
+        return instance;
+    }
+
+
+    /// Closes the shared instance, if any, after journaling the postings already applied.
+    public static synchronized void shutdown() {
+        if (instance != null) {
+            instance.close();
+            instance = null;
+        }
+    }
+
+
+    /**
+     * Deposits money into an account in memory and queues the deposit for the journal.
+     *
+     * @param account the account to deposit to; updated in memory before returning
+     * @param amount  the amount to deposit in minor units
+     * @return the transaction, without an ID until it is journaled
+     * @throws SQLException             when the account cannot be loaded
+     * @throws IllegalArgumentException if the amount is not positive or the account does not exist or is frozen
+     */
+    @Override
+    public Transaction postDeposit(Account account, long amount) throws SQLException {
+        if (amount <= 0)
+            throw new IllegalArgumentException("Deposit amount must be positive");
+
+        int accountNumber = account.getAccountNumber();
+        Transaction transaction = new Transaction(account, account, amount, LedgerManager.DEPOSIT_COMMENT, LocalDateTime.now());
+        load(accountNumber);
+
+        tableLock.readLock().lock();
+        int stripe = stripeOf(accountNumber);
+        lockStripes(stripe, stripe);
+        try {
+            int slot = table.find(accountNumber);
+            if (slot < 0)
+                throw new IllegalArgumentException("Account does not exist");
+            if (table.frozen[slot])
+                throw new IllegalArgumentException("Cannot deposit to a frozen account");
+
+            append(LedgerJournal.Operation.DEPOSIT, accountNumber, accountNumber, amount, transaction);
+            table.balances[slot] += amount;
+            table.changed(slot);
+        } finally {
+            unlockStripes(stripe, stripe);
+            tableLock.readLock().unlock();
+        }
+
+        postingCount.incrementAndGet();
+        account.deposit(amount);
+        return transaction;
+    }
+
+
+    /**
+     * Withdraws money from an account in memory and queues the withdrawal for the journal.
+     *
+     * @param account the account to withdraw from; updated in memory before returning
+     * @param amount  the amount to withdraw in minor units
+     * @return the transaction, without an ID until it is journaled
+     * @throws SQLException             when the account cannot be loaded
+     * @throws IllegalArgumentException if the amount is not positive, exceeds the balance,
+     *                                  or the account does not exist or is frozen
+     */
+    @Override
+    public Transaction postWithdrawal(Account account, long amount) throws SQLException {
+        if (amount <= 0)
+            throw new IllegalArgumentException("Withdrawal amount must be positive");
+
+        int accountNumber = account.getAccountNumber();
+        Transaction transaction = new Transaction(account, account, amount, LedgerManager.WITHDRAWAL_COMMENT, LocalDateTime.now());
+        load(accountNumber);
+
+        tableLock.readLock().lock();
+        int stripe = stripeOf(accountNumber);
+        lockStripes(stripe, stripe);
+        try {
+            int slot = table.find(accountNumber);
+            if (slot < 0)
+                throw new IllegalArgumentException("Account does not exist");
+            if (table.frozen[slot])
+                throw new IllegalArgumentException("Cannot withdraw from a frozen account");
+            if (table.balances[slot] < amount)
+                throw new IllegalArgumentException("Insufficient funds");
+
+            append(LedgerJournal.Operation.WITHDRAWAL, accountNumber, accountNumber, amount, transaction);
+            table.balances[slot] -= amount;
+            table.changed(slot);
+        } finally {
+            unlockStripes(stripe, stripe);
+            tableLock.readLock().unlock();
+        }
+
+        postingCount.incrementAndGet();
+        account.withdraw(amount);
+        return transaction;
+    }
+
+
+    /**
+     * Transfers money to another account in memory and queues the transfer for the journal.
+     *
+     * @param sender                the account to transfer from; updated in memory before returning
+     * @param receiverAccountNumber the account number to transfer to
+     * @param amount                the amount to transfer in minor units
+     * @param comment               the comment recorded with the transaction
+     * @return the transaction, without an ID until it is journaled
+     * @throws SQLException             when an account cannot be loaded
+     * @throws IllegalArgumentException if the transfer is not allowed; nothing is changed
+     */
+    @Override
+    public Transaction postTransfer(Account sender, int receiverAccountNumber, long amount, String comment) throws SQLException {
+        int senderAccountNumber = sender.getAccountNumber();
+        if (amount <= 0)
+            throw new IllegalArgumentException("Transfer amount must be positive");
+        if (senderAccountNumber == receiverAccountNumber)
+            throw new IllegalArgumentException("Source and destination accounts cannot be the same");
+
+        load(senderAccountNumber);
+        load(receiverAccountNumber);
+        LocalDateTime date = LocalDateTime.now();
+        Transaction transaction;
+
+        tableLock.readLock().lock();
+        int senderStripe = stripeOf(senderAccountNumber);
+        int receiverStripe = stripeOf(receiverAccountNumber);
+        lockStripes(senderStripe, receiverStripe);
+        try {
+            int senderSlot = table.find(senderAccountNumber);
+            if (senderSlot < 0)
+                throw new AccountNotFoundException("Source account does not exist", senderAccountNumber);
+            if (table.frozen[senderSlot])
+                throw new IllegalArgumentException("Cannot transfer from a frozen account");
+            if (table.balances[senderSlot] < amount)
+                throw new IllegalArgumentException("Insufficient funds in source account");
+
+            int receiverSlot = table.find(receiverAccountNumber);
+            if (receiverSlot < 0)
+                throw new AccountNotFoundException("Destination account does not exist", receiverAccountNumber);
+            if (table.frozen[receiverSlot])
+                throw new IllegalArgumentException("Cannot transfer to a frozen account");
+
+            Transaction recorded = new Transaction(sender, table.toAccount(receiverSlot), amount, comment, date);
+            append(LedgerJournal.Operation.TRANSFER, senderAccountNumber, receiverAccountNumber, amount, recorded);
+            table.balances[senderSlot] -= amount;
+            table.balances[receiverSlot] += amount;
+            table.changed(senderSlot);
+            table.changed(receiverSlot);
+            transaction = recorded;
+        } finally {
+            unlockStripes(senderStripe, receiverStripe);
+            tableLock.readLock().unlock();
+        }
+
+        postingCount.incrementAndGet();
+        sender.withdraw(amount);
+        return transaction;
+    }
+
+
+    /**
+     * Freezes or unfreezes an account in memory and queues the change for the journal,
+     * in order with the postings to the account.
+     *
+     * @param account the account to change
+     * @param frozen  the new frozen flag
+     * @throws SQLException             when the account cannot be loaded
+     * @throws IllegalArgumentException if the account does not exist
+     */
+    @Override
+    public void setFrozen(Account account, boolean frozen) throws SQLException {
+        int accountNumber = account.getAccountNumber();
+        load(accountNumber);
+
+        tableLock.readLock().lock();
+        int stripe = stripeOf(accountNumber);
+        lockStripes(stripe, stripe);
+        try {
+            int slot = table.find(accountNumber);
+            if (slot < 0)
+                throw new IllegalArgumentException("Account does not exist");
+
+            append(frozen ? LedgerJournal.Operation.FREEZE : LedgerJournal.Operation.UNFREEZE, accountNumber, accountNumber, 0, null);
+            table.frozen[slot] = frozen;
+            table.changed(slot);
+        } finally {
+            unlockStripes(stripe, stripe);
+            tableLock.readLock().unlock();
+        }
+    }
+
+
+    /**
+     * Deletes an account. It is removed from memory first, so no further postings reach it,
+     * then the journal is flushed and the account is deleted from the database.
+     *
+     * @param account the account to delete
+     * @throws SQLException when a database error occurs; the account is then kept
+     */
+    @Override
+    public void deleteAccount(Account account) throws SQLException {
+        int accountNumber = account.getAccountNumber();
+
+        tableLock.writeLock().lock();
+        try {
+            table.remove(accountNumber);
+        } finally {
+            tableLock.writeLock().unlock();
+        }
+
+        try {
+            flush();
+            accountManager.deleteAccount(account);
+        } catch (SQLException e) {
+            tableLock.writeLock().lock();
+            try {
+                table.restore(accountNumber);
+            } finally {
+                tableLock.writeLock().unlock();
+            }
+            throw e;
+        }
+    }
+
+
+    /**
+     * Waits until every posting applied so far is journaled and visible in the database.
+     *
+     * @throws SQLException if the wait is interrupted, or the ledger stopped accepting postings
+     *                      because an entry was rejected or could not be written
+     */
+    @Override
+    public void flush() throws SQLException {
+        long target;
+        synchronized (submitLock) {
+            target = lastSequence;
+        }
+
+        synchronized (flushLock) {
+            while (journaledSequence < target && !journalerStopped) {
+                try {
+                    flushLock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new SQLException("Interrupted while waiting for the ledger journal", e);
+                }
+            }
+        }
+
+        Throwable cause;
+        synchronized (submitLock) {
+            cause = failure;
+        }
+        if (cause != null)
+            throw new SQLException("The in-memory ledger stopped accepting postings: " + cause.getMessage(), cause);
+    }
+
+
+    /**
+     * Gets the in-memory balance of an account.
+     *
+     * @param accountNumber the account number
+     * @return the balance in minor units
+     * @throws SQLException             when the account cannot be loaded
+     * @throws IllegalArgumentException if the account does not exist
+     */
+    public long getBalance(int accountNumber) throws SQLException {
+        load(accountNumber);
+
+        tableLock.readLock().lock();
+        int stripe = stripeOf(accountNumber);
+        lockStripes(stripe, stripe);
+        try {
+            int slot = table.find(accountNumber);
+            if (slot < 0)
+                throw new IllegalArgumentException("Account does not exist");
+            return table.balances[slot];
+        } finally {
+            unlockStripes(stripe, stripe);
+            tableLock.readLock().unlock();
+        }
+    }
+
+
+    /// Gets the lock striping and journal configuration.
+    public Config getConfig() {
+        return config;
+    }
+
+
+    /// Gets a snapshot of the ledger's statistics.
+    public Stats getStats() {
+        int accounts;
+        tableLock.readLock().lock();
+        try {
+            accounts = table.size;
+        } finally {
+            tableLock.readLock().unlock();
+        }
+
+        return new Stats(postingCount.get(), journaledCount.get(), batchCount.get(), rejectedCount.get(),
+                retryCount.get(), refreshCount.get(), recoveredCount, journal.size(), accounts);
+    }
+
+
+    /**
+     * Stops accepting postings, waits until the applied postings are journaled,
+     * stops the journal thread and closes the journal file.
+     */
+    @Override
+    public void close() {
+        synchronized (submitLock) {
+            closed = true;
+        }
+
+        try {
+            journaler.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (journalFile != null) {
+            try {
+                journalFile.close();
+            } catch (IOException e) {
+                System.err.println("Failed to close the ledger journal: " + e.getMessage());
+            }
+        }
+    }
+
+
+    /**
+     * Loads an account into memory if it is not there yet, or refreshes it if that is due.
+     * The database is read without holding any lock, so postings to other accounts continue
+     * meanwhile.
+     *
+     * @param accountNumber the account number
+     * @throws SQLException when a database error occurs
+     */
+    private void load(int accountNumber) throws SQLException {
+        boolean held;
+        tableLock.readLock().lock();
+        try {
+            int slot = table.find(accountNumber);
+            if (slot >= 0 ? System.nanoTime() - table.refreshAt[slot] < 0 : table.contains(accountNumber))
+                return;
+            held = slot >= 0;
+        } finally {
+            tableLock.readLock().unlock();
+        }
+
+        if (held) {
+            refresh(accountNumber);
+            return;
+        }
+
+        Account account = accountManager.loadAccount(accountNumber);
+        if (account == null)
+            return;
+
+        tableLock.writeLock().lock();
+        try {
+            // Another thread may have loaded it meanwhile, and its copy may have postings applied already
+            if (!table.contains(accountNumber))
+                table = table.put(account, System.nanoTime() + config.refreshInterval().toNanos());
+        } finally {
+            tableLock.writeLock().unlock();
+        }
+    }
+
+
+    /**
+     * Reads a held account from the database again. Only an account with no changes still
+     * on their way to the database is refreshed, otherwise it is tried on a later use, and the
+     * result is dropped if the account changed in memory while the database was read. An
+     * account that no longer exists in the database is removed.
+     *
+     * @param accountNumber the account number
+     * @throws SQLException when a database error occurs
+     */
+    private void refresh(int accountNumber) throws SQLException {
+        long version;
+        tableLock.readLock().lock();
+        int stripe = stripeOf(accountNumber);
+        lockStripes(stripe, stripe);
+        try {
+            int slot = table.find(accountNumber);
+            if (slot < 0 || table.pending[slot] > 0)
+                return;
+            version = table.versions[slot];
+        } finally {
+            unlockStripes(stripe, stripe);
+            tableLock.readLock().unlock();
+        }
+
+        // Past the account cache, which only learns of the writes made in this process
+        Account stored;
+        try (Connection connection = DatabaseManager.getInstance().getReadConnection()) {
+            stored = accountManager.loadAccountInternal(connection, accountNumber);
+        }
+
+        tableLock.writeLock().lock();
+        try {
+            int slot = table.find(accountNumber);
+            if (slot < 0 || table.versions[slot] != version)
+                return;
+
+            if (stored == null) {
+                table.remove(accountNumber);
+            } else {
+                if (table.balances[slot] != stored.getBalance() || table.frozen[slot] != stored.isFrozen())
+                    refreshCount.incrementAndGet();
+                table.balances[slot] = stored.getBalance();
+                table.frozen[slot] = stored.isFrozen();
+                table.refreshAt[slot] = System.nanoTime() + config.refreshInterval().toNanos();
+            }
+        } finally {
+            tableLock.writeLock().unlock();
+        }
+    }
+
+
+    /// Gets the lock stripe of an account.
+    private int stripeOf(int accountNumber) {
+        return AccountTable.mix(accountNumber) & (stripes.length - 1);
+    }
+
+
+    /// Locks two stripes in ascending order, or one if they are the same.
+    private void lockStripes(int first, int second) {
+        stripes[Math.min(first, second)].lock();
+        if (first != second)
+            stripes[Math.max(first, second)].lock();
+    }
+
+
+    /// Unlocks two stripes locked by lockStripes.
+    private void unlockStripes(int first, int second) {
+        if (first != second)
+            stripes[Math.max(first, second)].unlock();
+        stripes[Math.min(first, second)].unlock();
+    }
+
+
+    /**
+     * Queues a change for the journal, after appending it to the journal file if there is one.
+     * Called while the stripes of the changed accounts are held and before the change is applied
+     * in memory, so the changes of every account are queued in the order they were applied.
+     * <p>
+     * Only the sequence, the record and the queue need the global lock, to stay in the same order.
+     * The record is forced to disk after the lock is released, so postings to other accounts
+     * continue meanwhile and share the force.
+     *
+     * @param transaction the transaction recorded with the change, or null when freezing or unfreezing
+     * @throws SQLException             if the journal file cannot be written; nothing is queued
+     * @throws IllegalArgumentException if the comment does not fit in a journal record
+     * @throws IllegalStateException    if the ledger is closed or its journal stopped
+     */
+    private void append(LedgerJournal.Operation operation, int firstAccountNumber, int secondAccountNumber,
+                        long amount, Transaction transaction) throws SQLException {
+        LocalDateTime date = transaction == null ? LocalDateTime.now() : transaction.date();
+        String comment = transaction == null ? null : transaction.comment();
+        LedgerJournal.Entry entry;
+
+        synchronized (submitLock) {
+            if (closed)
+                throw new IllegalStateException("The in-memory ledger is closed");
+            if (failure != null)
+                throw new IllegalStateException("The in-memory ledger stopped accepting postings: " + failure.getMessage(), failure);
+
+            entry = new LedgerJournal.Entry(lastSequence + 1, operation, firstAccountNumber, secondAccountNumber,
+                    amount, date, comment);
+            if (journalFile != null) {
+                try {
+                    journalFile.append(entry);
+                } catch (IOException e) {
+                    throw new SQLException("Failed to write the ledger journal file", e);
+                }
+            }
+            lastSequence = entry.sequence();
+            journal.add(entry);
+        }
+
+        if (journalFile != null) {
+            try {
+                journalFile.sync(entry.sequence());
+            } catch (UncheckedIOException e) {
+                // The entry is queued and still reaches the database, but later ones would not be durable
+                fail("Failed to sync the ledger journal file", e);
+            }
+        }
+    }
+
+
+    /// Makes the ledger refuse further postings, keeping the first cause.
+    private void fail(String message, Throwable cause) {
+        synchronized (submitLock) {
+            if (failure == null)
+                failure = cause;
+        }
+        System.err.println(message + ": " + cause.getMessage());
+    }
+
+
+    /**
+     * Collects batches and journals them until the ledger is closed and the queue is drained.
+     * If a batch cannot be written, or an unexpected error occurs, the ledger stops accepting
+     * postings and waiting flushes fail instead of waiting forever. Between batches, and at
+     * least every sync interval while idle, the journal file is synced if that is due.
+     */
+    private void runJournaler() {
+        List<LedgerJournal.Entry> batch = new ArrayList<>(config.maxBatchSize());
+        long idleNanos = TimeUnit.MILLISECONDS.toNanos(100);
+        if (journalFile != null && config.journal().syncPolicy() == LedgerJournal.SyncPolicy.INTERVAL)
+            idleNanos = Math.clamp(config.journal().syncInterval().toNanos(), TimeUnit.MILLISECONDS.toNanos(1), idleNanos);
+
+        try {
+            while (true) {
+                try {
+                    syncJournalFile();
+                    LedgerJournal.Entry first = journal.poll(idleNanos, TimeUnit.NANOSECONDS);
+                    if (first == null) {
+                        synchronized (submitLock) {
+                            if (closed && journal.isEmpty())
+                                return;
+                        }
+                        continue;
+                    }
+
+                    batch.add(first);
+                    long deadline = System.nanoTime() + config.maxDelay().toNanos();
+
+                    while (batch.size() < config.maxBatchSize()) {
+                        LedgerJournal.Entry next = journal.poll();
+                        if (next == null) {
+                            long remaining = deadline - System.nanoTime();
+                            if (remaining <= 0)
+                                break;
+                            next = journal.poll(remaining, TimeUnit.NANOSECONDS);
+                            if (next == null)
+                                break;
+                        }
+                        batch.add(next);
+                    }
+
+                    journalBatch(batch);
+                } catch (InterruptedException e) {
+                    // Only close() stops the journaler; entries already taken from the queue must still be written
+                    if (!batch.isEmpty())
+                        journalBatch(batch);
+                } finally {
+                    batch.clear();
+                }
+            }
+        } catch (SQLException | RuntimeException e) {
+            stopJournaler(e);
+        } catch (Error e) {
+            stopJournaler(e);
+            throw e;
+        } finally {
+            synchronized (flushLock) {
+                journalerStopped = true;
+                flushLock.notifyAll();
+            }
+        }
+    }
+
+
+    /// Syncs the journal file if its sync interval has passed, so an idle ledger does not leave the last records unsynced.
+    private void syncJournalFile() {
+        if (journalFile == null)
+            return;
+        try {
+            journalFile.syncIfDue();
+        } catch (UncheckedIOException e) {
+            fail("Failed to sync the ledger journal file", e);
+        }
+    }
+
+
+    /// Records why the journal thread stopped, so the ledger refuses further postings.
+    private void stopJournaler(Throwable cause) {
+        fail(journalFile != null
+                ? "Ledger journal stopped; the entries not written are recovered from the journal file on the next start"
+                : "Ledger journal stopped; the postings still queued are lost", cause);
+    }
+
+
+    /**
+     * Writes a batch to the database, retrying with backoff after an error, since its postings
+     * are already applied in memory. Then settles the batch's accounts and wakes up waiting flushes.
+     *
+     * @param batch the entries to write, in queue order
+     * @throws SQLException if the batch still fails after {@value #MAX_BATCH_ATTEMPTS} attempts
+     */
+    private void journalBatch(List<LedgerJournal.Entry> batch) throws SQLException {
+        IllegalArgumentException[] rejections;
+        long backoffMillis = 10;
+        for (int attempt = 1; ; attempt++) {
+            try {
+                rejections = writeBatch(batch);
+                break;
+            } catch (SQLException | RuntimeException e) {
+                if (attempt == MAX_BATCH_ATTEMPTS)
+                    throw new SQLException("Ledger journal batch failed " + attempt + " times", e);
+
+                retryCount.incrementAndGet();
+                System.err.println("Ledger journal batch failed, retrying in " + backoffMillis + " ms: " + e.getMessage());
+                try {
+                    Thread.sleep(backoffMillis);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+                backoffMillis = Math.min(backoffMillis * 2, 5000);
+            }
+        }
+
+        AccountCache cache = AccountCache.getInstance();
+        for (LedgerJournal.Entry entry : batch)
+            cache.invalidate(entry.firstAccountNumber(), entry.secondAccountNumber());
+        settle(batch);
+
+        for (int i = 0; i < batch.size(); i++) {
+            if (rejections[i] == null)
+                continue;
+            rejectedCount.incrementAndGet();
+            long sequence = batch.get(i).sequence();
+            // A recovered entry was applied in the memory of an earlier process, so there is nothing here to stop
+            if (sequence <= recoveredSequence)
+                System.err.println("Recovered ledger journal entry " + sequence + " rejected by the database: "
+                        + rejections[i].getMessage());
+            else
+                fail("Ledger journal entry " + sequence + " rejected by the database, memory and database disagree", rejections[i]);
+        }
+
+        // The database holds the batch now, so the segments before it are no longer needed
+        if (journalFile != null)
+            journalFile.release(batch.getLast().sequence());
+
+        batchCount.incrementAndGet();
+        journaledCount.addAndGet(batch.size());
+        synchronized (flushLock) {
+            journaledSequence = batch.getLast().sequence();
+            flushLock.notifyAll();
+        }
+    }
+
+
+    /**
+     * Applies a batch in one transaction, each entry in its own savepoint. An entry the
+     * database rejects as not allowed means memory and database disagreed about its accounts;
+     * it is skipped. Any other error, such as a busy or full database, fails the whole batch,
+     * so it is retried and no entry is checkpointed without being written.
+     *
+     * @param batch the entries to write
+     * @return the rejection of each entry by position in the batch, or null where it was written
+     * @throws SQLException when the batch cannot be written or committed
+     */
+    private IllegalArgumentException[] writeBatch(List<LedgerJournal.Entry> batch) throws SQLException {
+        IllegalArgumentException[] rejections = new IllegalArgumentException[batch.size()];
+
+        try (Connection connection = DatabaseManager.getInstance().getWriteConnection()) {
+            connection.setAutoCommit(false); // Start Transaction
+
+            try {
+                for (int i = 0; i < batch.size(); i++) {
+                    LedgerJournal.Entry entry = batch.get(i);
+                    Savepoint savepoint = connection.setSavepoint();
+                    try {
+                        apply(connection, entry);
+                        connection.releaseSavepoint(savepoint);
+                    } catch (IllegalArgumentException e) {
+                        connection.rollback(savepoint);
+                        connection.releaseSavepoint(savepoint);
+                        rejections[i] = e;
+                    }
+                }
+
+                if (journalFile != null)
+                    LedgerJournal.saveCheckpoint(connection, batch.getLast().sequence());
+                connection.commit();
+
+            } catch (Throwable e) {
+                // Anything not committed here must not be committed by restoring autocommit
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        }
+        return rejections;
+    }
+
+
+    /**
+     * Marks the changes of a written batch as settled on their accounts, so they can be
+     * refreshed again.
+     *
+     * @param batch the entries written
+     */
+    private void settle(List<LedgerJournal.Entry> batch) {
+        tableLock.readLock().lock();
+        try {
+            for (int i = 0; i < batch.size(); i++) {
+                int first = batch.get(i).firstAccountNumber();
+                int second = batch.get(i).secondAccountNumber();
+                int firstStripe = stripeOf(first);
+                int secondStripe = stripeOf(second);
+                lockStripes(firstStripe, secondStripe);
+                try {
+                    table.settled(first);
+                    if (second != first)
+                        table.settled(second);
+                } finally {
+                    unlockStripes(firstStripe, secondStripe);
+                }
+            }
+        } finally {
+            tableLock.readLock().unlock();
+        }
+    }
+
+
+    /**
+     * Applies one journal entry: the balance change and the Transactions row, or the frozen flag.
+     *
+     * @throws IllegalArgumentException if the database rejects the change
+     */
+    private void apply(Connection connection, LedgerJournal.Entry entry) throws SQLException {
+        int first = entry.firstAccountNumber();
+        int second = entry.secondAccountNumber();
+
+        switch (entry.operation()) {
+            case DEPOSIT -> accountManager.applyDeposit(connection, first, entry.amount());
+            case WITHDRAWAL -> accountManager.applyWithdrawal(connection, first, entry.amount());
+            case TRANSFER -> accountManager.applyTransfer(connection, first, second, entry.amount());
+            case FREEZE, UNFREEZE -> {
+                accountManager.applyFrozen(connection, first, entry.operation() == LedgerJournal.Operation.FREEZE);
+                return;
+            }
+        }
+
+        // Only the account numbers of the row's accounts are written
+        transactionManager.insertTransaction(connection, new Transaction(new Account(0, first, 0, false),
+                new Account(0, second, 0, false), entry.amount(), entry.comment(), entry.date()));
+    }
+
+
+    /**
+     * Configuration of the lock striping and the journal.
+     *
+     * @param stripes         the number of lock stripes, a power of two
+     * @param maxDelay        the longest time a journal batch stays open after its first entry
+     * @param maxBatchSize    the number of entries that closes a journal batch immediately
+     * @param journal         the journal file postings are written to before they are applied, or null for none
+     * @param refreshInterval how long a held account is used before it is read from the database again
+     */
+    public record Config(int stripes, Duration maxDelay, int maxBatchSize, LedgerJournal.Config journal,
+                         Duration refreshInterval) {
+
+        private static final Duration DEFAULT_REFRESH_INTERVAL = Duration.ofSeconds(1);
+
+        /// Creates a configuration with the default refresh interval.
+        public Config(int stripes, Duration maxDelay, int maxBatchSize, LedgerJournal.Config journal) {
+            this(stripes, maxDelay, maxBatchSize, journal, DEFAULT_REFRESH_INTERVAL);
+        }
+
+        /// Creates a configuration without a journal file.
+        public Config(int stripes, Duration maxDelay, int maxBatchSize) {
+            this(stripes, maxDelay, maxBatchSize, null);
+        }
+
+
+        /**
+         * Gets the default configuration: 64 stripes, journal batches of up to 512 entries,
+         * open for at most 5 ms, the default journal file, and accounts refreshed after 1 s.
+         * They can be overridden with the {@code banking.ledger.inMemory.stripes},
+         * {@code banking.ledger.inMemory.delayMillis}, {@code banking.ledger.inMemory.maxBatch} and
+         * {@code banking.ledger.inMemory.refreshMillis} system properties; setting
+         * {@code banking.ledger.inMemory.journal} to false disables the journal file.
+         *
+         * @return the default configuration
+         */
+        public static Config defaults() {
+            boolean journal = Boolean.parseBoolean(System.getProperty("banking.ledger.inMemory.journal", "true"));
+            return new Config(Integer.getInteger("banking.ledger.inMemory.stripes", 64),
+                    Duration.ofMillis(Long.getLong("banking.ledger.inMemory.delayMillis", 5)),
+                    Integer.getInteger("banking.ledger.inMemory.maxBatch", 512),
+                    journal ? LedgerJournal.Config.defaults() : null,
+                    Duration.ofMillis(Long.getLong("banking.ledger.inMemory.refreshMillis", DEFAULT_REFRESH_INTERVAL.toMillis())));
+        }
+
+    }
+
+
+    /**
+     * A snapshot of the ledger's statistics.
+     *
+     * @param postingCount   the number of postings applied in memory
+     * @param journaledCount the number of journal entries written, including rejected ones
+     * @param batchCount     the number of committed journal batches
+     * @param rejectedCount  the number of journal entries the database rejected
+     * @param retryCount     the number of journal batches that failed and were retried
+     * @param refreshCount   the number of refreshes that found an account changed in the database
+     * @param recoveredCount the number of journal entries recovered from the journal file on startup
+     * @param queuedEntries  the number of entries waiting for the journal
+     * @param accounts       the number of accounts held in memory
+     */
+    public record Stats(long postingCount, long journaledCount, long batchCount, long rejectedCount,
+                        long retryCount, long refreshCount, int recoveredCount, int queuedEntries, int accounts) { }
+
+
+    /**
+     * An open-addressing hash table from account numbers to slots of parallel primitive arrays,
+     * with linear probing. Removed accounts leave a tombstone, so probing stays correct; account
+     * numbers are never reused. The balance and frozen flag of a slot are guarded by its stripe,
+     * as are the number of its changes not yet written to the database, the count of all its
+     * changes and the time its refresh is due.
+     */
+    private static final class AccountTable {
+
+        private static final int EMPTY = 0;
+        private static final int USED = 1;
+        private static final int REMOVED = 2;
+
+        private final int mask;
+        private final byte[] states;
+        private final int[] accountNumbers;
+        private final int[] accountIDs;
+        private final int[] userIDs;
+        private final long[] balances;
+        private final boolean[] frozen;
+        private final int[] pending;
+        private final long[] versions;
+        private final long[] refreshAt;
+        private int size;
+        private int occupied;
+
+        private AccountTable(int capacity) {
+            mask = capacity - 1;
+            states = new byte[capacity];
+            accountNumbers = new int[capacity];
+            accountIDs = new int[capacity];
+            userIDs = new int[capacity];
+            balances = new long[capacity];
+            frozen = new boolean[capacity];
+            pending = new int[capacity];
+            versions = new long[capacity];
+            refreshAt = new long[capacity];
+        }
+
+        /// Spreads the bits of an account number, as consecutive numbers are common.
+        private static int mix(int accountNumber) {
+            int hash = accountNumber * 0x9E3779B9;
+            return hash ^ (hash >>> 16);
+        }
+
+        /// Gets the slot of an account, or -1 if it is not held.
+        private int find(int accountNumber) {
+            for (int i = mix(accountNumber) & mask; states[i] != EMPTY; i = (i + 1) & mask) {
+                if (accountNumbers[i] == accountNumber)
+                    return states[i] == USED ? i : -1;
+            }
+            return -1;
+        }
+
+        /// Checks if an account is held, or was held and removed.
+        private boolean contains(int accountNumber) {
+            for (int i = mix(accountNumber) & mask; states[i] != EMPTY; i = (i + 1) & mask) {
+                if (accountNumbers[i] == accountNumber)
+                    return true;
+            }
+            return false;
+        }
+
+        /**
+         * Adds an account that is not in the table.
+         *
+         * @param refreshAt the {@link System#nanoTime()} at which the account is due to be refreshed
+         * @return this table, or a larger copy if this one was too full
+         */
+        private AccountTable put(Account account, long refreshAt) {
+            AccountTable target = (occupied + 1) * 4 > states.length * 3 ? grow() : this;
+            int i = mix(account.getAccountNumber()) & target.mask;
+            while (target.states[i] != EMPTY)
+                i = (i + 1) & target.mask;
+
+            target.states[i] = USED;
+            target.accountNumbers[i] = account.getAccountNumber();
+            target.accountIDs[i] = account.getAccountID();
+            target.userIDs[i] = account.getUserID();
+            target.balances[i] = account.getBalance();
+            target.frozen[i] = account.isFrozen();
+            target.refreshAt[i] = refreshAt;
+            target.size++;
+            target.occupied++;
+            return target;
+        }
+
+        /// Records a change of a slot that was queued for the journal.
+        private void changed(int slot) {
+            pending[slot]++;
+            versions[slot]++;
+        }
+
+        /// Records that a change of an account reached the database.
+        private void settled(int accountNumber) {
+            // A removed account keeps its counts, as it is held again if deleting it fails
+            for (int i = mix(accountNumber) & mask; states[i] != EMPTY; i = (i + 1) & mask) {
+                if (accountNumbers[i] == accountNumber) {
+                    pending[i]--;
+                    return;
+                }
+            }
+        }
+
+        /// Marks an account as removed, if it is held.
+        private void remove(int accountNumber) {
+            int slot = find(accountNumber);
+            if (slot >= 0) {
+                states[slot] = REMOVED;
+                size--;
+            }
+        }
+
+        /// Makes a removed account held again, with the state it had when it was removed.
+        private void restore(int accountNumber) {
+            for (int i = mix(accountNumber) & mask; states[i] != EMPTY; i = (i + 1) & mask) {
+                if (accountNumbers[i] == accountNumber && states[i] == REMOVED) {
+                    states[i] = USED;
+                    size++;
+                    return;
+                }
+            }
+        }
+
+        /// Copies the held accounts and tombstones into a table of twice the capacity.
+        private AccountTable grow() {
+            AccountTable larger = new AccountTable(states.length * 2);
+            for (int slot = 0; slot < states.length; slot++) {
+                if (states[slot] == EMPTY)
+                    continue;
+
+                int i = mix(accountNumbers[slot]) & larger.mask;
+                while (larger.states[i] != EMPTY)
+                    i = (i + 1) & larger.mask;
+
+                larger.states[i] = states[slot];
+                larger.accountNumbers[i] = accountNumbers[slot];
+                larger.accountIDs[i] = accountIDs[slot];
+                larger.userIDs[i] = userIDs[slot];
+                larger.balances[i] = balances[slot];
+                larger.frozen[i] = frozen[slot];
+                larger.pending[i] = pending[slot];
+                larger.versions[i] = versions[slot];
+                larger.refreshAt[i] = refreshAt[slot];
+            }
+            larger.size = size;
+            larger.occupied = occupied;
+            return larger;
+        }
+
+        /// Creates an Account with the current state of a slot.
+        private Account toAccount(int slot) {
+            return new Account(accountIDs[slot], userIDs[slot], accountNumbers[slot], balances[slot], frozen[slot]);
+        }
+
+    }
+
+}
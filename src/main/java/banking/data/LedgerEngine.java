@@ -0,0 +1,111 @@
+package banking.data;
+
+import banking.model.Account;
+import banking.model.Transaction;
+
+import java.sql.SQLException;
+
+
+/**
+ * LedgerEngine posts deposits, withdrawals and transfers. A posting either changes the
+ * balances and records the transaction durably, or changes nothing. Implementations differ
+ * in how postings are committed. SQLite-backed engines are the default; {@link InMemoryLedger}
+ * applies postings in memory and writes them to the database afterwards, and
+ * {@link EventSourcedLedger} derives the balances from the recorded transactions.
+ */
+public interface LedgerEngine {
+
+    /**
+     * Deposits money into an account and records the deposit.
+     *
+     * @param account the account to deposit to; updated in memory once the posting is durable
+     * @param amount  the amount to deposit in minor units
+     * @return the recorded transaction, with its ID
+     * @throws SQLException             when a database error occurs
+     * @throws IllegalArgumentException if the deposit is not allowed
+     */
+    Transaction postDeposit(Account account, long amount) throws SQLException;
+
+
+    /**
+     * Withdraws money from an account and records the withdrawal.
+     *
+     * @param account the account to withdraw from; updated in memory once the posting is durable
+     * @param amount  the amount to withdraw in minor units
+     * @return the recorded transaction, with its ID
+     * @throws SQLException             when a database error occurs
+     * @throws IllegalArgumentException if the withdrawal is not allowed
+     */
+    Transaction postWithdrawal(Account account, long amount) throws SQLException;
+
+
+    /**
+     * Transfers money to another account and records the transfer.
+     *
+     * @param sender                the account to transfer from; updated in memory once the posting is durable
+     * @param receiverAccountNumber the account number to transfer to
+     * @param amount                the amount to transfer in minor units
+     * @param comment               the comment recorded with the transaction
+     * @return the recorded transaction, with its ID
+     * @throws SQLException             when a database error occurs
+     * @throws IllegalArgumentException if the transfer is not allowed
+     */
+    Transaction postTransfer(Account sender, int receiverAccountNumber, long amount, String comment) throws SQLException;
+
+
+    /**
+     * Freezes or unfreezes an account. Engines that hold account state apply the change in
+     * order with their postings, so callers change the flag through the engine in use.
+     *
+     * @param account the account to change; its in-memory flag is left to the caller
+     * @param frozen  the new frozen flag
+     * @throws SQLException when a database error occurs
+     */
+    default void setFrozen(Account account, boolean frozen) throws SQLException {
+        if (frozen)
+            new AccountManager().freezeAccount(account);
+        else
+            new AccountManager().unfreezeAccount(account);
+    }
+
+
+    /**
+     * Deletes an account, after every posting to it has reached the database.
+     *
+     * @param account the account to delete
+     * @throws SQLException when a database error occurs
+     */
+    default void deleteAccount(Account account) throws SQLException {
+        new AccountManager().deleteAccount(account);
+    }
+
+
+    /**
+     * Waits until every posting accepted so far is visible in the database. Engines that
+     * commit a posting before returning it have nothing to wait for.
+     *
+     * @throws SQLException if the wait fails
+     */
+    default void flush() throws SQLException { }
+
+
+    /**
+     * Gets the engine selected by system properties: the shared {@link InMemoryLedger} if
+     * {@code banking.ledger.inMemory} is {@code true}, the shared {@link EventSourcedLedger} if
+     * {@code banking.ledger.eventSourced} is {@code true}, the shared {@link GroupCommitLedger} if
+     * {@code banking.ledger.groupCommit} is {@code true}, otherwise a {@link LedgerManager}
+     * that commits every posting on its own.
+     *
+     * @return the ledger engine to use
+     */
+    static LedgerEngine fromSystemProperties() {
+        if (Boolean.getBoolean("banking.ledger.inMemory"))
+            return InMemoryLedger.getInstance();
+        if (Boolean.getBoolean("banking.ledger.eventSourced"))
+            return EventSourcedLedger.getInstance();
+        if (Boolean.getBoolean("banking.ledger.groupCommit"))
+            return GroupCommitLedger.getInstance();
+        return new LedgerManager();
+    }
+
+}
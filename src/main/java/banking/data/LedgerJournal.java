@@ -0,0 +1,525 @@
+package banking.data;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+
+/**
+ * LedgerJournal is an append-only binary journal of the postings of the InMemoryLedger. Entries
+ * are written through memory-mapped segment files instead of JDBC, before the posting is applied
+ * in memory, so a posting that was accepted survives a crash before it reached SQLite.
+ * <p>
+ * Every entry is a record of {@link #RECORD_SIZE} bytes: a CRC32C of the rest of the record, the
+ * sequence, the operation, both account numbers, the amount, the date in seconds and the comment
+ * in UTF-8 with its length, padded with zeros. A segment file holds a fixed number of records and
+ * is named after the sequence of its first one; when it is full the next segment is created.
+ * Unwritten records are zero, so a record whose checksum does not match, or whose sequence does
+ * not follow the previous one, marks the end of the journal; a record torn by a crash is ignored.
+ * <p>
+ * The sequence of the last entry written to SQLite is the checkpoint. The ledger stores it in the
+ * JournalCheckpoints table in the same transaction as the entries, so an entry is applied to the
+ * database exactly once: on open, the entries after the checkpoint are handed back for recovery,
+ * and {@link #release(long)} deletes the segments whose entries are all checkpointed.
+ */
+public class LedgerJournal implements AutoCloseable {
+
+    /// Size of every record in bytes.
+    public static final int RECORD_SIZE = 256;
+
+    // CRC, sequence, operation, two account numbers, amount, date, comment length
+    private static final int HEADER_SIZE = 4 + 8 + 1 + 4 + 4 + 8 + 8 + 2;
+
+    /// Longest comment a record can hold, in UTF-8 bytes.
+    public static final int MAX_COMMENT_BYTES = RECORD_SIZE - HEADER_SIZE;
+
+    private static final String SEGMENT_PREFIX = "ledger-";
+    private static final String SEGMENT_SUFFIX = ".journal";
+    private static final String CHECKPOINT_NAME = "ledger";
+
+    private final Config config;
+    private final int recordsPerSegment;
+    private final Deque<Segment> segments = new ArrayDeque<>();
+    private final List<Entry> pending = new ArrayList<>();
+    private final ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+    private final CRC32C crc = new CRC32C();
+    private final Object syncLock = new Object();
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private int position;
+    private int syncedPosition;
+    private long lastSequence;
+    private long syncedSequence;
+    private volatile long lastSync;
+
+
+    /**
+     * Opens the journal in the configured directory, creating it if needed, and reads the
+     * entries after the checkpoint. Segments after the end of the journal are deleted.
+     *
+     * @param config     the directory, segment size and durability settings
+     * @param checkpoint the sequence of the last entry already in the database
+     * @throws IOException if the directory or a segment cannot be read
+     */
+    public LedgerJournal(Config config, long checkpoint) throws IOException {
+        if (config.segmentSize() < RECORD_SIZE)
+            throw new IllegalArgumentException("A journal segment must hold at least one record: " + config.segmentSize());
+
+        this.config = config;
+        this.recordsPerSegment = config.segmentSize() / RECORD_SIZE;
+        Files.createDirectories(config.directory());
+
+        lastSequence = checkpoint;
+        recover(checkpoint);
+        syncedSequence = lastSequence;
+        lastSync = System.nanoTime();
+    }
+
+
+    /**
+     * Gets the checkpoint stored in the database.
+     *
+     * @param connection the connection to use
+     * @return the sequence of the last journal entry applied to the database, or 0
+     * @throws SQLException when a database error occurs
+     */
+    public static long loadCheckpoint(Connection connection) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("SELECT sequence FROM JournalCheckpoints WHERE name = ?")) {
+            statement.setString(1, CHECKPOINT_NAME);
+            try (ResultSet result = statement.executeQuery()) {
+                return result.next() ? result.getLong(1) : 0;
+            }
+        }
+    }
+
+
+    /**
+     * Stores the checkpoint within the caller's transaction, together with the entries up to it.
+     *
+     * @param connection the connection of the open transaction
+     * @param sequence   the sequence of the last entry applied in the transaction
+     * @throws SQLException when a database error occurs
+     */
+    static void saveCheckpoint(Connection connection, long sequence) throws SQLException {
+        String query = "INSERT INTO JournalCheckpoints (name, sequence) VALUES (?, ?) " +
+                "ON CONFLICT (name) DO UPDATE SET sequence = excluded.sequence";
+
+        try (PreparedStatement statement = connection.prepareStatement(query)) {
+            statement.setString(1, CHECKPOINT_NAME);
+            statement.setLong(2, sequence);
+            statement.executeUpdate();
+        }
+    }
+
+
+    /**
+     * Appends an entry, whose sequence must follow the last one. A full segment is closed and
+     * the next one created first. The record is not forced to disk here; see {@link #sync(long)}.
+     *
+     * @param entry the entry to append
+     * @throws IOException              if the segment cannot be written; the entry is then not appended
+     * @throws IllegalArgumentException if the sequence does not follow the last one or the comment is too long
+     */
+    public synchronized void append(Entry entry) throws IOException {
+        if (entry.sequence() != lastSequence + 1)
+            throw new IllegalArgumentException("Journal entry " + entry.sequence() + " does not follow " + lastSequence);
+        byte[] comment = entry.comment() == null ? null : entry.comment().getBytes(StandardCharsets.UTF_8);
+        if (comment != null && comment.length > MAX_COMMENT_BYTES)
+            throw new IllegalArgumentException("Comment is longer than " + MAX_COMMENT_BYTES + " bytes");
+
+        if (buffer == null || position == buffer.capacity())
+            roll(entry.sequence());
+
+        record.clear();
+        record.putInt(0)
+                .putLong(entry.sequence())
+                .put((byte) entry.operation().ordinal())
+                .putInt(entry.firstAccountNumber())
+                .putInt(entry.secondAccountNumber())
+                .putLong(entry.amount())
+                .putLong(entry.date().toEpochSecond(ZoneOffset.UTC))
+                .putShort((short) (comment == null ? -1 : comment.length));
+        if (comment != null)
+            record.put(comment);
+        while (record.hasRemaining())
+            record.put((byte) 0);
+
+        crc.reset();
+        crc.update(record.array(), 4, RECORD_SIZE - 4);
+        record.putInt(0, (int) crc.getValue());
+
+        buffer.put(position, record.array(), 0, RECORD_SIZE);
+        position += RECORD_SIZE;
+        lastSequence = entry.sequence();
+    }
+
+
+    /**
+     * Forces the entries up to a sequence to disk as the sync policy asks: with ALWAYS before
+     * this returns, with INTERVAL if the sync interval has passed since the last sync. Appends
+     * continue while a sync runs, and one sync covers every entry appended before it started,
+     * so appenders calling this concurrently share the force.
+     *
+     * @param sequence the sequence of the last entry the caller appended
+     * @throws java.io.UncheckedIOException if the segment cannot be forced
+     */
+    public void sync(long sequence) {
+        switch (config.syncPolicy()) {
+            case ALWAYS -> force(sequence);
+            case INTERVAL -> {
+                if (System.nanoTime() - lastSync >= config.syncInterval().toNanos())
+                    force(sequence);
+            }
+            case NEVER -> { }
+        }
+    }
+
+
+    /**
+     * Deletes the segments whose entries are all at or before the checkpoint.
+     * The segment being written is kept.
+     *
+     * @param checkpoint the sequence of the last entry applied to the database
+     */
+    public synchronized void release(long checkpoint) {
+        while (segments.size() > 1) {
+            Iterator<Segment> iterator = segments.iterator();
+            Segment oldest = iterator.next();
+            if (iterator.next().firstSequence() > checkpoint + 1)
+                return;
+
+            segments.removeFirst();
+            try {
+                Files.deleteIfExists(oldest.file());
+            } catch (IOException e) {
+                System.err.println("Failed to delete ledger journal segment " + oldest.file() + ": " + e.getMessage());
+            }
+        }
+    }
+
+
+    /// Gets the entries found after the checkpoint when the journal was opened, in sequence order.
+    public List<Entry> getPending() {
+        return List.copyOf(pending);
+    }
+
+
+    /// Gets the sequence of the last entry, or the checkpoint if no entry follows it.
+    public synchronized long getLastSequence() {
+        return lastSequence;
+    }
+
+
+    /// Gets the number of segment files.
+    public synchronized int getSegmentCount() {
+        return segments.size();
+    }
+
+
+    /// Forces the current segment to disk, unless the sync policy is NEVER, and closes it.
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel == null)
+            return;
+
+        if (config.syncPolicy() != SyncPolicy.NEVER)
+            buffer.force();
+        channel.close();
+        channel = null;
+        buffer = null;
+    }
+
+
+    /**
+     * Reads every segment in sequence order and collects the entries after the checkpoint.
+     * Writing continues after the last valid record of the last segment, if it has room.
+     */
+    private void recover(long checkpoint) throws IOException {
+        List<Segment> found = new ArrayList<>();
+        try (Stream<Path> files = Files.list(config.directory())) {
+            for (Path file : files.toList()) {
+                String name = file.getFileName().toString();
+                if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX))
+                    found.add(new Segment(Long.parseLong(name, SEGMENT_PREFIX.length(),
+                            name.length() - SEGMENT_SUFFIX.length(), 10), file));
+            }
+        }
+        found.sort((a, b) -> Long.compare(a.firstSequence(), b.firstSequence()));
+
+        boolean ended = false;
+        long expected = -1;
+        Segment tail = null;
+        int tailPosition = 0;
+
+        for (Segment segment : found) {
+            if (ended || (expected >= 0 && segment.firstSequence() != expected)) {
+                System.err.println("Deleting ledger journal segment " + segment.file() + " after the end of the journal");
+                Files.delete(segment.file());
+                continue;
+            }
+            if (expected < 0 && segment.firstSequence() > checkpoint + 1)
+                System.err.println("Ledger journal starts at " + segment.firstSequence() + ", after checkpoint " + checkpoint
+                        + "; the entries in between are lost");
+
+            int valid = 0;
+            long sequence = segment.firstSequence();
+            try (FileChannel readChannel = FileChannel.open(segment.file(), StandardOpenOption.READ)) {
+                MappedByteBuffer mapped = readChannel.map(FileChannel.MapMode.READ_ONLY, 0, readChannel.size());
+                int capacity = mapped.capacity() / RECORD_SIZE;
+
+                while (valid < capacity) {
+                    Entry entry = decode(mapped, valid * RECORD_SIZE, sequence);
+                    if (entry == null)
+                        break;
+                    if (entry.sequence() > checkpoint)
+                        pending.add(entry);
+                    lastSequence = Math.max(lastSequence, entry.sequence());
+                    valid++;
+                    sequence++;
+                }
+                ended = valid < capacity;
+            }
+
+            segments.addLast(segment);
+            expected = sequence;
+            tail = segment;
+            tailPosition = valid * RECORD_SIZE;
+        }
+
+        // The database is ahead of the journal, so every segment is checkpointed and the next entry starts a new one
+        if (tail != null && expected != lastSequence + 1) {
+            System.err.println("Ledger journal ends at " + (expected - 1) + ", before checkpoint " + checkpoint);
+            for (Segment segment : segments)
+                Files.delete(segment.file());
+            segments.clear();
+            tail = null;
+        }
+
+        // Appending continues in the last segment, after its last valid record
+        if (tail != null) {
+            channel = FileChannel.open(tail.file(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+            position = tailPosition;
+            syncedPosition = tailPosition;
+            clearTail();
+        }
+    }
+
+
+    /**
+     * Zeroes the records after the end of the journal in the segment being written, so a record
+     * written before a torn one cannot be read as the continuation of the entries appended next.
+     */
+    private void clearTail() {
+        byte[] zeros = new byte[RECORD_SIZE];
+        int offset = position;
+        while (offset < buffer.capacity() && !isZero(buffer, offset)) {
+            buffer.put(offset, zeros);
+            offset += RECORD_SIZE;
+        }
+        if (offset > position)
+            buffer.force(position, offset - position);
+    }
+
+
+    private static boolean isZero(ByteBuffer segment, int offset) {
+        for (int i = 0; i < RECORD_SIZE; i += 8) {
+            if (segment.getLong(offset + i) != 0)
+                return false;
+        }
+        return true;
+    }
+
+
+    /**
+     * Decodes the record at a position of a segment.
+     *
+     * @return the entry, or null if the record is not a valid entry with the expected sequence
+     */
+    private Entry decode(ByteBuffer segment, int offset, long expectedSequence) {
+        crc.reset();
+        crc.update(segment.slice(offset + 4, RECORD_SIZE - 4));
+        if (segment.getInt(offset) != (int) crc.getValue() || segment.getLong(offset + 4) != expectedSequence)
+            return null;
+
+        int operation = segment.get(offset + 12);
+        if (operation < 0 || operation >= Operation.values().length)
+            return null;
+
+        short commentLength = segment.getShort(offset + HEADER_SIZE - 2);
+        String comment = null;
+        if (commentLength >= 0) {
+            byte[] bytes = new byte[Math.min(commentLength, MAX_COMMENT_BYTES)];
+            segment.get(offset + HEADER_SIZE, bytes);
+            comment = new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        return new Entry(expectedSequence, Operation.values()[operation],
+                segment.getInt(offset + 13), segment.getInt(offset + 17), segment.getLong(offset + 21),
+                LocalDateTime.ofEpochSecond(segment.getLong(offset + 29), 0, ZoneOffset.UTC), comment);
+    }
+
+
+    /// Closes the current segment and creates the next one, whose first record has the given sequence.
+    private void roll(long firstSequence) throws IOException {
+        close();
+
+        Path file = config.directory().resolve(String.format(Locale.ROOT, "%s%020d%s", SEGMENT_PREFIX, firstSequence, SEGMENT_SUFFIX));
+        channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, (long) recordsPerSegment * RECORD_SIZE);
+        if (config.syncPolicy() != SyncPolicy.NEVER)
+            channel.force(true);
+
+        segments.addLast(new Segment(firstSequence, file));
+        position = 0;
+        syncedPosition = 0;
+    }
+
+
+    /**
+     * Forces every record written so far if the sync policy is INTERVAL and the sync interval
+     * has passed since the last sync. Appends only sync when they happen, so the owner calls
+     * this periodically; otherwise the last records of a burst would wait for the next append.
+     *
+     * @throws java.io.UncheckedIOException if the segment cannot be forced
+     */
+    public void syncIfDue() {
+        if (config.syncPolicy() == SyncPolicy.INTERVAL)
+            sync(getLastSequence());
+    }
+
+
+    /**
+     * Forces the records written since the last sync, unless an earlier sync already covered
+     * the sequence. A segment closed meanwhile was forced when it was closed.
+     */
+    private void force(long sequence) {
+        synchronized (syncLock) {
+            if (syncedSequence >= sequence)
+                return;
+
+            MappedByteBuffer target;
+            int from;
+            int to;
+            long upTo;
+            synchronized (this) {
+                if (buffer == null)
+                    return;
+                target = buffer;
+                from = syncedPosition;
+                to = position;
+                upTo = lastSequence;
+            }
+
+            target.force(from, to - from);
+
+            synchronized (this) {
+                if (buffer == target)
+                    syncedPosition = Math.max(syncedPosition, to);
+            }
+            syncedSequence = upTo;
+            lastSync = System.nanoTime();
+        }
+    }
+
+
+    /// The change an entry makes.
+    public enum Operation { DEPOSIT, WITHDRAWAL, TRANSFER, FREEZE, UNFREEZE }
+
+
+    /// When appended records are forced to disk. The page cache keeps them safe from a crash of the process either way.
+    public enum SyncPolicy {
+        /// After every append; an accepted posting survives a power loss.
+        ALWAYS,
+        /// Once the sync interval has passed since the last sync: after an append, from {@link #syncIfDue()}, and on close.
+        INTERVAL,
+        /// Only on close; the operating system writes the rest back.
+        NEVER
+    }
+
+
+    /**
+     * One journaled change.
+     *
+     * @param sequence            the position of the entry in the journal, starting at 1
+     * @param operation           the change
+     * @param firstAccountNumber  the changed account, or the sender of a transfer
+     * @param secondAccountNumber the receiver of a transfer, otherwise the same as the first
+     * @param amount              the amount in minor units, 0 for freezing and unfreezing
+     * @param date                the date recorded with the transaction, to the second
+     * @param comment             the comment recorded with the transaction, or null
+     */
+    public record Entry(long sequence, Operation operation, int firstAccountNumber, int secondAccountNumber,
+                        long amount, LocalDateTime date, String comment) { }
+
+
+    /// A segment file and the sequence of its first record.
+    private record Segment(long firstSequence, Path file) { }
+
+
+    /**
+     * Configuration of the journal.
+     *
+     * @param directory    the directory of the segment files
+     * @param segmentSize  the size of a segment file in bytes, rounded down to whole records
+     * @param syncPolicy   when appends are forced to disk
+     * @param syncInterval the minimum time between syncs with {@link SyncPolicy#INTERVAL}
+     */
+    public record Config(Path directory, int segmentSize, SyncPolicy syncPolicy, Duration syncInterval) {
+
+        /**
+         * Gets the default configuration: a {@code .ledger} directory next to the database file,
+         * 64 MiB segments, synced at most every 10 ms. The directory can be set with the
+         * {@code banking.ledger.journal.dir} system property, the segment size with
+         * {@code banking.ledger.journal.segmentSize}, the policy with {@code banking.ledger.journal.sync}
+         * ({@code always}, {@code interval} or {@code never}) and the interval with
+         * {@code banking.ledger.journal.syncMillis}.
+         *
+         * @return the default configuration
+         * @throws IllegalArgumentException if no directory is set and the database is not a file
+         */
+        public static Config defaults() {
+            String directory = System.getProperty("banking.ledger.journal.dir");
+            return new Config(directory != null ? Path.of(directory) : directoryOf(DatabaseManager.getConfig().url()),
+                    Integer.getInteger("banking.ledger.journal.segmentSize", 64 * 1024 * 1024),
+                    SyncPolicy.valueOf(System.getProperty("banking.ledger.journal.sync", "interval").toUpperCase(Locale.ROOT)),
+                    Duration.ofMillis(Long.getLong("banking.ledger.journal.syncMillis", 10)));
+        }
+
+
+        /// Gets the journal directory next to a SQLite database file, so a journal is never recovered into another database.
+        private static Path directoryOf(String url) {
+            String file = url.startsWith("jdbc:sqlite:") ? url.substring("jdbc:sqlite:".length()) : "";
+            if (file.startsWith("file:"))
+                file = file.substring("file:".length());
+            int query = file.indexOf('?');
+            if (query >= 0)
+                file = file.substring(0, query);
+            if (file.isEmpty() || file.equals(":memory:"))
+                throw new IllegalArgumentException("Set banking.ledger.journal.dir, the database " + url + " is not a file");
+            return Path.of(file + ".ledger");
+        }
+
+    }
+
+}
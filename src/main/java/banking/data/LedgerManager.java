@@ -0,0 +1,188 @@
+package banking.data;
+
+import banking.model.Account;
+import banking.model.Transaction;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+
+
+/**
+ * LedgerManager posts money movements to the ledger. Every posting changes the balances
+ * and writes the matching Transactions row on one connection in one database transaction,
+ * so money never moves without a record and a record never exists without the movement.
+ * <p>
+ * Deposits and withdrawals are recorded with the account as both sender and receiver.
+ * Every posting is committed on its own; see {@link GroupCommitLedger} for coalesced commits.
+ */
+public class LedgerManager implements LedgerEngine {
+
+    /// Comment recorded for deposits.
+    public static final String DEPOSIT_COMMENT = "Deposit";
+
+    /// Comment recorded for withdrawals.
+    public static final String WITHDRAWAL_COMMENT = "Withdrawal";
+
+    private final AccountManager accountManager;
+    private final TransactionManager transactionManager;
+
+
+    /**
+     * Constructor for LedgerManager.
+     * Initializes the AccountManager and TransactionManager whose connection-level operations it combines.
+     */
+    public LedgerManager() {
+        accountManager = new AccountManager();
+        transactionManager = new TransactionManager();
+    }
+
+
+    /**
+     * Deposits money into an account and records the deposit.
+     * The in-memory account is updated after the commit.
+     *
+     * @param account the account to deposit to
+     * @param amount  the amount to deposit in minor units
+     * @return the recorded transaction, with its ID
+     * @throws SQLException             when a database error occurs; nothing is changed
+     * @throws IllegalArgumentException if the amount is not positive or the account does not exist or is frozen
+     */
+    @Override
+    public Transaction postDeposit(Account account, long amount) throws SQLException {
+        Transaction transaction = post(connection -> recordDeposit(connection, account, amount));
+        account.deposit(amount);
+        return transaction;
+    }
+
+
+    /**
+     * Withdraws money from an account and records the withdrawal.
+     * The in-memory account is updated after the commit.
+     *
+     * @param account the account to withdraw from
+     * @param amount  the amount to withdraw in minor units
+     * @return the recorded transaction, with its ID
+     * @throws SQLException             when a database error occurs; nothing is changed
+     * @throws IllegalArgumentException if the amount is not positive, exceeds the balance,
+     *                                  or the account does not exist or is frozen
+     */
+    @Override
+    public Transaction postWithdrawal(Account account, long amount) throws SQLException {
+        Transaction transaction = post(connection -> recordWithdrawal(connection, account, amount));
+        account.withdraw(amount);
+        return transaction;
+    }
+
+
+    /**
+     * Transfers money to another account and records the transfer.
+     * The in-memory sender account is updated after the commit; the receiver in the
+     * returned transaction is loaded within the same database transaction.
+     *
+     * @param sender                the account to transfer from
+     * @param receiverAccountNumber the account number to transfer to
+     * @param amount                the amount to transfer in minor units
+     * @param comment               the comment recorded with the transaction
+     * @return the recorded transaction, with its ID
+     * @throws SQLException             when a database error occurs; nothing is changed
+     * @throws IllegalArgumentException if the transfer is not allowed; nothing is changed
+     */
+    @Override
+    public Transaction postTransfer(Account sender, int receiverAccountNumber, long amount, String comment) throws SQLException {
+        Transaction transaction = post(connection -> recordTransfer(connection, sender, receiverAccountNumber, amount, comment));
+        sender.withdraw(amount);
+        return transaction;
+    }
+
+
+    /**
+     * Applies a deposit and inserts its record within the caller's transaction.
+     * The in-memory account is not changed.
+     *
+     * @return the inserted transaction, with its ID
+     */
+    Transaction recordDeposit(Connection connection, Account account, long amount) throws SQLException {
+        accountManager.applyDeposit(connection, account.getAccountNumber(), amount);
+        return insert(connection, new Transaction(account, account, amount, DEPOSIT_COMMENT, LocalDateTime.now()));
+    }
+
+
+    /**
+     * Applies a withdrawal and inserts its record within the caller's transaction.
+     * The in-memory account is not changed.
+     *
+     * @return the inserted transaction, with its ID
+     */
+    Transaction recordWithdrawal(Connection connection, Account account, long amount) throws SQLException {
+        accountManager.applyWithdrawal(connection, account.getAccountNumber(), amount);
+        return insert(connection, new Transaction(account, account, amount, WITHDRAWAL_COMMENT, LocalDateTime.now()));
+    }
+
+
+    /**
+     * Applies a transfer and inserts its record within the caller's transaction.
+     * The in-memory sender account is not changed.
+     *
+     * @return the inserted transaction, with its ID
+     */
+    Transaction recordTransfer(Connection connection, Account sender, int receiverAccountNumber, long amount, String comment)
+            throws SQLException {
+        accountManager.applyTransfer(connection, sender.getAccountNumber(), receiverAccountNumber, amount);
+        Account receiver = accountManager.loadAccountInternal(connection, receiverAccountNumber);
+        return insert(connection, new Transaction(sender, receiver, amount, comment, LocalDateTime.now()));
+    }
+
+
+    /// Inserts a transaction and returns it with its generated ID.
+    private Transaction insert(Connection connection, Transaction transaction) throws SQLException {
+        int transactionID = transactionManager.insertTransaction(connection, transaction);
+        return new Transaction(transactionID, transaction.sender(), transaction.receiver(),
+                transaction.amount(), transaction.comment(), transaction.date());
+    }
+
+
+    /// Removes the accounts changed by a committed posting from the AccountCache.
+    static void invalidateCached(Transaction transaction) {
+        AccountCache.getInstance().invalidate(transaction.sender().getAccountNumber(),
+                transaction.receiver().getAccountNumber());
+    }
+
+
+    /**
+     * Runs a posting in a new database transaction on the write connection and commits.
+     * The idempotency key the posting runs for, if any, is completed in the same transaction.
+     * Any failure rolls back every change.
+     *
+     * @param posting the balance changes and record of the posting
+     * @return the inserted transaction, with its ID
+     * @throws SQLException when a database error occurs
+     */
+    private Transaction post(Posting posting) throws SQLException {
+        try (Connection connection = DatabaseManager.getInstance().getWriteConnection()) {
+            connection.setAutoCommit(false);
+
+            try {
+                Transaction transaction = posting.apply(connection);
+                IdempotencyStore.completeWithin(connection, transaction.transactionID());
+                connection.commit();
+                invalidateCached(transaction);
+                return transaction;
+
+            } catch (SQLException | IllegalArgumentException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        }
+    }
+
+
+    /// The balance changes and record of one posting, applied within an open transaction.
+    @FunctionalInterface
+    interface Posting {
+        Transaction apply(Connection connection) throws SQLException;
+    }
+
+}
@@ -0,0 +1,326 @@
+package banking.data;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+
+/**
+ * PasswordHasher hashes and verifies passwords with PBKDF2-HMAC-SHA256. Hashes are stored as
+ * {@code pbkdf2-sha256$<iterations>$<salt>$<hash>} (Base64), so every hash keeps its own cost.
+ * The iteration count for new hashes is calibrated when the hasher is created, so one hash
+ * takes about {@link Config#targetTime()} on this machine, but never fewer than
+ * {@link Config#minIterations()}.
+ * <p>
+ * All hashing runs on a small bounded pool of daemon threads: callers of the asynchronous
+ * methods are never blocked, callers of the synchronous ones wait, and at most
+ * {@link Config#threads()} hashes use the CPU at once however many logins arrive. When the
+ * queue is full, new requests fail with a RejectedExecutionException instead of piling up.
+ * <p>
+ * Older formats are still verified: the former {@code salt:hash} single SHA-256 and plain text.
+ * Their verification reports that the password should be rehashed, as does a PBKDF2 hash
+ * with fewer iterations than the current count.
+ */
+public class PasswordHasher implements AutoCloseable {
+
+    /// Prefix of the current hash format.
+    public static final String PREFIX = "pbkdf2-sha256$";
+
+    private static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+    private static final int SALT_BYTES = 16;
+    private static final int HASH_BITS = 256;
+    private static final int MAX_ITERATIONS = 10_000_000;
+    private static final int CALIBRATION_ITERATIONS = 20_000;
+
+    private static PasswordHasher instance;
+
+    private final Config config;
+    private final int iterations;
+    private final SecureRandom secureRandom = new SecureRandom();
+    private final ExecutorService executor;
+
+
+    /**
+     * Creates a hasher, calibrating the iteration count unless the configuration fixes it.
+     *
+     * @param config the cost and pool configuration
+     */
+    public PasswordHasher(Config config) {
+        if (config.threads() < 1 || config.queueCapacity() < 1 || config.minIterations() < 1)
+            throw new IllegalArgumentException("Invalid password hashing configuration: " + config);
+
+        this.config = config;
+        this.iterations = config.iterations() > 0 ? config.iterations() : calibrate(config);
+
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = new ThreadPoolExecutor(config.threads(), config.threads(), 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(config.queueCapacity()), task -> {
+            Thread thread = new Thread(task, "password-hasher-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+
+    /**
+     * Gets the shared instance, created and calibrated with {@link Config#defaults()} on first use.
+     *
+     * @return the shared PasswordHasher
+     */
+    public static synchronized PasswordHasher getInstance() {
+        if (instance == null)
+            instance = new PasswordHasher(Config.defaults());
+        return instance;
+    }
+
+
+    /**
+     * Hashes a password on the hashing pool.
+     *
+     * @param password the plain text password
+     * @return a future completed with the encoded hash
+     */
+    public CompletableFuture<String> hashAsync(String password) {
+        return submit(() -> encode(password, iterations));
+    }
+
+
+    /**
+     * Verifies a password against a stored hash of any supported format on the hashing pool.
+     *
+     * @param password     the plain text password
+     * @param storedHash   the stored hash, or a legacy salt:hash or plain text password
+     * @return a future completed with the result of the verification
+     */
+    public CompletableFuture<Verification> verifyAsync(String password, String storedHash) {
+        return submit(() -> verifyNow(password, storedHash));
+    }
+
+
+    /**
+     * Hashes a password on the hashing pool and waits for the result.
+     *
+     * @param password the plain text password
+     * @return the encoded hash
+     * @throws RejectedExecutionException if the hashing queue is full
+     */
+    public String hash(String password) {
+        return join(hashAsync(password));
+    }
+
+
+    /**
+     * Verifies a password on the hashing pool and waits for the result.
+     *
+     * @param password   the plain text password
+     * @param storedHash the stored hash, or a legacy salt:hash or plain text password
+     * @return the result of the verification
+     * @throws RejectedExecutionException if the hashing queue is full
+     */
+    public Verification verify(String password, String storedHash) {
+        return join(verifyAsync(password, storedHash));
+    }
+
+
+    /// Gets the iteration count used for new hashes.
+    public int getIterations() {
+        return iterations;
+    }
+
+
+    /// Gets the cost and pool configuration.
+    public Config getConfig() {
+        return config;
+    }
+
+
+    /// Stops the hashing threads once the queued requests are done.
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+
+
+    /**
+     * Verifies a password on the calling thread.
+     *
+     * @return whether it matches and whether the stored hash should be replaced
+     */
+    private Verification verifyNow(String password, String storedHash) {
+        if (storedHash == null)
+            return new Verification(false, false);
+
+        try {
+            return verifyStored(password, storedHash);
+        } catch (IllegalArgumentException e) {
+            // Malformed Base64 or iteration count in the stored hash
+            return new Verification(false, false);
+        }
+    }
+
+
+    /// Verifies a password against a stored hash that is not null; a malformed hash throws.
+    private Verification verifyStored(String password, String storedHash) {
+        if (storedHash.startsWith(PREFIX)) {
+            String[] parts = storedHash.substring(PREFIX.length()).split("\\$");
+            if (parts.length != 3)
+                return new Verification(false, false);
+
+            int storedIterations = Integer.parseInt(parts[0]);
+            byte[] salt = Base64.getDecoder().decode(parts[1]);
+            byte[] expected = Base64.getDecoder().decode(parts[2]);
+            boolean matches = MessageDigest.isEqual(pbkdf2(password, salt, storedIterations), expected);
+            return new Verification(matches, matches && storedIterations < iterations);
+        }
+
+        boolean matches;
+        if (storedHash.contains(":")) {
+            // Former format: Base64 salt ":" Base64 single SHA-256 of salt + password
+            String[] parts = storedHash.split(":", 2);
+            byte[] expected = Base64.getDecoder().decode(parts[1]);
+            matches = MessageDigest.isEqual(legacySha256(password, Base64.getDecoder().decode(parts[0])), expected);
+        } else {
+            // Legacy plain text password
+            matches = MessageDigest.isEqual(password.getBytes(StandardCharsets.UTF_8),
+                    storedHash.getBytes(StandardCharsets.UTF_8));
+        }
+        return new Verification(matches, matches);
+    }
+
+
+    /// Hashes a password with a new salt in the stored format.
+    private String encode(String password, int iterations) {
+        byte[] salt = new byte[SALT_BYTES];
+        secureRandom.nextBytes(salt);
+        Base64.Encoder encoder = Base64.getEncoder();
+        return PREFIX + iterations + "$" + encoder.encodeToString(salt) + "$"
+                + encoder.encodeToString(pbkdf2(password, salt, iterations));
+    }
+
+
+    /// Submits a hashing task to the pool.
+    private <T> CompletableFuture<T> submit(Supplier<T> task) {
+        try {
+            return CompletableFuture.supplyAsync(task, executor);
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+
+    /// Waits for a hashing task and rethrows its failure unwrapped.
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause)
+                throw cause;
+            throw e;
+        }
+    }
+
+
+    /**
+     * Measures PBKDF2 on this machine and scales the iteration count to the target time.
+     *
+     * @param config the target time and minimum iteration count
+     * @return the iteration count for new hashes
+     */
+    private static int calibrate(Config config) {
+        byte[] salt = new byte[SALT_BYTES];
+        long fastest = Long.MAX_VALUE;
+
+        // The first runs include JIT compilation, so the fastest of a few is used
+        for (int run = 0; run < 3; run++) {
+            long start = System.nanoTime();
+            pbkdf2("calibration", salt, CALIBRATION_ITERATIONS);
+            fastest = Math.min(fastest, System.nanoTime() - start);
+        }
+
+        double nanosPerIteration = (double) fastest / CALIBRATION_ITERATIONS;
+        long calibrated = Math.round(config.targetTime().toNanos() / nanosPerIteration / 1000) * 1000;
+        return (int) Math.clamp(calibrated, config.minIterations(), MAX_ITERATIONS);
+    }
+
+
+    /// Derives a PBKDF2-HMAC-SHA256 key from a password.
+    private static byte[] pbkdf2(String password, byte[] salt, int iterations) {
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, HASH_BITS);
+        try {
+            return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(ALGORITHM + " is not available", e);
+        } finally {
+            spec.clearPassword();
+        }
+    }
+
+
+    /// Hashes a password the way it was hashed before PBKDF2: one SHA-256 over salt and password.
+    private static byte[] legacySha256(String password, byte[] salt) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            md.update(salt);
+            return md.digest(password.getBytes());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 algorithm not available", e);
+        }
+    }
+
+
+    /**
+     * The result of a verification.
+     *
+     * @param matches      whether the password matches the stored hash
+     * @param needsRehash  whether the password matched a legacy or weaker hash that should be replaced
+     */
+    public record Verification(boolean matches, boolean needsRehash) { }
+
+
+    /**
+     * Configuration of the hasher.
+     *
+     * @param targetTime    the time one hash should take; used for calibration
+     * @param iterations    a fixed iteration count, or 0 to calibrate
+     * @param minIterations the lowest iteration count calibration may choose
+     * @param threads       the number of hashing threads
+     * @param queueCapacity the number of requests that may wait for a hashing thread
+     */
+    public record Config(Duration targetTime, int iterations, int minIterations, int threads, int queueCapacity) {
+
+        /**
+         * Gets the default configuration: calibrated to 100 ms with at least 50000 iterations,
+         * on half of the available processors with up to 256 waiting requests. Each can be
+         * overridden with the system properties {@code banking.password.targetMillis},
+         * {@code banking.password.iterations}, {@code banking.password.minIterations},
+         * {@code banking.password.threads} and {@code banking.password.queueCapacity}.
+         *
+         * @return the default configuration
+         */
+        public static Config defaults() {
+            return new Config(Duration.ofMillis(Long.getLong("banking.password.targetMillis", 100)),
+                    Integer.getInteger("banking.password.iterations", 0),
+                    Integer.getInteger("banking.password.minIterations", 50_000),
+                    Integer.getInteger("banking.password.threads",
+                            Math.max(1, Runtime.getRuntime().availableProcessors() / 2)),
+                    Integer.getInteger("banking.password.queueCapacity", 256));
+        }
+
+    }
+
+}
@@ -0,0 +1,307 @@
+package banking.data;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+
+
+/**
+ * SchemaMigrator creates and upgrades the database schema on startup.
+ * Each migration has a version number and is applied at most once, in its own transaction;
+ * applied versions are recorded in the SchemaVersions table. The first migration matches
+ * the schema of the database shipped in config/Banking.db, so an existing database is
+ * adopted as-is and a missing one is created from scratch.
+ */
+public class SchemaMigrator {
+
+    /// All migrations, in the order they are applied. New migrations are appended with the next version.
+    private static final List<Migration> MIGRATIONS = List.of(
+            new Migration(1, "Baseline schema", false, List.of(
+                    """
+                    CREATE TABLE IF NOT EXISTS Users (
+                        user_id  integer primary key,
+                        email    text not null unique,
+                        password text not null,
+                        datetime text not null
+                    )""",
+                    """
+                    CREATE TABLE IF NOT EXISTS Accounts (
+                        account_id     integer primary key,
+                        user_id        integer             not null references Users on delete cascade,
+                        account_number integer             not null unique,
+                        balance        real    default 0.0 not null,
+                        is_frozen      boolean default 0   not null
+                    )""",
+                    """
+                    CREATE TABLE IF NOT EXISTS Transactions (
+                        transaction_id          INTEGER primary key,
+                        sender_account_number   INTEGER not null references Accounts (account_number) on delete cascade,
+                        receiver_account_number INTEGER default NULL references Accounts (account_number) on delete cascade,
+                        amount                  REAL    not null,
+                        comment                 TEXT    default NULL,
+                        date                    TEXT    not null
+                    )"""
+            )),
+            new Migration(2, "Indexes for account and transaction history lookups", false, List.of(
+                    // Unique indexes on the rowid primary keys duplicate the table's own B-tree
+                    "DROP INDEX IF EXISTS Accounts_account_id_uindex",
+                    "DROP INDEX IF EXISTS Transactions_transaction_id_uindex",
+                    // History by sender / receiver, newest first; the rowid (transaction_id) is the implicit last key,
+                    // so each side streams in (date, transaction_id) order and the two sides merge without sorting.
+                    // Also used by the ON DELETE CASCADE from Accounts.
+                    "CREATE INDEX IF NOT EXISTS Transactions_sender_date_index ON Transactions (sender_account_number, date)",
+                    "CREATE INDEX IF NOT EXISTS Transactions_receiver_date_index ON Transactions (receiver_account_number, date)",
+                    // Covering index for loadAccounts(user_id) and the ON DELETE CASCADE from Users
+                    "CREATE INDEX IF NOT EXISTS Accounts_user_id_index ON Accounts (user_id, account_number, balance, is_frozen)",
+                    "ANALYZE"
+            )),
+            new Migration(3, "Store balances and amounts as integer minor units", true, List.of(
+                    // SQLite cannot change a column's type, so both tables are rebuilt: create, copy, drop, rename.
+                    // REAL forint values are rounded to the nearest fillér (1/100 Ft).
+                    """
+                    CREATE TABLE Accounts_new (
+                        account_id     integer primary key,
+                        user_id        integer           not null references Users on delete cascade,
+                        account_number integer           not null unique,
+                        balance        integer default 0 not null,
+                        is_frozen      boolean default 0 not null
+                    )""",
+                    """
+                    INSERT INTO Accounts_new (account_id, user_id, account_number, balance, is_frozen)
+                    SELECT account_id, user_id, account_number, CAST(ROUND(balance * 100) AS INTEGER), is_frozen
+                    FROM Accounts""",
+                    "DROP TABLE Accounts",
+                    "ALTER TABLE Accounts_new RENAME TO Accounts",
+                    "CREATE INDEX Accounts_user_id_index ON Accounts (user_id, account_number, balance, is_frozen)",
+                    """
+                    CREATE TABLE Transactions_new (
+                        transaction_id          INTEGER primary key,
+                        sender_account_number   INTEGER not null references Accounts (account_number) on delete cascade,
+                        receiver_account_number INTEGER default NULL references Accounts (account_number) on delete cascade,
+                        amount                  INTEGER not null,
+                        comment                 TEXT    default NULL,
+                        date                    TEXT    not null
+                    )""",
+                    """
+                    INSERT INTO Transactions_new (transaction_id, sender_account_number, receiver_account_number, amount, comment, date)
+                    SELECT transaction_id, sender_account_number, receiver_account_number, CAST(ROUND(amount * 100) AS INTEGER), comment, date
+                    FROM Transactions""",
+                    "DROP TABLE Transactions",
+                    "ALTER TABLE Transactions_new RENAME TO Transactions",
+                    "CREATE INDEX Transactions_sender_date_index ON Transactions (sender_account_number, date)",
+                    "CREATE INDEX Transactions_receiver_date_index ON Transactions (receiver_account_number, date)",
+                    "ANALYZE"
+            )),
+            new Migration(4, "Sequence table for block-allocated account numbers", false, List.of(
+                    """
+                    CREATE TABLE Sequences (
+                        name       TEXT    primary key,
+                        next_value INTEGER not null
+                    )""",
+                    "INSERT INTO Sequences (name, next_value) VALUES ('account_number', 0)"
+            )),
+            new Migration(5, "Contacts per user", false, List.of(
+                    """
+                    CREATE TABLE Contacts (
+                        contact_id     INTEGER primary key,
+                        user_id        INTEGER not null references Users on delete cascade,
+                        name           TEXT    not null collate nocase,
+                        account_number INTEGER not null
+                    )""",
+                    // A user's names (ignoring case) and account numbers are unique; both serve lookups by user_id
+                    "CREATE UNIQUE INDEX Contacts_user_name_uindex ON Contacts (user_id, name)",
+                    "CREATE UNIQUE INDEX Contacts_user_account_number_uindex ON Contacts (user_id, account_number)"
+            )),
+            new Migration(6, "Transaction types and balance snapshots", false, List.of(
+                    // Deposits and withdrawals were recorded with the account as sender and receiver and told apart
+                    // by their comment; the type lets balances be replayed from the Transactions table alone
+                    """
+                    ALTER TABLE Transactions ADD COLUMN type TEXT not null default 'TRANSFER'
+                        check (type in ('DEPOSIT', 'WITHDRAWAL', 'TRANSFER'))""",
+                    """
+                    UPDATE Transactions SET type = CASE WHEN comment = 'Withdrawal' THEN 'WITHDRAWAL' ELSE 'DEPOSIT' END
+                    WHERE sender_account_number = receiver_account_number""",
+                    """
+                    CREATE TABLE BalanceSnapshots (
+                        snapshot_id         INTEGER primary key,
+                        last_transaction_id INTEGER not null,
+                        created_at          TEXT    not null
+                    )""",
+                    // Balances of every account after the snapshot's last transaction; deleted accounts keep their rows
+                    """
+                    CREATE TABLE BalanceSnapshotEntries (
+                        snapshot_id    INTEGER not null references BalanceSnapshots on delete cascade,
+                        account_number INTEGER not null,
+                        balance        INTEGER not null,
+                        primary key (snapshot_id, account_number)
+                    ) WITHOUT ROWID"""
+            )),
+            new Migration(7, "Ledger journal checkpoint", false, List.of(
+                    // The sequence of the last LedgerJournal entry applied, committed together with the entries
+                    """
+                    CREATE TABLE JournalCheckpoints (
+                        name     TEXT    primary key,
+                        sequence INTEGER not null
+                    )"""
+            )),
+            new Migration(8, "Idempotency keys", false, List.of(
+                    // A key is reserved before its posting runs, so the primary key admits one posting per key
+                    """
+                    CREATE TABLE IdempotencyKeys (
+                        idempotency_key             TEXT    primary key,
+                        type                        TEXT    not null check(type in ('DEPOSIT', 'WITHDRAWAL', 'TRANSFER')),
+                        account_number              INTEGER not null,
+                        counterparty_account_number INTEGER not null,
+                        amount                      INTEGER not null,
+                        transaction_id              INTEGER,
+                        completed                   INTEGER not null default 0,
+                        created_at                  TEXT    not null
+                    ) WITHOUT ROWID""",
+                    // Expired keys are purged by age
+                    "CREATE INDEX IdempotencyKeys_created_at_index ON IdempotencyKeys (created_at)"
+            )),
+            new Migration(9, "Standing orders", false, List.of(
+                    """
+                    CREATE TABLE StandingOrders (
+                        order_id                   INTEGER primary key autoincrement,
+                        source_account_number      INTEGER not null references Accounts (account_number) on delete cascade,
+                        destination_account_number INTEGER not null references Accounts (account_number) on delete cascade,
+                        amount                     INTEGER not null check(amount > 0),
+                        comment                    TEXT    not null,
+                        frequency                  TEXT    not null check(frequency in ('DAILY', 'WEEKLY', 'MONTHLY')),
+                        first_run                  TEXT    not null,
+                        run_count                  INTEGER not null default 0,
+                        next_run                   TEXT    not null,
+                        active                     INTEGER not null default 1,
+                        last_error                 TEXT
+                    )""",
+                    // Serves the scheduler's due-order query as a range scan in next_run order
+                    "CREATE INDEX StandingOrders_due_index ON StandingOrders (active, next_run)",
+                    // Serve the listing by account and the cascading deletes of accounts
+                    "CREATE INDEX StandingOrders_source_index ON StandingOrders (source_account_number)",
+                    "CREATE INDEX StandingOrders_destination_index ON StandingOrders (destination_account_number)"
+            ))
+    );
+
+
+    /**
+     * Applies every migration that has not been applied to the database yet.
+     *
+     * @param connection a writable connection in auto-commit mode
+     * @return the schema version after migrating
+     * @throws SQLException if a migration fails; that migration is rolled back
+     */
+    public int migrate(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("""
+                    CREATE TABLE IF NOT EXISTS SchemaVersions (
+                        version     INTEGER primary key,
+                        description TEXT not null,
+                        applied_at  TEXT not null
+                    )""");
+        }
+
+        int currentVersion = getCurrentVersion(connection);
+
+        for (Migration migration : MIGRATIONS) {
+            if (migration.version() > currentVersion) {
+                apply(connection, migration);
+                currentVersion = migration.version();
+            }
+        }
+        return currentVersion;
+    }
+
+
+    /**
+     * Gets the highest schema version recorded in the database.
+     *
+     * @param connection the connection to use
+     * @return the current schema version, or 0 if no migration has been applied
+     * @throws SQLException when a database error occurs
+     */
+    public int getCurrentVersion(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet result = statement.executeQuery("SELECT COALESCE(MAX(version), 0) FROM SchemaVersions")) {
+            return result.next() ? result.getInt(1) : 0;
+        }
+    }
+
+
+    /// Gets the version the schema has after all known migrations are applied.
+    public static int getLatestVersion() {
+        return MIGRATIONS.getLast().version();
+    }
+
+
+    /**
+     * Applies a single migration and records it, all in one transaction.
+     * Migrations that rebuild tables run with foreign key enforcement switched off,
+     * which SQLite only allows outside a transaction, and are checked before committing.
+     *
+     * @param connection the connection to use
+     * @param migration  the migration to apply
+     * @throws SQLException if any statement fails
+     */
+    private void apply(Connection connection, Migration migration) throws SQLException {
+        if (migration.disableForeignKeys())
+            setForeignKeys(connection, false);
+
+        connection.setAutoCommit(false);
+        try (Statement statement = connection.createStatement()) {
+            for (String sql : migration.statements())
+                statement.execute(sql);
+
+            if (migration.disableForeignKeys()) {
+                try (ResultSet violations = statement.executeQuery("PRAGMA foreign_key_check")) {
+                    if (violations.next())
+                        throw new SQLException("Migration " + migration.version() + " left foreign key violations in table "
+                                + violations.getString("table"));
+                }
+            }
+
+            try (PreparedStatement insert = connection.prepareStatement(
+                    "INSERT INTO SchemaVersions (version, description, applied_at) VALUES (?, ?, ?)")) {
+                insert.setInt(1, migration.version());
+                insert.setString(2, migration.description());
+                insert.setString(3, LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")));
+                insert.executeUpdate();
+            }
+
+            connection.commit();
+        } catch (SQLException e) {
+            connection.rollback();
+            throw new SQLException("Schema migration " + migration.version() + " (" + migration.description()
+                    + ") failed: " + e.getMessage(), e);
+        } finally {
+            connection.setAutoCommit(true);
+            if (migration.disableForeignKeys())
+                setForeignKeys(connection, true);
+        }
+    }
+
+
+    /// Switches foreign key enforcement on or off for the given connection.
+    private static void setForeignKeys(Connection connection, boolean enabled) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("PRAGMA foreign_keys = " + (enabled ? "ON" : "OFF"));
+        }
+    }
+
+
+    /**
+     * A single schema change.
+     *
+     * @param version            the version the schema has after this migration
+     * @param description        a short description recorded in SchemaVersions
+     * @param disableForeignKeys whether foreign keys must be off while the migration runs (table rebuilds)
+     * @param statements         the SQL statements to execute, in order
+     */
+    private record Migration(int version, String description, boolean disableForeignKeys, List<String> statements) { }
+
+}
@@ -0,0 +1,125 @@
+package banking.data;
+
+import banking.model.Account;
+import banking.model.User;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+
+/**
+ * SessionBootstrap signs a user in and loads everything the main window shows first: the user,
+ * their accounts and the first page of the default (first) account's history. All of it is
+ * read on one read connection in one transaction, so the page always matches the balances it
+ * is shown with, instead of four separate queries on four connections.
+ * <p>
+ * The password is verified only after the connection has been released, so the slow hash never
+ * holds a connection; if it does not match, the loaded data is discarded. Legacy or weaker
+ * hashes are replaced after a successful sign-in, as in {@link UserManager#authenticateUser}.
+ */
+public class SessionBootstrap {
+
+    private final UserManager userManager;
+    private final AccountManager accountManager;
+    private final TransactionManager transactionManager;
+    private final PasswordHasher passwordHasher;
+
+
+    /**
+     * Initializes the bootstrap with the shared PasswordHasher.
+     */
+    public SessionBootstrap() {
+        userManager = new UserManager();
+        accountManager = new AccountManager();
+        transactionManager = new TransactionManager();
+        passwordHasher = PasswordHasher.getInstance();
+    }
+
+
+    /**
+     * Authenticates a user and loads their session.
+     *
+     * @param email    the user's email
+     * @param password the plain text password to be checked
+     * @param pageSize the number of transactions on the first history page
+     * @return the session, or null if the email is unknown or the password does not match
+     * @throws SQLException                                  when a database error occurs
+     * @throws java.util.concurrent.RejectedExecutionException if the hashing queue is full
+     * @throws IllegalArgumentException                      if the page size is not positive
+     */
+    public Session open(String email, String password, int pageSize) throws SQLException {
+        if (email == null || email.isEmpty() || password == null || password.isEmpty())
+            return null;
+        if (pageSize <= 0)
+            throw new IllegalArgumentException("Page size must be positive");
+
+        Session session = load(email, pageSize);
+        if (session == null)
+            return null;
+
+        // Hashing runs on the PasswordHasher pool without holding a connection
+        String storedPassword = session.user().getPassword();
+        PasswordHasher.Verification verification = passwordHasher.verify(password, storedPassword);
+        if (!verification.matches())
+            return null;
+        if (verification.needsRehash())
+            userManager.rehashPassword(email, password, storedPassword);
+        return session;
+    }
+
+
+    /**
+     * Reads the user, their accounts and the first history page in one read transaction.
+     * The accounts are also put into the AccountCache for the window's later reads.
+     * <p>
+     * The transaction is started with BEGIN DEFERRED rather than by turning off autocommit:
+     * in rollback journal mode the read connection is a general purpose one whose transactions
+     * begin IMMEDIATE, which would take the write lock for every sign-in. A deferred transaction
+     * only takes a shared lock, so sign-ins do not queue behind or block postings.
+     *
+     * @return the unverified session, or null if the email is unknown
+     */
+    private Session load(String email, int pageSize) throws SQLException {
+        AccountCache cache = AccountCache.getInstance();
+        long generation = cache.generation();
+
+        try (Connection connection = DatabaseManager.getInstance().getReadConnection();
+             Statement statement = connection.createStatement()) {
+            statement.execute("BEGIN DEFERRED"); // Start Transaction
+
+            try {
+                User user = userManager.loadUser(connection, email);
+                if (user == null) {
+                    statement.execute("COMMIT");
+                    return null;
+                }
+
+                List<Account> accounts = accountManager.loadAccounts(connection, user.getUserID());
+                TransactionPage firstPage = accounts.isEmpty()
+                        ? new TransactionPage(List.of(), null)
+                        : transactionManager.loadTransactions(connection, accounts.getFirst(), null, pageSize);
+
+                statement.execute("COMMIT");
+                cache.putUserAccounts(user.getUserID(), accounts, generation);
+                return new Session(user, accounts, firstPage);
+
+            } catch (SQLException | RuntimeException e) {
+                statement.execute("ROLLBACK");
+                throw e;
+            }
+        }
+    }
+
+
+    /**
+     * The data a signed-in user starts with.
+     *
+     * @param user      the signed-in user; its password is the stored hash
+     * @param accounts  the user's accounts; the first one is the default account
+     * @param firstPage the first page of the default account's history, empty if there are no accounts
+     */
+    public record Session(User user, List<Account> accounts, TransactionPage firstPage) { }
+
+}
@@ -0,0 +1,157 @@
+package banking.data;
+
+import banking.model.StandingOrder;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * StandingOrderManager is responsible for saving, loading and cancelling standing orders in the
+ * StandingOrders table. An order is removed with its source or destination account by the
+ * cascading foreign keys. The orders are executed by the {@link StandingOrderScheduler}.
+ */
+public class StandingOrderManager {
+
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    static final String COLUMNS = "order_id, source_account_number, destination_account_number, amount, comment, " +
+            "frequency, first_run, run_count, next_run, active, last_error";
+
+
+    public StandingOrderManager() { }
+
+
+    /**
+     * Creates a standing order whose first run is due at the given time, to the second.
+     * A first run in the past is executed, with the runs missed since, on the scheduler's next run.
+     *
+     * @param sourceAccountNumber      the account number to transfer from
+     * @param destinationAccountNumber the account number to transfer to
+     * @param amount                   the amount of every transfer in minor units
+     * @param comment                  the comment recorded with every transaction
+     * @param frequency                how often the order runs
+     * @param firstRun                 when the first run is due
+     * @return the saved order, with its ID
+     * @throws SQLException             when a database error occurs, e.g. an account does not exist
+     * @throws IllegalArgumentException if the amount is not positive or both accounts are the same
+     */
+    public StandingOrder createStandingOrder(int sourceAccountNumber, int destinationAccountNumber, long amount,
+                                             String comment, StandingOrder.Frequency frequency, LocalDateTime firstRun)
+            throws SQLException {
+        if (amount <= 0)
+            throw new IllegalArgumentException("Standing order amount must be positive");
+        if (sourceAccountNumber == destinationAccountNumber)
+            throw new IllegalArgumentException("Source and destination accounts cannot be the same");
+
+        LocalDateTime start = firstRun.truncatedTo(ChronoUnit.SECONDS);
+        String query = "INSERT INTO StandingOrders (source_account_number, destination_account_number, amount, comment, " +
+                "frequency, first_run, next_run) VALUES (?, ?, ?, ?, ?, ?, ?)";
+
+        try (Connection connection = DatabaseManager.getInstance().getWriteConnection();
+             PreparedStatement statement = connection.prepareStatement(query, Statement.RETURN_GENERATED_KEYS)) {
+            statement.setInt(1, sourceAccountNumber);
+            statement.setInt(2, destinationAccountNumber);
+            statement.setLong(3, amount);
+            statement.setString(4, comment);
+            statement.setString(5, frequency.name());
+            statement.setString(6, format(start));
+            statement.setString(7, format(start));
+            statement.executeUpdate();
+
+            try (ResultSet keys = statement.getGeneratedKeys()) {
+                keys.next();
+                return new StandingOrder(keys.getInt(1), sourceAccountNumber, destinationAccountNumber, amount,
+                        comment, frequency, start, 0, start, true, null);
+            }
+        }
+    }
+
+
+    /**
+     * Loads a standing order.
+     *
+     * @param orderID the order ID
+     * @return the order, or null if it does not exist
+     * @throws SQLException when a database error occurs
+     */
+    public StandingOrder loadStandingOrder(int orderID) throws SQLException {
+        try (Connection connection = DatabaseManager.getInstance().getReadConnection();
+             PreparedStatement statement = connection.prepareStatement(
+                     "SELECT " + COLUMNS + " FROM StandingOrders WHERE order_id = ?")) {
+            statement.setInt(1, orderID);
+
+            try (ResultSet result = statement.executeQuery()) {
+                return result.next() ? read(result) : null;
+            }
+        }
+    }
+
+
+    /**
+     * Loads the active standing orders that transfer from an account.
+     *
+     * @param accountNumber the source account number
+     * @return the orders in the order they were created
+     * @throws SQLException when a database error occurs
+     */
+    public List<StandingOrder> loadStandingOrders(int accountNumber) throws SQLException {
+        String query = "SELECT " + COLUMNS + " FROM StandingOrders " +
+                "WHERE source_account_number = ? AND active = 1 ORDER BY order_id";
+        List<StandingOrder> orders = new ArrayList<>();
+
+        try (Connection connection = DatabaseManager.getInstance().getReadConnection();
+             PreparedStatement statement = connection.prepareStatement(query)) {
+            statement.setInt(1, accountNumber);
+
+            try (ResultSet result = statement.executeQuery()) {
+                while (result.next())
+                    orders.add(read(result));
+            }
+        }
+        return orders;
+    }
+
+
+    /**
+     * Cancels a standing order; it is kept, but no longer runs.
+     *
+     * @param orderID the order ID
+     * @return true if an active order was cancelled
+     * @throws SQLException when a database error occurs
+     */
+    public boolean cancelStandingOrder(int orderID) throws SQLException {
+        try (Connection connection = DatabaseManager.getInstance().getWriteConnection();
+             PreparedStatement statement = connection.prepareStatement(
+                     "UPDATE StandingOrders SET active = 0 WHERE order_id = ? AND active = 1")) {
+            statement.setInt(1, orderID);
+            return statement.executeUpdate() > 0;
+        }
+    }
+
+
+    /// Reads a StandingOrders row selected with {@link #COLUMNS}.
+    static StandingOrder read(ResultSet result) throws SQLException {
+        return new StandingOrder(result.getInt("order_id"), result.getInt("source_account_number"),
+                result.getInt("destination_account_number"), result.getLong("amount"), result.getString("comment"),
+                StandingOrder.Frequency.valueOf(result.getString("frequency")),
+                LocalDateTime.parse(result.getString("first_run"), DATE_FORMAT), result.getInt("run_count"),
+                LocalDateTime.parse(result.getString("next_run"), DATE_FORMAT), result.getBoolean("active"),
+                result.getString("last_error"));
+    }
+
+
+    /// Formats a due date as it is stored, so stored dates compare in time order.
+    static String format(LocalDateTime date) {
+        return date.format(DATE_FORMAT);
+    }
+
+}
@@ -0,0 +1,449 @@
+package banking.data;
+
+import banking.model.Account;
+import banking.model.StandingOrder;
+import banking.model.Transaction;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+
+/**
+ * StandingOrderScheduler executes the standing orders that are due. A run reads the due orders
+ * with an indexed range query on (active, next_run), splits them into chunks and executes the
+ * chunks on a pool of worker threads, each chunk in one database transaction:
+ * <ol>
+ *     <li>a run of an order is claimed by advancing its run count and next due date with an
+ *     UPDATE conditioned on the run count read, so it executes once even if another scheduler
+ *     picked up the same order,</li>
+ *     <li>the transfer is applied through AccountManager and recorded with its Transactions row
+ *     in the same transaction as the claim,</li>
+ *     <li>a transfer that is not allowed, e.g. for insufficient funds, is rolled back to its
+ *     savepoint; the run is then skipped and its reason stored with the order.</li>
+ * </ol>
+ * An order is run until its next due date is in the future, so after downtime every missed run
+ * is caught up, in order. A chunk that fails with a database error is retried with a backoff;
+ * if it keeps failing, its orders stay due for the next run. SQLite admits one writer at a time,
+ * so the workers' transactions commit one after another.
+ * <p>
+ * Like {@link AccountManager#transferBatch}, the scheduler writes to the database directly, so it
+ * must not run while an engine that holds balances in memory, such as {@link InMemoryLedger}, is used.
+ */
+public class StandingOrderScheduler implements AutoCloseable {
+
+    private static StandingOrderScheduler instance;
+
+    private final Config config;
+    private final AccountManager accountManager = new AccountManager();
+    private final TransactionManager transactionManager = new TransactionManager();
+    private final ExecutorService workers;
+    private final ReentrantLock runLock = new ReentrantLock();
+    private ScheduledExecutorService timer;
+
+    private long runCount;
+    private long executedCount;
+    private long failedCount;
+    private RunStats lastRun;
+
+
+    /**
+     * Creates a scheduler and its worker threads. Orders are only run by {@link #runDue()}
+     * until {@link #start()} is called.
+     *
+     * @param config the worker, chunk and polling configuration
+     * @throws IllegalArgumentException if the configuration is invalid
+     */
+    public StandingOrderScheduler(Config config) {
+        if (config.workers() < 1 || config.chunkSize() < 1 || config.maxAttempts() < 1 || !config.pollInterval().isPositive())
+            throw new IllegalArgumentException("Invalid standing order configuration: " + config);
+
+        this.config = config;
+        AtomicInteger workerCount = new AtomicInteger();
+        workers = Executors.newFixedThreadPool(config.workers(), runnable -> {
+            Thread thread = new Thread(runnable, "standing-orders-worker-" + workerCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+
+    /**
+     * Gets the shared instance, created with {@link Config#defaults()} on first use.
+     *
+     * @return the shared StandingOrderScheduler
+     */
+    public static synchronized StandingOrderScheduler getInstance() {
+        if (instance == null)
+            instance = new StandingOrderScheduler(Config.defaults());
+        return instance;
+    }
+
+
+    /// Stops the shared instance, if any, after the run in progress.
+    public static synchronized void shutdown() {
+        if (instance != null) {
+            instance.close();
+            instance = null;
+        }
+    }
+
+
+    /**
+     * Runs the due orders now, catching up on the runs missed while the application was down,
+     * and again every poll interval after the previous run ended.
+     */
+    public synchronized void start() {
+        if (timer != null)
+            return;
+
+        timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "standing-orders-scheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        timer.scheduleWithFixedDelay(() -> {
+            try {
+                runDue();
+            } catch (SQLException e) {
+                System.err.println("Standing order run failed, retrying in " + config.pollInterval().toSeconds() + " s: " + e.getMessage());
+            }
+        }, 0, config.pollInterval().toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+
+    /**
+     * Executes every run due by now.
+     *
+     * @return the statistics of this run
+     * @throws SQLException when the due orders cannot be read
+     */
+    public RunStats runDue() throws SQLException {
+        return runDue(LocalDateTime.now());
+    }
+
+
+    /**
+     * Executes every run due by the given time. Only one run executes at a time; a concurrent
+     * call waits for the one in progress.
+     *
+     * @param now the time up to which runs are due
+     * @return the statistics of this run
+     * @throws SQLException when the due orders cannot be read
+     */
+    public RunStats runDue(LocalDateTime now) throws SQLException {
+        runLock.lock();
+        try {
+            long started = System.nanoTime();
+            ChunkResult total = new ChunkResult(0, 0, 0, 0, 0);
+            int chunkCount = 0;
+            boolean complete = true;
+
+            // Every pass runs its orders until they are no longer due, so the next pass reads other orders
+            while (complete) {
+                List<StandingOrder> due = loadDue(now, config.chunkSize() * config.workers());
+                if (due.isEmpty())
+                    break;
+
+                List<Future<ChunkResult>> futures = new ArrayList<>();
+                for (int start = 0; start < due.size(); start += config.chunkSize()) {
+                    List<StandingOrder> chunk = due.subList(start, Math.min(start + config.chunkSize(), due.size()));
+                    futures.add(workers.submit(() -> executeChunk(chunk, now)));
+                }
+
+                for (Future<ChunkResult> future : futures) {
+                    chunkCount++;
+                    try {
+                        total = total.plus(future.get());
+                    } catch (ExecutionException e) {
+                        // Its orders are still due; stop here, so the next run retries them instead of this loop
+                        complete = false;
+                        System.err.println("Standing order chunk failed: " + e.getCause().getMessage());
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new SQLException("Interrupted while waiting for standing order chunks", e);
+                    }
+                }
+            }
+
+            RunStats stats = new RunStats(now, total.orderCount(), total.executedCount(), total.failedCount(),
+                    total.conflictCount(), chunkCount, total.retryCount(), complete, Duration.ofNanos(System.nanoTime() - started));
+            synchronized (this) {
+                runCount++;
+                executedCount += stats.executedCount();
+                failedCount += stats.failedCount();
+                lastRun = stats;
+            }
+            return stats;
+        } finally {
+            runLock.unlock();
+        }
+    }
+
+
+    /// Gets the worker, chunk and polling configuration.
+    public Config getConfig() {
+        return config;
+    }
+
+
+    /// Gets a snapshot of the scheduler's statistics.
+    public synchronized Stats getStats() {
+        return new Stats(runCount, executedCount, failedCount, lastRun);
+    }
+
+
+    /// Stops polling and the worker threads after the run in progress.
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (timer != null)
+                timer.shutdown();
+        }
+
+        runLock.lock();
+        try {
+            workers.shutdown();
+        } finally {
+            runLock.unlock();
+        }
+    }
+
+
+    /**
+     * Reads the active orders due by the given time, the longest overdue first.
+     *
+     * @param now   the time up to which runs are due
+     * @param limit the maximum number of orders to read
+     * @return the due orders
+     * @throws SQLException when a database error occurs
+     */
+    private List<StandingOrder> loadDue(LocalDateTime now, int limit) throws SQLException {
+        String query = "SELECT " + StandingOrderManager.COLUMNS + " FROM StandingOrders " +
+                "WHERE active = 1 AND next_run <= ? ORDER BY next_run LIMIT ?";
+        List<StandingOrder> orders = new ArrayList<>();
+
+        try (Connection connection = DatabaseManager.getInstance().getReadConnection();
+             PreparedStatement statement = connection.prepareStatement(query)) {
+            statement.setString(1, StandingOrderManager.format(now));
+            statement.setInt(2, limit);
+
+            try (ResultSet result = statement.executeQuery()) {
+                while (result.next())
+                    orders.add(StandingOrderManager.read(result));
+            }
+        }
+        return orders;
+    }
+
+
+    /**
+     * Executes a chunk, retrying it with a backoff after a database error.
+     *
+     * @throws SQLException if the last attempt fails; nothing of the chunk is committed then
+     */
+    private ChunkResult executeChunk(List<StandingOrder> chunk, LocalDateTime now) throws SQLException {
+        long backoffMillis = 10;
+        for (int attempt = 1; ; attempt++) {
+            try {
+                ChunkResult result = executeChunkOnce(chunk, now);
+                return result.plus(new ChunkResult(0, 0, 0, 0, attempt - 1));
+            } catch (SQLException e) {
+                if (attempt >= config.maxAttempts())
+                    throw e;
+                try {
+                    Thread.sleep(backoffMillis);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+                backoffMillis *= 2;
+            }
+        }
+    }
+
+
+    /**
+     * Executes every due run of the orders of a chunk in one database transaction.
+     *
+     * @throws SQLException when a database error occurs; the chunk is rolled back
+     */
+    private ChunkResult executeChunkOnce(List<StandingOrder> chunk, LocalDateTime now) throws SQLException {
+        int executed = 0;
+        int failed = 0;
+        int conflicts = 0;
+        Set<Integer> changedAccounts = new LinkedHashSet<>();
+
+        try (Connection connection = DatabaseManager.getInstance().getWriteConnection()) {
+            connection.setAutoCommit(false); // Start Transaction
+
+            try {
+                for (StandingOrder order : chunk) {
+                    StandingOrder current = order;
+                    while (!current.nextRun().isAfter(now)) {
+                        Savepoint savepoint = connection.setSavepoint();
+                        StandingOrder next = current.advance(null);
+                        try {
+                            if (!claim(connection, current, next)) {
+                                connection.releaseSavepoint(savepoint);
+                                conflicts++;
+                                break;
+                            }
+                            transfer(connection, current);
+                            connection.releaseSavepoint(savepoint);
+                            changedAccounts.add(current.sourceAccountNumber());
+                            changedAccounts.add(current.destinationAccountNumber());
+                            executed++;
+                        } catch (IllegalArgumentException e) {
+                            // The run is skipped: only the claim is kept, with the reason
+                            connection.rollback(savepoint);
+                            connection.releaseSavepoint(savepoint);
+                            next = current.advance(e.getMessage());
+                            if (!claim(connection, current, next)) {
+                                conflicts++;
+                                break;
+                            }
+                            failed++;
+                        }
+                        current = next;
+                    }
+                }
+
+                connection.commit();
+            } catch (Throwable e) {
+                // Restoring autocommit below would otherwise commit the runs applied so far
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        }
+
+        AccountCache.getInstance().invalidate(changedAccounts.stream().mapToInt(Integer::intValue).toArray());
+        return new ChunkResult(chunk.size(), executed, failed, conflicts, 0);
+    }
+
+
+    /**
+     * Advances an order past its next run, unless its run count changed since it was read.
+     *
+     * @return true if this transaction claimed the run
+     */
+    private static boolean claim(Connection connection, StandingOrder current, StandingOrder next) throws SQLException {
+        String query = "UPDATE StandingOrders SET run_count = ?, next_run = ?, last_error = ? " +
+                "WHERE order_id = ? AND run_count = ? AND active = 1";
+
+        try (PreparedStatement statement = connection.prepareStatement(query)) {
+            statement.setInt(1, next.runCount());
+            statement.setString(2, StandingOrderManager.format(next.nextRun()));
+            statement.setString(3, next.lastError());
+            statement.setInt(4, current.orderID());
+            statement.setInt(5, current.runCount());
+            return statement.executeUpdate() > 0;
+        }
+    }
+
+
+    /// Applies the transfer of one run and inserts its Transactions row, dated at the run's due time, within the chunk's transaction.
+    private void transfer(Connection connection, StandingOrder order) throws SQLException {
+        accountManager.applyTransfer(connection, order.sourceAccountNumber(), order.destinationAccountNumber(), order.amount());
+
+        // Only the account numbers of the row's accounts are written
+        transactionManager.insertTransaction(connection, new Transaction(
+                new Account(0, order.sourceAccountNumber(), 0, false),
+                new Account(0, order.destinationAccountNumber(), 0, false),
+                order.amount(), order.comment(), order.nextRun()));
+    }
+
+
+    /// The counts of one chunk, or the sum of several.
+    private record ChunkResult(int orderCount, int executedCount, int failedCount, int conflictCount, int retryCount) {
+
+        ChunkResult plus(ChunkResult other) {
+            return new ChunkResult(orderCount + other.orderCount, executedCount + other.executedCount,
+                    failedCount + other.failedCount, conflictCount + other.conflictCount, retryCount + other.retryCount);
+        }
+
+    }
+
+
+    /**
+     * Configuration of the scheduler.
+     *
+     * @param workers      the number of worker threads executing chunks
+     * @param chunkSize    the number of orders executed in one database transaction
+     * @param maxAttempts  the number of times a chunk is tried before its orders are left for the next run
+     * @param pollInterval the time between the end of a run and the start of the next
+     */
+    public record Config(int workers, int chunkSize, int maxAttempts, Duration pollInterval) {
+
+        /**
+         * Gets the default configuration: 4 workers, chunks of 100 orders tried up to 3 times and a run
+         * every minute. They can be overridden with the {@code banking.standingOrders.workers},
+         * {@code banking.standingOrders.chunkSize}, {@code banking.standingOrders.maxAttempts} and
+         * {@code banking.standingOrders.pollSeconds} system properties.
+         *
+         * @return the default configuration
+         */
+        public static Config defaults() {
+            return new Config(Integer.getInteger("banking.standingOrders.workers", 4),
+                    Integer.getInteger("banking.standingOrders.chunkSize", 100),
+                    Integer.getInteger("banking.standingOrders.maxAttempts", 3),
+                    Duration.ofSeconds(Long.getLong("banking.standingOrders.pollSeconds", 60)));
+        }
+
+    }
+
+
+    /**
+     * The statistics of one run.
+     *
+     * @param dueBy          the time up to which runs were due
+     * @param orderCount     the number of due orders read
+     * @param executedCount  the number of runs whose transfer was executed
+     * @param failedCount    the number of runs skipped because their transfer was not allowed
+     * @param conflictCount  the number of orders another scheduler advanced first
+     * @param chunkCount     the number of chunks
+     * @param retryCount     the number of chunk attempts repeated after a database error
+     * @param complete       whether every due run was done; false if a chunk failed every attempt
+     * @param elapsed        the duration of the run
+     */
+    public record RunStats(LocalDateTime dueBy, int orderCount, int executedCount, int failedCount, int conflictCount,
+                           int chunkCount, int retryCount, boolean complete, Duration elapsed) {
+
+        /// Gets the throughput of the run in executed and failed runs per second.
+        public double runsPerSecond() {
+            double seconds = elapsed.toNanos() / 1e9;
+            return seconds > 0 ? (executedCount + failedCount) / seconds : 0;
+        }
+
+    }
+
+
+    /**
+     * A snapshot of the scheduler's statistics.
+     *
+     * @param runCount      the number of runs
+     * @param executedCount the number of executed runs of orders over all runs
+     * @param failedCount   the number of skipped runs of orders over all runs
+     * @param lastRun       the statistics of the last run, or null before the first
+     */
+    public record Stats(long runCount, long executedCount, long failedCount, RunStats lastRun) { }
+
+}
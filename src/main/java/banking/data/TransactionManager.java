@@ -7,57 +7,45 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 
 /**
  * TransactionManager is responsible for managing transactions in the banking application.
- * It provides methods to save, load, and delete transactions from the database.
+ * It provides methods to save, load (in full or page by page), and delete transactions from the database.
  */
 public class TransactionManager {
 
-    private final AccountManager accountManager;
 
-
-    /**
-     * Constructor for TransactionManager.
-     * Initializes the AccountManager.
-     */
-    public TransactionManager() {
-        accountManager = new AccountManager();
-    }
+    public TransactionManager() { }
 
 
     /**
      * Saves a transaction to the database.
-     * Checks if both sender and receiver accounts exist before saving.
+     * The row is only inserted if both the sender and the receiver account exist;
+     * the check and the insert are a single statement.
      *
      * @param transaction the transaction to be saved
      * @return true if the transaction was saved successfully, false otherwise
      * @throws SQLException if a database access error occurs
      */
     public boolean saveTransaction(Transaction transaction) throws SQLException {
-        if (!accountManager.accountExists(transaction.sender().getAccountNumber())
-                || !accountManager.accountExists(transaction.receiver().getAccountNumber()))
-            return false;
-
-        String query = "INSERT INTO Transactions " +
-                "(sender_account_number, receiver_account_number, amount, comment, date) VALUES (?, ?, ?, ?, ?)";
-
-        LocalDateTime date = transaction.date();
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
-        String dateOfTransaction = date.format(formatter);
+        String query = "INSERT INTO Transactions (sender_account_number, receiver_account_number, amount, comment, date, type) " +
+                "SELECT ?, ?, ?, ?, ?, ? " +
+                "WHERE EXISTS (SELECT 1 FROM Accounts WHERE account_number = ?) " +
+                "AND EXISTS (SELECT 1 FROM Accounts WHERE account_number = ?)";
 
-        try (Connection connection = DatabaseManager.getInstance().getConnection()) {
-            PreparedStatement statement = connection.prepareStatement(query);
-            statement.setInt(1, transaction.sender().getAccountNumber());
-            statement.setInt(2, transaction.receiver().getAccountNumber());
-            statement.setDouble(3, transaction.amount());
-            statement.setString(4, transaction.comment());
-            statement.setString(5, dateOfTransaction);
+        try (Connection connection = DatabaseManager.getInstance().getWriteConnection();
+             PreparedStatement statement = connection.prepareStatement(query)) {
+            bindTransaction(statement, transaction);
+            statement.setInt(7, transaction.sender().getAccountNumber());
+            statement.setInt(8, transaction.receiver().getAccountNumber());
 
             int rowsAffected = statement.executeUpdate();
             return rowsAffected > 0;
@@ -65,10 +53,49 @@ public class TransactionManager {
     }
 
 
+    /**
+     * Inserts a transaction using an existing database connection, so it can be committed
+     * together with the balance changes it records. Both accounts must exist.
+     *
+     * @param connection  the existing database connection to use
+     * @param transaction the transaction to be inserted
+     * @return the ID of the new transaction
+     * @throws SQLException when a database error occurs
+     */
+    int insertTransaction(Connection connection, Transaction transaction) throws SQLException {
+        String query = "INSERT INTO Transactions " +
+                "(sender_account_number, receiver_account_number, amount, comment, date, type) VALUES (?, ?, ?, ?, ?, ?)";
+
+        try (PreparedStatement statement = connection.prepareStatement(query, Statement.RETURN_GENERATED_KEYS)) {
+            bindTransaction(statement, transaction);
+            statement.executeUpdate();
+
+            try (ResultSet keys = statement.getGeneratedKeys()) {
+                if (!keys.next())
+                    throw new SQLException("Inserting the transaction did not return its ID");
+                return keys.getInt(1);
+            }
+        }
+    }
+
+
+    /// Binds the sender, receiver, amount, comment, date and type of a transaction to parameters 1-6.
+    private static void bindTransaction(PreparedStatement statement, Transaction transaction) throws SQLException {
+        statement.setInt(1, transaction.sender().getAccountNumber());
+        statement.setInt(2, transaction.receiver().getAccountNumber());
+        statement.setLong(3, transaction.amount());
+        statement.setString(4, transaction.comment());
+        statement.setString(5, transaction.date().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")));
+        statement.setString(6, Type.of(transaction).name());
+    }
+
+
     /**
      * Searches for transactions based on the given account in the
      * database and returns them as a list of Transaction objects.
-     * Uses optimized JOIN query to avoid N+1 query problem.
+     * Uses optimized JOIN query to avoid N+1 query problem. The sent and received
+     * transactions are read from their own indexes and merged in date order, so the
+     * history is neither scanned nor sorted.
      *
      * @param a the account to search transactions for
      * @return a List of Transactions that involve the given account (as sender or receiver)
@@ -84,21 +111,32 @@ public class TransactionManager {
                 FROM Transactions t
                 JOIN Accounts s ON t.sender_account_number = s.account_number
                 JOIN Accounts r ON t.receiver_account_number = r.account_number
-                WHERE t.receiver_account_number = ? OR t.sender_account_number = ?
-                ORDER BY t.date DESC
+                WHERE t.sender_account_number = ?
+                UNION ALL
+                SELECT t.transaction_id, t.amount, t.comment, t.date,
+                       s.account_id as sender_id, s.user_id as sender_user_id, s.account_number as sender_number,
+                       s.balance as sender_balance, s.is_frozen as sender_frozen,
+                       r.account_id as receiver_id, r.user_id as receiver_user_id, r.account_number as receiver_number,
+                       r.balance as receiver_balance, r.is_frozen as receiver_frozen
+                FROM Transactions t
+                JOIN Accounts s ON t.sender_account_number = s.account_number
+                JOIN Accounts r ON t.receiver_account_number = r.account_number
+                WHERE t.receiver_account_number = ? AND t.sender_account_number <> ?
+                ORDER BY date DESC, transaction_id DESC
                 """;
 
         List<Transaction> transactions = new ArrayList<>();
 
-        try (Connection connection = DatabaseManager.getInstance().getConnection()) {
-            PreparedStatement statement = connection.prepareStatement(query);
+        try (Connection connection = DatabaseManager.getInstance().getReadConnection();
+             PreparedStatement statement = connection.prepareStatement(query)) {
             statement.setInt(1, a.getAccountNumber());
             statement.setInt(2, a.getAccountNumber());
+            statement.setInt(3, a.getAccountNumber());
 
             try (ResultSet resultSet = statement.executeQuery()) {
                 while (resultSet.next()) {
                     int transactionID = resultSet.getInt("transaction_id");
-                    double amount = resultSet.getDouble("amount");
+                    long amount = resultSet.getLong("amount");
                     String comment = resultSet.getString("comment");
 
                     String date = resultSet.getString("date");
@@ -110,7 +148,7 @@ public class TransactionManager {
                             resultSet.getInt("sender_id"),
                             resultSet.getInt("sender_user_id"),
                             resultSet.getInt("sender_number"),
-                            resultSet.getDouble("sender_balance"),
+                            resultSet.getLong("sender_balance"),
                             resultSet.getBoolean("sender_frozen")
                     );
 
@@ -119,7 +157,7 @@ public class TransactionManager {
                             resultSet.getInt("receiver_id"),
                             resultSet.getInt("receiver_user_id"),
                             resultSet.getInt("receiver_number"),
-                            resultSet.getDouble("receiver_balance"),
+                            resultSet.getLong("receiver_balance"),
                             resultSet.getBoolean("receiver_frozen")
                     );
 
@@ -131,6 +169,134 @@ public class TransactionManager {
     }
 
 
+    /**
+     * Loads one page of the given account's transaction history, newest first.
+     * Pages are addressed by keyset (date, transaction ID) rather than by offset, so each
+     * page costs the same no matter how deep into the history it is. The account itself is
+     * used as the sender or receiver of every loaded transaction, and each counterparty
+     * account is created once per page.
+     *
+     * @param a           the account to search transactions for
+     * @param afterCursor the cursor returned with the previous page, or null for the first page
+     * @param pageSize    the maximum number of transactions to load
+     * @return the page of transactions and the cursor for the next page
+     * @throws SQLException             when connection is unsuccessful
+     * @throws IllegalArgumentException if the page size is not positive
+     */
+    public TransactionPage loadTransactions(Account a, TransactionPage.Cursor afterCursor, int pageSize)
+            throws SQLException {
+        try (Connection connection = DatabaseManager.getInstance().getReadConnection()) {
+            return loadTransactions(connection, a, afterCursor, pageSize);
+        }
+    }
+
+
+    /**
+     * Loads one page of the given account's transaction history using an existing
+     * database connection, so it can be read in the same transaction as other data.
+     *
+     * @param connection  the existing database connection to use
+     * @param a           the account to search transactions for
+     * @param afterCursor the cursor returned with the previous page, or null for the first page
+     * @param pageSize    the maximum number of transactions to load
+     * @return the page of transactions and the cursor for the next page
+     * @throws SQLException             when a database error occurs
+     * @throws IllegalArgumentException if the page size is not positive
+     */
+    TransactionPage loadTransactions(Connection connection, Account a, TransactionPage.Cursor afterCursor,
+                                     int pageSize) throws SQLException {
+        if (pageSize <= 0)
+            throw new IllegalArgumentException("Page size must be positive");
+
+        String keyset = afterCursor == null ? "" : " AND (t.date, t.transaction_id) < (?, ?)";
+        String query = """
+                SELECT t.transaction_id, t.sender_account_number, t.receiver_account_number,
+                       t.amount, t.comment, t.date,
+                       c.account_id as counterparty_id, c.user_id as counterparty_user_id,
+                       c.balance as counterparty_balance, c.is_frozen as counterparty_frozen
+                FROM Transactions t
+                JOIN Accounts c ON c.account_number = t.receiver_account_number
+                WHERE t.sender_account_number = ?%1$s
+                UNION ALL
+                SELECT t.transaction_id, t.sender_account_number, t.receiver_account_number,
+                       t.amount, t.comment, t.date,
+                       c.account_id as counterparty_id, c.user_id as counterparty_user_id,
+                       c.balance as counterparty_balance, c.is_frozen as counterparty_frozen
+                FROM Transactions t
+                JOIN Accounts c ON c.account_number = t.sender_account_number
+                WHERE t.receiver_account_number = ? AND t.sender_account_number <> ?%1$s
+                ORDER BY date DESC, transaction_id DESC
+                LIMIT ?
+                """.formatted(keyset);
+
+        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+        int accountNumber = a.getAccountNumber();
+        List<Transaction> transactions = new ArrayList<>(pageSize);
+        Map<Integer, Account> counterparties = new HashMap<>();
+        boolean hasMore = false;
+
+        try (PreparedStatement statement = connection.prepareStatement(query)) {
+            int index = 1;
+            statement.setInt(index++, accountNumber);
+            if (afterCursor != null) {
+                statement.setString(index++, afterCursor.date().format(formatter));
+                statement.setInt(index++, afterCursor.transactionID());
+            }
+            statement.setInt(index++, accountNumber);
+            statement.setInt(index++, accountNumber);
+            if (afterCursor != null) {
+                statement.setString(index++, afterCursor.date().format(formatter));
+                statement.setInt(index++, afterCursor.transactionID());
+            }
+            statement.setInt(index, pageSize + 1); // One extra row tells whether another page exists
+
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    if (transactions.size() == pageSize) {
+                        hasMore = true;
+                        break;
+                    }
+
+                    int senderNumber = resultSet.getInt("sender_account_number");
+                    int receiverNumber = resultSet.getInt("receiver_account_number");
+                    int counterpartyNumber = senderNumber == accountNumber ? receiverNumber : senderNumber;
+
+                    Account counterparty = counterpartyNumber == accountNumber ? a : counterparties.get(counterpartyNumber);
+                    if (counterparty == null) {
+                        counterparty = new Account(
+                                resultSet.getInt("counterparty_id"),
+                                resultSet.getInt("counterparty_user_id"),
+                                counterpartyNumber,
+                                resultSet.getLong("counterparty_balance"),
+                                resultSet.getBoolean("counterparty_frozen")
+                        );
+                        counterparties.put(counterpartyNumber, counterparty);
+                    }
+
+                    Account sender = senderNumber == accountNumber ? a : counterparty;
+                    Account receiver = receiverNumber == accountNumber ? a : counterparty;
+
+                    transactions.add(new Transaction(
+                            resultSet.getInt("transaction_id"),
+                            sender,
+                            receiver,
+                            resultSet.getLong("amount"),
+                            resultSet.getString("comment"),
+                            LocalDateTime.parse(resultSet.getString("date"), formatter)
+                    ));
+                }
+            }
+        }
+
+        TransactionPage.Cursor nextCursor = null;
+        if (hasMore) {
+            Transaction last = transactions.getLast();
+            nextCursor = new TransactionPage.Cursor(last.date(), last.transactionID());
+        }
+        return new TransactionPage(transactions, nextCursor);
+    }
+
+
     /**
      * Deletes a transaction from the database.
      *
@@ -141,12 +307,41 @@ public class TransactionManager {
     public boolean deleteTransaction(int transactionID) throws SQLException {
         String query = "DELETE FROM Transactions WHERE transaction_id = ?";
 
-        try (Connection connection = DatabaseManager.getInstance().getConnection()) {
-            PreparedStatement statement = connection.prepareStatement(query);
+        try (Connection connection = DatabaseManager.getInstance().getWriteConnection();
+             PreparedStatement statement = connection.prepareStatement(query)) {
             statement.setInt(1, transactionID);
             int affectedRows = statement.executeUpdate();
             return affectedRows > 0;
         }
     }
 
+
+
+    /**
+     * The kind of money movement a Transactions row records, stored in its type column.
+     * Replaying the rows in order by their type reproduces every balance.
+     */
+    public enum Type {
+        /// Money paid into the account; the account is both sender and receiver.
+        DEPOSIT,
+        /// Money taken out of the account; the account is both sender and receiver.
+        WITHDRAWAL,
+        /// Money moved from the sender to the receiver.
+        TRANSFER;
+
+
+        /**
+         * Gets the type of a transaction. Deposits and withdrawals are recorded with the account
+         * as both sender and receiver and told apart by the {@link LedgerManager#WITHDRAWAL_COMMENT}.
+         *
+         * @param transaction the transaction
+         * @return the type recorded for it
+         */
+        public static Type of(Transaction transaction) {
+            if (transaction.sender().getAccountNumber() != transaction.receiver().getAccountNumber())
+                return TRANSFER;
+            return LedgerManager.WITHDRAWAL_COMMENT.equals(transaction.comment()) ? WITHDRAWAL : DEPOSIT;
+        }
+    }
+
 }
@@ -0,0 +1,33 @@
+package banking.data;
+
+import banking.model.Transaction;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+
+/**
+ * One page of an account's transaction history, newest first.
+ *
+ * @param transactions the transactions on this page
+ * @param nextCursor   the position to continue from, or null if this is the last page
+ */
+public record TransactionPage(List<Transaction> transactions, Cursor nextCursor) {
+
+    /// Checks if there are more transactions after this page.
+    public boolean hasMore() {
+        return nextCursor != null;
+    }
+
+
+    /**
+     * A position in the history, identified by the date and ID of the last transaction
+     * already read. The next page starts with the first transaction ordered after it,
+     * so pages stay stable while new transactions are added.
+     *
+     * @param date          the date of the last transaction read
+     * @param transactionID the ID of the last transaction read
+     */
+    public record Cursor(LocalDateTime date, int transactionID) { }
+
+}
@@ -1,17 +1,16 @@
 package banking.data;
 
+import banking.model.Account;
 import banking.model.User;
 
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
-import java.security.SecureRandom;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
-import java.util.Base64;
+import java.util.ArrayList;
+import java.util.List;
 
 
 /**
@@ -25,113 +24,125 @@ public class UserManager {
     public static final String SERVICE_REGEX = "^[a-z]+$";
     public static final String DOMAIN_REGEX = "^[a-z]{2,}$";
 
-    private final SecureRandom secureRandom;
+    private final PasswordHasher passwordHasher;
 
 
     /**
-     * Initializes the SecureRandom instance for generating salts.
+     * Initializes the UserManager with the shared PasswordHasher.
      */
     public UserManager() {
-        secureRandom = new SecureRandom();
+        passwordHasher = PasswordHasher.getInstance();
     }
 
 
     /**
-     * Generates a random salt for password hashing.
+     * Creates a password hash in the stored format with the current PasswordHasher cost.
+     * Public for tools that insert Users rows directly, such as data generators.
      *
-     * @return a Base64 encoded salt string
+     * @param password the plain text password to hash
+     * @return the encoded hash
      */
-    private String generateSalt() {
-        byte[] salt = new byte[16];
-        secureRandom.nextBytes(salt);
-        return Base64.getEncoder().encodeToString(salt);
+    public String createPasswordHash(String password) {
+        return passwordHasher.hash(password);
     }
 
 
     /**
-     * Hashes a password with the given salt using SHA-256.
+     * Registers a user and saves their email, hashed password and date
+     * of registry in the database.
      *
-     * @param password the plain text password
-     * @param salt     the salt to use for hashing
-     * @return the hashed password as a Base64 encoded string
-     * @throws RuntimeException if SHA-256 algorithm is not available
+     * @param user the user to be registered
+     * @return The user ID that is associated with the saved user in the database
+     * @throws SQLException when connection is unsuccessful
      */
-    private String hashPassword(String password, String salt) {
-        try {
-            MessageDigest md = MessageDigest.getInstance("SHA-256");
-            md.update(Base64.getDecoder().decode(salt));
-            byte[] hashedPassword = md.digest(password.getBytes());
-            return Base64.getEncoder().encodeToString(hashedPassword);
-        } catch (NoSuchAlgorithmException e) {
-            throw new RuntimeException("SHA-256 algorithm not available", e);
+    public int saveUser(User user) throws SQLException {
+        // Hash the password with salt before taking the connection
+        String hashedPassword = createPasswordHash(user.getPassword());
+
+        try (Connection connection = DatabaseManager.getInstance().getWriteConnection()) {
+            return insertUser(connection, user, hashedPassword);
         }
     }
 
 
     /**
-     * Creates a combined salt:hash string for storage.
+     * Registers a user together with their first, empty account in a single transaction,
+     * so a user is never left without an account and a failed account insert leaves no user behind.
      *
-     * @param password the plain text password to hash
-     * @return a string in format "salt:hash"
+     * @param user          the user to be registered
+     * @param accountNumber the number of the user's first account
+     * @return The user ID that is associated with the saved user in the database, or -1 if the user was not saved
+     * @throws SQLException when connection is unsuccessful or the account number is already taken
      */
-    private String createPasswordHash(String password) {
-        String salt = generateSalt();
-        String hash = hashPassword(password, salt);
-        return salt + ":" + hash;
-    }
+    public int registerUser(User user, int accountNumber) throws SQLException {
+        String hashedPassword = createPasswordHash(user.getPassword());
 
+        try (Connection connection = DatabaseManager.getInstance().getWriteConnection()) {
+            connection.setAutoCommit(false); // Start Transaction
 
-    /**
-     * Verifies a password against a stored salt:hash combination.
-     *
-     * @param password           the plain text password to verify
-     * @param storedPasswordHash the stored password in format "salt:hash"
-     * @return true if the password matches, false otherwise
-     */
-    private boolean verifyPassword(String password, String storedPasswordHash) {
-        if (storedPasswordHash == null || !storedPasswordHash.contains(":"))
-            return password.equals(storedPasswordHash);  // Handle legacy plain text passwords for backward compatibility
+            try {
+                int userID = insertUser(connection, user, hashedPassword);
+                if (userID <= 0) {
+                    connection.rollback();
+                    return -1;
+                }
 
-        String[] parts = storedPasswordHash.split(":", 2);
+                new AccountManager().insertAccount(connection, new Account(userID, accountNumber, 0, false));
 
-        if (parts.length != 2)
-            return false;
+                connection.commit();
+                AccountCache.getInstance().invalidateUser(userID);
+                return userID;
 
-        String salt = parts[0];
-        String storedHash = parts[1];
-        String hashedInput = hashPassword(password, salt);
-        return hashedInput.equals(storedHash);
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        }
     }
 
 
     /**
-     * Registers a user and saves their email, hashed password and date
-     * of registry in the database.
+     * Registers a user together with their first account, whose number comes from the
+     * AccountNumberAllocator. If the number turns out to be taken already, the registration
+     * is retried with the next one.
      *
      * @param user the user to be registered
-     * @return The user ID that is associated with the saved user in the database
-     * @throws SQLException when connection is unsuccessful
+     * @return The user ID that is associated with the saved user in the database, or -1 if the user was not saved
+     * @throws SQLException when connection is unsuccessful or no free account number was found
      */
-    public int saveUser(User user) throws SQLException {
+    public int registerUser(User user) throws SQLException {
+        return AccountNumberAllocator.getInstance().allocate(accountNumber -> registerUser(user, accountNumber));
+    }
+
+
+    /**
+     * Inserts a user row using an existing database connection.
+     *
+     * @param connection     the existing database connection to use
+     * @param user           the user to be inserted
+     * @param hashedPassword the password in "salt:hash" format
+     * @return the generated user ID, or -1 if no key was generated
+     * @throws SQLException when a database error occurs
+     */
+    private int insertUser(Connection connection, User user, String hashedPassword) throws SQLException {
         DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
         String dateOfRegistry = user.getDateOfRegistry().format(formatter);
 
-        // Hash the password with salt
-        String hashedPassword = createPasswordHash(user.getPassword());
-
         String query = "INSERT INTO Users (email, password, datetime) VALUES (?, ?, ?)";
 
-        try (Connection connection = DatabaseManager.getInstance().getConnection()) {
-            PreparedStatement statement = connection.prepareStatement(query);
+        try (PreparedStatement statement = connection.prepareStatement(query)) {
             statement.setString(1, user.getEmail());
             statement.setString(2, hashedPassword);
             statement.setString(3, dateOfRegistry);
             statement.executeUpdate();
 
-            ResultSet result = statement.getGeneratedKeys();
-            if (result.next())
-                return result.getInt(1);
-            return -1;
+            try (ResultSet result = statement.getGeneratedKeys()) {
+                if (result.next())
+                    return result.getInt(1);
+                return -1;
+            }
         }
     }
 
@@ -144,20 +155,22 @@ public class UserManager {
      * @throws SQLException when connection is unsuccessful
      */
     public boolean userExists(String email) throws SQLException {
-        String query = "SELECT * FROM Users WHERE email = ?";
+        String query = "SELECT 1 FROM Users WHERE email = ?";
 
-        try (Connection connection = DatabaseManager.getInstance().getConnection()) {
-            PreparedStatement statement = connection.prepareStatement(query);
+        try (Connection connection = DatabaseManager.getInstance().getReadConnection();
+             PreparedStatement statement = connection.prepareStatement(query)) {
             statement.setString(1, email);
-            ResultSet result = statement.executeQuery();
-            return result.next();
+            try (ResultSet result = statement.executeQuery()) {
+                return result.next();
+            }
         }
     }
 
 
     /**
      * Checks if the given email and password belong to the same user.
-     * Supports both hashed passwords and legacy plain text passwords.
+     * Supports PBKDF2 hashes as well as legacy salt:hash and plain text passwords, which are
+     * replaced by a PBKDF2 hash after a successful login.
      *
      * @param email    the email to be found
      * @param password the password to be checked
@@ -169,17 +182,49 @@ public class UserManager {
             return false;
 
         String query = "SELECT password FROM Users WHERE email = ?";
+        String storedPassword;
 
-        try (Connection connection = DatabaseManager.getInstance().getConnection()) {
-            PreparedStatement statement = connection.prepareStatement(query);
+        try (Connection connection = DatabaseManager.getInstance().getReadConnection();
+             PreparedStatement statement = connection.prepareStatement(query)) {
             statement.setString(1, email);
             try (ResultSet result = statement.executeQuery()) {
-                if (result.next()) {
-                    String storedPassword = result.getString("password");
-                    return verifyPassword(password, storedPassword);
-                }
-                return false;
+                if (!result.next())
+                    return false;
+                storedPassword = result.getString("password");
+            }
+        }
+
+        // Hashing runs on the PasswordHasher pool without holding a connection
+        PasswordHasher.Verification verification = passwordHasher.verify(password, storedPassword);
+        if (verification.needsRehash())
+            rehashPassword(email, password, storedPassword);
+        return verification.matches();
+    }
+
+
+    /**
+     * Replaces a legacy or weaker stored password with a hash of the current format and cost.
+     * The row is only updated if it still holds the hash that was verified, so a concurrent
+     * password change is never overwritten. A failure is logged and does not fail the login.
+     *
+     * @param email          the user's email
+     * @param password       the verified plain text password
+     * @param storedPassword the stored hash the password was verified against
+     */
+    void rehashPassword(String email, String password, String storedPassword) {
+        String query = "UPDATE Users SET password = ? WHERE email = ? AND password = ?";
+
+        try {
+            String newHash = passwordHasher.hash(password);
+            try (Connection connection = DatabaseManager.getInstance().getWriteConnection();
+                 PreparedStatement statement = connection.prepareStatement(query)) {
+                statement.setString(1, newHash);
+                statement.setString(2, email);
+                statement.setString(3, storedPassword);
+                statement.executeUpdate();
             }
+        } catch (SQLException | RuntimeException e) {
+            System.err.println("Failed to rehash password of " + email + ": " + e.getMessage());
         }
     }
 
@@ -197,10 +242,24 @@ public class UserManager {
         if (email == null || email.isEmpty())
             throw new IllegalArgumentException("Email cannot be null or empty");
 
+        try (Connection connection = DatabaseManager.getInstance().getReadConnection()) {
+            return loadUser(connection, email);
+        }
+    }
+
+
+    /**
+     * Loads a user, including the stored password hash, using an existing database connection.
+     *
+     * @param connection the existing database connection to use
+     * @param email      the address to be searched for
+     * @return a User object with the given email, or null if not found
+     * @throws SQLException when a database error occurs
+     */
+    User loadUser(Connection connection, String email) throws SQLException {
         String query = "SELECT * FROM Users WHERE email = ?";
 
-        try (Connection connection = DatabaseManager.getInstance().getConnection()) {
-            PreparedStatement statement = connection.prepareStatement(query);
+        try (PreparedStatement statement = connection.prepareStatement(query)) {
             statement.setString(1, email);
             try (ResultSet result = statement.executeQuery()) {
                 if (result.next()) {
@@ -226,14 +285,25 @@ public class UserManager {
      * @throws SQLException when connection is unsuccessful
      */
     public boolean deleteUser(String email) throws SQLException {
-        String query = "DELETE FROM Users WHERE email = ?";
+        // The user's accounts are deleted by the cascading foreign key, so their cached copies must go too
+        String query = "DELETE FROM Users WHERE email = ? RETURNING user_id";
 
-        try (Connection connection = DatabaseManager.getInstance().getConnection()) {
-            PreparedStatement statement = connection.prepareStatement(query);
+        List<Integer> deletedUserIDs = new ArrayList<>();
+
+        try (Connection connection = DatabaseManager.getInstance().getWriteConnection();
+             PreparedStatement statement = connection.prepareStatement(query)) {
             statement.setString(1, email);
-            statement.executeUpdate();
-            return true;
+
+            try (ResultSet result = statement.executeQuery()) {
+                while (result.next())
+                    deletedUserIDs.add(result.getInt("user_id"));
+            }
         }
+
+        // Invalidated once the statement is finished and its deletion committed
+        for (int userID : deletedUserIDs)
+            AccountCache.getInstance().invalidateUser(userID);
+        return true;
     }
 
 }
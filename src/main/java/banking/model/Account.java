@@ -13,7 +13,7 @@ public class Account {
     private final int accountID;
     private final int userID;
     private final int accountNumber;
-    private double balance;
+    private long balance;
     private boolean isFrozen;
     private List<Transaction> transactions;
 
@@ -24,10 +24,10 @@ public class Account {
      * @param acc_id  the account ID
      * @param user_id the user ID who owns this account
      * @param num     the account number
-     * @param bal     the initial balance
+     * @param bal     the initial balance in minor units (see {@link Money})
      * @param fr      the frozen status
      */
-    public Account(int acc_id, int user_id, int num, double bal, boolean fr) {
+    public Account(int acc_id, int user_id, int num, long bal, boolean fr) {
         accountID = acc_id;
         userID = user_id;
         accountNumber = num;
@@ -42,10 +42,10 @@ public class Account {
      *
      * @param user_id the user ID who owns this account
      * @param num     the account number
-     * @param bal     the initial balance
+     * @param bal     the initial balance in minor units (see {@link Money})
      * @param fr      the frozen status
      */
-    public Account(int user_id, int num, double bal, boolean fr) {
+    public Account(int user_id, int num, long bal, boolean fr) {
         accountID = 0;
         userID = user_id;
         accountNumber = num;
@@ -69,8 +69,8 @@ public class Account {
         return accountNumber;
     }
 
-    /// Gets the current balance of the account.
-    public double getBalance() {
+    /// Gets the current balance of the account in minor units.
+    public long getBalance() {
         return balance;
     }
 
@@ -89,6 +89,11 @@ public class Account {
         transactions = t;
     }
 
+    /// Appends transactions to this account's transaction list (e.g. the next page of history).
+    public void addTransactions(List<Transaction> t) {
+        transactions.addAll(t);
+    }
+
     /// Freezes the account, preventing transactions.
     public void freeze() {
         isFrozen = true;
@@ -103,10 +108,10 @@ public class Account {
     /**
      * Deposits the specified amount into this account.
      *
-     * @param amount the amount to deposit
+     * @param amount the amount to deposit in minor units
      * @throws IllegalArgumentException if the amount is not positive
      */
-    public void deposit(double amount) {
+    public void deposit(long amount) {
         if (amount <= 0)
             throw new IllegalArgumentException("Deposit amount must be positive");
 
@@ -117,10 +122,10 @@ public class Account {
     /**
      * Withdraws the specified amount from this account.
      *
-     * @param amount the amount to withdraw
+     * @param amount the amount to withdraw in minor units
      * @throws IllegalArgumentException if the amount is not positive or exceeds the balance
      */
-    public void withdraw(double amount) {
+    public void withdraw(long amount) {
         if (amount <= 0)
             throw new IllegalArgumentException("Withdrawal amount must be positive");
 
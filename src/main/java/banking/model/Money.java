@@ -0,0 +1,82 @@
+package banking.model;
+
+import java.math.BigDecimal;
+
+
+/**
+ * Money amounts are stored as {@code long} counts of minor units (fillér, 1/100 Ft),
+ * so balances are exact, compare as integers, and fit SQLite INTEGER columns.
+ * This class converts between minor units and their decimal text form.
+ */
+public final class Money {
+
+    /// Number of decimal places of the currency.
+    public static final int FRACTION_DIGITS = 2;
+
+    /// Number of minor units in one major unit.
+    public static final long MINOR_UNITS_PER_MAJOR = 100;
+
+
+    private Money() { }
+
+
+    /**
+     * Converts a whole number of major units (forints) to minor units.
+     *
+     * @param majorUnits the amount in major units
+     * @return the amount in minor units
+     * @throws ArithmeticException if the result overflows a long
+     */
+    public static long ofMajor(long majorUnits) {
+        return Math.multiplyExact(majorUnits, MINOR_UNITS_PER_MAJOR);
+    }
+
+
+    /**
+     * Parses a decimal amount such as "1500", "12.5" or "12.50" into minor units exactly.
+     *
+     * @param text the amount as text
+     * @return the amount in minor units
+     * @throws NumberFormatException if the text is not a number, has more than
+     *                               two decimal places, or does not fit a long
+     */
+    public static long parse(String text) {
+        BigDecimal value = new BigDecimal(text.trim());
+
+        if (value.stripTrailingZeros().scale() > FRACTION_DIGITS)
+            throw new NumberFormatException("Amount can have at most " + FRACTION_DIGITS + " decimal places");
+
+        try {
+            return value.movePointRight(FRACTION_DIGITS).longValueExact();
+        } catch (ArithmeticException e) {
+            throw new NumberFormatException("Amount is out of range");
+        }
+    }
+
+
+    /**
+     * Formats an amount of minor units with grouping and two decimal places, e.g. "1,234.50".
+     *
+     * @param minorUnits the amount in minor units
+     * @return the formatted amount
+     */
+    public static String format(long minorUnits) {
+        return String.format("%,.2f", BigDecimal.valueOf(minorUnits, FRACTION_DIGITS));
+    }
+
+
+    /**
+     * Sums amounts of minor units. The plain loop over a primitive array lets the JIT
+     * vectorize the addition; a long holds over 9 * 10^16 Ft, so overflow is not checked.
+     *
+     * @param amounts the amounts in minor units
+     * @return the total in minor units
+     */
+    public static long sum(long[] amounts) {
+        long total = 0;
+        for (long amount : amounts)
+            total += amount;
+        return total;
+    }
+
+}
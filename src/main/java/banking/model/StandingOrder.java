@@ -0,0 +1,62 @@
+package banking.model;
+
+import java.time.LocalDateTime;
+
+
+/**
+ * Represents a recurring transfer, e.g. a salary or rent payment, executed by the StandingOrderScheduler.
+ * The n-th run of an order is due at {@code frequency.occurrence(firstRun, n)}, so monthly orders keep
+ * their day of the month instead of drifting after a short month.
+ *
+ * @param orderID                  the order ID, 0 until the order is saved
+ * @param sourceAccountNumber      the account number to transfer from
+ * @param destinationAccountNumber the account number to transfer to
+ * @param amount                   the amount of every transfer in minor units
+ * @param comment                  the comment recorded with every transaction
+ * @param frequency                how often the order runs
+ * @param firstRun                 when the first run is due
+ * @param runCount                 the number of runs done, executed or failed
+ * @param nextRun                  when the next run is due
+ * @param active                   whether the order still runs; false once it is cancelled
+ * @param lastError                why the last run failed, or null if it was executed
+ */
+public record StandingOrder(int orderID, int sourceAccountNumber, int destinationAccountNumber, long amount,
+                            String comment, Frequency frequency, LocalDateTime firstRun, int runCount,
+                            LocalDateTime nextRun, boolean active, String lastError) {
+
+    /**
+     * Gets the order after its next run.
+     *
+     * @param error why the run failed, or null if it was executed
+     * @return the order with one more run and the following due date
+     */
+    public StandingOrder advance(String error) {
+        return new StandingOrder(orderID, sourceAccountNumber, destinationAccountNumber, amount, comment, frequency,
+                firstRun, runCount + 1, frequency.occurrence(firstRun, runCount + 1), active, error);
+    }
+
+
+    /// How often a standing order runs.
+    public enum Frequency {
+        DAILY,
+        WEEKLY,
+        MONTHLY;
+
+
+        /**
+         * Gets when a run is due, counted from the first one so no rounding accumulates.
+         *
+         * @param firstRun when the first run is due
+         * @param index    the number of the run, 0 for the first
+         * @return when the run is due
+         */
+        public LocalDateTime occurrence(LocalDateTime firstRun, int index) {
+            return switch (this) {
+                case DAILY -> firstRun.plusDays(index);
+                case WEEKLY -> firstRun.plusWeeks(index);
+                case MONTHLY -> firstRun.plusMonths(index);
+            };
+        }
+    }
+
+}
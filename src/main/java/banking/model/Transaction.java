@@ -8,18 +8,18 @@ import java.time.LocalDateTime;
  * Each transaction has a sender, receiver, amount, comment, and timestamp.
  */
 public record Transaction(int transactionID, Account sender, Account receiver,
-                          double amount, String comment, LocalDateTime date) {
+                          long amount, String comment, LocalDateTime date) {
 
     /**
      * Creates a new Transaction with sender, receiver, amount, comment, and date. Transaction ID is set to 0.
      *
      * @param s the sender account
      * @param r the receiver account
-     * @param a the transaction amount
+     * @param a the transaction amount in minor units
      * @param c the transaction comment
      * @param d the transaction date and time
      */
-    public Transaction(Account s, Account r, double a, String c, LocalDateTime d) {
+    public Transaction(Account s, Account r, long a, String c, LocalDateTime d) {
         this(0, s, r, a, c, d);
     }
 
@@ -42,9 +42,9 @@ public record Transaction(int transactionID, Account sender, Account receiver,
         return receiver;
     }
 
-    /// Gets the transaction amount.
+    /// Gets the transaction amount in minor units.
     @Override
-    public double amount() {
+    public long amount() {
         return amount;
     }
 
@@ -0,0 +1,12 @@
+package banking.model;
+
+
+/**
+ * Represents a single transfer to be executed as part of a batch (e.g. a payroll run).
+ *
+ * @param sourceAccountNumber      the account number to transfer from
+ * @param destinationAccountNumber the account number to transfer to
+ * @param amount                   the amount to transfer in minor units
+ * @param comment                  the comment recorded with the transaction
+ */
+public record TransferRequest(int sourceAccountNumber, int destinationAccountNumber, long amount, String comment) { }
@@ -1,9 +1,16 @@
 package banking.program;
 
+import banking.data.ContactImporter;
+import banking.data.DatabaseManager;
+import banking.data.EventSourcedLedger;
+import banking.data.GroupCommitLedger;
+import banking.data.InMemoryLedger;
+import banking.data.StandingOrderScheduler;
 import banking.ui.LoginWindow;
 import javafx.application.Application;
 import javafx.stage.Stage;
 
+import java.io.IOException;
 import java.sql.SQLException;
 
 
@@ -23,12 +30,26 @@ public class Main extends Application {
 
 
     /**
-     * The start method is the entry point for the JavaFX application. It initializes the login window.
+     * The start method is the entry point for the JavaFX application. It moves the contacts of a former
+     * shared contacts file into the database, if there is one, starts the standing order scheduler,
+     * which first catches up on the runs missed while the application was down, and initializes the
+     * login window.
      *
      * @param primaryStage The primary stage for this application, onto which the application scene can be set.
      */
     @Override
     public void start(Stage primaryStage) {
+        try {
+            new ContactImporter().importLegacyFile();
+        } catch (IOException | SQLException ex) {
+            System.err.println("Failed to import the contacts file, retrying on the next start: " + ex.getMessage());
+        }
+
+        // The scheduler writes balances directly, which the in-memory ledger would not see
+        if (Boolean.parseBoolean(System.getProperty("banking.standingOrders.enabled", "true"))
+                && !Boolean.getBoolean("banking.ledger.inMemory"))
+            StandingOrderScheduler.getInstance().start();
+
         try {
             new LoginWindow();
         } catch (SQLException ex) {
@@ -36,4 +57,20 @@ public class Main extends Application {
             System.exit(1);
         }
     }
-}
\ No newline at end of file
+
+
+    /**
+     * The stop method is called when the application exits. It stops the standing order scheduler
+     * after the run in progress, commits any postings still
+     * queued for a group commit or the in-memory ledger's journal, snapshots the event-sourced
+     * ledger's balances and then closes the database connections.
+     */
+    @Override
+    public void stop() {
+        StandingOrderScheduler.shutdown();
+        GroupCommitLedger.shutdown();
+        InMemoryLedger.shutdown();
+        EventSourcedLedger.shutdown();
+        DatabaseManager.shutdown();
+    }
+}
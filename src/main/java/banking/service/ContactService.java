@@ -1,19 +1,38 @@
 package banking.service;
 
 import banking.data.ContactManager;
+import banking.data.ContactSearchIndex;
 import banking.model.Contact;
 
-import java.io.IOException;
+import java.sql.SQLException;
 import java.util.List;
-import java.util.stream.Collectors;
 
 
 /**
  * ContactViewModel handles the business logic for contact management operations.
  * This class separates the functional operations from the ContactPanel View.
+ * Each instance serves the contacts of one user, stored in the Contacts table. They are
+ * loaded once into a ContactSearchIndex, which answers every filter query and is updated
+ * with each contact saved through this service.
  */
 public class ContactService {
 
+    private final int userID;
+    private final ContactManager contactManager;
+    private ContactSearchIndex searchIndex;
+
+
+    /**
+     * Creates a ContactService for the contacts of the given user.
+     *
+     * @param userID the ID of the user whose contacts are managed
+     */
+    public ContactService(int userID) {
+        this.userID = userID;
+        this.contactManager = new ContactManager();
+    }
+
+
     /**
      * Saves a new contact with the provided name and account number.
      *
@@ -40,79 +59,66 @@ public class ContactService {
             return new ContactResult(false, "Account number must be a valid integer.");
         }
 
-        final int finalAccountNumber = accountNumber;
-
         try {
-            // Load existing contacts
-            List<Contact> contacts = ContactManager.loadContacts();
-
-            // Check for duplicates
-            boolean exists = contacts.stream()
-                    .anyMatch(contact -> contact.name().equalsIgnoreCase(finalName) ||
-                            contact.accountNumber() == finalAccountNumber);
-
-            if (exists)
+            // Duplicates by name or account number are rejected by the table's unique indexes
+            Contact contact = new Contact(finalName, accountNumber);
+            if (!contactManager.saveContact(userID, contact))
                 return new ContactResult(false, "Contact already exists.");
 
-            // Add new contact and save
-            contacts.add(new Contact(finalName, finalAccountNumber));
-            ContactManager.saveContacts(contacts);
-
+            if (searchIndex != null)
+                searchIndex.add(contact);
             return new ContactResult(true, "Contact saved successfully.");
 
-        } catch (IOException ex) {
+        } catch (SQLException ex) {
             return new ContactResult(false, "Failed to save contact: " + ex.getMessage());
         }
     }
 
 
     /**
-     * Loads all contacts from storage.
+     * Loads all contacts of the user.
      *
      * @return ContactListResult containing success status, message, and contact list
      */
     public ContactListResult loadContacts() {
         try {
-            List<Contact> contacts = ContactManager.loadContacts();
+            List<Contact> contacts = getSearchIndex().search("");
             return new ContactListResult(true, null, contacts);
-        } catch (IOException ex) {
+        } catch (SQLException ex) {
             return new ContactListResult(false, "Failed to load contacts: " + ex.getMessage(), null);
         }
     }
 
 
     /**
-     * Filters contacts based on a search query.
+     * Filters the user's contacts based on a search query, using the in-memory search index.
+     * Queries that extend the previous one only check its matches.
      *
      * @param query the search query (name or account number)
      * @return ContactListResult containing success status, message, and filtered contact list
      */
     public ContactListResult filterContacts(String query) {
         try {
-            List<Contact> contacts = ContactManager.loadContacts();
-
-            if (query == null || query.trim().isEmpty())
-                return new ContactListResult(true, null, contacts);
-
-            String lowerQuery = query.toLowerCase().trim();
-            List<Contact> filteredContacts = contacts.stream()
-                    .filter(contact ->
-                            contact.name().toLowerCase().contains(lowerQuery) ||
-                                    String.valueOf(contact.accountNumber()).contains(lowerQuery))
-                    .collect(Collectors.toList());
-
-            return new ContactListResult(true, null, filteredContacts);
-
-        } catch (IOException ex) {
+            List<Contact> contacts = getSearchIndex().search(query);
+            return new ContactListResult(true, null, contacts);
+        } catch (SQLException ex) {
             return new ContactListResult(false, "Failed to filter contacts: " + ex.getMessage(), null);
         }
     }
 
 
+    /// Gets the search index, loading the user's contacts on first use.
+    private ContactSearchIndex getSearchIndex() throws SQLException {
+        if (searchIndex == null)
+            searchIndex = new ContactSearchIndex(contactManager.loadContacts(userID));
+        return searchIndex;
+    }
+
+
     /// Result class for contact operations.
     public record ContactResult(boolean success, String message) { }
 
     /// Result class for contact list operations.
     public record ContactListResult(boolean success, String errorMessage, List<Contact> contacts) { }
 
-}
\ No newline at end of file
+}
@@ -1,10 +1,13 @@
 package banking.service;
 
-import banking.data.UserManager;
+import banking.data.SessionBootstrap;
 import banking.ui.MainWindow;
 import banking.ui.RegistrationWindow;
 
 import java.sql.SQLException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 
 
 /**
@@ -13,56 +16,77 @@ import java.sql.SQLException;
  */
 public class LoginService {
 
-    private final UserManager userManager;
+    private static final Executor LOGIN_EXECUTOR = task -> Thread.ofVirtual().name("login").start(task);
+
+    private final SessionBootstrap sessionBootstrap;
 
 
     /**
-     * Creates a new LoginService instance and initializes the UserManager.
+     * Creates a new LoginService instance and initializes the SessionBootstrap.
      *
      * @throws SQLException if a database error occurs during initialization
      */
     public LoginService() throws SQLException {
-        userManager = new UserManager();
+        sessionBootstrap = new SessionBootstrap();
     }
 
 
     /**
-     * Authenticates a user with the provided email and password.
+     * Authenticates a user with the provided email and password. On success the result
+     * carries the user's session, loaded together with the credentials in one read
+     * transaction, ready to be handed to the main window.
      *
      * @param email    the user's email address
      * @param password the user's password
-     * @return AuthenticationResult containing success status and message
+     * @return AuthenticationResult containing success status, message and the session
      */
     public AuthenticationResult authenticateUser(String email, String password) {
         try {
             if (email == null || email.trim().isEmpty())
-                return new AuthenticationResult(false, "Email address cannot be empty.");
+                return new AuthenticationResult(false, "Email address cannot be empty.", null);
 
             if (password == null || password.trim().isEmpty())
-                return new AuthenticationResult(false, "Password cannot be empty.");
+                return new AuthenticationResult(false, "Password cannot be empty.", null);
 
-            boolean isAuthenticated = userManager.authenticateUser(email, password);
+            SessionBootstrap.Session session = sessionBootstrap.open(email, password, MainService.TRANSACTION_PAGE_SIZE);
 
-            if (isAuthenticated)
-                return new AuthenticationResult(true, "Authentication successful.");
+            if (session != null)
+                return new AuthenticationResult(true, "Authentication successful.", session);
             else
-                return new AuthenticationResult(false, "Invalid email or password.");
+                return new AuthenticationResult(false, "Invalid email or password.", null);
 
         } catch (SQLException ex) {
-            return new AuthenticationResult(false, "Database error occurred during authentication: " + ex.getMessage());
+            return new AuthenticationResult(false, "Database error occurred during authentication: " + ex.getMessage(), null);
+        } catch (RejectedExecutionException ex) {
+            return new AuthenticationResult(false, "Too many sign-in attempts at once. Please try again.", null);
         }
     }
 
 
     /**
-     * Handles the navigation to the main window after successful authentication.
+     * Authenticates a user off the calling thread, so the JavaFX thread is not blocked
+     * while the session is loaded and the password is hashed. The database reads run on
+     * a virtual thread and the hashing on the PasswordHasher pool.
+     *
+     * @param email    the user's email address
+     * @param password the user's password
+     * @return a future completed with the AuthenticationResult, which also reports database errors
+     */
+    public CompletableFuture<AuthenticationResult> authenticateUserAsync(String email, String password) {
+        return CompletableFuture.supplyAsync(() -> authenticateUser(email, password), LOGIN_EXECUTOR);
+    }
+
+
+    /**
+     * Handles the navigation to the main window after successful authentication,
+     * handing it the session loaded at sign-in.
      *
-     * @param email the authenticated user's email
+     * @param session the authenticated user's session
      * @return NavigationResult containing success status and any error message
      */
-    public NavigationResult navigateToMainWindow(String email) {
+    public NavigationResult navigateToMainWindow(SessionBootstrap.Session session) {
         try {
-            new MainWindow(email);
+            new MainWindow(session);
             return new NavigationResult(true, null);
         } catch (SQLException ex) {
             return new NavigationResult(false, "Error opening main window: " + ex.getMessage());
@@ -85,8 +109,8 @@ public class LoginService {
     }
 
 
-    /// Result class for authentication operations.
-    public record AuthenticationResult(boolean success, String message) { }
+    /// Result class for authentication operations; the session is null unless authentication succeeded.
+    public record AuthenticationResult(boolean success, String message, SessionBootstrap.Session session) { }
 
     /// Result class for navigation operations.
     public record NavigationResult(boolean success, String errorMessage) { }
@@ -1,31 +1,64 @@
 package banking.service;
 
 import banking.data.AccountManager;
+import banking.data.AccountNotFoundException;
+import banking.data.IdempotencyStore;
+import banking.data.LedgerEngine;
+import banking.data.SessionBootstrap;
 import banking.data.TransactionManager;
+import banking.data.TransactionPage;
 import banking.data.UserManager;
 import banking.model.Account;
+import banking.model.Money;
 import banking.model.Transaction;
 import banking.model.User;
 import banking.ui.LoginWindow;
 
 import java.sql.SQLException;
-import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
 
 
 /**
  * MainService handles the business logic for the main banking operations.
  * This class separates the functional operations from the MainWindow View.
+ * <p>
+ * The operations that read or write the database also have asynchronous variants, which run
+ * the same code on a virtual thread so the JavaFX thread is never blocked. At most
+ * {@link #MAX_CONCURRENT_OPERATIONS} of them run at once across all instances; further ones
+ * wait for a permit instead of for a pooled connection, whose borrow would time out. The
+ * variants of one instance share its selected account and history cursor, so a caller
+ * should wait for one to complete before starting the next.
+ * <p>
+ * Deposits, withdrawals and transfers accept an idempotency key naming the request. Every
+ * submission of a key after the first returns the first one's result without posting again,
+ * so a retried or double-clicked submission moves money only once.
  */
 public class MainService {
 
+    /// Number of transactions loaded per history page.
+    public static final int TRANSACTION_PAGE_SIZE = 100;
+
+    /// Maximum number of asynchronous operations running at once, set by {@code banking.service.maxConcurrentOperations}.
+    public static final int MAX_CONCURRENT_OPERATIONS =
+            Math.max(1, Integer.getInteger("banking.service.maxConcurrentOperations", 4));
+
+    private static final Executor OPERATION_EXECUTOR = task -> Thread.ofVirtual().name("main-service").start(task);
+    private static final Semaphore OPERATION_PERMITS = new Semaphore(MAX_CONCURRENT_OPERATIONS, true);
+
     private final AccountManager accountManager;
+    private final LedgerEngine ledger;
+    private final IdempotencyStore idempotencyStore = IdempotencyStore.getInstance();
     private final TransactionManager transactionManager;
     private final UserManager userManager;
 
     private final User currentUser;
     private Account selectedAccount;
+    private TransactionPage.Cursor nextTransactionCursor;
 
 
     /**
@@ -37,12 +70,36 @@ public class MainService {
     public MainService(String userEmail) throws SQLException {
         UserManager userManager = new UserManager();
         this.accountManager = new AccountManager();
+        this.ledger = LedgerEngine.fromSystemProperties();
         this.transactionManager = new TransactionManager();
         this.userManager = new UserManager();
         this.currentUser = userManager.loadUser(userEmail);
     }
 
 
+    /**
+     * Creates a new MainService instance for a session loaded at sign-in. The user's accounts
+     * and the first history page are taken from the session instead of being loaded again;
+     * the first account is selected and further pages continue after the loaded one.
+     *
+     * @param session the session returned by SessionBootstrap
+     */
+    public MainService(SessionBootstrap.Session session) {
+        this.accountManager = new AccountManager();
+        this.ledger = LedgerEngine.fromSystemProperties();
+        this.transactionManager = new TransactionManager();
+        this.userManager = new UserManager();
+        this.currentUser = session.user();
+        currentUser.addAllAccounts(session.accounts());
+
+        if (!session.accounts().isEmpty()) {
+            selectedAccount = session.accounts().getFirst();
+            selectedAccount.setTransactions(new ArrayList<>(session.firstPage().transactions()));
+            nextTransactionCursor = session.firstPage().nextCursor();
+        }
+    }
+
+
     /// Gets the current user.
     public User getCurrentUser() {
         return currentUser;
@@ -68,23 +125,24 @@ public class MainService {
 
 
     /**
-     * Validates and parses an amount string.
+     * Validates and parses an amount string into minor units.
+     * At most two decimal places are accepted, so no amount is ever rounded.
      *
      * @param amountText the amount string to validate and parse
      * @return AmountValidationResult containing success status, message, and parsed amount
      */
     private AmountValidationResult validateAndParseAmount(String amountText) {
         if (amountText == null || amountText.trim().isEmpty())
-            return new AmountValidationResult(false, "Please enter an amount.", 0.0);
+            return new AmountValidationResult(false, "Please enter an amount.", 0);
 
         try {
-            double amount = Double.parseDouble(amountText.trim());
+            long amount = Money.parse(amountText);
             if (amount <= 0)
                 return new AmountValidationResult(false, "Amount must be positive.", amount);
 
             return new AmountValidationResult(true, "Amount is valid.", amount);
         } catch (NumberFormatException ex) {
-            return new AmountValidationResult(false, "Invalid amount format.", 0.0);
+            return new AmountValidationResult(false, "Invalid amount format.", 0);
         }
     }
 
@@ -114,16 +172,50 @@ public class MainService {
      * @param amount the amount to validate against the balance
      * @return ValidationResult containing success status and message
      */
-    private ValidationResult validateSufficientBalance(double amount) {
+    private ValidationResult validateSufficientBalance(long amount) {
         if (selectedAccount.getBalance() < amount)
             return new ValidationResult(false, "Insufficient balance.");
         return new ValidationResult(true, "Sufficient balance available.");
     }
 
 
+    /**
+     * Checks that the selected account has sufficient balance before posting.
+     *
+     * @param amount the amount to check against the balance
+     * @throws IllegalArgumentException with the validation message if the balance is insufficient
+     */
+    private void requireSufficientBalance(long amount) {
+        ValidationResult balanceValidation = validateSufficientBalance(amount);
+        if (!balanceValidation.success())
+            throw new IllegalArgumentException(balanceValidation.message());
+    }
+
+
+    /**
+     * Runs a posting, once per idempotency key if one is given.
+     *
+     * @param idempotencyKey the key naming the request, or null
+     * @param request        the posting's type, accounts and amount
+     * @param posting        the posting
+     * @return true if the posting ran now, false if an earlier submission of the key ran it
+     * @throws SQLException             when a database error occurs
+     * @throws IllegalArgumentException if the posting is rejected or the key cannot be used for it
+     */
+    private boolean post(String idempotencyKey, IdempotencyStore.Request request, IdempotencyStore.Posting posting)
+            throws SQLException {
+        if (idempotencyKey == null) {
+            posting.run();
+            return true;
+        }
+        return !idempotencyStore.execute(idempotencyKey, request, posting).replayed();
+    }
+
+
     /// Gets all accounts for the current user.
     public AccountListResult getUserAccounts() {
         try {
+            ledger.flush();
             List<Account> accounts = accountManager.loadAccounts(currentUser.getUserID());
             return new AccountListResult(true, null, accounts);
         } catch (SQLException ex) {
@@ -139,6 +231,18 @@ public class MainService {
      * @return TransactionResult indicating success or failure with message
      */
     public TransactionResult deposit(String amountText) {
+        return deposit(amountText, null);
+    }
+
+
+    /**
+     * Handles deposit operation once per idempotency key.
+     *
+     * @param amountText     the amount to deposit as a string
+     * @param idempotencyKey the key naming this deposit, or null to post every submission
+     * @return TransactionResult indicating success or failure with message; the first result for a repeated key
+     */
+    public TransactionResult deposit(String amountText, String idempotencyKey) {
         // Validate account selection
         ValidationResult accountValidation = validateAccountSelected();
         if (!accountValidation.success())
@@ -150,12 +254,17 @@ public class MainService {
             return new TransactionResult(false, amountValidation.message());
 
         try {
-            accountManager.depositMoney(selectedAccount, amountValidation.amount());
-            saveTransaction(selectedAccount, selectedAccount, amountValidation.amount(), "Deposit");
+            Account account = selectedAccount;
+            long amount = amountValidation.amount();
+            post(idempotencyKey, new IdempotencyStore.Request(TransactionManager.Type.DEPOSIT,
+                    account.getAccountNumber(), account.getAccountNumber(), amount),
+                    () -> ledger.postDeposit(account, amount));
             return new TransactionResult(true, "Deposit successful!");
 
         } catch (SQLException ex) {
             return new TransactionResult(false, "Deposit failed: " + ex.getMessage());
+        } catch (IllegalArgumentException ex) {
+            return new TransactionResult(false, ex.getMessage());
         }
     }
 
@@ -167,6 +276,18 @@ public class MainService {
      * @return TransactionResult indicating success or failure with message
      */
     public TransactionResult withdraw(String amountText) {
+        return withdraw(amountText, null);
+    }
+
+
+    /**
+     * Handles withdrawal operation once per idempotency key.
+     *
+     * @param amountText     the amount to withdraw as a string
+     * @param idempotencyKey the key naming this withdrawal, or null to post every submission
+     * @return TransactionResult indicating success or failure with message; the first result for a repeated key
+     */
+    public TransactionResult withdraw(String amountText, String idempotencyKey) {
         // Validate account selection
         ValidationResult accountValidation = validateAccountSelected();
         if (!accountValidation.success())
@@ -177,18 +298,21 @@ public class MainService {
         if (!amountValidation.success())
             return new TransactionResult(false, amountValidation.message());
 
-        // Validate sufficient balance
-        ValidationResult balanceValidation = validateSufficientBalance(amountValidation.amount());
-        if (!balanceValidation.success())
-            return new TransactionResult(false, balanceValidation.message());
-
         try {
-            accountManager.withdrawMoney(selectedAccount, amountValidation.amount());
-            saveTransaction(selectedAccount, selectedAccount, amountValidation.amount(), "Withdrawal");
+            Account account = selectedAccount;
+            long amount = amountValidation.amount();
+            post(idempotencyKey, new IdempotencyStore.Request(TransactionManager.Type.WITHDRAWAL,
+                    account.getAccountNumber(), account.getAccountNumber(), amount), () -> {
+                // Checked only when posting, so a repeated submission is not refused for the balance the first one spent
+                requireSufficientBalance(amount);
+                return ledger.postWithdrawal(account, amount);
+            });
             return new TransactionResult(true, "Withdrawal successful!");
 
         } catch (SQLException ex) {
             return new TransactionResult(false, "Withdrawal failed: " + ex.getMessage());
+        } catch (IllegalArgumentException ex) {
+            return new TransactionResult(false, ex.getMessage());
         }
     }
 
@@ -202,6 +326,20 @@ public class MainService {
      * @return a TransactionResult indicating success or failure with message.
      */
     public TransactionResult transfer(String accountNumberText, String amountText, String comment) {
+        return transfer(accountNumberText, amountText, comment, null);
+    }
+
+
+    /**
+     * Handles transfer operation once per idempotency key.
+     *
+     * @param accountNumberText the recipient account number as a string.
+     * @param amountText        the amount to transfer as a string.
+     * @param comment           optional comment for the transfer.
+     * @param idempotencyKey    the key naming this transfer, or null to post every submission.
+     * @return a TransactionResult indicating success or failure with message; the first result for a repeated key.
+     */
+    public TransactionResult transfer(String accountNumberText, String amountText, String comment, String idempotencyKey) {
         // Validate account selection
         ValidationResult accountValidation = validateAccountSelected();
         if (!accountValidation.success())
@@ -217,42 +355,41 @@ public class MainService {
         if (!amountValidation.success())
             return new TransactionResult(false, amountValidation.message());
 
-        // Validate sufficient balance
-        ValidationResult balanceValidation = validateSufficientBalance(amountValidation.amount());
-        if (!balanceValidation.success())
-            return new TransactionResult(false, balanceValidation.message());
+        if (accountNumberValidation.accountNumber() == selectedAccount.getAccountNumber())
+            return new TransactionResult(false, "Cannot transfer to the same account.");
 
         try {
-            // Load and validate recipient account
-            Account recipientAccount = accountManager.loadAccount(accountNumberValidation.accountNumber());
-            if (recipientAccount == null)
-                return new TransactionResult(false, "Recipient account not found.");
-
-            if (recipientAccount.getAccountNumber() == selectedAccount.getAccountNumber())
-                return new TransactionResult(false, "Cannot transfer to the same account.");
-
-            // Perform transfer
-            accountManager.transferMoney(selectedAccount.getAccountNumber(),
-                    accountNumberValidation.accountNumber(),
-                    amountValidation.amount());
-
-            selectedAccount.withdraw(amountValidation.amount());
-
-            for (Account acc : currentUser.getAccounts()) {
-                if (acc.getAccountNumber() == accountNumberValidation.accountNumber()) {
-                    acc.deposit(amountValidation.amount());
-                    break;
+            // Debit, credit and record the transfer in one database transaction
+            Account sender = selectedAccount;
+            int receiverAccountNumber = accountNumberValidation.accountNumber();
+            long amount = amountValidation.amount();
+            String finalComment = (comment != null && !comment.trim().isEmpty()) ? comment.trim() : "Transfer";
+            boolean posted = post(idempotencyKey, new IdempotencyStore.Request(TransactionManager.Type.TRANSFER,
+                    sender.getAccountNumber(), receiverAccountNumber, amount), () -> {
+                requireSufficientBalance(amount);
+                return ledger.postTransfer(sender, receiverAccountNumber, amount, finalComment);
+            });
+
+            // A repeated submission already credited the receiver
+            if (posted) {
+                for (Account acc : currentUser.getAccounts()) {
+                    if (acc.getAccountNumber() == receiverAccountNumber) {
+                        acc.deposit(amount);
+                        break;
+                    }
                 }
             }
 
-            // Save transaction record
-            String finalComment = (comment != null && !comment.trim().isEmpty()) ? comment.trim() : "Transfer";
-            saveTransaction(selectedAccount, recipientAccount, amountValidation.amount(), finalComment);
-
             return new TransactionResult(true, "Transfer successful!");
 
         } catch (SQLException ex) {
             return new TransactionResult(false, "Transfer failed: " + ex.getMessage());
+        } catch (AccountNotFoundException ex) {
+            if (ex.getAccountNumber() == accountNumberValidation.accountNumber())
+                return new TransactionResult(false, "Recipient account not found.");
+            return new TransactionResult(false, ex.getMessage());
+        } catch (IllegalArgumentException ex) {
+            return new TransactionResult(false, ex.getMessage());
         }
     }
 
@@ -260,21 +397,8 @@ public class MainService {
     /// Handles opening a new account
     public AccountResult openAccount() {
         try {
-            // Generate unique account number
-            Random rand = new Random();
-            int accountNumber;
-            do {
-                accountNumber = rand.nextInt(10000000, 99999999);
-            } while (accountManager.accountExists(accountNumber));
-
-            Account newAccount = new Account(0, currentUser.getUserID(), accountNumber, 0.0, false);
-
-            boolean saved = accountManager.saveAccount(newAccount);
-            if (saved) {
-                return new AccountResult(true, "Account created successfully! Account number: " + accountNumber);
-            } else {
-                return new AccountResult(false, "Failed to create account: Account already exists.");
-            }
+            Account newAccount = accountManager.openAccount(currentUser.getUserID());
+            return new AccountResult(true, "Account created successfully! Account number: " + newAccount.getAccountNumber());
         } catch (SQLException ex) {
             return new AccountResult(false, "Failed to create account: " + ex.getMessage());
         }
@@ -287,7 +411,7 @@ public class MainService {
             return new AccountResult(false, "No account selected.");
 
         try {
-            accountManager.freezeAccount(selectedAccount);
+            ledger.setFrozen(selectedAccount, true);
             selectedAccount.freeze();
             return new AccountResult(true, "Account frozen successfully!");
         } catch (SQLException ex) {
@@ -302,7 +426,7 @@ public class MainService {
             return new AccountResult(false, "No account selected.");
 
         try {
-            accountManager.unfreezeAccount(selectedAccount);
+            ledger.setFrozen(selectedAccount, false);
             selectedAccount.unfreeze();
             return new AccountResult(true, "Account unfrozen successfully!");
         } catch (SQLException ex) {
@@ -321,7 +445,7 @@ public class MainService {
                 return new AccountResult(false, "Cannot close account with positive balance. " +
                         "Please withdraw all funds first.");
 
-            accountManager.deleteAccount(selectedAccount);
+            ledger.deleteAccount(selectedAccount);
 
             if (isLastAccount)
                 userManager.deleteUser(currentUser.getEmail());
@@ -333,47 +457,127 @@ public class MainService {
     }
 
 
-    /// Gets transactions for the selected account
+    /// Gets the first page of transactions for the selected account
     public TransactionListResult getTransactions() {
         if (selectedAccount == null)
-            return new TransactionListResult(false, "No account selected.", null);
+            return new TransactionListResult(false, "No account selected.", null, false);
 
         try {
-            List<Transaction> transactions = transactionManager.loadTransactions(selectedAccount);
-            selectedAccount.setTransactions(transactions);
-            return new TransactionListResult(true, null, transactions);
+            ledger.flush();
+            TransactionPage page = transactionManager.loadTransactions(selectedAccount, null, TRANSACTION_PAGE_SIZE);
+            nextTransactionCursor = page.nextCursor();
+            selectedAccount.setTransactions(new ArrayList<>(page.transactions()));
+            return new TransactionListResult(true, null, page.transactions(), page.hasMore());
         } catch (SQLException ex) {
-            return new TransactionListResult(false, "Failed to load transactions: " + ex.getMessage(), null);
+            return new TransactionListResult(false, "Failed to load transactions: " + ex.getMessage(), null, false);
         }
     }
 
 
-    /// Navigates to login window
-    public NavigationResult navigateToLoginWindow() {
+    /// Gets the next page of transactions for the selected account, continuing after the last loaded page
+    public TransactionListResult getMoreTransactions() {
+        if (selectedAccount == null)
+            return new TransactionListResult(false, "No account selected.", null, false);
+
+        if (nextTransactionCursor == null)
+            return new TransactionListResult(true, null, List.of(), false);
+
         try {
-            new LoginWindow();
-            return new NavigationResult(true, null);
+            ledger.flush();
+            TransactionPage page = transactionManager.loadTransactions(
+                    selectedAccount, nextTransactionCursor, TRANSACTION_PAGE_SIZE);
+            nextTransactionCursor = page.nextCursor();
+            selectedAccount.addTransactions(page.transactions());
+            return new TransactionListResult(true, null, page.transactions(), page.hasMore());
         } catch (SQLException ex) {
-            return new NavigationResult(false, "Failed to open login window: " + ex.getMessage());
+            return new TransactionListResult(false, "Failed to load transactions: " + ex.getMessage(), null, true);
         }
     }
 
 
+    /// Gets all accounts for the current user on a virtual thread.
+    public CompletableFuture<AccountListResult> getUserAccountsAsync() {
+        return runAsync(this::getUserAccounts);
+    }
+
+
+    /// Handles deposit operation on a virtual thread.
+    public CompletableFuture<TransactionResult> depositAsync(String amountText) {
+        return runAsync(() -> deposit(amountText));
+    }
+
+
+    /// Handles deposit operation once per idempotency key on a virtual thread.
+    public CompletableFuture<TransactionResult> depositAsync(String amountText, String idempotencyKey) {
+        return runAsync(() -> deposit(amountText, idempotencyKey));
+    }
+
+
+    /// Handles withdrawal operation on a virtual thread.
+    public CompletableFuture<TransactionResult> withdrawAsync(String amountText) {
+        return runAsync(() -> withdraw(amountText));
+    }
+
+
+    /// Handles withdrawal operation once per idempotency key on a virtual thread.
+    public CompletableFuture<TransactionResult> withdrawAsync(String amountText, String idempotencyKey) {
+        return runAsync(() -> withdraw(amountText, idempotencyKey));
+    }
+
+
+    /// Handles transfer operation on a virtual thread.
+    public CompletableFuture<TransactionResult> transferAsync(String accountNumberText, String amountText, String comment) {
+        return runAsync(() -> transfer(accountNumberText, amountText, comment));
+    }
+
+
+    /// Handles transfer operation once per idempotency key on a virtual thread.
+    public CompletableFuture<TransactionResult> transferAsync(String accountNumberText, String amountText, String comment,
+                                                              String idempotencyKey) {
+        return runAsync(() -> transfer(accountNumberText, amountText, comment, idempotencyKey));
+    }
+
+
+    /// Gets the first page of transactions for the selected account on a virtual thread.
+    public CompletableFuture<TransactionListResult> getTransactionsAsync() {
+        return runAsync(this::getTransactions);
+    }
+
+
+    /// Gets the next page of transactions for the selected account on a virtual thread.
+    public CompletableFuture<TransactionListResult> getMoreTransactionsAsync() {
+        return runAsync(this::getMoreTransactions);
+    }
+
+
     /**
-     * Saves a transaction record to the database.
+     * Runs an operation on a new virtual thread once one of the shared permits is free.
+     * The operations report failures in their results, so the future only completes
+     * exceptionally on an unexpected runtime exception.
      *
-     * @param sender   the account sending the money
-     * @param receiver the account receiving the money
-     * @param amount   the amount of money transferred
-     * @param comment  an optional comment for the transaction
+     * @param operation the synchronous operation
+     * @param <T>       the result type of the operation
+     * @return a future completed with the operation's result
      */
-    private void saveTransaction(Account sender, Account receiver, double amount, String comment) {
+    private static <T> CompletableFuture<T> runAsync(Supplier<T> operation) {
+        return CompletableFuture.supplyAsync(() -> {
+            OPERATION_PERMITS.acquireUninterruptibly();
+            try {
+                return operation.get();
+            } finally {
+                OPERATION_PERMITS.release();
+            }
+        }, OPERATION_EXECUTOR);
+    }
+
+
+    /// Navigates to login window
+    public NavigationResult navigateToLoginWindow() {
         try {
-            LocalDateTime timestamp = LocalDateTime.now();
-            Transaction transaction = new Transaction(0, sender, receiver, amount, comment, timestamp);
-            transactionManager.saveTransaction(transaction);
+            new LoginWindow();
+            return new NavigationResult(true, null);
         } catch (SQLException ex) {
-            System.err.println("Failed to save transaction record: " + ex.getMessage());
+            return new NavigationResult(false, "Failed to open login window: " + ex.getMessage());
         }
     }
 
@@ -387,8 +591,9 @@ public class MainService {
     /// Result class for account list operations
     public record AccountListResult(boolean success, String errorMessage, List<Account> accounts) { }
 
-    /// Result class for transaction list operations
-    public record TransactionListResult(boolean success, String errorMessage, List<Transaction> transactions) { }
+    /// Result class for transaction list operations; hasMore tells whether another page can be loaded
+    public record TransactionListResult(boolean success, String errorMessage, List<Transaction> transactions,
+                                        boolean hasMore) { }
 
     /// Result class for navigation operations
     public record NavigationResult(boolean success, String errorMessage) { }
@@ -396,8 +601,8 @@ public class MainService {
     /// Result class for validation operations
     public record ValidationResult(boolean success, String message) { }
 
-    /// Result class for amount validation operations
-    public record AmountValidationResult(boolean success, String message, double amount) { }
+    /// Result class for amount validation operations; the amount is in minor units
+    public record AmountValidationResult(boolean success, String message, long amount) { }
 
     /// Result class for account number validation operations
     public record AccountNumberValidationResult(boolean success, String message, int accountNumber) { }
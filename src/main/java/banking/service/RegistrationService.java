@@ -1,16 +1,14 @@
 package banking.service;
 
-import banking.data.AccountManager;
-import banking.data.DatabaseManager;
 import banking.data.UserManager;
-import banking.model.Account;
 import banking.model.User;
 import banking.ui.LoginWindow;
 
-import java.sql.Connection;
 import java.sql.SQLException;
 import java.time.LocalDateTime;
-import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 
 
 /**
@@ -19,14 +17,14 @@ import java.util.Random;
  */
 public class RegistrationService {
 
+    private static final Executor REGISTRATION_EXECUTOR = task -> Thread.ofVirtual().name("registration").start(task);
+
     private final UserManager userManager;
-    private final AccountManager accountManager;
 
 
-    /// Constructor initializes the UserManager and AccountManager.
+    /// Constructor initializes the UserManager.
     public RegistrationService() throws SQLException {
         this.userManager = new UserManager();
-        this.accountManager = new AccountManager();
     }
 
 
@@ -96,7 +94,7 @@ public class RegistrationService {
 
     /**
      * Registers a new user with the provided information.
-     * Uses database transactions to ensure atomicity between user and account creation.
+     * The user and their first account are created in a single database transaction.
      *
      * @param email           the user's email address
      * @param password        the user's password
@@ -104,8 +102,6 @@ public class RegistrationService {
      * @return RegistrationResult containing success status and message
      */
     public RegistrationResult registerUser(String email, String password, String confirmPassword) {
-        Connection connection = null;
-
         try {
             // Trim email
             email = email.trim();
@@ -128,61 +124,38 @@ public class RegistrationService {
             if (userManager.userExists(email))
                 return new RegistrationResult(false, "Email already in use!");
 
-            // Get database connection and start transaction
-            connection = DatabaseManager.getInstance().getConnection();
-            connection.setAutoCommit(false);
-
-            try {
-                // Create and save user
-                LocalDateTime now = LocalDateTime.now();
-                User user = new User(email, password, now);
-                int userID = userManager.saveUser(user);
-
-                if (userID <= 0) {
-                    connection.rollback();
-                    return new RegistrationResult(false, "User creation failed!");
-                }
-
-                // Generate unique account number
-                Random rand = new Random();
-                int accountNumber;
-                do {
-                    accountNumber = rand.nextInt(10000000, 99999999);
-                } while (accountManager.accountExists(accountNumber));
-
-                // Create and save account
-                Account account = new Account(userID, accountNumber, 0.0, false);
-                if (!accountManager.saveAccount(account)) {
-                    connection.rollback();
-                    return new RegistrationResult(false, "Account creation failed!");
-                }
-
-                // Both operations successful, commit transaction
-                connection.commit();
-                return new RegistrationResult(true, "Successful registration!");
-
-            } catch (SQLException transactionEx) {
-                // Rollback transaction on any error
-                connection.rollback();
-                return new RegistrationResult(false, "Registration failed: " + transactionEx.getMessage());
-            }
+            // Create and save user with their first account, numbered by the allocator
+            User user = new User(email, password, LocalDateTime.now());
+            int userID = userManager.registerUser(user);
+
+            if (userID <= 0)
+                return new RegistrationResult(false, "User creation failed!");
+
+            return new RegistrationResult(true, "Successful registration!");
 
         } catch (SQLException ex) {
             return new RegistrationResult(false, "Database error occurred during registration: " + ex.getMessage());
-        } finally {
-            // Restore auto-commit mode
-            if (connection != null) {
-                try {
-                    connection.setAutoCommit(true);
-                } catch (SQLException ex) {
-                    // Log error but don't fail the operation
-                    System.err.println("Warning: Failed to restore auto-commit mode: " + ex.getMessage());
-                }
-            }
+        } catch (RejectedExecutionException ex) {
+            return new RegistrationResult(false, "Too many registrations at once. Please try again.");
         }
     }
 
 
+    /**
+     * Registers a new user off the calling thread, so the JavaFX thread is not blocked
+     * while the password is hashed. The database work runs on a virtual thread and the
+     * hashing on the PasswordHasher pool.
+     *
+     * @param email           the user's email address
+     * @param password        the user's password
+     * @param confirmPassword the password confirmation
+     * @return a future completed with the RegistrationResult, which also reports database errors
+     */
+    public CompletableFuture<RegistrationResult> registerUserAsync(String email, String password, String confirmPassword) {
+        return CompletableFuture.supplyAsync(() -> registerUser(email, password, confirmPassword), REGISTRATION_EXECUTOR);
+    }
+
+
     /**
      * Handles navigation back to the login window.
      *
@@ -27,10 +27,12 @@ public class ContactPanel extends VBox {
 
 
     /**
-     * Constructs a new ContactPanel and initializes the user interface components.
+     * Constructs a new ContactPanel for the contacts of the given user and initializes the user interface components.
+     *
+     * @param userID The ID of the user whose contacts are shown.
      */
-    public ContactPanel() {
-        contactService = new ContactService();
+    public ContactPanel(int userID) {
+        contactService = new ContactService(userID);
         contactListModel = FXCollections.observableArrayList();
 
         setSpacing(20);
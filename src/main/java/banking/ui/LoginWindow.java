@@ -1,6 +1,7 @@
 package banking.ui;
 
 import banking.service.LoginService;
+import javafx.application.Platform;
 import javafx.geometry.HPos;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
@@ -91,18 +92,30 @@ public class LoginWindow extends Stage {
             String email = emailField.getText();
             String password = passwordField.getText();
 
-            LoginService.AuthenticationResult authResult = loginService.authenticateUser(email, password);
-
-            if (authResult.success()) {
-                LoginService.NavigationResult navResult = loginService.navigateToMainWindow(email);
-                if (navResult.success()) {
-                    close();
+            // Password hashing takes a while, so it runs in the background and the buttons wait for it
+            loginButton.setDisable(true);
+            registerButton.setDisable(true);
+            loginButton.setText("Signing in...");
+
+            // The buttons are enabled again however the future completes
+            loginService.authenticateUserAsync(email, password).whenComplete((authResult, error) -> Platform.runLater(() -> {
+                loginButton.setDisable(false);
+                registerButton.setDisable(false);
+                loginButton.setText("Login");
+
+                if (error != null) {
+                    showAlert(Alert.AlertType.ERROR, "ERROR", "Sign-in failed: " + error.getMessage());
+                } else if (authResult.success()) {
+                    LoginService.NavigationResult navResult = loginService.navigateToMainWindow(authResult.session());
+                    if (navResult.success()) {
+                        close();
+                    } else {
+                        showAlert(Alert.AlertType.ERROR, "ERROR", navResult.errorMessage());
+                    }
                 } else {
-                    showAlert(Alert.AlertType.ERROR, "ERROR", navResult.errorMessage());
+                    showAlert(Alert.AlertType.WARNING, "WARNING", authResult.message());
                 }
-            } else {
-                showAlert(Alert.AlertType.WARNING, "WARNING", authResult.message());
-            }
+            }));
         });
 
         // Registry button's event handler
@@ -1,17 +1,23 @@
 package banking.ui;
 
+import banking.data.SessionBootstrap;
+import banking.data.TransactionPage;
 import banking.model.Account;
+import banking.model.Money;
 import banking.model.Transaction;
 import banking.model.User;
 import banking.service.MainService;
 
-import javafx.beans.property.SimpleDoubleProperty;
+import javafx.application.Platform;
 import javafx.beans.property.SimpleIntegerProperty;
+import javafx.beans.property.SimpleLongProperty;
 import javafx.beans.property.SimpleStringProperty;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.geometry.Insets;
+import javafx.geometry.Orientation;
 import javafx.geometry.Pos;
+import javafx.scene.Node;
 import javafx.scene.Scene;
 import javafx.scene.control.*;
 import javafx.scene.image.Image;
@@ -23,6 +29,9 @@ import java.time.format.DateTimeFormatter;
 import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 
 /**
@@ -44,6 +53,17 @@ public class MainWindow extends Stage {
     private Button freezeButton;
     private Button unfreezeButton;
     private TableView<Transaction> transactionsTable;
+    private ScrollBar transactionsScrollBar;
+    private boolean hasMoreTransactions;
+    private HBox accountControls;
+    private VBox actionsCard;
+    private ProgressIndicator progressIndicator;
+    private int pendingOperations;
+
+    // One idempotency key per form, renewed once its submission succeeds, so a resubmission of the same entry posts once
+    private String depositKey = UUID.randomUUID().toString();
+    private String withdrawKey = UUID.randomUUID().toString();
+    private String transferKey = UUID.randomUUID().toString();
 
 
     /**
@@ -54,22 +74,45 @@ public class MainWindow extends Stage {
      * @throws SQLException if there is an error loading the user's accounts or transactions from the database.
      */
     public MainWindow(String email) throws SQLException {
-        mainService = new MainService(email);
+        this(new MainService(email), null);
+    }
+
+
+    /**
+     * Constructs the main window for a session loaded at sign-in, showing its accounts and
+     * first page of transactions without querying the database again.
+     *
+     * @param session The session of the signed-in user, as returned by SessionBootstrap.
+     * @throws SQLException if the session has no accounts and none can be loaded from the database.
+     */
+    public MainWindow(SessionBootstrap.Session session) throws SQLException {
+        this(new MainService(session), session.firstPage());
+    }
+
+
+    /**
+     * Builds the window around a MainService. The accounts are loaded unless the service
+     * already has them, and the transaction table shows the given page if there is one.
+     */
+    private MainWindow(MainService mainService, TransactionPage firstPage) throws SQLException {
+        this.mainService = mainService;
         currentUser = mainService.getCurrentUser();
 
-        MainService.AccountListResult accountsResult = mainService.getUserAccounts();
+        if (currentUser.getAccounts().isEmpty()) {
+            MainService.AccountListResult accountsResult = mainService.getUserAccounts();
 
-        if (accountsResult.success() && !accountsResult.accounts().isEmpty()) {
-            List<Account> accounts = accountsResult.accounts();
-            currentUser.addAllAccounts(accounts);
-            currentAccount = accounts.getFirst();
-            mainService.setSelectedAccount(currentAccount);
-        } else {
-            throw new SQLException("Failed to load user accounts: " +
-                    (accountsResult.errorMessage() != null ? accountsResult.errorMessage() : "No accounts found"));
+            if (accountsResult.success() && !accountsResult.accounts().isEmpty()) {
+                currentUser.addAllAccounts(accountsResult.accounts());
+            } else {
+                throw new SQLException("Failed to load user accounts: " +
+                        (accountsResult.errorMessage() != null ? accountsResult.errorMessage() : "No accounts found"));
+            }
+            firstPage = null;
         }
+        currentAccount = currentUser.getAccounts().getFirst();
+        mainService.setSelectedAccount(currentAccount);
 
-        setTitle(email);
+        setTitle(currentUser.getEmail());
         this.getIcons().add(new Image(Objects.requireNonNull(getClass().getResourceAsStream("/icon.png"))));
         setResizable(true);
         setMinWidth(1100);
@@ -84,7 +127,7 @@ public class MainWindow extends Stage {
         dashboardContent.getChildren().add(createSummaryCard());
 
         HBox middleRow = new HBox(20);
-        VBox actionsCard = createAccountActionsCard();
+        actionsCard = createAccountActionsCard();
         VBox contactsCard = createContactManagerCard();
 
         HBox.setHgrow(actionsCard, Priority.ALWAYS);
@@ -109,7 +152,12 @@ public class MainWindow extends Stage {
         }
 
         setScene(scene);
-        refreshPage();
+        if (firstPage != null) {
+            updateAccountDetails();
+            showTransactions(firstPage.transactions(), firstPage.hasMore());
+        } else {
+            refreshPage();
+        }
         show();
     }
 
@@ -155,8 +203,8 @@ public class MainWindow extends Stage {
         Label title = new Label("Account Summary");
         title.getStyleClass().add("section-title");
 
-        HBox topControls = new HBox(15);
-        topControls.setAlignment(Pos.CENTER);
+        accountControls = new HBox(15);
+        accountControls.setAlignment(Pos.CENTER);
 
         Label chooseLabel = new Label("Selected Account:");
         accountSelector = new ComboBox<>();
@@ -166,7 +214,9 @@ public class MainWindow extends Stage {
         // Account selector's event handler
         accountSelector.setOnAction(_ -> {
             Integer selectedAccountNumber = accountSelector.getValue();
-            if (selectedAccountNumber == null) return;
+            // Also fired when the dropdown is rebuilt, which refreshes the page itself
+            if (selectedAccountNumber == null || (currentAccount != null
+                    && currentAccount.getAccountNumber() == selectedAccountNumber)) return;
             for (Account account : currentUser.getAccounts()) {
                 if (account.getAccountNumber() == selectedAccountNumber) {
                     currentAccount = account;
@@ -175,19 +225,26 @@ public class MainWindow extends Stage {
                     break;
                 }
             }
-            refreshPage();
         });
 
         Button refreshButton = new Button("↻ Refresh");
         refreshButton.getStyleClass().add("btn-blue");
         refreshButton.setOnAction(_ -> handleRefreshAccounts());
 
-        topControls.getChildren().addAll(chooseLabel, accountSelector, refreshButton);
+        accountControls.getChildren().addAll(chooseLabel, accountSelector, refreshButton);
 
         balanceLabel = new Label();
         balanceLabel.getStyleClass().add("balance-label");
 
-        card.getChildren().addAll(title, topControls, new Separator(), balanceLabel);
+        // Shown while an operation runs in the background
+        progressIndicator = new ProgressIndicator();
+        progressIndicator.setMaxSize(24, 24);
+        progressIndicator.setVisible(false);
+
+        HBox balanceRow = new HBox(10, balanceLabel, progressIndicator);
+        balanceRow.setAlignment(Pos.CENTER);
+
+        card.getChildren().addAll(title, accountControls, new Separator(), balanceRow);
         return card;
     }
 
@@ -290,7 +347,7 @@ public class MainWindow extends Stage {
      * @return A VBox containing the contact management interface.
      */
     private VBox createContactManagerCard() {
-        ContactPanel contactPanel = new ContactPanel();
+        ContactPanel contactPanel = new ContactPanel(currentUser.getUserID());
         contactPanel.getStyleClass().add("card");
         return contactPanel;
     }
@@ -322,10 +379,18 @@ public class MainWindow extends Stage {
                 new SimpleIntegerProperty(data.getValue().receiver().getAccountNumber()).asObject()
         );
 
-        TableColumn<Transaction, Double> amountCol = new TableColumn<>("Amount (Ft)");
+        // The value stays in minor units so the column sorts numerically; only the cell text is formatted
+        TableColumn<Transaction, Long> amountCol = new TableColumn<>("Amount (Ft)");
         amountCol.setCellValueFactory(data ->
-                new SimpleDoubleProperty(data.getValue().amount()).asObject()
+                new SimpleLongProperty(data.getValue().amount()).asObject()
         );
+        amountCol.setCellFactory(_ -> new TableCell<>() {
+            @Override
+            protected void updateItem(Long amount, boolean empty) {
+                super.updateItem(amount, empty);
+                setText(empty || amount == null ? null : Money.format(amount));
+            }
+        });
 
         TableColumn<Transaction, String> commentCol = new TableColumn<>("Comment");
         commentCol.setCellValueFactory(data ->
@@ -340,11 +405,57 @@ public class MainWindow extends Stage {
         transactionsTable.getColumns().addAll(senderCol, receiverCol, amountCol, commentCol, dateCol);
         transactionsTable.setColumnResizePolicy(TableView.CONSTRAINED_RESIZE_POLICY_ALL_COLUMNS);
 
+        // Load further pages of history when the table is scrolled near its end
+        transactionsTable.skinProperty().addListener((_, _, skin) -> {
+            if (skin != null)
+                Platform.runLater(this::attachTransactionScrollListener);
+        });
+
         card.getChildren().addAll(title, transactionsTable);
         return card;
     }
 
 
+    /**
+     * Attaches a listener to the vertical scroll bar of the transaction table that loads
+     * the next page of transactions when the user scrolls close to the bottom, and loads
+     * pages until the table is full if the rows shown so far do not fill it.
+     */
+    private void attachTransactionScrollListener() {
+        for (Node node : transactionsTable.lookupAll(".scroll-bar")) {
+            if (node instanceof ScrollBar scrollBar && scrollBar.getOrientation() == Orientation.VERTICAL) {
+                transactionsScrollBar = scrollBar;
+                scrollBar.valueProperty().addListener((_, _, value) -> {
+                    if (value.doubleValue() >= scrollBar.getMax() * 0.9)
+                        loadMoreTransactions();
+                });
+                // The table can also stop being full when the window grows
+                scrollBar.visibleProperty().addListener((_, _, visible) -> {
+                    if (!visible)
+                        loadMoreTransactions();
+                });
+            }
+        }
+        fillTransactionTable();
+    }
+
+
+    /**
+     * Loads the next page of transactions if the rows shown so far do not fill the table.
+     * Without a scroll bar there is nothing to scroll, so no scroll event would ever load it.
+     * Each loaded page calls this again, until the table is full or there are no more pages.
+     */
+    private void fillTransactionTable() {
+        // Before the table has a skin there is no scroll bar yet; attaching the listener calls this again
+        if (!hasMoreTransactions || transactionsScrollBar == null) return;
+
+        transactionsTable.applyCss();
+        transactionsTable.layout();
+        if (!transactionsScrollBar.isVisible())
+            loadMoreTransactions();
+    }
+
+
     /**
      * Updates the account selector dropdown with the current user's accounts and selects the current account if available.
      * This method is called after refreshing the accounts to ensure the dropdown reflects any changes.
@@ -366,26 +477,27 @@ public class MainWindow extends Stage {
      * updates the current user's account list, and refreshes the UI to reflect any changes.
      */
     private void handleRefreshAccounts() {
-        MainService.AccountListResult accountsResult = mainService.getUserAccounts();
-        if (accountsResult.success()) {
-            currentUser.clearAccounts();
-            currentUser.addAllAccounts(accountsResult.accounts());
-
-            if (currentAccount != null) {
-                for (Account acc : currentUser.getAccounts()) {
-                    if (acc.getAccountNumber() == currentAccount.getAccountNumber()) {
-                        currentAccount = acc;
-                        mainService.setSelectedAccount(currentAccount);
-                        break;
+        runInBackground(mainService.getUserAccountsAsync(), accountsResult -> {
+            if (accountsResult.success()) {
+                currentUser.clearAccounts();
+                currentUser.addAllAccounts(accountsResult.accounts());
+
+                if (currentAccount != null) {
+                    for (Account acc : currentUser.getAccounts()) {
+                        if (acc.getAccountNumber() == currentAccount.getAccountNumber()) {
+                            currentAccount = acc;
+                            mainService.setSelectedAccount(currentAccount);
+                            break;
+                        }
                     }
                 }
-            }
 
-            updateAccountSelectorDropdown();
-            refreshPage();
-        } else {
-            showErrorMessage("Failed to refresh accounts: " + accountsResult.errorMessage());
-        }
+                updateAccountSelectorDropdown();
+                refreshPage();
+            } else {
+                showErrorMessage("Failed to refresh accounts: " + accountsResult.errorMessage());
+            }
+        });
     }
 
 
@@ -395,34 +507,98 @@ public class MainWindow extends Stage {
      * the transaction history table with the latest transactions for the current account.
      */
     private void refreshPage() {
+        updateAccountDetails();
+        updateTransactionTableData();
+    }
+
+
+    /// Updates the balance display and enables the action buttons that fit the current account's status.
+    private void updateAccountDetails() {
         if (currentAccount != null) {
-            balanceLabel.setText(String.format("%,.2f Ft", currentAccount.getBalance()));
+            balanceLabel.setText(Money.format(currentAccount.getBalance()) + " Ft");
             depositButton.setDisable(currentAccount.isFrozen());
             withdrawButton.setDisable(currentAccount.isFrozen());
             transferButton.setDisable(currentAccount.isFrozen());
             freezeButton.setDisable(currentAccount.isFrozen());
             unfreezeButton.setDisable(!currentAccount.isFrozen());
         }
-        updateTransactionTableData();
     }
 
 
     /**
      * Updates the transaction history table with the latest transactions for the current account.
-     * It retrieves the transactions from the service, updates the current account's transaction list,
-     * and populates the table with the new data. If there is an error retrieving the transactions,
-     * an error message is displayed to the user.
+     * Only the first page is loaded here; further pages are appended as the table is scrolled.
+     * If there is an error retrieving the transactions, an error message is displayed to the user.
      */
     private void updateTransactionTableData() {
         if (currentAccount == null) return;
-        MainService.TransactionListResult transactionsResult = mainService.getTransactions();
-        if (transactionsResult.success()) {
-            List<Transaction> transactions = transactionsResult.transactions();
-            currentAccount.setTransactions(transactions);
-            transactionsTable.setItems(FXCollections.observableArrayList(transactions));
-        } else {
-            showErrorMessage("Error updating transactions: " + transactionsResult.errorMessage());
-        }
+        runInBackground(mainService.getTransactionsAsync(), transactionsResult -> {
+            if (transactionsResult.success()) {
+                showTransactions(transactionsResult.transactions(), transactionsResult.hasMore());
+            } else {
+                showErrorMessage("Error updating transactions: " + transactionsResult.errorMessage());
+            }
+        });
+    }
+
+
+    /// Replaces the rows of the history table with the first page of transactions.
+    private void showTransactions(List<Transaction> transactions, boolean hasMore) {
+        transactionsTable.setItems(FXCollections.observableArrayList(transactions));
+        hasMoreTransactions = hasMore;
+        fillTransactionTable();
+    }
+
+
+    /**
+     * Appends the next page of transactions to the history table, if there is one
+     * and no other operation, such as loading a page, is running.
+     */
+    private void loadMoreTransactions() {
+        if (!hasMoreTransactions || pendingOperations > 0) return;
+
+        runInBackground(mainService.getMoreTransactionsAsync(), transactionsResult -> {
+            if (transactionsResult.success()) {
+                transactionsTable.getItems().addAll(transactionsResult.transactions());
+                hasMoreTransactions = transactionsResult.hasMore();
+                fillTransactionTable();
+            } else {
+                showErrorMessage("Error loading more transactions: " + transactionsResult.errorMessage());
+            }
+        });
+    }
+
+
+    /**
+     * Runs a MainService operation in the background and applies its result on the JavaFX thread.
+     * While any operation runs, the progress indicator is shown and the account controls and
+     * actions are disabled, so operations of this window never overlap and the service's
+     * selected account cannot change under a running one.
+     *
+     * @param operation the future returned by an asynchronous MainService method
+     * @param onResult  applies the result to the window; may start the next operation
+     * @param <T>       the result type of the operation
+     */
+    private <T> void runInBackground(CompletableFuture<T> operation, Consumer<T> onResult) {
+        pendingOperations++;
+        setBusy(true);
+
+        operation.whenComplete((result, error) -> Platform.runLater(() -> {
+            pendingOperations--;
+            setBusy(pendingOperations > 0);
+            if (error != null)
+                showErrorMessage("Unexpected error: " + error.getMessage());
+            else
+                onResult.accept(result);
+        }));
+    }
+
+
+    /// Shows or hides the progress indicator and disables or enables the controls accordingly.
+    private void setBusy(boolean busy) {
+        progressIndicator.setVisible(busy);
+        accountControls.setDisable(busy);
+        actionsCard.setDisable(busy);
     }
 
 
@@ -434,11 +610,13 @@ public class MainWindow extends Stage {
      * @param depositField The TextField from which to retrieve the deposit amount.
      */
     private void handleDeposit(TextField depositField) {
-        MainService.TransactionResult result = mainService.deposit(depositField.getText());
-        if (result.success()) {
-            depositField.clear();
-            refreshPage();
-        } else showErrorMessage(result.message());
+        runInBackground(mainService.depositAsync(depositField.getText(), depositKey), result -> {
+            if (result.success()) {
+                depositKey = UUID.randomUUID().toString();
+                depositField.clear();
+                refreshPage();
+            } else showErrorMessage(result.message());
+        });
     }
 
 
@@ -450,17 +628,20 @@ public class MainWindow extends Stage {
      * @param withdrawField The TextField from which to retrieve the withdrawal amount.
      */
     private void handleWithdraw(TextField withdrawField) {
-        MainService.TransactionResult result = mainService.withdraw(withdrawField.getText());
-        if (result.success()) {
-            withdrawField.clear();
-            refreshPage();
-        } else showErrorMessage(result.message());
+        runInBackground(mainService.withdrawAsync(withdrawField.getText(), withdrawKey), result -> {
+            if (result.success()) {
+                withdrawKey = UUID.randomUUID().toString();
+                withdrawField.clear();
+                refreshPage();
+            } else showErrorMessage(result.message());
+        });
     }
 
 
     /**
      * Handles the action of transferring funds from the current account to another account. It retrieves the target account number, transfer amount, and optional comment from the provided text fields,
      * calls the service to perform the transfer, and updates the UI based on the result. If the transfer is successful, all text fields are cleared and the page is refreshed.
+     * The transfer is submitted with the form's idempotency key, so submitting it again before it succeeds cannot transfer twice.
      * If there is an error during the transfer, an error message is displayed to the user.
      *
      * @param accountField The TextField from which to retrieve the target account number for the transfer.
@@ -468,14 +649,17 @@ public class MainWindow extends Stage {
      * @param commentField The TextField from which to retrieve any optional comment for the transfer.
      */
     private void handleTransfer(TextField accountField, TextField amountField, TextField commentField) {
-        MainService.TransactionResult result = mainService.transfer(accountField.getText(), amountField.getText(), commentField.getText());
-        if (result.success()) {
-            showSuccessMessage(result.message());
-            accountField.clear();
-            amountField.clear();
-            commentField.clear();
-        } else showErrorMessage(result.message());
-        refreshPage();
+        runInBackground(mainService.transferAsync(accountField.getText(), amountField.getText(), commentField.getText(),
+                transferKey), result -> {
+            if (result.success()) {
+                transferKey = UUID.randomUUID().toString();
+                showSuccessMessage(result.message());
+                accountField.clear();
+                amountField.clear();
+                commentField.clear();
+            } else showErrorMessage(result.message());
+            refreshPage();
+        });
     }
 
 
@@ -1,6 +1,7 @@
 package banking.ui;
 
 import banking.service.RegistrationService;
+import javafx.application.Platform;
 import javafx.geometry.HPos;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
@@ -103,19 +104,30 @@ public class RegistrationWindow extends Stage {
             String password = passwordField.getText();
             String confirmPassword = confirmPasswordField.getText();
 
-            RegistrationService.RegistrationResult result = registrationService.registerUser(email, password, confirmPassword);
-
-            if (result.success()) {
-                showAlert(Alert.AlertType.INFORMATION, "Success", result.message());
-                RegistrationService.NavigationResult navResult = registrationService.navigateToLoginWindow();
-                if (navResult.success()) {
-                    close();
+            // Password hashing takes a while, so it runs in the background and the buttons wait for it
+            signUpButton.setDisable(true);
+            closeButton.setDisable(true);
+            signUpButton.setText("Signing up...");
+
+            registrationService.registerUserAsync(email, password, confirmPassword).whenComplete((result, error) -> Platform.runLater(() -> {
+                signUpButton.setDisable(false);
+                closeButton.setDisable(false);
+                signUpButton.setText("Sign Up");
+
+                if (error != null) {
+                    showAlert(Alert.AlertType.ERROR, "ERROR", "Registration failed: " + error.getMessage());
+                } else if (result.success()) {
+                    showAlert(Alert.AlertType.INFORMATION, "Success", result.message());
+                    RegistrationService.NavigationResult navResult = registrationService.navigateToLoginWindow();
+                    if (navResult.success()) {
+                        close();
+                    } else {
+                        showAlert(Alert.AlertType.ERROR, "ERROR", navResult.errorMessage());
+                    }
                 } else {
-                    showAlert(Alert.AlertType.ERROR, "ERROR", navResult.errorMessage());
+                    showAlert(Alert.AlertType.WARNING, "WARNING", result.message());
                 }
-            } else {
-                showAlert(Alert.AlertType.WARNING, "WARNING", result.message());
-            }
+            }));
         });
 
         // Close button's event handler
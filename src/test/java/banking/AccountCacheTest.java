@@ -0,0 +1,128 @@
+package banking;
+
+import banking.data.AccountCache;
+import banking.data.AccountManager;
+import banking.data.LedgerManager;
+import banking.data.UserManager;
+import banking.model.Account;
+import banking.model.Money;
+import banking.model.User;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class AccountCacheTest {
+
+    private AccountManager accountManager;
+    private UserManager userManager;
+    private User testUser;
+
+
+    @BeforeAll
+    void setUp() throws SQLException {
+        accountManager = new AccountManager();
+        userManager = new UserManager();
+
+        userManager.saveUser(new User("cacheuser@gmail.com", "password123", LocalDateTime.now()));
+        testUser = userManager.loadUser("cacheuser@gmail.com");
+
+        accountManager.saveAccount(new Account(testUser.getUserID(), 63000001, Money.ofMajor(100), false));
+        accountManager.saveAccount(new Account(testUser.getUserID(), 63000002, 0, false));
+    }
+
+
+    @AfterAll
+    void tearDown() throws SQLException {
+        userManager.deleteUser(testUser.getEmail());
+    }
+
+
+    @Test
+    void testEvictsLeastRecentlyUsed() {
+        AccountCache cache = new AccountCache(2, true);
+        long generation = cache.generation();
+        cache.put(new Account(1, 1, 1001, 0, false), generation);
+        cache.put(new Account(2, 1, 1002, 0, false), generation);
+        assertNotNull(cache.get(1001));
+        cache.put(new Account(3, 1, 1003, 0, false), generation);
+
+        assertNotNull(cache.get(1001));
+        assertNull(cache.get(1002));
+        assertEquals(1, cache.getStats().evictionCount());
+    }
+
+
+    @Test
+    void testStaleReadIsNotStored() {
+        AccountCache cache = new AccountCache(10, true);
+        long generation = cache.generation();
+        cache.invalidate(1001);
+        cache.put(new Account(1, 1, 1001, 0, false), generation);
+
+        assertNull(cache.get(1001), "A read that overlapped an invalidation must not be cached");
+    }
+
+
+    @Test
+    void testCachedAccountsAreCopies() throws SQLException {
+        Account first = accountManager.loadAccount(63000001);
+        first.freeze();
+        Account second = accountManager.loadAccount(63000001);
+
+        assertNotSame(first, second);
+        assertFalse(second.isFrozen());
+    }
+
+
+    @Test
+    void testMutationsInvalidate() throws SQLException {
+        AccountCache cache = AccountCache.getInstance();
+        Account account = accountManager.loadAccount(63000002);
+        accountManager.loadAccounts(testUser.getUserID());
+
+        long hits = cache.getStats().hitCount();
+        accountManager.loadAccount(63000002);
+        assertEquals(hits + 1, cache.getStats().hitCount());
+
+        new LedgerManager().postDeposit(account, Money.ofMajor(5));
+        assertEquals(account.getBalance(), accountManager.loadAccount(63000002).getBalance());
+
+        accountManager.freezeAccount(account);
+        assertTrue(accountManager.loadAccount(63000002).isFrozen());
+        accountManager.unfreezeAccount(account);
+
+        accountManager.saveAccount(new Account(testUser.getUserID(), 63000003, 0, false));
+        List<Account> accounts = accountManager.loadAccounts(testUser.getUserID());
+        assertEquals(3, accounts.size());
+
+        accountManager.deleteAccount(accountManager.loadAccount(63000003));
+        assertFalse(accountManager.accountExists(63000003));
+        assertEquals(2, accountManager.loadAccounts(testUser.getUserID()).size());
+    }
+
+
+    @Test
+    void testDisabledCacheIsBypassed() throws SQLException {
+        AccountCache cache = AccountCache.getInstance();
+        cache.setEnabled(false);
+        try {
+            long misses = cache.getStats().missCount();
+            assertNotNull(accountManager.loadAccount(63000001));
+            assertNotNull(accountManager.loadAccount(63000001));
+            assertEquals(misses, cache.getStats().missCount());
+            assertEquals(0, cache.getStats().accountEntries());
+        } finally {
+            cache.setEnabled(true);
+        }
+    }
+
+}
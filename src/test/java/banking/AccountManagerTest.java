@@ -1,8 +1,11 @@
 package banking;
 
 import banking.data.AccountManager;
+import banking.data.TransactionManager;
 import banking.data.UserManager;
 import banking.model.Account;
+import banking.model.Money;
+import banking.model.TransferRequest;
 import banking.model.User;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.BeforeAll;
@@ -10,6 +13,7 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.TestInstance;
 
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -44,20 +48,20 @@ class AccountManagerTest {
 
     @Test
     void testSaveAccount() throws SQLException {
-        Account account = new Account(testUser.getUserID(), 12345678, 1000.0, false);
+        Account account = new Account(testUser.getUserID(), 12345678, Money.ofMajor(1000), false);
         accountManager.saveAccount(account);
 
         Account loadedAccount = accountManager.loadAccount(12345678);
         assertNotNull(loadedAccount);
         assertEquals(12345678, loadedAccount.getAccountNumber());
-        assertEquals(1000.0, loadedAccount.getBalance());
+        assertEquals(Money.ofMajor(1000), loadedAccount.getBalance());
         assertFalse(loadedAccount.isFrozen());
     }
 
 
     @Test
     void testAccountExists() throws SQLException {
-        Account account = new Account(testUser.getUserID(), 87654321, 500.0, false);
+        Account account = new Account(testUser.getUserID(), 87654321, Money.ofMajor(500), false);
         accountManager.saveAccount(account);
 
         assertTrue(accountManager.accountExists(87654321));
@@ -67,20 +71,20 @@ class AccountManagerTest {
 
     @Test
     void testLoadAccount() throws SQLException {
-        Account account = new Account(testUser.getUserID(), 56789012, 1500.0, true);
+        Account account = new Account(testUser.getUserID(), 56789012, Money.ofMajor(1500), true);
         accountManager.saveAccount(account);
         Account loadedAccount = accountManager.loadAccount(56789012);
         assertNotNull(loadedAccount);
         assertEquals(56789012, loadedAccount.getAccountNumber());
-        assertEquals(1500.0, loadedAccount.getBalance());
+        assertEquals(Money.ofMajor(1500), loadedAccount.getBalance());
         assertTrue(loadedAccount.isFrozen());
     }
 
 
     @Test
     void testLoadAccounts() throws SQLException {
-        Account account1 = new Account(testUser.getUserID(), 11112222, 2000.0, false);
-        Account account2 = new Account(testUser.getUserID(), 33334444, 3000.0, true);
+        Account account1 = new Account(testUser.getUserID(), 11112222, Money.ofMajor(2000), false);
+        Account account2 = new Account(testUser.getUserID(), 33334444, Money.ofMajor(3000), true);
         accountManager.saveAccount(account1);
         accountManager.saveAccount(account2);
         List<Account> accounts = accountManager.loadAccounts(testUser.getUserID());
@@ -90,11 +94,66 @@ class AccountManagerTest {
 
     @Test
     void testDeleteAccount() throws SQLException {
-        Account account = new Account(testUser.getUserID(), 55556666, 4000.0, false);
+        Account account = new Account(testUser.getUserID(), 55556666, Money.ofMajor(4000), false);
         accountManager.saveAccount(account);
         assertTrue(accountManager.accountExists(55556666));
         accountManager.deleteAccount(account);
         assertFalse(accountManager.accountExists(55556666));
     }
 
+
+    @Test
+    void testDepositAndWithdrawAreExact() throws SQLException {
+        Account account = new Account(testUser.getUserID(), 24681357, 0, false);
+        accountManager.saveAccount(account);
+
+        for (int i = 0; i < 10; i++)
+            accountManager.depositMoney(account, Money.parse("0.10"));
+        accountManager.withdrawMoney(account, Money.parse("0.30"));
+
+        assertEquals(70, accountManager.loadAccount(24681357).getBalance());
+        assertEquals(70, account.getBalance());
+        accountManager.deleteAccount(account);
+    }
+
+
+    @Test
+    void testTransferBatch() throws SQLException {
+        userManager.saveUser(new User("batchuser@gmail.com", "password123", java.time.LocalDateTime.now()));
+        User batchUser = userManager.loadUser("batchuser@gmail.com");
+
+        try {
+            accountManager.saveAccount(new Account(batchUser.getUserID(), 70000001, Money.ofMajor(100), false));
+            accountManager.saveAccount(new Account(batchUser.getUserID(), 70000002, 0, false));
+            accountManager.saveAccount(new Account(batchUser.getUserID(), 70000003, Money.ofMajor(100), true));
+
+            List<TransferRequest> requests = new ArrayList<>();
+            requests.add(new TransferRequest(70000001, 70000002, Money.ofMajor(60), "Salary"));
+            requests.add(new TransferRequest(70000001, 70000002, Money.ofMajor(60), "Overdraft"));
+            requests.add(new TransferRequest(70000002, 70000001, Money.ofMajor(10), "Refund"));
+            requests.add(new TransferRequest(70000003, 70000001, Money.ofMajor(10), "Frozen"));
+            requests.add(new TransferRequest(70000001, 79999999, Money.ofMajor(10), "Missing"));
+            for (int i = 0; i < AccountManager.TRANSFER_BATCH_CHUNK_SIZE; i++)
+                requests.add(new TransferRequest(70000001, 70000002, 1, "Chunked"));
+
+            List<AccountManager.TransferOutcome> outcomes = accountManager.transferBatch(requests);
+
+            assertEquals(requests.size(), outcomes.size());
+            assertTrue(outcomes.get(0).success());
+            assertFalse(outcomes.get(1).success());
+            assertTrue(outcomes.get(2).success(), "Money received earlier in the batch can be spent");
+            assertFalse(outcomes.get(3).success());
+            assertFalse(outcomes.get(4).success());
+            assertTrue(outcomes.stream().skip(5).allMatch(AccountManager.TransferOutcome::success));
+
+            long chunked = AccountManager.TRANSFER_BATCH_CHUNK_SIZE;
+            assertEquals(Money.ofMajor(50) - chunked, accountManager.loadAccount(70000001).getBalance());
+            assertEquals(Money.ofMajor(50) + chunked, accountManager.loadAccount(70000002).getBalance());
+            assertEquals(Money.ofMajor(100), accountManager.loadAccount(70000003).getBalance());
+            assertEquals(2 + chunked, new TransactionManager().loadTransactions(accountManager.loadAccount(70000002)).size());
+        } finally {
+            userManager.deleteUser(batchUser.getEmail());
+        }
+    }
+
 }
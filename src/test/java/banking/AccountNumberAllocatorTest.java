@@ -0,0 +1,135 @@
+package banking;
+
+import banking.data.AccountManager;
+import banking.data.AccountNumberAllocator;
+import banking.data.UserManager;
+import banking.model.Account;
+import banking.model.User;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class AccountNumberAllocatorTest {
+
+    private AccountManager accountManager;
+    private UserManager userManager;
+    private User testUser;
+
+
+    @BeforeAll
+    void setUp() throws SQLException {
+        accountManager = new AccountManager();
+        userManager = new UserManager();
+
+        userManager.saveUser(new User("allocatoruser@gmail.com", "password123", LocalDateTime.now()));
+        testUser = userManager.loadUser("allocatoruser@gmail.com");
+    }
+
+
+    @AfterAll
+    void tearDown() throws SQLException {
+        userManager.deleteUser(testUser.getEmail());
+        userManager.deleteUser("allocatorregistered@gmail.com");
+    }
+
+
+    @Test
+    void testNumbersAreUniqueAndInRange() throws SQLException {
+        AccountNumberAllocator allocator = new AccountNumberAllocator(new AccountNumberAllocator.Config(7, true, 1234));
+        Set<Integer> numbers = new HashSet<>();
+        int previous = -1;
+        int consecutive = 0;
+
+        for (int i = 0; i < 500; i++) {
+            int number = allocator.next();
+            assertTrue(number >= AccountNumberAllocator.FIRST_ACCOUNT_NUMBER);
+            assertTrue(number <= AccountNumberAllocator.LAST_ACCOUNT_NUMBER);
+            assertTrue(numbers.add(number), "Account number " + number + " was handed out twice");
+            if (number == previous + 1)
+                consecutive++;
+            previous = number;
+        }
+        assertTrue(consecutive < 5, "Scrambled numbers should not follow each other");
+    }
+
+
+    @Test
+    void testConcurrentAllocationsAreUnique() throws Exception {
+        AccountNumberAllocator allocator = new AccountNumberAllocator(new AccountNumberAllocator.Config(16, true, 99));
+        Set<Integer> numbers = ConcurrentHashMap.newKeySet();
+        List<Future<?>> futures = new ArrayList<>();
+
+        try (ExecutorService executor = Executors.newFixedThreadPool(8)) {
+            for (int thread = 0; thread < 8; thread++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 250; i++)
+                        assertTrue(numbers.add(allocator.next()));
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures)
+                future.get();
+        }
+        assertEquals(2000, numbers.size());
+    }
+
+
+    @Test
+    void testAllocateRetriesTakenNumbers() throws SQLException {
+        AccountNumberAllocator allocator = new AccountNumberAllocator(new AccountNumberAllocator.Config(10, false, 0));
+        List<Integer> attempts = new ArrayList<>();
+
+        int accountNumber = allocator.allocate(number -> {
+            attempts.add(number);
+            if (attempts.size() < 3)
+                throw new SQLException("UNIQUE constraint failed: Accounts.account_number", null, 2067);
+            return number;
+        });
+
+        assertEquals(3, attempts.size());
+        assertEquals(attempts.getLast(), accountNumber);
+        assertEquals(3, new HashSet<>(attempts).size());
+    }
+
+
+    @Test
+    void testAllocateDoesNotRetryOtherFailures() {
+        AccountNumberAllocator allocator = new AccountNumberAllocator(new AccountNumberAllocator.Config(10, false, 0));
+        List<Integer> attempts = new ArrayList<>();
+
+        assertThrows(SQLException.class, () -> allocator.allocate(number -> {
+            attempts.add(number);
+            throw new SQLException("UNIQUE constraint failed: Users.email", null, 2067);
+        }));
+        assertEquals(1, attempts.size());
+    }
+
+
+    @Test
+    void testOpenAccountAndRegisterUser() throws SQLException {
+        Account account = accountManager.openAccount(testUser.getUserID());
+        assertTrue(accountManager.accountExists(account.getAccountNumber()));
+        assertEquals(testUser.getUserID(), accountManager.loadAccount(account.getAccountNumber()).getUserID());
+
+        int userID = userManager.registerUser(new User("allocatorregistered@gmail.com", "password123", LocalDateTime.now()));
+        assertTrue(userID > 0);
+        assertEquals(1, accountManager.loadAccounts(userID).size());
+    }
+
+}
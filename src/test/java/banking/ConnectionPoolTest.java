@@ -0,0 +1,198 @@
+package banking;
+
+import banking.data.ConnectionPool;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.sqlite.SQLiteConfig;
+import org.sqlite.SQLiteDataSource;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+class ConnectionPoolTest {
+
+    private Path databaseFile;
+    private ConnectionPool pool;
+
+
+    @BeforeEach
+    void setUp() throws Exception {
+        databaseFile = Files.createTempFile("pool-test", ".db");
+
+        SQLiteConfig sqliteConfig = new SQLiteConfig();
+        sqliteConfig.enforceForeignKeys(true);
+        SQLiteDataSource dataSource = new SQLiteDataSource(sqliteConfig);
+        dataSource.setUrl("jdbc:sqlite:" + databaseFile);
+
+        pool = new ConnectionPool("test", dataSource, new ConnectionPool.Config(
+                1, 2, Duration.ofMinutes(1), Duration.ofMillis(200), Duration.ZERO, 2));
+    }
+
+
+    @AfterEach
+    void tearDown() throws Exception {
+        pool.close();
+        Files.deleteIfExists(databaseFile);
+    }
+
+
+    @Test
+    void testConnectionsAreReused() throws SQLException {
+        try (Connection connection = pool.borrow()) {
+            assertFalse(connection.isClosed());
+        }
+        try (Connection connection = pool.borrow()) {
+            assertFalse(connection.isClosed());
+        }
+
+        ConnectionPool.Stats stats = pool.getStats();
+        assertEquals(1, stats.createdCount(), "The pre-opened connection should be reused");
+        assertEquals(2, stats.borrowCount());
+        assertEquals(0, stats.activeConnections());
+    }
+
+
+    @Test
+    void testConnectionsArePreConfigured() throws SQLException {
+        try (Connection connection = pool.borrow();
+             Statement statement = connection.createStatement();
+             ResultSet result = statement.executeQuery("PRAGMA foreign_keys")) {
+            assertTrue(result.next());
+            assertEquals(1, result.getInt(1), "Foreign keys should be enforced on pooled connections");
+        }
+    }
+
+
+    @Test
+    void testClosedConnectionCannotBeUsed() throws SQLException {
+        Connection connection = pool.borrow();
+        connection.close();
+
+        assertTrue(connection.isClosed());
+        assertThrows(SQLException.class, connection::createStatement);
+    }
+
+
+    @Test
+    void testBorrowTimesOutWhenPoolIsExhausted() throws SQLException {
+        try (Connection first = pool.borrow(); Connection second = pool.borrow()) {
+            assertNotSame(first, second);
+            assertThrows(SQLException.class, pool::borrow);
+        }
+
+        assertEquals(1, pool.getStats().timeoutCount());
+        assertEquals(2, pool.getStats().idleConnections());
+    }
+
+
+    @Test
+    void testUnfinishedTransactionIsRolledBackOnReturn() throws SQLException {
+        try (Connection connection = pool.borrow(); Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE Items (id INTEGER PRIMARY KEY)");
+        }
+
+        try (Connection connection = pool.borrow()) {
+            connection.setAutoCommit(false);
+            connection.createStatement().execute("INSERT INTO Items (id) VALUES (1)");
+        }
+
+        try (Connection connection = pool.borrow();
+             Statement statement = connection.createStatement();
+             ResultSet result = statement.executeQuery("SELECT COUNT(*) FROM Items")) {
+            assertTrue(connection.getAutoCommit());
+            assertTrue(result.next());
+            assertEquals(0, result.getInt(1));
+        }
+    }
+
+
+
+    @Test
+    void testPreparedStatementsAreCachedAcrossBorrows() throws SQLException {
+        String query = "SELECT ?";
+        for (int i = 0; i < 3; i++) {
+            try (Connection connection = pool.borrow();
+                 PreparedStatement statement = connection.prepareStatement(query)) {
+                statement.setInt(1, i);
+                try (ResultSet result = statement.executeQuery()) {
+                    assertTrue(result.next());
+                    assertEquals(i, result.getInt(1));
+                }
+            }
+        }
+
+        ConnectionPool.Stats stats = pool.getStats();
+        assertEquals(1, stats.statementCompiles(), "The statement should be compiled once");
+        assertEquals(2, stats.statementHits());
+        assertEquals(1, stats.statementMisses());
+    }
+
+
+    @Test
+    void testStatementLeftOpenIsResetOnReturn() throws SQLException {
+        PreparedStatement leaked;
+        try (Connection connection = pool.borrow()) {
+            leaked = connection.prepareStatement("SELECT ?");
+            leaked.setInt(1, 42);
+            leaked.executeQuery().next();
+        }
+        assertTrue(leaked.isClosed(), "A statement left open is closed for its caller when the connection returns");
+
+        try (Connection connection = pool.borrow();
+             PreparedStatement statement = connection.prepareStatement("SELECT ?");
+             ResultSet result = statement.executeQuery()) {
+            assertTrue(result.next());
+            assertNull(result.getObject(1), "Parameters must not leak into the next borrow");
+        }
+        assertEquals(1, pool.getStats().statementHits());
+    }
+
+
+    @Test
+    void testLeastRecentlyUsedStatementIsEvicted() throws SQLException {
+        PreparedStatement first;
+        try (Connection connection = pool.borrow()) {
+            first = connection.prepareStatement("SELECT 1");
+            first.close();
+            connection.prepareStatement("SELECT 2").close();
+            connection.prepareStatement("SELECT 1").close();
+            connection.prepareStatement("SELECT 3").close();
+            connection.prepareStatement("SELECT 1").close();
+            connection.prepareStatement("SELECT 2").close();
+        }
+
+        ConnectionPool.Stats stats = pool.getStats();
+        assertEquals(2, stats.statementHits(), "SELECT 1 was used most recently and stays cached");
+        assertEquals(2, stats.statementEvictions());
+        assertEquals(4, stats.statementCompiles());
+    }
+
+
+    @Test
+    void testStatementInUseIsNotHandedOutTwice() throws SQLException {
+        try (Connection connection = pool.borrow();
+             PreparedStatement outer = connection.prepareStatement("SELECT ?");
+             PreparedStatement inner = connection.prepareStatement("SELECT ?")) {
+            assertNotSame(outer, inner);
+            outer.setInt(1, 1);
+            inner.setInt(1, 2);
+            try (ResultSet result = outer.executeQuery()) {
+                assertTrue(result.next());
+                assertEquals(1, result.getInt(1));
+            }
+        }
+
+        assertEquals(2, pool.getStats().statementCompiles());
+    }
+
+}
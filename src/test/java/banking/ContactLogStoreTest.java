@@ -0,0 +1,122 @@
+package banking;
+
+import banking.data.ContactLogStore;
+import banking.model.Contact;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+class ContactLogStoreTest {
+
+    @TempDir
+    Path directory;
+
+
+    private ContactLogStore.Config config(int compactThreshold) {
+        return new ContactLogStore.Config(directory.resolve("contacts.json"),
+                ContactLogStore.SyncPolicy.ALWAYS, Duration.ZERO, compactThreshold);
+    }
+
+
+    @Test
+    void testAddRejectsDuplicates() throws IOException {
+        try (ContactLogStore store = new ContactLogStore(config(100))) {
+            assertTrue(store.add(new Contact("Alice", 12345678)));
+            assertFalse(store.add(new Contact("alice", 11111111)), "Names are compared ignoring case");
+            assertFalse(store.add(new Contact("Bob", 12345678)), "Account numbers must be unique");
+            assertTrue(store.add(new Contact("Bob", 87654321)));
+            assertEquals(2, store.size());
+        }
+    }
+
+
+    @Test
+    void testReopenReplaysLog() throws IOException {
+        try (ContactLogStore store = new ContactLogStore(config(100))) {
+            store.add(new Contact("Alice", 12345678));
+            store.add(new Contact("Bob", 87654321));
+        }
+
+        try (ContactLogStore store = new ContactLogStore(config(100))) {
+            assertEquals(List.of(new Contact("Alice", 12345678), new Contact("Bob", 87654321)), store.getContacts());
+            assertEquals(2, store.getLogRecordCount());
+        }
+    }
+
+
+    @Test
+    void testTornLastLineIsCutOff() throws IOException {
+        try (ContactLogStore store = new ContactLogStore(config(100))) {
+            store.add(new Contact("Alice", 12345678));
+        }
+
+        Path logFile = ContactLogStore.logFileOf(directory.resolve("contacts.json"));
+        Files.writeString(logFile, "{\"name\":\"Bo", StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+
+        try (ContactLogStore store = new ContactLogStore(config(100))) {
+            assertEquals(List.of(new Contact("Alice", 12345678)), store.getContacts());
+            assertTrue(store.add(new Contact("Bob", 87654321)));
+        }
+
+        try (ContactLogStore store = new ContactLogStore(config(100))) {
+            assertEquals(2, store.size(), "Records appended after recovery must be readable");
+        }
+    }
+
+
+    @Test
+    void testCompactionWritesSnapshotAndEmptiesLog() throws IOException {
+        Path snapshot = directory.resolve("contacts.json");
+
+        try (ContactLogStore store = new ContactLogStore(config(3))) {
+            store.add(new Contact("Alice", 12345678));
+            store.add(new Contact("Bob", 87654321));
+            store.add(new Contact("Carol", 11223344));
+            assertEquals(0, store.getLogRecordCount());
+            store.add(new Contact("Dave", 44332211));
+        }
+
+        assertTrue(Files.readString(snapshot).contains("Carol"));
+        assertEquals(1, Files.readAllLines(ContactLogStore.logFileOf(snapshot)).size());
+
+        try (ContactLogStore store = new ContactLogStore(config(3))) {
+            assertEquals(4, store.size());
+        }
+    }
+
+
+    @Test
+    void testLogAlreadyInSnapshotIsSkipped() throws IOException {
+        Path snapshot = directory.resolve("contacts.json");
+        Path logFile = ContactLogStore.logFileOf(snapshot);
+
+        try (ContactLogStore store = new ContactLogStore(config(100))) {
+            store.add(new Contact("Alice", 12345678));
+            store.add(new Contact("Bob", 87654321));
+        }
+
+        // A crash after the snapshot was replaced but before the log was truncated
+        String log = Files.readString(logFile);
+        try (ContactLogStore store = new ContactLogStore(config(100))) {
+            store.compact();
+        }
+        Files.writeString(logFile, log);
+        Files.writeString(directory.resolve("contacts.json.tmp"), "[");
+
+        try (ContactLogStore store = new ContactLogStore(config(100))) {
+            assertEquals(List.of(new Contact("Alice", 12345678), new Contact("Bob", 87654321)), store.getContacts());
+        }
+        assertFalse(Files.exists(directory.resolve("contacts.json.tmp")));
+    }
+
+}
@@ -0,0 +1,131 @@
+package banking;
+
+import banking.data.ContactImporter;
+import banking.data.ContactLogStore;
+import banking.data.ContactManager;
+import banking.data.UserManager;
+import banking.model.Contact;
+import banking.model.User;
+import banking.service.ContactService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+class ContactManagerTest {
+
+    private static final String EMAIL = "contactuser@example.com";
+    private static final String OTHER_EMAIL = "contactother@example.com";
+
+    @TempDir
+    Path directory;
+
+    private UserManager userManager;
+    private ContactManager contactManager;
+    private int userID;
+    private int otherID;
+
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        userManager = new UserManager();
+        contactManager = new ContactManager();
+        userID = userManager.registerUser(new User(EMAIL, "password123", LocalDateTime.now()));
+        otherID = userManager.registerUser(new User(OTHER_EMAIL, "password123", LocalDateTime.now()));
+    }
+
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        // The users' contacts are deleted by the cascading foreign key
+        userManager.deleteUser(EMAIL);
+        userManager.deleteUser(OTHER_EMAIL);
+    }
+
+
+    @Test
+    void testContactsBelongToOneUser() throws SQLException {
+        assertTrue(contactManager.saveContact(userID, new Contact("Alice", 12345678)));
+        assertTrue(contactManager.saveContact(otherID, new Contact("Alice", 12345678)), "Another user may have the same contact");
+        assertTrue(contactManager.saveContact(userID, new Contact("Bob", 87654321)));
+
+        assertEquals(List.of(new Contact("Alice", 12345678), new Contact("Bob", 87654321)), contactManager.loadContacts(userID));
+        assertEquals(List.of(new Contact("Alice", 12345678)), contactManager.loadContacts(otherID));
+    }
+
+
+    @Test
+    void testDuplicatesAreRejected() throws SQLException {
+        assertTrue(contactManager.saveContact(userID, new Contact("Alice", 12345678)));
+        assertFalse(contactManager.saveContact(userID, new Contact("ALICE", 11111111)), "Names are compared ignoring case");
+        assertFalse(contactManager.saveContact(userID, new Contact("Bob", 12345678)), "Account numbers must be unique");
+
+        assertTrue(contactManager.contactExists(userID, "alice", 99999999));
+        assertFalse(contactManager.contactExists(otherID, "alice", 12345678));
+        assertEquals(1, contactManager.saveContacts(userID, List.of(new Contact("Bob", 12345678), new Contact("Carol", 22222222))));
+        assertEquals(2, contactManager.loadContacts(userID).size());
+    }
+
+
+    @Test
+    void testServiceSavesAndFiltersUserContacts() throws SQLException {
+        contactManager.saveContact(otherID, new Contact("Anna Other", 33333333));
+        ContactService contactService = new ContactService(userID);
+
+        assertTrue(contactService.saveContact("Anna", "12345678").success());
+        assertFalse(contactService.saveContact("anna", "87654321").success());
+        assertTrue(contactService.saveContact("Bob", "87654321").success());
+
+        assertEquals(List.of(new Contact("Anna", 12345678)), contactService.filterContacts("ann").contacts());
+        assertEquals(2, contactService.loadContacts().contacts().size());
+        assertEquals(2, new ContactService(userID).loadContacts().contacts().size(), "Contacts are read back from the table");
+    }
+
+
+    @Test
+    void testImporterKeepsFileWhoseOwnerIsUnknown() throws IOException, SQLException {
+        Path file = directory.resolve("contacts.json");
+        ContactLogStore.Config config = new ContactLogStore.Config(file, ContactLogStore.SyncPolicy.ALWAYS, Duration.ZERO, 100);
+        try (ContactLogStore store = new ContactLogStore(config)) {
+            store.add(new Contact("Imported One", 91000001));
+        }
+
+        // There are at least two users and no owner is configured
+        assertEquals(0, new ContactImporter().importFile(file));
+        assertTrue(Files.exists(file) || Files.exists(ContactLogStore.logFileOf(file)), "The file is kept for a later import");
+        assertTrue(contactManager.loadContacts(userID).isEmpty());
+        assertTrue(contactManager.loadContacts(otherID).isEmpty());
+    }
+
+
+    @Test
+    void testImporterGivesFileContactsToItsOwnerOnce() throws IOException, SQLException {
+        Path file = directory.resolve("contacts.json");
+        ContactLogStore.Config config = new ContactLogStore.Config(file, ContactLogStore.SyncPolicy.ALWAYS, Duration.ZERO, 100);
+        try (ContactLogStore store = new ContactLogStore(config)) {
+            store.add(new Contact("Imported One", 91000001));
+            store.add(new Contact("Imported Two", 91000002));
+        }
+        contactManager.saveContact(userID, new Contact("Imported One", 91000001));
+
+        assertEquals(1, new ContactImporter().importFile(file, userID));
+        assertEquals(2, contactManager.loadContacts(userID).size(), "Contacts the user already has are skipped");
+        assertTrue(contactManager.loadContacts(otherID).isEmpty(), "Other users do not see the owner's contacts");
+
+        assertFalse(Files.exists(file) || Files.exists(ContactLogStore.logFileOf(file)));
+        assertTrue(Files.exists(directory.resolve("contacts.json.log" + ContactImporter.IMPORTED_SUFFIX)));
+        assertEquals(0, new ContactImporter().importFile(file, userID), "An imported file is not imported again");
+    }
+
+}
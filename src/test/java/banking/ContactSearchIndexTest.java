@@ -0,0 +1,79 @@
+package banking;
+
+import banking.data.ContactSearchIndex;
+import banking.model.Contact;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+class ContactSearchIndexTest {
+
+    private static final String[] SYLLABLES = {"an", "bo", "ce", "da", "el", "fi", "ga", "ho", "ka", "la", "mi", "na"};
+
+
+    /// The linear scan the index replaces.
+    private static List<Contact> scan(List<Contact> contacts, String query) {
+        String lowerQuery = query.trim().toLowerCase(Locale.ROOT);
+        List<Contact> result = new ArrayList<>();
+        for (Contact contact : contacts) {
+            if (contact.name().toLowerCase(Locale.ROOT).contains(lowerQuery)
+                    || String.valueOf(contact.accountNumber()).contains(lowerQuery))
+                result.add(contact);
+        }
+        return result;
+    }
+
+
+    private static Contact randomContact(Random random) {
+        StringBuilder name = new StringBuilder();
+        int syllables = 2 + random.nextInt(4);
+        for (int i = 0; i < syllables; i++)
+            name.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+        name.setCharAt(0, Character.toUpperCase(name.charAt(0)));
+        return new Contact(name.toString(), 10000000 + random.nextInt(90000000));
+    }
+
+
+    @Test
+    void testSearchMatchesLinearScan() {
+        Random random = new Random(42);
+        List<Contact> contacts = new ArrayList<>();
+        for (int i = 0; i < 2000; i++)
+            contacts.add(randomContact(random));
+        ContactSearchIndex index = new ContactSearchIndex(contacts);
+
+        for (String query : List.of("", "a", "An", "ann", "anbo", "elfiga", "1", "42", "424", "12345", "xyz", " Bo "))
+            assertEquals(scan(contacts, query), index.search(query), "Query '" + query + "'");
+    }
+
+
+    @Test
+    void testRefinedQueriesIncludeContactsAddedInBetween() {
+        Random random = new Random(7);
+        List<Contact> contacts = new ArrayList<>();
+        for (int i = 0; i < 500; i++)
+            contacts.add(randomContact(random));
+        ContactSearchIndex index = new ContactSearchIndex(contacts);
+
+        String typed = "";
+        for (char c : "kalami".toCharArray()) {
+            typed += c;
+            assertEquals(scan(contacts, typed), index.search(typed), "Query '" + typed + "'");
+
+            Contact added = new Contact("Kalamina " + typed, 20000000 + contacts.size());
+            contacts.add(added);
+            index.add(added);
+        }
+
+        assertEquals(scan(contacts, "kalami"), index.search("kalami"));
+        assertEquals(scan(contacts, "ka"), index.search("ka"), "A shorter query must not reuse the longer one's result");
+        assertEquals(contacts.size(), index.search(" ").size());
+    }
+
+}
@@ -0,0 +1,147 @@
+package banking;
+
+import banking.data.ConnectionPool;
+import banking.data.DatabaseConfig;
+import banking.data.DatabaseManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+class DatabaseManagerTest {
+
+    private Path databaseFile;
+    private DatabaseConfig previousConfig;
+
+
+    @BeforeEach
+    void setUp() throws Exception {
+        databaseFile = Files.createTempFile("wal-test", ".db");
+        previousConfig = DatabaseManager.getConfig();
+        configureWal(DatabaseConfig.CheckpointPolicy.defaults());
+    }
+
+
+    @AfterEach
+    void tearDown() throws Exception {
+        DatabaseManager.configure(previousConfig);
+        Files.deleteIfExists(databaseFile);
+        Files.deleteIfExists(walFile());
+        Files.deleteIfExists(Path.of(databaseFile + "-shm"));
+    }
+
+
+    @Test
+    void testWalModeIsEnabled() throws SQLException {
+        DatabaseManager manager = DatabaseManager.getInstance();
+        assertEquals(DatabaseConfig.StorageMode.WAL, manager.getStorageMode());
+
+        try (Connection connection = manager.getReadConnection();
+             Statement statement = connection.createStatement();
+             ResultSet result = statement.executeQuery("PRAGMA journal_mode")) {
+            assertTrue(result.next());
+            assertEquals("wal", result.getString(1));
+        }
+    }
+
+
+    @Test
+    void testReadersAndWriterUseSeparatePools() throws SQLException {
+        DatabaseManager manager = DatabaseManager.getInstance();
+
+        try (Connection writer = manager.getWriteConnection(); Connection reader = manager.getReadConnection()) {
+            assertNotSame(writer, reader);
+            assertEquals(1, manager.getPoolStats().activeConnections());
+            assertEquals(1, manager.getReadPoolStats().activeConnections());
+        }
+
+        ConnectionPool.Stats writeStats = manager.getPoolStats();
+        assertEquals(1, writeStats.totalConnections(), "WAL mode has a single writer connection");
+    }
+
+
+    @Test
+    void testReadConnectionsAreReadOnly() throws SQLException {
+        DatabaseManager manager = DatabaseManager.getInstance();
+
+        try (Connection connection = manager.getReadConnection(); Statement statement = connection.createStatement()) {
+            assertThrows(SQLException.class, () -> statement.execute("CREATE TABLE Items (id INTEGER PRIMARY KEY)"));
+        }
+    }
+
+
+    @Test
+    void testReaderIsNotBlockedByOpenWriteTransaction() throws SQLException {
+        DatabaseManager manager = DatabaseManager.getInstance();
+        try (Connection writer = manager.getWriteConnection(); Statement statement = writer.createStatement()) {
+            statement.execute("CREATE TABLE Items (id INTEGER PRIMARY KEY)");
+            statement.execute("INSERT INTO Items (id) VALUES (1)");
+        }
+
+        try (Connection writer = manager.getWriteConnection(); Statement write = writer.createStatement()) {
+            writer.setAutoCommit(false);
+            write.execute("INSERT INTO Items (id) VALUES (2)");
+
+            // The reader sees the last committed state while the write transaction is open
+            try (Connection reader = manager.getReadConnection();
+                 Statement read = reader.createStatement();
+                 ResultSet result = read.executeQuery("SELECT COUNT(*) FROM Items")) {
+                assertTrue(result.next());
+                assertEquals(1, result.getInt(1));
+            }
+
+            writer.commit();
+            writer.setAutoCommit(true);
+        }
+    }
+
+
+    @Test
+    void testShutdownTruncatesWalWithoutBackgroundCheckpoints() throws Exception {
+        configureWal(new DatabaseConfig.CheckpointPolicy(0, Duration.ZERO, DatabaseConfig.CheckpointMode.PASSIVE));
+
+        DatabaseManager manager = DatabaseManager.getInstance();
+        try (Connection writer = manager.getWriteConnection(); Statement statement = writer.createStatement()) {
+            statement.execute("CREATE TABLE Items (id INTEGER PRIMARY KEY)");
+            statement.execute("INSERT INTO Items (id) VALUES (1)");
+        }
+        assertTrue(Files.size(walFile()) > 0, "Automatic checkpoints are disabled, so the WAL holds the writes");
+
+        DatabaseManager.shutdown();
+
+        assertTrue(Files.notExists(walFile()) || Files.size(walFile()) == 0, "The WAL is checkpointed on close");
+    }
+
+
+    @Test
+    void testCheckpointRequiresWalMode() throws SQLException {
+        DatabaseManager.configure(previousConfig.withUrl("jdbc:sqlite:" + databaseFile)
+                .withStorageMode(DatabaseConfig.StorageMode.ROLLBACK_JOURNAL));
+
+        DatabaseManager manager = DatabaseManager.getInstance();
+        assertThrows(IllegalStateException.class, () -> manager.checkpoint(DatabaseConfig.CheckpointMode.PASSIVE));
+    }
+
+
+    private void configureWal(DatabaseConfig.CheckpointPolicy checkpoint) {
+        DatabaseManager.configure(previousConfig.withUrl("jdbc:sqlite:" + databaseFile)
+                .withStorageMode(DatabaseConfig.StorageMode.WAL)
+                .withCheckpoint(checkpoint));
+    }
+
+
+    private Path walFile() {
+        return Path.of(databaseFile + "-wal");
+    }
+
+}
@@ -0,0 +1,135 @@
+package banking;
+
+import banking.data.AccountManager;
+import banking.data.DatabaseManager;
+import banking.data.EventSourcedLedger;
+import banking.data.LedgerManager;
+import banking.data.UserManager;
+import banking.model.Account;
+import banking.model.User;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+class EventSourcedLedgerTest {
+
+    private static final String EMAIL = "eventsourced@gmail.com";
+    private static final int FIRST_ACCOUNT = 64000001;
+    private static final int SECOND_ACCOUNT = 64000002;
+
+    private UserManager userManager;
+    private AccountManager accountManager;
+
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        userManager = new UserManager();
+        accountManager = new AccountManager();
+
+        int userID = userManager.registerUser(new User(EMAIL, "password123", LocalDateTime.now()), FIRST_ACCOUNT);
+        accountManager.saveAccount(new Account(userID, SECOND_ACCOUNT, 0, false));
+    }
+
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        // The accounts and their transactions are deleted by the cascading foreign keys
+        userManager.deleteUser(EMAIL);
+        try (Connection connection = DatabaseManager.getInstance().getWriteConnection();
+             PreparedStatement statement = connection.prepareStatement("DELETE FROM BalanceSnapshots")) {
+            statement.executeUpdate();
+        }
+    }
+
+
+    @Test
+    void testBalancesAreReplayedFromTheLatestSnapshot() throws SQLException {
+        EventSourcedLedger ledger = new EventSourcedLedger(new EventSourcedLedger.Config(4));
+        Account first = accountManager.loadAccount(FIRST_ACCOUNT);
+
+        ledger.postDeposit(first, 1000);
+        ledger.postTransfer(first, SECOND_ACCOUNT, 300, "Rent");
+        Account second = accountManager.loadAccount(SECOND_ACCOUNT);
+        ledger.postWithdrawal(second, 100);
+        ledger.postTransfer(second, FIRST_ACCOUNT, 50, "Change");
+        ledger.postDeposit(second, 25);
+        ledger.postWithdrawal(first, 5);
+
+        assertEquals(745, ledger.getBalance(FIRST_ACCOUNT));
+        assertEquals(175, ledger.getBalance(SECOND_ACCOUNT));
+        assertEquals(745, accountManager.loadAccount(FIRST_ACCOUNT).getBalance(), "The stored balance is the projection");
+        assertFalse(ledger.findDivergentAccounts().contains(SECOND_ACCOUNT));
+        assertTrue(ledger.getStats().snapshotCount() >= 1);
+
+        EventSourcedLedger restarted = new EventSourcedLedger(new EventSourcedLedger.Config(4));
+        restarted.load();
+        assertEquals(745, restarted.getBalance(FIRST_ACCOUNT));
+        assertEquals(175, restarted.getBalance(SECOND_ACCOUNT));
+        assertEquals(ledger.getStats().eventsSinceSnapshot(), restarted.getStats().replayedEvents(),
+                "Only the events after the latest snapshot are replayed");
+        assertTrue(restarted.getStats().replayedEvents() < 4);
+    }
+
+
+    @Test
+    void testEventsOfOtherWritersAreCaughtUp() throws SQLException {
+        EventSourcedLedger ledger = new EventSourcedLedger(new EventSourcedLedger.Config(1000));
+        ledger.load();
+        Account first = accountManager.loadAccount(FIRST_ACCOUNT);
+
+        new LedgerManager().postDeposit(first, 500);
+        ledger.postWithdrawal(first, 500);
+
+        assertEquals(0, ledger.getBalance(FIRST_ACCOUNT));
+        assertEquals(0, accountManager.loadAccount(FIRST_ACCOUNT).getBalance());
+        assertTrue(ledger.getStats().caughtUpEvents() >= 1);
+    }
+
+
+    @Test
+    void testPostingsAreCheckedAgainstDerivedBalances() throws SQLException {
+        EventSourcedLedger ledger = new EventSourcedLedger(new EventSourcedLedger.Config(1000));
+        Account first = accountManager.loadAccount(FIRST_ACCOUNT);
+        ledger.postDeposit(first, 100);
+
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> ledger.postWithdrawal(first, 1000));
+        assertEquals("Insufficient funds", e.getMessage());
+
+        e = assertThrows(IllegalArgumentException.class, () -> ledger.postTransfer(first, 69999995, 10, "Missing"));
+        assertEquals("Destination account does not exist", e.getMessage());
+
+        ledger.setFrozen(first, true);
+        e = assertThrows(IllegalArgumentException.class, () -> ledger.postDeposit(first, 10));
+        assertEquals("Cannot deposit to a frozen account", e.getMessage());
+        ledger.setFrozen(first, false);
+
+        assertEquals(100, ledger.getBalance(FIRST_ACCOUNT), "Rejected postings change nothing");
+        assertEquals(100, accountManager.loadAccount(FIRST_ACCOUNT).getBalance());
+    }
+
+
+    @Test
+    void testDeletedAccountKeepsCounterpartyBalance() throws SQLException {
+        EventSourcedLedger ledger = new EventSourcedLedger(new EventSourcedLedger.Config(1000));
+        Account first = accountManager.loadAccount(FIRST_ACCOUNT);
+        ledger.postDeposit(first, 1000);
+        ledger.postTransfer(first, SECOND_ACCOUNT, 400, "Before closing");
+
+        ledger.deleteAccount(first);
+        assertNull(accountManager.loadAccount(FIRST_ACCOUNT));
+
+        EventSourcedLedger restarted = new EventSourcedLedger(new EventSourcedLedger.Config(1000));
+        assertEquals(400, restarted.getBalance(SECOND_ACCOUNT), "The transfer's event is gone, but the snapshot kept its effect");
+        assertEquals(0, restarted.getStats().replayedEvents());
+        assertFalse(restarted.findDivergentAccounts().contains(SECOND_ACCOUNT));
+    }
+
+}
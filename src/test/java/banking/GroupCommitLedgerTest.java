@@ -0,0 +1,120 @@
+package banking;
+
+import banking.data.AccountManager;
+import banking.data.GroupCommitLedger;
+import banking.data.TransactionManager;
+import banking.data.UserManager;
+import banking.model.Account;
+import banking.model.Money;
+import banking.model.Transaction;
+import banking.model.User;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class GroupCommitLedgerTest {
+
+    private GroupCommitLedger ledger;
+    private AccountManager accountManager;
+    private UserManager userManager;
+    private User testUser;
+
+
+    @BeforeAll
+    void setUp() throws SQLException {
+        ledger = new GroupCommitLedger(new GroupCommitLedger.Config(Duration.ofMillis(20), 64, Duration.ofSeconds(30)));
+        accountManager = new AccountManager();
+        userManager = new UserManager();
+
+        userManager.saveUser(new User("groupcommit@gmail.com", "password123", LocalDateTime.now()));
+        testUser = userManager.loadUser("groupcommit@gmail.com");
+
+        accountManager.saveAccount(new Account(testUser.getUserID(), 62000001, 0, false));
+        accountManager.saveAccount(new Account(testUser.getUserID(), 62000002, Money.ofMajor(10), false));
+    }
+
+
+    @AfterAll
+    void tearDown() throws SQLException {
+        ledger.close();
+        userManager.deleteUser(testUser.getEmail());
+    }
+
+
+    @Test
+    void testConcurrentPostingsAreCoalesced() throws Exception {
+        Account account = accountManager.loadAccount(62000001);
+        long balance = account.getBalance();
+        long batchesBefore = ledger.getStats().batchCount();
+
+        List<CompletableFuture<Transaction>> futures = new ArrayList<>();
+        for (int i = 0; i < 200; i++)
+            futures.add(ledger.submitDeposit(account, 1));
+
+        for (CompletableFuture<Transaction> future : futures)
+            assertTrue(future.get().transactionID() > 0);
+
+        assertEquals(balance + 200, accountManager.loadAccount(62000001).getBalance());
+        assertEquals(balance + 200, account.getBalance());
+        assertTrue(ledger.getStats().batchCount() - batchesBefore < 200, "Postings should share commits");
+    }
+
+
+    @Test
+    void testRejectedPostingDoesNotFailItsBatch() throws Exception {
+        Account source = accountManager.loadAccount(62000002);
+        int historySize = new TransactionManager().loadTransactions(source).size();
+
+        CompletableFuture<Transaction> tooLarge = ledger.submitWithdrawal(source, Money.ofMajor(1000));
+        CompletableFuture<Transaction> transfer = ledger.submitTransfer(source, 62000001, Money.ofMajor(4), "Grouped");
+        CompletableFuture<Transaction> missingTarget = ledger.submitTransfer(source, 69999999, Money.ofMajor(1), "Missing");
+
+        ExecutionException rejected = assertThrows(ExecutionException.class, tooLarge::get);
+        assertInstanceOf(IllegalArgumentException.class, rejected.getCause());
+        assertThrows(ExecutionException.class, missingTarget::get);
+        assertEquals("Grouped", transfer.get().comment());
+
+        assertEquals(Money.ofMajor(6), accountManager.loadAccount(62000002).getBalance());
+        assertEquals(historySize + 1, new TransactionManager().loadTransactions(source).size());
+    }
+
+
+    @Test
+    void testUnexpectedExceptionFailsOnlyItsPosting() throws Exception {
+        Account account = accountManager.loadAccount(62000001);
+        long balance = account.getBalance();
+
+        CompletableFuture<Transaction> broken = ledger.submitDeposit(null, 100);
+        CompletableFuture<Transaction> deposit = ledger.submitDeposit(account, 100);
+
+        ExecutionException failed = assertThrows(ExecutionException.class, broken::get);
+        assertInstanceOf(NullPointerException.class, failed.getCause());
+        assertTrue(deposit.get().transactionID() > 0);
+        assertEquals(balance + 100, accountManager.loadAccount(62000001).getBalance());
+
+        // The committer is still running
+        assertTrue(ledger.postDeposit(account, 1).transactionID() > 0);
+    }
+
+
+    @Test
+    void testSynchronousPostingRethrowsRejection() {
+        Account missing = new Account(testUser.getUserID(), 69999998, 0, false);
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> ledger.postDeposit(missing, 100));
+        assertEquals("Account does not exist", e.getMessage());
+    }
+
+}
@@ -0,0 +1,223 @@
+package banking;
+
+import banking.data.AccountManager;
+import banking.data.DatabaseManager;
+import banking.data.IdempotencyStore;
+import banking.data.LedgerManager;
+import banking.data.TransactionManager;
+import banking.data.UserManager;
+import banking.model.Account;
+import banking.model.User;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+class IdempotencyStoreTest {
+
+    private static final String EMAIL = "idempotency@gmail.com";
+    private static final int FIRST_ACCOUNT = 66000001;
+    private static final int SECOND_ACCOUNT = 66000002;
+
+    private UserManager userManager;
+    private AccountManager accountManager;
+    private LedgerManager ledger;
+    private IdempotencyStore store;
+
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        userManager = new UserManager();
+        accountManager = new AccountManager();
+        ledger = new LedgerManager();
+        store = new IdempotencyStore(new IdempotencyStore.Config(100, Duration.ofMinutes(10), Duration.ofHours(24)));
+
+        int userID = userManager.registerUser(new User(EMAIL, "password123", LocalDateTime.now()), FIRST_ACCOUNT);
+        accountManager.saveAccount(new Account(userID, SECOND_ACCOUNT, 0, false));
+        ledger.postDeposit(accountManager.loadAccount(FIRST_ACCOUNT), 1000);
+    }
+
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        userManager.deleteUser(EMAIL);
+        try (Connection connection = DatabaseManager.getInstance().getWriteConnection();
+             PreparedStatement statement = connection.prepareStatement("DELETE FROM IdempotencyKeys WHERE account_number IN (?, ?)")) {
+            statement.setInt(1, FIRST_ACCOUNT);
+            statement.setInt(2, SECOND_ACCOUNT);
+            statement.executeUpdate();
+        }
+    }
+
+
+    @Test
+    void testRepeatedSubmissionReturnsTheFirstResult() throws SQLException {
+        Account sender = accountManager.loadAccount(FIRST_ACCOUNT);
+
+        IdempotencyStore.Result first = store.execute("transfer-1", transfer(300), () -> ledger.postTransfer(sender, SECOND_ACCOUNT, 300, "Rent"));
+        IdempotencyStore.Result second = store.execute("transfer-1", transfer(300), () -> ledger.postTransfer(sender, SECOND_ACCOUNT, 300, "Rent"));
+
+        assertFalse(first.replayed());
+        assertTrue(second.replayed());
+        assertEquals(first.transactionID(), second.transactionID());
+        assertEquals(700, accountManager.loadAccount(FIRST_ACCOUNT).getBalance());
+        assertEquals(300, accountManager.loadAccount(SECOND_ACCOUNT).getBalance());
+        assertEquals(1, store.getStats().cacheHitCount());
+
+        // Another process, or this one after a restart, finds the key in the table
+        IdempotencyStore restarted = new IdempotencyStore(store.getConfig());
+        IdempotencyStore.Result third = restarted.execute("transfer-1", transfer(300), () -> fail("The transfer ran again"));
+        assertEquals(first.transactionID(), third.transactionID());
+        assertEquals(1, restarted.getStats().storedHitCount());
+        assertEquals(300, accountManager.loadAccount(SECOND_ACCOUNT).getBalance());
+    }
+
+
+    @Test
+    void testKeyCannotBeReusedForAnotherRequest() throws SQLException {
+        Account sender = accountManager.loadAccount(FIRST_ACCOUNT);
+        store.execute("transfer-2", transfer(100), () -> ledger.postTransfer(sender, SECOND_ACCOUNT, 100, "First"));
+
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> store.execute("transfer-2", transfer(200), () -> ledger.postTransfer(sender, SECOND_ACCOUNT, 200, "Second")));
+        assertEquals("Idempotency key was already used for a different request", e.getMessage());
+
+        store.clearCache();
+        assertThrows(IllegalArgumentException.class,
+                () -> store.execute("transfer-2", transfer(200), () -> ledger.postTransfer(sender, SECOND_ACCOUNT, 200, "Second")));
+        assertEquals(100, accountManager.loadAccount(SECOND_ACCOUNT).getBalance());
+    }
+
+
+    @Test
+    void testRejectedPostingReleasesTheKey() throws SQLException {
+        Account sender = accountManager.loadAccount(FIRST_ACCOUNT);
+        IdempotencyStore.Request request = new IdempotencyStore.Request(TransactionManager.Type.WITHDRAWAL, FIRST_ACCOUNT, FIRST_ACCOUNT, 1500);
+
+        assertThrows(IllegalArgumentException.class, () -> store.execute("withdrawal-1", request, () -> ledger.postWithdrawal(sender, 1500)));
+
+        ledger.postDeposit(sender, 500);
+        IdempotencyStore.Result result = store.execute("withdrawal-1", request, () -> ledger.postWithdrawal(sender, 1500));
+        assertFalse(result.replayed(), "The retry of a rejected request runs");
+        assertEquals(0, accountManager.loadAccount(FIRST_ACCOUNT).getBalance());
+    }
+
+
+    @Test
+    void testUnfinishedReservationIsNotRunAgain() throws SQLException {
+        try (Connection connection = DatabaseManager.getInstance().getWriteConnection();
+             PreparedStatement statement = connection.prepareStatement("INSERT INTO IdempotencyKeys " +
+                     "(idempotency_key, type, account_number, counterparty_account_number, amount, created_at) " +
+                     "VALUES ('crashed-1', 'TRANSFER', ?, ?, 100, datetime('now'))")) {
+            statement.setInt(1, FIRST_ACCOUNT);
+            statement.setInt(2, SECOND_ACCOUNT);
+            statement.executeUpdate();
+        }
+
+        Account sender = accountManager.loadAccount(FIRST_ACCOUNT);
+        assertThrows(IllegalArgumentException.class,
+                () -> store.execute("crashed-1", transfer(100), () -> ledger.postTransfer(sender, SECOND_ACCOUNT, 100, "Retry")));
+        assertEquals(0, accountManager.loadAccount(SECOND_ACCOUNT).getBalance());
+    }
+
+
+    @Test
+    void testConcurrentSubmissionsPostOnce() throws Exception {
+        Account sender = accountManager.loadAccount(FIRST_ACCOUNT);
+        AtomicInteger runs = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+
+        try (ExecutorService executor = Executors.newFixedThreadPool(8)) {
+            List<Future<IdempotencyStore.Result>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    return store.execute("transfer-3", transfer(50), () -> {
+                        runs.incrementAndGet();
+                        return ledger.postTransfer(sender, SECOND_ACCOUNT, 50, "Double click");
+                    });
+                }));
+            }
+            start.countDown();
+
+            int replayed = 0;
+            for (Future<IdempotencyStore.Result> future : futures)
+                replayed += future.get().replayed() ? 1 : 0;
+            assertEquals(7, replayed);
+        }
+
+        assertEquals(1, runs.get());
+        assertEquals(50, accountManager.loadAccount(SECOND_ACCOUNT).getBalance());
+    }
+
+
+    @Test
+    void testKeyIsCompletedWithThePosting() throws SQLException {
+        Account sender = accountManager.loadAccount(FIRST_ACCOUNT);
+        int[] transactionID = new int[1];
+
+        // The posting commits, then the process fails before the store sees the result
+        assertThrows(IllegalStateException.class, () -> store.execute("transfer-4", transfer(200), () -> {
+            transactionID[0] = ledger.postTransfer(sender, SECOND_ACCOUNT, 200, "Crash").transactionID();
+            throw new IllegalStateException("Crashed after the commit");
+        }));
+
+        IdempotencyStore restarted = new IdempotencyStore(store.getConfig());
+        IdempotencyStore.Result result = restarted.execute("transfer-4", transfer(200), () -> fail("The transfer ran again"));
+        assertTrue(result.replayed());
+        assertEquals(transactionID[0], result.transactionID());
+        assertEquals(200, accountManager.loadAccount(SECOND_ACCOUNT).getBalance());
+    }
+
+
+    @Test
+    void testWaitForRunningKeyIsBounded() throws Exception {
+        IdempotencyStore bounded = new IdempotencyStore(new IdempotencyStore.Config(100, Duration.ofMinutes(10),
+                Duration.ofHours(24), Duration.ofMillis(100)));
+        Account sender = accountManager.loadAccount(FIRST_ACCOUNT);
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        try (ExecutorService executor = Executors.newSingleThreadExecutor()) {
+            Future<IdempotencyStore.Result> first = executor.submit(() -> bounded.execute("transfer-5", transfer(50), () -> {
+                running.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new SQLException(e);
+                }
+                return ledger.postTransfer(sender, SECOND_ACCOUNT, 50, "Slow");
+            }));
+            running.await();
+
+            IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                    () -> bounded.execute("transfer-5", transfer(50), () -> fail("The transfer ran twice")));
+            assertEquals("A request with this idempotency key is still in progress, please try again", e.getMessage());
+
+            release.countDown();
+            assertFalse(first.get().replayed());
+        }
+        assertEquals(50, accountManager.loadAccount(SECOND_ACCOUNT).getBalance());
+    }
+
+
+    private static IdempotencyStore.Request transfer(long amount) {
+        return new IdempotencyStore.Request(TransactionManager.Type.TRANSFER, FIRST_ACCOUNT, SECOND_ACCOUNT, amount);
+    }
+
+}
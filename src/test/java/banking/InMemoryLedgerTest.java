@@ -0,0 +1,187 @@
+package banking;
+
+import banking.data.AccountManager;
+import banking.data.InMemoryLedger;
+import banking.data.TransactionManager;
+import banking.data.UserManager;
+import banking.model.Account;
+import banking.model.Money;
+import banking.model.User;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class InMemoryLedgerTest {
+
+    private static final int FIRST_ACCOUNT = 63000001;
+    private static final int ACCOUNT_COUNT = 8;
+
+    private InMemoryLedger ledger;
+    private AccountManager accountManager;
+    private UserManager userManager;
+    private User testUser;
+
+
+    @BeforeAll
+    void setUp() throws SQLException {
+        // Few stripes, so transfers often need two of them and share them with other postings; refreshes run during the tests
+        ledger = new InMemoryLedger(new InMemoryLedger.Config(4, Duration.ofMillis(5), 128, null, Duration.ofMillis(50)));
+        accountManager = new AccountManager();
+        userManager = new UserManager();
+
+        userManager.saveUser(new User("inmemoryledger@gmail.com", "password123", LocalDateTime.now()));
+        testUser = userManager.loadUser("inmemoryledger@gmail.com");
+
+        for (int i = 0; i < ACCOUNT_COUNT; i++)
+            accountManager.saveAccount(new Account(testUser.getUserID(), FIRST_ACCOUNT + i, Money.ofMajor(100), false));
+    }
+
+
+    @AfterAll
+    void tearDown() throws SQLException {
+        ledger.close();
+        userManager.deleteUser(testUser.getEmail());
+    }
+
+
+    @Test
+    void testConcurrentTransfersKeepTotalAndReachDatabase() throws Exception {
+        long totalBefore = 0;
+        for (int i = 0; i < ACCOUNT_COUNT; i++)
+            totalBefore += ledger.getBalance(FIRST_ACCOUNT + i);
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            long seed = t;
+            futures.add(executor.submit(() -> {
+                Random random = new Random(seed);
+                for (int i = 0; i < 500; i++) {
+                    int from = FIRST_ACCOUNT + random.nextInt(ACCOUNT_COUNT);
+                    int to = FIRST_ACCOUNT + random.nextInt(ACCOUNT_COUNT);
+                    if (from == to)
+                        continue;
+                    try {
+                        ledger.postTransfer(new Account(testUser.getUserID(), from, 0, false), to, 1 + random.nextInt(500), "Stress");
+                    } catch (IllegalArgumentException e) {
+                        // Insufficient funds is expected now and then
+                    }
+                }
+                return null;
+            }));
+        }
+        for (Future<?> future : futures)
+            future.get();
+        executor.shutdown();
+
+        long totalAfter = 0;
+        for (int i = 0; i < ACCOUNT_COUNT; i++)
+            totalAfter += ledger.getBalance(FIRST_ACCOUNT + i);
+        assertEquals(totalBefore, totalAfter, "Transfers must not create or destroy money");
+
+        ledger.flush();
+        for (int i = 0; i < ACCOUNT_COUNT; i++)
+            assertEquals(ledger.getBalance(FIRST_ACCOUNT + i), accountManager.loadAccount(FIRST_ACCOUNT + i).getBalance());
+        assertEquals(0, ledger.getStats().rejectedCount(), "The database must accept every journaled posting");
+    }
+
+
+    @Test
+    void testPostingsAreCheckedInMemory() throws SQLException {
+        Account account = accountManager.loadAccount(FIRST_ACCOUNT);
+
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> ledger.postWithdrawal(account, Money.ofMajor(1_000_000)));
+        assertEquals("Insufficient funds", e.getMessage());
+
+        e = assertThrows(IllegalArgumentException.class, () -> ledger.postTransfer(account, 69999997, 100, "Missing"));
+        assertEquals("Destination account does not exist", e.getMessage());
+
+        Account missing = new Account(testUser.getUserID(), 69999996, 0, false);
+        e = assertThrows(IllegalArgumentException.class, () -> ledger.postDeposit(missing, 100));
+        assertEquals("Account does not exist", e.getMessage());
+    }
+
+
+    @Test
+    void testFrozenFlagIsAppliedInOrder() throws SQLException {
+        Account account = accountManager.loadAccount(FIRST_ACCOUNT + 1);
+        int historySize = new TransactionManager().loadTransactions(account).size();
+        long balance = ledger.getBalance(FIRST_ACCOUNT + 1);
+
+        ledger.postDeposit(account, 250);
+        ledger.setFrozen(account, true);
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> ledger.postDeposit(account, 100));
+        assertEquals("Cannot deposit to a frozen account", e.getMessage());
+        ledger.setFrozen(account, false);
+
+        ledger.flush();
+        Account stored = accountManager.loadAccount(FIRST_ACCOUNT + 1);
+        assertFalse(stored.isFrozen());
+        assertEquals(balance + 250, stored.getBalance());
+        assertEquals(historySize + 1, new TransactionManager().loadTransactions(account).size());
+    }
+
+
+    @Test
+    void testAccountWrittenOutsideIsRefreshed() throws Exception {
+        Account account = accountManager.loadAccount(FIRST_ACCOUNT + 2);
+        long balance = ledger.getBalance(FIRST_ACCOUNT + 2);
+
+        // Written past the engine, as another process would
+        accountManager.depositMoney(account, 300);
+
+        ledger.flush();
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (ledger.getBalance(FIRST_ACCOUNT + 2) != balance + 300 && System.nanoTime() < deadline)
+            Thread.sleep(10);
+        assertEquals(balance + 300, ledger.getBalance(FIRST_ACCOUNT + 2), "The account is read again once its refresh is due");
+        assertTrue(ledger.getStats().refreshCount() > 0);
+
+        ledger.postWithdrawal(account, balance + 300);
+        ledger.flush();
+        assertEquals(0, accountManager.loadAccount(FIRST_ACCOUNT + 2).getBalance());
+        ledger.postDeposit(account, balance);
+    }
+
+
+    @Test
+    void testRejectedEntryStopsLedger() throws SQLException {
+        int accountNumber = FIRST_ACCOUNT + ACCOUNT_COUNT;
+        accountManager.saveAccount(new Account(testUser.getUserID(), accountNumber, Money.ofMajor(100), false));
+        Account account = accountManager.loadAccount(accountNumber);
+
+        // No refresh during the test, so memory keeps the balance the database no longer has
+        InMemoryLedger stopping = new InMemoryLedger(new InMemoryLedger.Config(4, Duration.ofMillis(5), 128, null, Duration.ofHours(1)));
+        try {
+            assertEquals(Money.ofMajor(100), stopping.getBalance(accountNumber));
+            accountManager.withdrawMoney(account, Money.ofMajor(100));
+
+            stopping.postWithdrawal(account, Money.ofMajor(100));
+            assertThrows(SQLException.class, stopping::flush);
+            assertEquals(1, stopping.getStats().rejectedCount());
+
+            IllegalStateException e = assertThrows(IllegalStateException.class, () -> stopping.postDeposit(account, 100));
+            assertTrue(e.getMessage().startsWith("The in-memory ledger stopped accepting postings"));
+            assertEquals(0, accountManager.loadAccount(accountNumber).getBalance());
+        } finally {
+            stopping.close();
+        }
+    }
+
+}
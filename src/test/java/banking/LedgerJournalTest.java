@@ -0,0 +1,202 @@
+package banking;
+
+import banking.data.AccountManager;
+import banking.data.DatabaseManager;
+import banking.data.InMemoryLedger;
+import banking.data.LedgerJournal;
+import banking.data.UserManager;
+import banking.model.Account;
+import banking.model.User;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+class LedgerJournalTest {
+
+    private static final LocalDateTime DATE = LocalDateTime.of(2025, 3, 14, 15, 9, 26);
+
+    @TempDir
+    Path directory;
+
+
+    @Test
+    void testEntriesAfterTheCheckpointAreRecovered() throws IOException {
+        try (LedgerJournal journal = new LedgerJournal(config(4096), 0)) {
+            for (long sequence = 1; sequence <= 5; sequence++)
+                journal.append(entry(sequence, "Entry " + sequence));
+        }
+
+        try (LedgerJournal journal = new LedgerJournal(config(4096), 2)) {
+            List<LedgerJournal.Entry> pending = journal.getPending();
+            assertEquals(3, pending.size());
+            assertEquals(entry(3, "Entry 3"), pending.getFirst());
+            assertEquals(5, journal.getLastSequence());
+
+            journal.append(entry(6, null));
+        }
+
+        try (LedgerJournal journal = new LedgerJournal(config(4096), 5)) {
+            assertEquals(List.of(entry(6, null)), journal.getPending(), "Appending continues after the last record");
+        }
+    }
+
+
+    @Test
+    void testCorruptRecordEndsTheJournal() throws IOException {
+        try (LedgerJournal journal = new LedgerJournal(config(4096), 0)) {
+            for (long sequence = 1; sequence <= 4; sequence++)
+                journal.append(entry(sequence, "Entry " + sequence));
+        }
+
+        // A torn write of the third record
+        try (FileChannel channel = FileChannel.open(segments().getFirst(), StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[] {1, 2, 3}), 2L * LedgerJournal.RECORD_SIZE + 40);
+        }
+
+        try (LedgerJournal journal = new LedgerJournal(config(4096), 0)) {
+            assertEquals(2, journal.getPending().size());
+            assertEquals(2, journal.getLastSequence());
+
+            journal.append(entry(3, "Rewritten"));
+        }
+
+        try (LedgerJournal journal = new LedgerJournal(config(4096), 0)) {
+            assertEquals(3, journal.getPending().size(), "The record after the torn one was cleared");
+            assertEquals("Rewritten", journal.getPending().getLast().comment());
+        }
+    }
+
+
+    @Test
+    void testCheckpointedSegmentsAreReleased() throws IOException {
+        // Two records per segment
+        try (LedgerJournal journal = new LedgerJournal(config(2 * LedgerJournal.RECORD_SIZE), 0)) {
+            for (long sequence = 1; sequence <= 7; sequence++)
+                journal.append(entry(sequence, null));
+            assertEquals(4, journal.getSegmentCount());
+
+            journal.release(4);
+            assertEquals(2, journal.getSegmentCount());
+            assertEquals(2, segments().size());
+
+            journal.release(7);
+            assertEquals(1, journal.getSegmentCount(), "The segment being written is kept");
+        }
+
+        try (LedgerJournal journal = new LedgerJournal(config(2 * LedgerJournal.RECORD_SIZE), 7)) {
+            assertTrue(journal.getPending().isEmpty());
+            assertEquals(7, journal.getLastSequence());
+            journal.append(entry(8, null));
+        }
+    }
+
+
+    @Test
+    void testJournalBehindTheDatabaseIsDiscarded() throws IOException {
+        try (LedgerJournal journal = new LedgerJournal(config(4096), 0)) {
+            journal.append(entry(1, null));
+        }
+
+        try (LedgerJournal journal = new LedgerJournal(config(4096), 10)) {
+            assertTrue(journal.getPending().isEmpty());
+            assertEquals(0, journal.getSegmentCount());
+            journal.append(entry(11, null));
+        }
+    }
+
+
+    @Test
+    void testInvalidEntriesAreRejected() throws IOException {
+        try (LedgerJournal journal = new LedgerJournal(config(4096), 0)) {
+            assertThrows(IllegalArgumentException.class, () -> journal.append(entry(2, null)));
+            assertThrows(IllegalArgumentException.class,
+                    () -> journal.append(entry(1, "x".repeat(LedgerJournal.MAX_COMMENT_BYTES + 1))));
+
+            journal.append(entry(1, "é".repeat(LedgerJournal.MAX_COMMENT_BYTES / 2)));
+            assertEquals(1, journal.getLastSequence());
+        }
+    }
+
+
+    @Test
+    void testInMemoryLedgerRecoversPostingsMissingFromTheDatabase() throws IOException, SQLException {
+        UserManager userManager = new UserManager();
+        AccountManager accountManager = new AccountManager();
+        int accountNumber = 65000001;
+        userManager.registerUser(new User("ledgerjournal@gmail.com", "password123", LocalDateTime.now()), accountNumber);
+
+        try {
+            InMemoryLedger.Config ledgerConfig = new InMemoryLedger.Config(4, Duration.ofMillis(5), 128, config(4096));
+            long checkpoint;
+            try (InMemoryLedger ledger = new InMemoryLedger(ledgerConfig)) {
+                ledger.postDeposit(accountManager.loadAccount(accountNumber), 700);
+                ledger.flush();
+                try (Connection connection = DatabaseManager.getInstance().getReadConnection()) {
+                    checkpoint = LedgerJournal.loadCheckpoint(connection);
+                }
+            }
+
+            // Postings the crashed process wrote to the journal file but not to the database
+            try (LedgerJournal journal = new LedgerJournal(config(4096), checkpoint)) {
+                journal.append(new LedgerJournal.Entry(checkpoint + 1, LedgerJournal.Operation.WITHDRAWAL,
+                        accountNumber, accountNumber, 200, DATE, "Withdrawal"));
+                journal.append(new LedgerJournal.Entry(checkpoint + 2, LedgerJournal.Operation.FREEZE,
+                        accountNumber, accountNumber, 0, DATE, null));
+            }
+
+            try (InMemoryLedger ledger = new InMemoryLedger(ledgerConfig)) {
+                Account account = accountManager.loadAccount(accountNumber);
+                assertEquals(500, account.getBalance());
+                assertTrue(account.isFrozen());
+                assertEquals(500, ledger.getBalance(accountNumber));
+            }
+
+            try (Connection connection = DatabaseManager.getInstance().getReadConnection()) {
+                assertEquals(checkpoint + 2, LedgerJournal.loadCheckpoint(connection));
+            }
+            try (InMemoryLedger ledger = new InMemoryLedger(ledgerConfig)) {
+                assertEquals(0, ledger.getStats().journaledCount(), "Recovered entries are not written twice");
+            }
+        } finally {
+            userManager.deleteUser("ledgerjournal@gmail.com");
+            try (Connection connection = DatabaseManager.getInstance().getWriteConnection();
+                 PreparedStatement statement = connection.prepareStatement("DELETE FROM JournalCheckpoints")) {
+                statement.executeUpdate();
+            }
+        }
+    }
+
+
+    private LedgerJournal.Config config(int segmentSize) {
+        return new LedgerJournal.Config(directory, segmentSize, LedgerJournal.SyncPolicy.ALWAYS, Duration.ZERO);
+    }
+
+
+    private static LedgerJournal.Entry entry(long sequence, String comment) {
+        return new LedgerJournal.Entry(sequence, LedgerJournal.Operation.TRANSFER, 1000 + (int) sequence, 2000, sequence * 100, DATE, comment);
+    }
+
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.sorted().toList();
+        }
+    }
+
+}
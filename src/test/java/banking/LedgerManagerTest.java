@@ -0,0 +1,104 @@
+package banking;
+
+import banking.data.AccountManager;
+import banking.data.LedgerManager;
+import banking.data.TransactionManager;
+import banking.data.UserManager;
+import banking.model.Account;
+import banking.model.Money;
+import banking.model.Transaction;
+import banking.model.User;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class LedgerManagerTest {
+
+    private LedgerManager ledgerManager;
+    private AccountManager accountManager;
+    private TransactionManager transactionManager;
+    private UserManager userManager;
+    private User testUser;
+
+
+    @BeforeAll
+    void setUp() throws SQLException {
+        ledgerManager = new LedgerManager();
+        accountManager = new AccountManager();
+        transactionManager = new TransactionManager();
+        userManager = new UserManager();
+
+        userManager.saveUser(new User("ledgeruser@gmail.com", "password123", LocalDateTime.now()));
+        testUser = userManager.loadUser("ledgeruser@gmail.com");
+
+        accountManager.saveAccount(new Account(testUser.getUserID(), 61000001, Money.ofMajor(1000), false));
+        accountManager.saveAccount(new Account(testUser.getUserID(), 61000002, 0, false));
+        accountManager.saveAccount(new Account(testUser.getUserID(), 61000003, 0, true));
+    }
+
+
+    @AfterAll
+    void tearDown() throws SQLException {
+        // Accounts and their transactions are removed by the cascading foreign keys
+        userManager.deleteUser(testUser.getEmail());
+    }
+
+
+    @Test
+    void testPostTransferRecordsTransaction() throws SQLException {
+        Account sender = accountManager.loadAccount(61000001);
+        long senderBalance = sender.getBalance();
+        long receiverBalance = accountManager.loadAccount(61000002).getBalance();
+
+        Transaction transaction = ledgerManager.postTransfer(sender, 61000002, Money.ofMajor(100), "Rent");
+
+        assertTrue(transaction.transactionID() > 0);
+        assertEquals(61000002, transaction.receiver().getAccountNumber());
+        assertEquals(senderBalance - Money.ofMajor(100), sender.getBalance());
+        assertEquals(senderBalance - Money.ofMajor(100), accountManager.loadAccount(61000001).getBalance());
+        assertEquals(receiverBalance + Money.ofMajor(100), accountManager.loadAccount(61000002).getBalance());
+
+        List<Transaction> history = transactionManager.loadTransactions(accountManager.loadAccount(61000002));
+        assertTrue(history.stream().anyMatch(t -> t.transactionID() == transaction.transactionID() && t.comment().equals("Rent")));
+    }
+
+
+    @Test
+    void testRejectedTransferChangesNothing() throws SQLException {
+        Account sender = accountManager.loadAccount(61000001);
+        long senderBalance = sender.getBalance();
+        int senderHistory = transactionManager.loadTransactions(sender).size();
+
+        assertThrows(IllegalArgumentException.class, () -> ledgerManager.postTransfer(sender, 61000003, Money.ofMajor(10), "Frozen"));
+        assertThrows(IllegalArgumentException.class, () -> ledgerManager.postTransfer(sender, 69999999, Money.ofMajor(10), "Missing"));
+
+        assertEquals(senderBalance, sender.getBalance());
+        assertEquals(senderBalance, accountManager.loadAccount(61000001).getBalance());
+        assertEquals(senderHistory, transactionManager.loadTransactions(sender).size());
+    }
+
+
+    @Test
+    void testPostDepositAndWithdrawal() throws SQLException {
+        Account account = accountManager.loadAccount(61000002);
+        long balance = account.getBalance();
+
+        Transaction deposit = ledgerManager.postDeposit(account, Money.parse("12.34"));
+        Transaction withdrawal = ledgerManager.postWithdrawal(account, Money.parse("2.34"));
+
+        assertEquals(LedgerManager.DEPOSIT_COMMENT, deposit.comment());
+        assertEquals(LedgerManager.WITHDRAWAL_COMMENT, withdrawal.comment());
+        assertEquals(balance + Money.ofMajor(10), accountManager.loadAccount(61000002).getBalance());
+        assertThrows(IllegalArgumentException.class, () -> ledgerManager.postWithdrawal(account, Long.MAX_VALUE));
+    }
+
+}
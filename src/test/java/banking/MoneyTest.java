@@ -0,0 +1,43 @@
+package banking;
+
+import banking.model.Money;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+class MoneyTest {
+
+    @Test
+    void testParse() {
+        assertEquals(150000, Money.parse("1500"));
+        assertEquals(1250, Money.parse(" 12.5 "));
+        assertEquals(1205, Money.parse("12.05"));
+        assertEquals(10, Money.parse("0.10"));
+        assertEquals(-500, Money.parse("-5"));
+    }
+
+
+    @Test
+    void testParseRejectsInvalidAmounts() {
+        assertThrows(NumberFormatException.class, () -> Money.parse("abc"));
+        assertThrows(NumberFormatException.class, () -> Money.parse("1.005"));
+        assertThrows(NumberFormatException.class, () -> Money.parse("1e30"));
+    }
+
+
+    @Test
+    void testFormat() {
+        assertEquals(String.format("%,.2f", 1234.5), Money.format(123450));
+        assertEquals(String.format("%.2f", 0.07), Money.format(7));
+        assertEquals(String.format("%.2f", -3.0), Money.format(-300));
+    }
+
+
+    @Test
+    void testSum() {
+        assertEquals(0, Money.sum(new long[0]));
+        assertEquals(Money.ofMajor(6) + 6, Money.sum(new long[] {Money.parse("1.01"), Money.parse("2.02"), Money.parse("3.03")}));
+    }
+
+}
@@ -0,0 +1,89 @@
+package banking;
+
+import banking.data.PasswordHasher;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class PasswordHasherTest {
+
+    private PasswordHasher hasher;
+
+
+    @BeforeAll
+    void setUp() {
+        hasher = new PasswordHasher(new PasswordHasher.Config(Duration.ofMillis(10), 2000, 1000, 2, 16));
+    }
+
+
+    @AfterAll
+    void tearDown() {
+        hasher.close();
+    }
+
+
+    @Test
+    void testHashAndVerify() {
+        String hash = hasher.hash("password123");
+
+        assertTrue(hash.startsWith(PasswordHasher.PREFIX + "2000$"));
+        assertNotEquals(hash, hasher.hash("password123"), "Every hash should have its own salt");
+        assertEquals(new PasswordHasher.Verification(true, false), hasher.verify("password123", hash));
+        assertFalse(hasher.verify("password124", hash).matches());
+    }
+
+
+    @Test
+    void testWeakerHashNeedsRehash() {
+        PasswordHasher weaker = new PasswordHasher(new PasswordHasher.Config(Duration.ofMillis(10), 1000, 1000, 1, 4));
+        String hash = weaker.hash("password123");
+        weaker.close();
+
+        assertEquals(new PasswordHasher.Verification(true, true), hasher.verify("password123", hash));
+        assertEquals(new PasswordHasher.Verification(false, false), hasher.verify("wrong", hash));
+    }
+
+
+    @Test
+    void testLegacyFormatsNeedRehash() throws NoSuchAlgorithmException {
+        byte[] salt = new byte[16];
+        MessageDigest md = MessageDigest.getInstance("SHA-256");
+        md.update(salt);
+        String legacy = Base64.getEncoder().encodeToString(salt) + ":"
+                + Base64.getEncoder().encodeToString(md.digest("password123".getBytes(StandardCharsets.UTF_8)));
+
+        assertEquals(new PasswordHasher.Verification(true, true), hasher.verify("password123", legacy));
+        assertFalse(hasher.verify("wrong", legacy).matches());
+
+        assertEquals(new PasswordHasher.Verification(true, true), hasher.verify("plaintext", "plaintext"));
+        assertFalse(hasher.verify("wrong", "plaintext").matches());
+    }
+
+
+    @Test
+    void testMalformedHashDoesNotMatch() {
+        assertFalse(hasher.verify("password123", PasswordHasher.PREFIX + "x$y$z").matches());
+        assertFalse(hasher.verify("password123", "not base64:###").matches());
+        assertFalse(hasher.verify("password123", null).matches());
+    }
+
+
+    @Test
+    void testCalibrationRespectsMinimum() {
+        PasswordHasher calibrated = new PasswordHasher(new PasswordHasher.Config(Duration.ofNanos(1), 0, 5000, 1, 4));
+        assertEquals(5000, calibrated.getIterations());
+        calibrated.close();
+    }
+
+}
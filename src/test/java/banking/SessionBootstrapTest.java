@@ -0,0 +1,106 @@
+package banking;
+
+import banking.data.AccountManager;
+import banking.data.DatabaseManager;
+import banking.data.SessionBootstrap;
+import banking.data.TransactionManager;
+import banking.data.UserManager;
+import banking.model.Account;
+import banking.model.Transaction;
+import banking.model.User;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class SessionBootstrapTest {
+
+    private static final String EMAIL = "sessionuser@example.com";
+    private static final String OTHER_EMAIL = "sessionother@example.com";
+    private static final String PASSWORD = "password123";
+
+    private UserManager userManager;
+    private SessionBootstrap sessionBootstrap;
+    private Account account;
+
+
+    @BeforeAll
+    void setUp() throws SQLException {
+        userManager = new UserManager();
+        sessionBootstrap = new SessionBootstrap();
+        AccountManager accountManager = new AccountManager();
+        TransactionManager transactionManager = new TransactionManager();
+
+        int userID = userManager.registerUser(new User(EMAIL, PASSWORD, LocalDateTime.now()));
+        int otherID = userManager.registerUser(new User(OTHER_EMAIL, PASSWORD, LocalDateTime.now()));
+        account = accountManager.loadAccounts(userID).getFirst();
+        Account other = accountManager.loadAccounts(otherID).getFirst();
+
+        LocalDateTime date = LocalDateTime.now().withNano(0);
+        for (int i = 0; i < 5; i++)
+            transactionManager.saveTransaction(new Transaction(account, other, 100, "Session " + i, date.minusMinutes(i)));
+    }
+
+
+    @AfterAll
+    void tearDown() throws SQLException {
+        userManager.deleteUser(EMAIL);
+        userManager.deleteUser(OTHER_EMAIL);
+    }
+
+
+    @Test
+    void testOpenLoadsUserAccountsAndFirstPage() throws SQLException {
+        SessionBootstrap.Session session = sessionBootstrap.open(EMAIL, PASSWORD, 3);
+
+        assertNotNull(session);
+        assertEquals(EMAIL, session.user().getEmail());
+        assertEquals(1, session.accounts().size());
+        assertEquals(account.getAccountNumber(), session.accounts().getFirst().getAccountNumber());
+
+        assertEquals(3, session.firstPage().transactions().size());
+        assertTrue(session.firstPage().hasMore());
+        assertEquals("Session 0", session.firstPage().transactions().getFirst().comment());
+        assertSame(session.accounts().getFirst(), session.firstPage().transactions().getFirst().sender(),
+                "The page should reference the loaded default account");
+    }
+
+
+    @Test
+    void testOpenRejectsWrongPasswordAndUnknownUser() throws SQLException {
+        assertNull(sessionBootstrap.open(EMAIL, "wrongpassword", 3));
+        assertNull(sessionBootstrap.open("nosuchuser@example.com", PASSWORD, 3));
+        assertNull(sessionBootstrap.open(EMAIL, "", 3));
+    }
+
+
+    @Test
+    void testOpenDoesNotWaitForAnOpenWriteTransaction() throws SQLException {
+        try (Connection writer = DatabaseManager.getInstance().getWriteConnection();
+             Statement statement = writer.createStatement()) {
+            writer.setAutoCommit(false);
+            statement.executeUpdate("UPDATE Accounts SET balance = balance WHERE account_number = " + account.getAccountNumber());
+
+            try {
+                // A sign-in only reads, so it must not need the write lock the writer holds
+                SessionBootstrap.Session session = assertTimeoutPreemptively(Duration.ofSeconds(10),
+                        () -> sessionBootstrap.open(EMAIL, PASSWORD, 3));
+                assertNotNull(session);
+            } finally {
+                writer.rollback();
+                writer.setAutoCommit(true);
+            }
+        }
+    }
+
+}
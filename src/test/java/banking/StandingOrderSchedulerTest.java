@@ -0,0 +1,162 @@
+package banking;
+
+import banking.data.AccountManager;
+import banking.data.StandingOrderManager;
+import banking.data.StandingOrderScheduler;
+import banking.data.TransactionManager;
+import banking.data.UserManager;
+import banking.model.Account;
+import banking.model.StandingOrder;
+import banking.model.Transaction;
+import banking.model.User;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+class StandingOrderSchedulerTest {
+
+    private static final String EMAIL = "standingorders@gmail.com";
+    private static final int PAYER_ACCOUNT = 67000001;
+    private static final int PAYEE_ACCOUNT = 67000002;
+    private static final LocalDateTime FIRST_RUN = LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS).minusDays(10);
+
+    private UserManager userManager;
+    private AccountManager accountManager;
+    private StandingOrderManager orderManager;
+    private StandingOrderScheduler scheduler;
+
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        userManager = new UserManager();
+        accountManager = new AccountManager();
+        orderManager = new StandingOrderManager();
+        scheduler = new StandingOrderScheduler(new StandingOrderScheduler.Config(3, 4, 5, Duration.ofMinutes(1)));
+
+        int userID = userManager.registerUser(new User(EMAIL, "password123", LocalDateTime.now()), PAYER_ACCOUNT);
+        accountManager.saveAccount(new Account(userID, PAYEE_ACCOUNT, 0, false));
+        accountManager.depositMoney(accountManager.loadAccount(PAYER_ACCOUNT), 10000);
+    }
+
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        scheduler.close();
+        // The orders are deleted with the accounts by the cascading foreign keys
+        userManager.deleteUser(EMAIL);
+    }
+
+
+    @Test
+    void testMissedRunsAreCaughtUpInOrder() throws SQLException {
+        StandingOrder order = orderManager.createStandingOrder(PAYER_ACCOUNT, PAYEE_ACCOUNT, 100, "Rent",
+                StandingOrder.Frequency.DAILY, FIRST_RUN);
+
+        StandingOrderScheduler.RunStats stats = scheduler.runDue(FIRST_RUN.plusDays(2).plusHours(1));
+        assertEquals(3, stats.executedCount(), "The first run and the two missed since");
+        assertEquals(1, stats.orderCount());
+        assertTrue(stats.complete());
+        assertEquals(9700, accountManager.loadAccount(PAYER_ACCOUNT).getBalance());
+        assertEquals(300, accountManager.loadAccount(PAYEE_ACCOUNT).getBalance());
+
+        List<LocalDateTime> dates = new TransactionManager().loadTransactions(accountManager.loadAccount(PAYEE_ACCOUNT))
+                .stream().map(Transaction::date).sorted().toList();
+        assertEquals(List.of(FIRST_RUN, FIRST_RUN.plusDays(1), FIRST_RUN.plusDays(2)), dates, "Each run is dated when it was due");
+
+        StandingOrder advanced = orderManager.loadStandingOrder(order.orderID());
+        assertEquals(3, advanced.runCount());
+        assertEquals(FIRST_RUN.plusDays(3), advanced.nextRun());
+        assertNull(advanced.lastError());
+
+        assertEquals(0, scheduler.runDue(FIRST_RUN.plusDays(2).plusHours(1)).executedCount(), "Nothing is due twice");
+        assertEquals(3, scheduler.getStats().executedCount());
+    }
+
+
+    @Test
+    void testRunThatIsNotAllowedIsSkipped() throws SQLException {
+        StandingOrder order = orderManager.createStandingOrder(PAYER_ACCOUNT, PAYEE_ACCOUNT, 6000, "Salary",
+                StandingOrder.Frequency.WEEKLY, FIRST_RUN);
+
+        StandingOrderScheduler.RunStats stats = scheduler.runDue(FIRST_RUN.plusWeeks(1));
+        assertEquals(1, stats.executedCount());
+        assertEquals(1, stats.failedCount());
+        assertEquals(4000, accountManager.loadAccount(PAYER_ACCOUNT).getBalance(), "The failed run changed nothing");
+
+        StandingOrder advanced = orderManager.loadStandingOrder(order.orderID());
+        assertEquals(FIRST_RUN.plusWeeks(2), advanced.nextRun());
+        assertEquals("Insufficient funds in source account", advanced.lastError());
+    }
+
+
+    @Test
+    void testCancelledOrderDoesNotRun() throws SQLException {
+        StandingOrder order = orderManager.createStandingOrder(PAYER_ACCOUNT, PAYEE_ACCOUNT, 100, "Gym",
+                StandingOrder.Frequency.MONTHLY, FIRST_RUN);
+        assertEquals(List.of(order), orderManager.loadStandingOrders(PAYER_ACCOUNT));
+
+        assertTrue(orderManager.cancelStandingOrder(order.orderID()));
+        assertFalse(orderManager.cancelStandingOrder(order.orderID()));
+        assertTrue(orderManager.loadStandingOrders(PAYER_ACCOUNT).isEmpty());
+
+        assertEquals(0, scheduler.runDue(FIRST_RUN.plusDays(1)).orderCount());
+        assertEquals(0, accountManager.loadAccount(PAYEE_ACCOUNT).getBalance());
+    }
+
+
+    @Test
+    void testInvalidOrdersAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> orderManager.createStandingOrder(PAYER_ACCOUNT, PAYEE_ACCOUNT, 0,
+                "Nothing", StandingOrder.Frequency.DAILY, FIRST_RUN));
+        assertThrows(IllegalArgumentException.class, () -> orderManager.createStandingOrder(PAYER_ACCOUNT, PAYER_ACCOUNT, 100,
+                "Self", StandingOrder.Frequency.DAILY, FIRST_RUN));
+        assertThrows(SQLException.class, () -> orderManager.createStandingOrder(PAYER_ACCOUNT, 67999999, 100,
+                "Missing", StandingOrder.Frequency.DAILY, FIRST_RUN));
+    }
+
+
+    @Test
+    void testMonthlyOrdersKeepTheirDayOfMonth() {
+        LocalDateTime lastOfJanuary = LocalDateTime.of(2025, 1, 31, 9, 0);
+
+        assertEquals(LocalDateTime.of(2025, 2, 28, 9, 0), StandingOrder.Frequency.MONTHLY.occurrence(lastOfJanuary, 1));
+        assertEquals(LocalDateTime.of(2025, 3, 31, 9, 0), StandingOrder.Frequency.MONTHLY.occurrence(lastOfJanuary, 2));
+    }
+
+
+    @Test
+    void testConcurrentSchedulersExecuteEachRunOnce() throws Exception {
+        for (int i = 0; i < 20; i++)
+            orderManager.createStandingOrder(PAYER_ACCOUNT, PAYEE_ACCOUNT, 10, "Order " + i, StandingOrder.Frequency.DAILY, FIRST_RUN);
+        LocalDateTime now = FIRST_RUN.plusDays(1);
+
+        try (StandingOrderScheduler other = new StandingOrderScheduler(scheduler.getConfig());
+             ExecutorService executor = Executors.newFixedThreadPool(2)) {
+            List<Future<StandingOrderScheduler.RunStats>> runs = new ArrayList<>();
+            runs.add(executor.submit(() -> scheduler.runDue(now)));
+            runs.add(executor.submit(() -> other.runDue(now)));
+
+            int executed = 0;
+            for (Future<StandingOrderScheduler.RunStats> run : runs)
+                executed += run.get().executedCount();
+            assertEquals(40, executed);
+        }
+
+        assertEquals(400, accountManager.loadAccount(PAYEE_ACCOUNT).getBalance());
+        assertEquals(9600, accountManager.loadAccount(PAYER_ACCOUNT).getBalance());
+    }
+
+}
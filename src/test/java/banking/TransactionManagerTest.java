@@ -1,10 +1,13 @@
 package banking;
 
+import banking.data.AccountCache;
 import banking.data.AccountManager;
 import banking.data.DatabaseManager;
 import banking.data.TransactionManager;
+import banking.data.TransactionPage;
 import banking.data.UserManager;
 import banking.model.Account;
+import banking.model.Money;
 import banking.model.Transaction;
 import banking.model.User;
 import org.junit.jupiter.api.AfterAll;
@@ -16,6 +19,7 @@ import java.sql.Connection;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -31,24 +35,25 @@ class TransactionManagerTest {
 
     @BeforeAll
     void setupDatabase() throws SQLException {
-        Connection connection = DatabaseManager.getInstance().getConnection();
         UserManager userManager = new UserManager();
         AccountManager accountManager = new AccountManager();
         transactionManager = new TransactionManager();
 
-        try (Statement statement = connection.createStatement()) {
+        try (Connection connection = DatabaseManager.getInstance().getConnection();
+             Statement statement = connection.createStatement()) {
             statement.executeUpdate("DELETE FROM Transactions");
             statement.executeUpdate("DELETE FROM Accounts");
             statement.executeUpdate("DELETE FROM Users");
         }
+        AccountCache.getInstance().invalidateAll();
 
         User testUser1 = new User("test1@example.com", "password1", LocalDateTime.now());
         User testUser2 = new User("test2@example.com", "password2", LocalDateTime.now());
         testUser1.setUserID(userManager.saveUser(testUser1));
         testUser2.setUserID(userManager.saveUser(testUser2));
 
-        senderAccount = new Account(testUser1.getUserID(), 12345678, 10000.0, false);
-        receiverAccount = new Account(testUser2.getUserID(), 87654321, 5000.0, false);
+        senderAccount = new Account(testUser1.getUserID(), 12345678, Money.ofMajor(10000), false);
+        receiverAccount = new Account(testUser2.getUserID(), 87654321, Money.ofMajor(5000), false);
         accountManager.saveAccount(senderAccount);
         accountManager.saveAccount(receiverAccount);
     }
@@ -56,35 +61,72 @@ class TransactionManagerTest {
 
     @Test
     void testSaveTransaction() throws SQLException {
-        Transaction transaction = new Transaction(senderAccount, receiverAccount, 2000.0, "Test Transfer", LocalDateTime.now());
+        Transaction transaction = new Transaction(senderAccount, receiverAccount, Money.ofMajor(2000), "Test Transfer", LocalDateTime.now());
         boolean success = transactionManager.saveTransaction(transaction);
         assertTrue(success, "Transaction should be saved successfully");
     }
 
 
+    @Test
+    void testSaveTransactionForMissingAccount() throws SQLException {
+        Account missingAccount = new Account(0, 99999999, 0, false);
+        Transaction transaction = new Transaction(senderAccount, missingAccount, Money.ofMajor(10), "Missing", LocalDateTime.now());
+        assertFalse(transactionManager.saveTransaction(transaction), "Transaction to a missing account should not be saved");
+    }
+
+
     @Test
     void testLoadTransactionsForAccount() throws SQLException {
         List<Transaction> existingTransactions = transactionManager.loadTransactions(senderAccount);
         for (Transaction transaction : existingTransactions)
             transactionManager.deleteTransaction(transaction.transactionID());
 
-        Transaction transaction1 = new Transaction(senderAccount, receiverAccount, 1000.0, "Test Load 1", LocalDateTime.now());
-        Transaction transaction2 = new Transaction(senderAccount, receiverAccount, 2000.0, "Test Load 2", LocalDateTime.now());
+        Transaction transaction1 = new Transaction(senderAccount, receiverAccount, Money.ofMajor(1000), "Test Load 1", LocalDateTime.now());
+        Transaction transaction2 = new Transaction(senderAccount, receiverAccount, Money.ofMajor(2000), "Test Load 2", LocalDateTime.now());
         transactionManager.saveTransaction(transaction1);
         transactionManager.saveTransaction(transaction2);
         List<Transaction> senderTransactions = transactionManager.loadTransactions(senderAccount);
 
         assertEquals(2, senderTransactions.size(), "Sender account should have 2 transactions");
-        assertTrue(senderTransactions.stream().anyMatch(t -> t.amount() == 1000.0 && t.comment().equals("Test Load 1")),
+        assertTrue(senderTransactions.stream().anyMatch(t -> t.amount() == Money.ofMajor(1000) && t.comment().equals("Test Load 1")),
                 "First transaction should be loaded correctly");
-        assertTrue(senderTransactions.stream().anyMatch(t -> t.amount() == 2000.0 && t.comment().equals("Test Load 2")),
+        assertTrue(senderTransactions.stream().anyMatch(t -> t.amount() == Money.ofMajor(2000) && t.comment().equals("Test Load 2")),
                 "Second transaction should be loaded correctly");
     }
 
 
+    @Test
+    void testLoadTransactionPages() throws SQLException {
+        List<Transaction> existingTransactions = transactionManager.loadTransactions(senderAccount);
+        for (Transaction transaction : existingTransactions)
+            transactionManager.deleteTransaction(transaction.transactionID());
+
+        LocalDateTime now = LocalDateTime.now().withNano(0);
+        for (int i = 0; i < 5; i++)
+            transactionManager.saveTransaction(new Transaction(senderAccount, receiverAccount, Money.ofMajor(100 * (i + 1)),
+                    "Page " + i, now.minusMinutes(i)));
+        transactionManager.saveTransaction(new Transaction(senderAccount, senderAccount, Money.ofMajor(50), "Deposit", now.minusMinutes(10)));
+
+        List<Transaction> loaded = new ArrayList<>();
+        TransactionPage page = transactionManager.loadTransactions(senderAccount, null, 2);
+        loaded.addAll(page.transactions());
+        while (page.hasMore()) {
+            assertEquals(2, page.transactions().size(), "Every page but the last should be full");
+            page = transactionManager.loadTransactions(senderAccount, page.nextCursor(), 2);
+            loaded.addAll(page.transactions());
+        }
+
+        assertEquals(6, loaded.size(), "All transactions should be loaded exactly once");
+        for (int i = 0; i < 5; i++)
+            assertEquals("Page " + i, loaded.get(i).comment(), "Transactions should be ordered newest first");
+        assertEquals("Deposit", loaded.get(5).comment());
+        assertSame(loaded.get(0).receiver(), loaded.get(1).receiver(), "Counterparty accounts should be shared within a page");
+    }
+
+
     @Test
     void testDeleteTransaction() throws SQLException {
-        Transaction transaction = new Transaction(senderAccount, receiverAccount, 3000.0, "Test Delete", LocalDateTime.now());
+        Transaction transaction = new Transaction(senderAccount, receiverAccount, Money.ofMajor(3000), "Test Delete", LocalDateTime.now());
         transactionManager.saveTransaction(transaction);
 
         List<Transaction> senderTransactions = transactionManager.loadTransactions(senderAccount);
@@ -116,6 +158,7 @@ class TransactionManagerTest {
             statement.executeUpdate("DELETE FROM Accounts");
             statement.executeUpdate("DELETE FROM Users");
         }
+        AccountCache.getInstance().invalidateAll();
     }
 
 }
@@ -1,11 +1,16 @@
 package banking;
 
+import banking.data.DatabaseManager;
+import banking.data.PasswordHasher;
 import banking.data.UserManager;
 import banking.model.User;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.time.LocalDateTime;
 
@@ -69,6 +74,25 @@ class UserManagerTest {
     }
 
 
+    @Test
+    void testLegacyPasswordIsRehashedOnLogin() throws SQLException {
+        String email = "anotheruser@example.com";
+        try (Connection connection = DatabaseManager.getInstance().getConnection();
+             PreparedStatement statement = connection.prepareStatement(
+                     "INSERT INTO Users (email, password, datetime) VALUES (?, 'legacy123', '2024-01-01 00:00:00')")) {
+            statement.setString(1, email);
+            statement.executeUpdate();
+        }
+
+        assertFalse(userManager.authenticateUser(email, "wrongpassword"));
+        assertEquals("legacy123", loadStoredPassword(email), "A failed login must not rehash");
+
+        assertTrue(userManager.authenticateUser(email, "legacy123"));
+        assertTrue(loadStoredPassword(email).startsWith(PasswordHasher.PREFIX), "The plain text password should be rehashed");
+        assertTrue(userManager.authenticateUser(email, "legacy123"));
+    }
+
+
     @Test
     void testLoadUser() throws SQLException {
         String email = "testuser@example.com";
@@ -104,4 +128,15 @@ class UserManagerTest {
         assertFalse(userManager.userExists(email), "User should not exist after deletion");
     }
 
+
+    private static String loadStoredPassword(String email) throws SQLException {
+        try (Connection connection = DatabaseManager.getInstance().getConnection();
+             PreparedStatement statement = connection.prepareStatement("SELECT password FROM Users WHERE email = ?")) {
+            statement.setString(1, email);
+            try (ResultSet result = statement.executeQuery()) {
+                return result.next() ? result.getString(1) : null;
+            }
+        }
+    }
+
 }